@@ -0,0 +1,281 @@
+package gov.usgs.volcanoes.core.data;
+
+import cern.colt.matrix.DoubleMatrix1D;
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+/**
+ * Append-only columnar storage for helicorder rows. Times, minima and maxima
+ * are kept in separate arrays which grow by doubling. With a window, the
+ * arrays become a ring buffer once full and each append evicts the oldest row.
+ *
+ * <p>Rows are addressed by an absolute sequence number which does not change
+ * as older rows are evicted. {@link #view()} returns a Colt matrix over the
+ * current rows without copying; it reads through to the arrays, so it sees
+ * later in-place changes but not later appends, and rows evicted after it was
+ * taken read as whatever replaced them.
+ */
+class HelicorderColumns {
+  static final int MAX_ROWS = 1 << 28;
+  private static final int COLUMN_SHIFT = 28;
+  private static final int ROW_MASK = MAX_ROWS - 1;
+  private static final int COLUMNS = 3;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int window;
+  private double[][] columns;
+  private int capacity;
+  private long first;
+  private int count;
+
+  /**
+   * Constructor.
+   *
+   * @param window most rows kept, 0 for no limit
+   */
+  HelicorderColumns(int window) {
+    if (window < 0 || window > MAX_ROWS)
+      throw new IllegalArgumentException("window must be between 0 and " + MAX_ROWS);
+
+    this.window = window;
+    capacity = window > 0 ? Math.min(window, INITIAL_CAPACITY) : INITIAL_CAPACITY;
+    columns = new double[COLUMNS][capacity];
+  }
+
+  int size() {
+    return count;
+  }
+
+  int getWindow() {
+    return window;
+  }
+
+  /**
+   * Get the sequence number of the oldest row.
+   *
+   * @return sequence number
+   */
+  long getFirst() {
+    return first;
+  }
+
+  private int slot(long row) {
+    return (int) (row % capacity);
+  }
+
+  double get(int column, long row) {
+    return columns[column][slot(row)];
+  }
+
+  void set(int column, long row, double value) {
+    columns[column][slot(row)] = value;
+  }
+
+  double getLastTime() {
+    return get(0, first + count - 1);
+  }
+
+  /**
+   * Append a row. A row with the same time as the last row replaces it; an
+   * earlier row is ignored.
+   *
+   * @param t time
+   * @param min minimum
+   * @param max maximum
+   * @return 1 if appended, 0 if the last row was replaced, -1 if ignored
+   */
+  int append(double t, double min, double max) {
+    if (count > 0) {
+      double last = getLastTime();
+      if (t < last)
+        return -1;
+
+      if (t == last) {
+        long row = first + count - 1;
+        set(1, row, min);
+        set(2, row, max);
+        return 0;
+      }
+    }
+
+    if (count == capacity) {
+      if (window > 0 && count == window) {
+        first++;
+        count--;
+      } else {
+        grow();
+      }
+    }
+
+    int s = slot(first + count);
+    columns[0][s] = t;
+    columns[1][s] = min;
+    columns[2][s] = max;
+    count++;
+    return 1;
+  }
+
+  private void grow() {
+    int limit = window > 0 ? window : MAX_ROWS;
+    if (capacity >= limit)
+      throw new IllegalStateException("helicorder buffer full");
+
+    int newCapacity = (int) Math.min(limit, 2L * capacity);
+    double[][] newColumns = new double[COLUMNS][newCapacity];
+    for (long row = first; row < first + count; row++) {
+      int from = slot(row);
+      int to = (int) (row % newCapacity);
+      for (int c = 0; c < COLUMNS; c++)
+        newColumns[c][to] = columns[c][from];
+    }
+    columns = newColumns;
+    capacity = newCapacity;
+  }
+
+  /**
+   * Get a matrix view of the current rows.
+   *
+   * @return the view
+   */
+  DoubleMatrix2D view() {
+    return new View2D(this, first, count, null, null);
+  }
+
+  /**
+   * Linear indexes pack the column above the row: index = column &lt;&lt; 28 |
+   * row. Colt's view arithmetic (parts, strides, flips, dice) then works
+   * unchanged, and each access decodes the index back into the arrays.
+   */
+  private static class View2D extends DoubleMatrix2D {
+    private static final long serialVersionUID = 1L;
+    private final HelicorderColumns store;
+    private final long base;
+    private final int[] rowOffsets;
+    private final int[] columnOffsets;
+
+    View2D(HelicorderColumns store, long base, int rows, int[] rowOffsets,
+        int[] columnOffsets) {
+      this.store = store;
+      this.base = base;
+      this.rowOffsets = rowOffsets;
+      this.columnOffsets = columnOffsets;
+      if (rowOffsets == null)
+        setUp(rows, COLUMNS, 0, 0, 1, 1 << COLUMN_SHIFT);
+      else
+        setUp(rowOffsets.length, columnOffsets.length, 0, 0, 1, 1);
+    }
+
+    @Override
+    protected int _rowOffset(int absRank) {
+      return rowOffsets == null ? absRank : rowOffsets[absRank];
+    }
+
+    @Override
+    protected int _columnOffset(int absRank) {
+      return columnOffsets == null ? absRank : columnOffsets[absRank];
+    }
+
+    @Override
+    public double getQuick(int row, int column) {
+      int i = index(row, column);
+      return store.get(i >>> COLUMN_SHIFT, base + (i & ROW_MASK));
+    }
+
+    @Override
+    public void setQuick(int row, int column, double value) {
+      int i = index(row, column);
+      store.set(i >>> COLUMN_SHIFT, base + (i & ROW_MASK), value);
+    }
+
+    @Override
+    public DoubleMatrix2D like(int rows, int columns) {
+      return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(int size) {
+      return new DenseDoubleMatrix1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(int size, int zero, int stride) {
+      return new View1D(store, base, size, zero, stride, null);
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(int[] rowOffsets, int[] columnOffsets) {
+      return new View2D(store, base, 0, rowOffsets, columnOffsets);
+    }
+
+    @Override
+    public DoubleMatrix1D viewColumn(int column) {
+      if (rowOffsets == null)
+        return super.viewColumn(column);
+
+      checkColumn(column);
+      int[] offsets = new int[rows];
+      for (int r = 0; r < rows; r++)
+        offsets[r] = index(r, column);
+      return new View1D(store, base, rows, 0, 1, offsets);
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow(int row) {
+      if (rowOffsets == null)
+        return super.viewRow(row);
+
+      checkRow(row);
+      int[] offsets = new int[columns];
+      for (int c = 0; c < columns; c++)
+        offsets[c] = index(row, c);
+      return new View1D(store, base, columns, 0, 1, offsets);
+    }
+  }
+
+  private static class View1D extends DoubleMatrix1D {
+    private static final long serialVersionUID = 1L;
+    private final HelicorderColumns store;
+    private final long base;
+    private final int[] offsets;
+
+    View1D(HelicorderColumns store, long base, int size, int zero, int stride, int[] offsets) {
+      this.store = store;
+      this.base = base;
+      this.offsets = offsets;
+      setUp(size, zero, stride);
+    }
+
+    @Override
+    protected int _offset(int absRank) {
+      return offsets == null ? absRank : offsets[absRank];
+    }
+
+    @Override
+    public double getQuick(int index) {
+      int i = index(index);
+      return store.get(i >>> COLUMN_SHIFT, base + (i & ROW_MASK));
+    }
+
+    @Override
+    public void setQuick(int index, double value) {
+      int i = index(index);
+      store.set(i >>> COLUMN_SHIFT, base + (i & ROW_MASK), value);
+    }
+
+    @Override
+    public DoubleMatrix1D like(int size) {
+      return new DenseDoubleMatrix1D(size);
+    }
+
+    @Override
+    public DoubleMatrix2D like2D(int rows, int columns) {
+      return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    protected DoubleMatrix1D viewSelectionLike(int[] offsets) {
+      return new View1D(store, base, offsets.length, 0, 1, offsets);
+    }
+  }
+}
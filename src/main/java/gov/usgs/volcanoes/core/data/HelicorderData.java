@@ -20,8 +20,9 @@ import cern.colt.matrix.DoubleMatrix2D;
 public class HelicorderData extends GenericDataMatrix {
   // private DoubleMatrix2D data;
   protected final static Logger LOGGER = LoggerFactory.getLogger(HelicorderData.class);
-  private transient double bias = -1E300;
-  private transient double meanMax = -1E300;
+  private transient BiasIndex biasIndex;
+  private transient HelicorderColumns columns;
+  private int window;
 
   /**
    * Set predefined column names: time/min/max
@@ -58,11 +59,122 @@ public class HelicorderData extends GenericDataMatrix {
   }
 
   /**
-   * Reset bias max and min values to undefined state
+   * Creates an empty helicorder for appending. Rows are kept in columnar
+   * storage which grows as needed; with a window only the newest rows are
+   * kept.
+   * 
+   * @param window most rows to keep, 0 for no limit
+   */
+  public HelicorderData(int window) {
+    this.window = window;
+    columns = new HelicorderColumns(window);
+    data = columns.view();
+  }
+
+  /**
+   * Append a row. Existing data is moved to columnar storage on the first
+   * append. A row with the same time as the last row replaces it; an earlier
+   * row is ignored.
+   * 
+   * @param t time
+   * @param min minimum
+   * @param max maximum
+   */
+  public synchronized void append(double t, double min, double max) {
+    if (columns == null)
+      toColumns(window);
+
+    if (columns.append(t, min, max) == 0 && biasIndex != null)
+      biasIndex.truncate((int) (columns.getFirst() + columns.size() - 1 - biasIndex.first));
+
+    data = columns.view();
+  }
+
+  /**
+   * Limit the number of rows kept, dropping the oldest. Existing data is moved
+   * to columnar storage. The limit holds when the data is later replaced or
+   * combined, and is applied again on the next append.
+   * 
+   * @param window most rows to keep, 0 for no limit
+   */
+  public synchronized void setWindow(int window) {
+    this.window = window;
+    toColumns(window);
+  }
+
+  /**
+   * Get the row limit.
+   * 
+   * @return most rows kept, 0 for no limit
+   */
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * Copy the data into new columnar storage, sorting it first if needed.
+   * 
+   * @param window most rows to keep, 0 for no limit
+   */
+  private void toColumns(int window) {
+    HelicorderColumns c = new HelicorderColumns(window);
+    if (data != null) {
+      int numRows = data.rows();
+      for (int i = 1; i < numRows; i++) {
+        if (data.getQuick(i, 0) < data.getQuick(i - 1, 0)) {
+          sort();
+          break;
+        }
+      }
+      for (int i = 0; i < numRows; i++)
+        c.append(data.getQuick(i, 0), data.getQuick(i, 1), data.getQuick(i, 2));
+    }
+    columns = c;
+    data = columns.view();
+    resetBiasMinMax();
+  }
+
+  /**
+   * Reset bias max and min values to undefined state. Call this after
+   * modifying the data in place.
+   */
+  public synchronized void resetBiasMinMax() {
+    biasIndex = null;
+  }
+
+  @Override
+  public void setData(DoubleMatrix2D d) {
+    super.setData(d);
+    columns = null;
+    resetBiasMinMax();
+  }
+
+  @Override
+  public void fromBinary(ByteBuffer bb) {
+    super.fromBinary(bb);
+    columns = null;
+    resetBiasMinMax();
+  }
+
+  /**
+   * Get the bias index, building it or extending it over rows added since it
+   * was last used. Rows already indexed are assumed unchanged.
+   * 
+   * @return the index
    */
-  public void resetBiasMinMax() {
-    bias = -1E300;
-    meanMax = -1E300;
+  private synchronized BiasIndex getBiasIndex() {
+    int numRows = data.rows();
+    long first = columns == null ? 0 : columns.getFirst();
+    if (biasIndex != null && first > biasIndex.first)
+      biasIndex.drop(first - biasIndex.first);
+
+    if (biasIndex == null || biasIndex.rows > numRows)
+      biasIndex = new BiasIndex(numRows, first);
+
+    if (biasIndex.rows < numRows)
+      biasIndex.extend(data, numRows);
+
+    return biasIndex;
   }
 
   /**
@@ -89,25 +201,8 @@ public class HelicorderData extends GenericDataMatrix {
    * @return the bias
    */
   public double getBias() {
-    if (bias != -1E300)
-      return bias;
-
-    double b = 0;
-    int samples = 0;
-    int numRows = data.rows();
-    double d1, d2;
-    for (int i = 0; i < numRows; i++) {
-      d1 = data.getQuick(i, 1);
-      d2 = data.getQuick(i, 2);
-      if (d1 != Wave.NO_DATA && d2 != Wave.NO_DATA) {
-        b += d2 - ((d2 - d1) / 2.0d);
-        samples++;
-      }
-    }
-
-    b /= samples;
-    bias = b;
-    return bias;
+    BiasIndex index = getBiasIndex();
+    return index.bias(0, index.rows);
   }
 
   /**
@@ -143,29 +238,53 @@ public class HelicorderData extends GenericDataMatrix {
    * @return the bias for t2..t2
    */
   public double getBiasBetween(double t1, double t2) {
-    double bias = 0;
-    int samples = 0;
-
     int m = findIndex(t1, 0, data.rows() - 1);
     int n = findIndex(t2, 0, data.rows() - 1);
+    return getBiasIndex().bias(m, Math.max(m, n));
+  }
 
-    double d1, d2;
-    for (int i = m; i < n; i++) {
-      d1 = data.getQuick(i, 1);
-      d2 = data.getQuick(i, 2);
-      if (d1 != Wave.NO_DATA && d2 != Wave.NO_DATA) {
-        bias += d2 - ((d2 - d1) / 2.0d);
-        samples++;
-      }
+  /**
+   * Find the first index with a time greater than or equal to t.
+   * 
+   * @param t time to search for
+   * @return the index, or rows() if none
+   */
+  private int lowerBound(double t) {
+    int left = 0;
+    int right = data.rows();
+    while (left < right) {
+      int mid = (left + right) >>> 1;
+      if (data.getQuick(mid, 0) < t)
+        left = mid + 1;
+      else
+        right = mid;
     }
+    return left;
+  }
 
-    bias /= samples;
-    return bias;
+  /**
+   * Find the first index with a time greater than t.
+   * 
+   * @param t time to search for
+   * @return the index, or rows() if none
+   */
+  private int upperBound(double t) {
+    int left = 0;
+    int right = data.rows();
+    while (left < right) {
+      int mid = (left + right) >>> 1;
+      if (data.getQuick(mid, 0) <= t)
+        left = mid + 1;
+      else
+        right = mid;
+    }
+    return left;
   }
 
   /**
    * Split whole time range on raw set with duration timeChunk.
-   * Get array of biases for each row.
+   * Get array of biases for each row. A row holds the samples after its start
+   * time, up to and including its end time. Rows without data are NaN.
    * 
    * @param timeChunk duration
    * @return array of biases
@@ -176,26 +295,12 @@ public class HelicorderData extends GenericDataMatrix {
 
     int rows = (int) ((maxt - mint) / timeChunk);
     double[] biases = new double[rows];
-    double rowStartTime = mint;
-    int samples = 0;
-    int row = 0;
-    double t, d1, d2;
-    for (int i = 0; i < data.rows(); i++) {
-      t = data.getQuick(i, 0);
-      d1 = data.getQuick(i, 1);
-      d2 = data.getQuick(i, 2);
-      if (t > rowStartTime + timeChunk) {
-        biases[row] /= samples;
-        LOGGER.debug(row + " " + biases[row]);
-        row++;
-        samples = 0;
-        rowStartTime += timeChunk;
-      }
-
-      if (d1 != Wave.NO_DATA && d2 != Wave.NO_DATA) {
-        biases[row] += d2 - (d2 - d1) / 2;
-        samples++;
-      }
+    BiasIndex index = getBiasIndex();
+    int start = 0;
+    for (int row = 0; row < rows; row++) {
+      int end = upperBound(mint + (row + 1) * timeChunk);
+      biases[row] = index.bias(start, end);
+      start = end;
     }
 
     return biases;
@@ -216,6 +321,7 @@ public class HelicorderData extends GenericDataMatrix {
       data.setQuick(i, 2, data.getQuick(i, 2) - bias);
       data.setQuick(i, 1, data.getQuick(i, 1) - bias);
     }
+    resetBiasMinMax();
     return bias;
   }
 
@@ -225,23 +331,8 @@ public class HelicorderData extends GenericDataMatrix {
    * @return mean of maxes
    */
   public double getMeanMax() {
-    if (meanMax != -1E300)
-      return meanMax;
-
-    double mean = 0;
-    int samples = 0;
-    double d;
-    int numRows = data.rows();
-    for (int i = 0; i < numRows; i++) {
-      d = data.getQuick(i, 2);
-      if (d != Wave.NO_DATA) {
-        mean += d;
-        samples++;
-      }
-    }
-
-    meanMax = mean / samples;
-    return meanMax;
+    BiasIndex index = getBiasIndex();
+    return index.meanMax(0, index.rows);
   }
 
   /**
@@ -336,8 +427,18 @@ public class HelicorderData extends GenericDataMatrix {
    * @return HelicorderData within time range
    */
   public HelicorderData subset(double t1, double t2) {
-    int i1 = findClosestTimeIndexGreaterThan(t1);
-    int i2 = findClosestTimeIndexLessThan(t2);
+    int i1;
+    int i2;
+    if (columns != null) {
+      // appended data is in time order
+      i1 = lowerBound(t1);
+      if (i1 == rows())
+        i1 = -1;
+      i2 = upperBound(t2) - 1;
+    } else {
+      i1 = findClosestTimeIndexGreaterThan(t1);
+      i2 = findClosestTimeIndexLessThan(t2);
+    }
     if (i1 == -1 || i2 == -1 || i2 - i1 == 0)
       return null;
     DoubleMatrix2D[][] ms = new DoubleMatrix2D[1][1];
@@ -372,13 +473,25 @@ public class HelicorderData extends GenericDataMatrix {
     } else if (myStart <= otherStart && myEnd >= otherEnd) {
       // this wave dominates other wave
 
+    } else if (myStart <= otherStart && columns != null) {
+      // this wave is left of other wave; append the new rows in place
+      DoubleMatrix2D other = otherHeli.getData();
+      int i = otherHeli.findClosestTimeIndexGreaterThan(myEnd);
+      for (; i >= 0 && i < otherHeli.rows(); i++) {
+        double t = other.getQuick(i, 0);
+        if (t > columns.getLastTime())
+          append(t, other.getQuick(i, 1), other.getQuick(i, 2));
+      }
+
     } else if (myStart <= otherStart) {
       // this wave is left of other wave
       DoubleMatrix2D[][] ms = new DoubleMatrix2D[2][1];
       ms[0][0] = data;
       int i = otherHeli.findClosestTimeIndexGreaterThan(getEndTime());
       ms[1][0] = otherHeli.getData().viewPart(i, 0, otherHeli.rows() - i, 3);
+      // existing rows are unchanged, so the bias index is extended on next use
       data = DoubleFactory2D.dense.compose(ms);
+      columns = null;
 
     } else if (otherStart <= myStart) {
       // this wave is right of other wave
@@ -388,7 +501,7 @@ public class HelicorderData extends GenericDataMatrix {
       if (i == -1)
         i = 0;
       ms[1][0] = data.viewPart(i, 0, rows() - i, 3);
-      data = DoubleFactory2D.dense.compose(ms);
+      setData(DoubleFactory2D.dense.compose(ms));
     }
 
     return newHeli;
@@ -398,7 +511,7 @@ public class HelicorderData extends GenericDataMatrix {
    * Sort helicorder data by time
    */
   public void sort() {
-    if (data == null)
+    if (data == null || columns != null)
       return;
     double[][] matrix = data.toArray();
     Arrays.sort(matrix, new Comparator<double[]>() {
@@ -406,7 +519,7 @@ public class HelicorderData extends GenericDataMatrix {
         return Double.compare(o1[0], o2[0]);
       }
     });
-    data = DoubleFactory2D.dense.make(matrix);
+    setData(DoubleFactory2D.dense.make(matrix));
   }
 
   /**
@@ -440,4 +553,110 @@ public class HelicorderData extends GenericDataMatrix {
     }
     return sb.toString();
   }
+
+  /**
+   * Cumulative sums of row centers and maxima, and counts of rows with data,
+   * so the mean over any index range is a subtraction. Entry offset + i covers
+   * rows [0, i); entries before offset belong to rows since evicted.
+   */
+  private static class BiasIndex {
+    long first;
+    int offset;
+    int rows;
+    double[] centerSum;
+    int[] centerCount;
+    double[] maxSum;
+    int[] maxCount;
+
+    BiasIndex(int capacity, long first) {
+      this.first = first;
+      centerSum = new double[capacity + 1];
+      centerCount = new int[capacity + 1];
+      maxSum = new double[capacity + 1];
+      maxCount = new int[capacity + 1];
+    }
+
+    void extend(DoubleMatrix2D data, int numRows) {
+      if (centerSum.length < offset + numRows + 1) {
+        if (offset > 0)
+          compact();
+        if (centerSum.length < numRows + 1) {
+          int capacity = Math.max(numRows + 1, centerSum.length * 3 / 2);
+          centerSum = Arrays.copyOf(centerSum, capacity);
+          centerCount = Arrays.copyOf(centerCount, capacity);
+          maxSum = Arrays.copyOf(maxSum, capacity);
+          maxCount = Arrays.copyOf(maxCount, capacity);
+        }
+      }
+
+      int e = offset + rows;
+      double cs = centerSum[e];
+      int cc = centerCount[e];
+      double ms = maxSum[e];
+      int mc = maxCount[e];
+      double d1, d2;
+      for (int i = rows; i < numRows; i++) {
+        d1 = data.getQuick(i, 1);
+        d2 = data.getQuick(i, 2);
+        if (d1 != Wave.NO_DATA && d2 != Wave.NO_DATA) {
+          cs += d2 - ((d2 - d1) / 2.0d);
+          cc++;
+        }
+        if (d2 != Wave.NO_DATA) {
+          ms += d2;
+          mc++;
+        }
+        e++;
+        centerSum[e] = cs;
+        centerCount[e] = cc;
+        maxSum[e] = ms;
+        maxCount[e] = mc;
+      }
+      rows = numRows;
+    }
+
+    /**
+     * Forget the oldest rows.
+     */
+    void drop(long n) {
+      first += n;
+      if (n >= rows) {
+        offset = 0;
+        rows = 0;
+        centerSum[0] = 0;
+        centerCount[0] = 0;
+        maxSum[0] = 0;
+        maxCount[0] = 0;
+        return;
+      }
+      offset += n;
+      rows -= n;
+    }
+
+    /**
+     * Forget rows from n on, so they are indexed again on the next extend.
+     */
+    void truncate(int n) {
+      if (n < rows)
+        rows = Math.max(0, n);
+    }
+
+    private void compact() {
+      System.arraycopy(centerSum, offset, centerSum, 0, rows + 1);
+      System.arraycopy(centerCount, offset, centerCount, 0, rows + 1);
+      System.arraycopy(maxSum, offset, maxSum, 0, rows + 1);
+      System.arraycopy(maxCount, offset, maxCount, 0, rows + 1);
+      offset = 0;
+    }
+
+    double bias(int from, int to) {
+      return (centerSum[offset + to] - centerSum[offset + from])
+          / (centerCount[offset + to] - centerCount[offset + from]);
+    }
+
+    double meanMax(int from, int to) {
+      return (maxSum[offset + to] - maxSum[offset + from])
+          / (maxCount[offset + to] - maxCount[offset + from]);
+    }
+  }
 }
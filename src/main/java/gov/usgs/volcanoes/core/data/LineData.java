@@ -19,8 +19,6 @@ import java.util.StringTokenizer;
  * to hold the set of lines that should be drawn on spatial plots.</p> 
  *
  * TODO: use new optimized version
- * TODO: cache line files
- * TODO: provide copy constructor or clone
  *
  * @author Dan Cervelli
  */
@@ -35,6 +33,18 @@ public class LineData {
     points = new ArrayList<Point2D.Double>();
   }
 
+  /** Copy constructor. The copy has its own points and its own color and
+   * stroke settings.
+   * @param ld the line data to copy
+   */
+  public LineData(LineData ld) {
+    points = new ArrayList<Point2D.Double>(ld.points.size());
+    for (Point2D.Double pt : ld.points)
+      points.add(new Point2D.Double(pt.x, pt.y));
+    color = ld.color;
+    stroke = ld.stroke;
+  }
+
   /** Constructor that reads a data file.
    * @param fn the data filename
    */
@@ -191,9 +201,18 @@ public class LineData {
    * @param proj the projection
    */
   public void applyProjection(Projection proj) {
-    ArrayList<Point2D.Double> newPoints = new ArrayList<Point2D.Double>(points.size());
-    for (Point2D.Double pt : points)
-      newPoints.add(proj.forward(pt));
+    int n = points.size();
+    double[] x = new double[n];
+    double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      Point2D.Double pt = points.get(i);
+      x[i] = pt.x;
+      y[i] = pt.y;
+    }
+    proj.forward(x, y, x, y);
+    ArrayList<Point2D.Double> newPoints = new ArrayList<Point2D.Double>(n);
+    for (int i = 0; i < n; i++)
+      newPoints.add(new Point2D.Double(x[i], y[i]));
     points = newPoints;
   }
 
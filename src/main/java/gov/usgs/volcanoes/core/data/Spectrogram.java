@@ -35,6 +35,9 @@ public class Spectrogram {
   private final double[] time;
   private final double[] window;
   private final double[][] spectraAmplitude;
+  private double minAmplitude;
+  private double maxAmplitude;
+  private double minPositiveAmplitude;
 
   /**
    * Simple constructor that uses default values
@@ -208,12 +211,7 @@ public class Spectrogram {
    */
   public double getMinSpectraAmplitude() {
 
-    double MIN = Double.MAX_VALUE;
-    for (int i = 0; i < nRows; i++)
-      for (int j = 0; j < nColumns; j++)
-        if (spectraAmplitude[i][j] < MIN)
-          MIN = spectraAmplitude[i][j];
-    return MIN;
+    return minAmplitude;
 
   }
 
@@ -222,12 +220,17 @@ public class Spectrogram {
    */
   public double getMaxSpectraAmplitude() {
 
-    double MAX = Double.MIN_VALUE;
-    for (int i = 0; i < nRows; i++)
-      for (int j = 0; j < nColumns; j++)
-        if (spectraAmplitude[i][j] > MAX)
-          MAX = spectraAmplitude[i][j];
-    return MAX;
+    return maxAmplitude;
+
+  }
+
+  /**
+   * Returns the smallest positive value of the "spectraAmplitude" array, the
+   * smallest with a finite log, or Double.MAX_VALUE if there is none.
+   */
+  public double getMinPositiveSpectraAmplitude() {
+
+    return minPositiveAmplitude;
 
   }
 
@@ -293,12 +296,16 @@ public class Spectrogram {
   }
 
   /**
-   * Computes the spectra amplitudes with the FFT.
+   * Computes the spectra amplitudes with the FFT, noting their range as they
+   * are produced.
    */
   private double[][] computeSpectraAmplitude() {
 
     double[][] specAmp = new double[nRows][nColumns];
     double[] bin = new double[nfft];
+    double min = Double.MAX_VALUE;
+    double max = Double.MIN_VALUE;
+    double minPositive = Double.MAX_VALUE;
 
     int c = 0;
     for (int i = 0; i < nColumns; i++) {
@@ -323,7 +330,20 @@ public class Spectrogram {
         bin[j + 1] = 0;
       }
 
+      for (int j = 0; j < nRows; j++) {
+        double a = specAmp[j][i];
+        if (a < min)
+          min = a;
+        if (a > max)
+          max = a;
+        if (a > 0 && a < minPositive)
+          minPositive = a;
+      }
+
     }
+    minAmplitude = min;
+    maxAmplitude = max;
+    minPositiveAmplitude = minPositive;
     return specAmp;
 
   }
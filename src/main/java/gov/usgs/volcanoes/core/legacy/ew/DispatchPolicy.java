@@ -0,0 +1,97 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+/**
+ * Describes how ImportGeneric delivers one type of message to its listeners.
+ *
+ * <ul>
+ * <li>INLINE listeners run on the socket reader thread.</li>
+ * <li>ORDERED listeners run on a dedicated thread, in arrival order.</li>
+ * <li>POOLED listeners run on a pool of threads, in no particular order.</li>
+ * </ul>
+ *
+ * <p>Queued policies are bounded. When the queue is full, DROP discards the new
+ * message and BLOCK makes the reader thread wait. BLOCK applies back pressure
+ * to the socket and delays every other message type.
+ */
+public final class DispatchPolicy {
+  public enum Mode {
+    INLINE, ORDERED, POOLED
+  }
+
+  public enum Overflow {
+    DROP, BLOCK
+  }
+
+  private static final DispatchPolicy INLINE = new DispatchPolicy(Mode.INLINE, 0, 0, Overflow.DROP);
+
+  private final Mode mode;
+  private final int capacity;
+  private final int threads;
+  private final Overflow overflow;
+
+  private DispatchPolicy(Mode mode, int capacity, int threads, Overflow overflow) {
+    if (mode != Mode.INLINE && (capacity < 1 || threads < 1))
+      throw new IllegalArgumentException("capacity and threads must be positive");
+
+    this.mode = mode;
+    this.capacity = capacity;
+    this.threads = threads;
+    this.overflow = overflow;
+  }
+
+  /**
+   * Deliver messages on the reader thread.
+   *
+   * @return inline policy
+   */
+  public static DispatchPolicy inline() {
+    return INLINE;
+  }
+
+  /**
+   * Deliver messages in order on a dedicated thread.
+   *
+   * @param capacity queue capacity
+   * @param overflow what to do when the queue is full
+   * @return ordered policy
+   */
+  public static DispatchPolicy ordered(int capacity, Overflow overflow) {
+    return new DispatchPolicy(Mode.ORDERED, capacity, 1, overflow);
+  }
+
+  /**
+   * Deliver messages, unordered, on a pool of threads.
+   *
+   * @param threads pool size
+   * @param capacity queue capacity
+   * @param overflow what to do when the queue is full
+   * @return pooled policy
+   */
+  public static DispatchPolicy pooled(int threads, int capacity, Overflow overflow) {
+    return new DispatchPolicy(Mode.POOLED, capacity, threads, overflow);
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public Overflow getOverflow() {
+    return overflow;
+  }
+
+  @Override
+  public String toString() {
+    if (mode == Mode.INLINE)
+      return mode.toString();
+
+    return mode + "(threads=" + threads + ", capacity=" + capacity + ", " + overflow + ")";
+  }
+}
@@ -0,0 +1,233 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import gov.usgs.volcanoes.core.legacy.ew.message.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded ring buffer of messages drained by one or more worker threads.
+ * Producers never wait on a slow consumer unless they ask to with
+ * {@link #put(Message)}.
+ *
+ * <p>With a single worker messages reach the target in the order they were
+ * queued. With several workers order is not preserved. Messages queued after
+ * {@link #shutdown()} are dropped. Anything the target throws, errors
+ * included, is logged and the worker goes on to the next message.
+ */
+public class DispatchQueue {
+  private static final long POLL_MS = 500;
+
+  private final String name;
+  private final ArrayBlockingQueue<Message> queue;
+  private final MessageListener target;
+  private final boolean blocking;
+  private final List<Thread> workers;
+  private final AtomicLong enqueued;
+  private final AtomicLong dispatched;
+  private final AtomicLong dropped;
+  private volatile int maxDepth;
+  private volatile boolean shutdown;
+  private Logger logger;
+
+  /**
+   * Create a queue and start its workers.
+   *
+   * @param name name used for worker threads
+   * @param capacity maximum number of queued messages
+   * @param threads number of worker threads
+   * @param target listener called by the workers for every message
+   */
+  public DispatchQueue(String name, int capacity, int threads, MessageListener target) {
+    this(name, capacity, threads, false, target);
+  }
+
+  /**
+   * Create a queue sized and drained as a policy says, and start its workers.
+   *
+   * @param name name used for worker threads
+   * @param policy a queued dispatch policy
+   * @param target listener called by the workers for every message
+   */
+  public DispatchQueue(String name, DispatchPolicy policy, MessageListener target) {
+    this(name, policy.getCapacity(), policy.getThreads(),
+        policy.getOverflow() == DispatchPolicy.Overflow.BLOCK, target);
+  }
+
+  private DispatchQueue(String name, int capacity, int threads, boolean blocking,
+      MessageListener target) {
+    if (capacity < 1 || threads < 1)
+      throw new IllegalArgumentException("capacity and threads must be positive");
+
+    this.name = name;
+    this.target = target;
+    this.blocking = blocking;
+    queue = new ArrayBlockingQueue<Message>(capacity);
+    enqueued = new AtomicLong();
+    dispatched = new AtomicLong();
+    dropped = new AtomicLong();
+    logger = Logger.getLogger("gov.usgs.earthworm");
+
+    workers = new ArrayList<Thread>(threads);
+    for (int i = 0; i < threads; i++) {
+      Thread t = new Thread(name + "-" + i) {
+        @Override
+        public void run() {
+          work();
+        }
+      };
+      t.setDaemon(true);
+      workers.add(t);
+      t.start();
+    }
+  }
+
+  /**
+   * Queue a message without waiting.
+   *
+   * @param msg message to queue
+   * @return false if the queue was full and the message was dropped
+   */
+  public boolean offer(Message msg) {
+    if (!shutdown && queue.offer(msg)) {
+      queued();
+      return true;
+    }
+
+    drop();
+    return false;
+  }
+
+  /**
+   * Queue a message, waiting for space if the queue is full.
+   *
+   * @param msg message to queue
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void put(Message msg) throws InterruptedException {
+    if (shutdown) {
+      drop();
+      return;
+    }
+    queue.put(msg);
+    queued();
+  }
+
+  /**
+   * Queue a message, waiting for space only if this queue was made from a
+   * BLOCK policy.
+   *
+   * @param msg message to queue
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void submit(Message msg) throws InterruptedException {
+    if (blocking)
+      put(msg);
+    else
+      offer(msg);
+  }
+
+  private void drop() {
+    long d = dropped.incrementAndGet();
+    if (Long.bitCount(d) == 1)
+      logger.warning(name + ": queue " + (shutdown ? "shut down" : "full") + ", " + d
+          + " messages dropped.");
+  }
+
+  private void queued() {
+    enqueued.incrementAndGet();
+    int depth = queue.size();
+    if (depth > maxDepth)
+      maxDepth = depth;
+  }
+
+  private void work() {
+    while (!shutdown) {
+      Message msg;
+      try {
+        msg = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      if (msg == null)
+        continue;
+
+      // a worker that died here would leave BLOCK producers waiting forever
+      // on a full queue, so it outlives anything the listener throws
+      try {
+        target.messageReceived(msg);
+      } catch (Throwable e) {
+        logger.log(Level.SEVERE, name + ": listener exception.", e);
+      } finally {
+        dispatched.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Stop the workers. Queued messages are discarded.
+   */
+  public void shutdown() {
+    shutdown = true;
+    for (Thread t : workers)
+      t.interrupt();
+    queue.clear();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getDepth() {
+    return queue.size();
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public int getCapacity() {
+    return queue.size() + queue.remainingCapacity();
+  }
+
+  /**
+   * Does submit() wait for space when the queue is full?
+   *
+   * @return true if made from a BLOCK policy
+   */
+  public boolean isBlocking() {
+    return blocking;
+  }
+
+  public int getThreadCount() {
+    return workers.size();
+  }
+
+  public long getEnqueued() {
+    return enqueued.get();
+  }
+
+  public long getDispatched() {
+    return dispatched.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public void setLogger(Logger l) {
+    logger = l;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": depth=" + getDepth() + "/" + getCapacity() + " max=" + maxDepth
+        + " enqueued=" + getEnqueued() + " dispatched=" + getDispatched() + " dropped="
+        + getDropped();
+  }
+}
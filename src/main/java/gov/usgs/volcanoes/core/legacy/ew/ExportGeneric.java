@@ -0,0 +1,464 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import gov.usgs.volcanoes.core.legacy.ew.globals.Installation;
+import gov.usgs.volcanoes.core.legacy.ew.globals.Module;
+import gov.usgs.volcanoes.core.legacy.ew.message.Message;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageLogo;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageType;
+import gov.usgs.volcanoes.core.legacy.net.ConnectionStatistics;
+import gov.usgs.volcanoes.core.legacy.net.Server;
+import gov.usgs.volcanoes.core.util.ByteUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Java counterpart to Earthworm export_generic. Any number of
+ * import_generic clients may connect; every published message is framed
+ * once into a read-only buffer and fanned out to all of them.
+ *
+ * <p>Each client has a bounded queue of pending frames. Writes happen on the
+ * selector thread as sockets become writable, so a slow client never blocks
+ * the publisher or other clients. The publisher never touches a selection
+ * key; it asks for OP_WRITE through a queue the selector thread drains before
+ * each select. When a client's queue is full new messages are dropped for
+ * that client only. Heartbeats are sent to every client on a
+ * fixed interval and client heartbeats are accepted and checked.
+ */
+public class ExportGeneric extends Server {
+  public static final int DEFAULT_CLIENT_QUEUE_CAPACITY = 1024;
+  public static final int DEFAULT_HEARTBEAT_INTERVAL = 30000;
+  private static final int LOGO_LENGTH = 9;
+  private static final int MAX_INBOUND_FRAME = 4096;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExportGeneric.class);
+
+  /**
+   * Per-client state: pending frames, the frame being written and a decoder
+   * for the client's heartbeats.
+   */
+  private class Subscriber implements FrameDecoder.FrameHandler {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayBlockingQueue<ByteBuffer> queue;
+    private final FrameDecoder decoder;
+    private final AtomicLong dropped;
+    private final AtomicBoolean writeRequested;
+    private ByteBuffer current;
+    private long lastHeartbeat;
+
+    Subscriber(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+      queue = new ArrayBlockingQueue<ByteBuffer>(clientQueueCapacity);
+      decoder = new FrameDecoder(MAX_INBOUND_FRAME);
+      dropped = new AtomicLong();
+      writeRequested = new AtomicBoolean();
+      lastHeartbeat = System.currentTimeMillis();
+    }
+
+    boolean offer(ByteBuffer frame) {
+      if (!queue.offer(frame)) {
+        long d = dropped.incrementAndGet();
+        if (Long.bitCount(d) == 1)
+          LOGGER.warn("{}: client queue full, {} messages dropped.", getHost(channel), d);
+        return false;
+      }
+      if (writeRequested.compareAndSet(false, true))
+        writeRequests.add(this);
+      return true;
+    }
+
+    /**
+     * Write as much as the socket will take.
+     *
+     * @return bytes written
+     * @throws IOException if the write fails
+     */
+    int flush() throws IOException {
+      int total = 0;
+      while (true) {
+        if (current == null)
+          current = queue.poll();
+        if (current == null)
+          break;
+
+        total += channel.write(current);
+        if (current.hasRemaining())
+          return total;
+
+        current = null;
+      }
+
+      // idle; stop asking for OP_WRITE unless a frame slipped in meanwhile
+      setWriteInterest(false);
+      if (!queue.isEmpty())
+        setWriteInterest(true);
+
+      return total;
+    }
+
+    /**
+     * Change OP_WRITE interest. Only called on the selector thread, as
+     * changing interest while another thread selects may block.
+     *
+     * @param write true to ask for OP_WRITE
+     */
+    void setWriteInterest(boolean write) {
+      try {
+        int ops = key.interestOps();
+        int newOps = write ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE;
+        if (newOps != ops)
+          key.interestOps(newOps);
+      } catch (CancelledKeyException e) {
+        // connection is closing
+      }
+    }
+
+    @Override
+    public void frameDecoded(byte[] buf, int length, int seq) {
+      if (length < LOGO_LENGTH)
+        return;
+
+      MessageLogo logo = new MessageLogo(buf);
+      if (logo.getType() != MessageType.TYPE_HEARTBEAT)
+        return;
+
+      lastHeartbeat = System.currentTimeMillis();
+      if (recvIDString != null) {
+        String recv = new String(buf, LOGO_LENGTH, length - LOGO_LENGTH).trim();
+        if (!recv.equals(recvIDString))
+          LOGGER.debug("{}: heartbeat '{}' does not match expected '{}'.", getHost(channel), recv,
+              recvIDString);
+      }
+    }
+  }
+
+  private class HeartbeatThread extends Thread {
+    private volatile boolean kill = false;
+
+    HeartbeatThread() {
+      super("ExportGeneric-Heartbeat");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!kill) {
+        try {
+          Thread.sleep(heartbeatInterval);
+          publish(heartbeatLogo, (sendIDString + '\0').getBytes(StandardCharsets.US_ASCII));
+        } catch (InterruptedException e) {
+        }
+      }
+    }
+  }
+
+  private final ConcurrentHashMap<SocketChannel, Subscriber> subscribers;
+  private final ConcurrentLinkedQueue<Subscriber> writeRequests;
+  private final AtomicLong published;
+  private final MessageLogo heartbeatLogo;
+  private int clientQueueCapacity = DEFAULT_CLIENT_QUEUE_CAPACITY;
+  private int heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+  private String sendIDString = "alive";
+  private String recvIDString;
+  private HeartbeatThread heartbeat;
+  private Thread listener;
+
+  /**
+   * Constructor.
+   *
+   * @param address address to bind, or null for all addresses
+   * @param port port to listen on
+   */
+  public ExportGeneric(InetAddress address, int port) {
+    super(address, port);
+    name = "ExportGeneric";
+    subscribers = new ConcurrentHashMap<SocketChannel, Subscriber>();
+    writeRequests = new ConcurrentLinkedQueue<Subscriber>();
+    published = new AtomicLong();
+    heartbeatLogo = new MessageLogo();
+    heartbeatLogo.setInstallationId(ByteUtil.intToByte(Installation.INST_UNKNOWN));
+    heartbeatLogo.setModule(ByteUtil.intToByte(Module.MOD_EXPORT_GENERIC));
+    heartbeatLogo.setType(MessageType.TYPE_HEARTBEAT);
+  }
+
+  /**
+   * Start accepting clients and sending heartbeats on background threads.
+   */
+  public synchronized void start() {
+    if (listener != null)
+      return;
+
+    listener = new Thread(name) {
+      @Override
+      public void run() {
+        startListening();
+      }
+    };
+    listener.setDaemon(true);
+    listener.start();
+
+    heartbeat = new HeartbeatThread();
+    heartbeat.start();
+  }
+
+  /**
+   * Stop sending heartbeats, stop listening and drop all clients.
+   */
+  public synchronized void shutdown() {
+    if (heartbeat != null) {
+      heartbeat.kill = true;
+      heartbeat.interrupt();
+    }
+    for (SocketChannel channel : subscribers.keySet())
+      closeConnection(channel, null);
+    stopListening();
+  }
+
+  @Override
+  protected boolean isReady() {
+    return serverPort != -1;
+  }
+
+  @Override
+  protected void connectionAccepted(SocketChannel channel, SelectionKey selectionKey) {
+    subscribers.put(channel, new Subscriber(channel, selectionKey));
+  }
+
+  @Override
+  protected void closeConnection(SocketChannel channel, SelectionKey selectionKey) {
+    if (channel != null)
+      subscribers.remove(channel);
+    super.closeConnection(channel, selectionKey);
+  }
+
+  /**
+   * Read client heartbeats. Clients send nothing else.
+   */
+  @Override
+  public void processRead(SelectionKey selectionKey) {
+    SocketChannel channel = (SocketChannel) selectionKey.channel();
+    Subscriber subscriber = subscribers.get(channel);
+    if (subscriber == null || !channel.isOpen())
+      return;
+
+    boolean close = false;
+    try {
+      inBuffer.clear();
+      int bytesRead = channel.read(inBuffer);
+      if (bytesRead == -1) {
+        close = true;
+      } else {
+        connections.read(connections.getConnectionStatistics(selectionKey), bytesRead);
+        subscriber.decoder.decode(inBuffer.array(), 0, bytesRead, subscriber);
+      }
+    } catch (IOException e) {
+      close = true;
+    } catch (RuntimeException e) {
+      LOGGER.error("Unhandled exception.", e);
+      close = true;
+    }
+    if (close)
+      closeConnection(channel, selectionKey);
+  }
+
+  /**
+   * Ask for OP_WRITE on behalf of clients that have frames queued since the
+   * last select.
+   */
+  @Override
+  protected void beforeSelect() {
+    Subscriber s;
+    while ((s = writeRequests.poll()) != null) {
+      s.writeRequested.set(false);
+      s.setWriteInterest(true);
+    }
+  }
+
+  @Override
+  protected void processWrite(SelectionKey selectionKey) {
+    SocketChannel channel = (SocketChannel) selectionKey.channel();
+    Subscriber subscriber = subscribers.get(channel);
+    if (subscriber == null)
+      return;
+
+    try {
+      int n = subscriber.flush();
+      if (n > 0) {
+        ConnectionStatistics cs = connections.getConnectionStatistics(selectionKey);
+        connections.sent(cs, n);
+      }
+    } catch (IOException e) {
+      closeConnection(channel, selectionKey);
+    }
+  }
+
+  /**
+   * Send a message to every connected client.
+   *
+   * @param logo message logo
+   * @param payload message body
+   * @return number of clients the message was queued for
+   */
+  public int publish(MessageLogo logo, byte[] payload) {
+    return publish(logo, payload, 0, payload.length);
+  }
+
+  /**
+   * Send a message to every connected client.
+   *
+   * @param msg message; msg.bytes is sent as the body
+   * @return number of clients the message was queued for
+   */
+  public int publish(Message msg) {
+    return publish(msg.logo, msg.bytes, 0, msg.bytes.length);
+  }
+
+  /**
+   * Send a message to every connected client. The frame is built once and
+   * shared, read-only, by all clients.
+   *
+   * @param logo message logo
+   * @param payload buffer holding the message body
+   * @param off offset of the body
+   * @param len length of the body
+   * @return number of clients the message was queued for
+   */
+  public int publish(MessageLogo logo, byte[] payload, int off, int len) {
+    published.incrementAndGet();
+    if (subscribers.isEmpty())
+      return 0;
+
+    ByteBuffer frame = encode(logo, payload, off, len).asReadOnlyBuffer();
+    int queued = 0;
+    for (Subscriber s : subscribers.values()) {
+      if (s.offer(frame.duplicate()))
+        queued++;
+    }
+
+    Selector sel = selector;
+    if (queued > 0 && sel != null)
+      sel.wakeup();
+
+    return queued;
+  }
+
+  /**
+   * Build an STX/ETX delimited frame, escaping framing bytes in the body. The
+   * logo is written as nine ASCII digits, which never need escaping.
+   *
+   * @param logo message logo
+   * @param payload buffer holding the message body
+   * @param off offset of the body
+   * @param len length of the body
+   * @return frame, flipped and ready to write
+   */
+  public static ByteBuffer encode(MessageLogo logo, byte[] payload, int off, int len) {
+    byte[] lb = logo.toDataStreamBytes();
+    int escapes = 0;
+    for (int i = off; i < off + len; i++) {
+      if (isFramingByte(payload[i]))
+        escapes++;
+    }
+
+    ByteBuffer frame = ByteBuffer.allocate(2 + lb.length + len + escapes);
+    frame.put(FrameDecoder.STX);
+    frame.put(lb);
+    for (int i = off; i < off + len; i++) {
+      byte b = payload[i];
+      if (isFramingByte(b))
+        frame.put(FrameDecoder.ESC);
+      frame.put(b);
+    }
+    frame.put(FrameDecoder.ETX);
+    frame.flip();
+    return frame;
+  }
+
+  private static boolean isFramingByte(byte b) {
+    return b == FrameDecoder.STX || b == FrameDecoder.ETX || b == FrameDecoder.ESC;
+  }
+
+  public int getNumClients() {
+    return subscribers.size();
+  }
+
+  public long getPublished() {
+    return published.get();
+  }
+
+  /**
+   * Return the number of messages dropped for a slow client.
+   *
+   * @param channel client connection
+   * @return drop count, or -1 if the channel is not a client
+   */
+  public long getDropped(SocketChannel channel) {
+    Subscriber s = subscribers.get(channel);
+    return s == null ? -1 : s.dropped.get();
+  }
+
+  /**
+   * Return the number of frames waiting for a client.
+   *
+   * @param channel client connection
+   * @return queue depth, or -1 if the channel is not a client
+   */
+  public int getQueueDepth(SocketChannel channel) {
+    Subscriber s = subscribers.get(channel);
+    return s == null ? -1 : s.queue.size();
+  }
+
+  /**
+   * Return the time the client last sent a heartbeat.
+   *
+   * @param channel client connection
+   * @return time in ms, or -1 if the channel is not a client
+   */
+  public long getLastHeartbeatTime(SocketChannel channel) {
+    Subscriber s = subscribers.get(channel);
+    return s == null ? -1 : s.lastHeartbeat;
+  }
+
+  /**
+   * Set the number of frames which may wait for each client. Applies to
+   * clients connecting afterwards.
+   *
+   * @param capacity queue capacity
+   */
+  public void setClientQueueCapacity(int capacity) {
+    clientQueueCapacity = capacity;
+  }
+
+  public void setHeartbeatInterval(int ms) {
+    heartbeatInterval = ms;
+  }
+
+  public void setHeartbeatLogo(int installationId, int module) {
+    heartbeatLogo.setInstallationId(ByteUtil.intToByte(installationId));
+    heartbeatLogo.setModule(ByteUtil.intToByte(module));
+  }
+
+  public void setSendIDString(String s) {
+    sendIDString = s;
+  }
+
+  public void setRecvIDString(String s) {
+    recvIDString = s;
+  }
+}
@@ -0,0 +1,177 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import java.io.IOException;
+
+/**
+ * An incremental decoder for the STX/ESC/ETX framing used by Earthworm
+ * export_generic. Bytes may be fed in chunks of any size; decoder state is
+ * carried between calls so frames may span reads.
+ *
+ * <p>Decoded frames are handed to a {@link FrameHandler} in a scratch buffer
+ * owned by the decoder, terminated by a NUL which is included in the reported
+ * length. A leading "SQ:nnn" sequence number is stripped and reported
+ * separately. Frames longer than the maximum are discarded and counted.
+ */
+public class FrameDecoder {
+  public static final byte STX = 2;
+  public static final byte ETX = 3;
+  public static final byte ESC = 27;
+
+  private static final int SEQ_LENGTH = 6;
+
+  /**
+   * Receives decoded frames.
+   */
+  public interface FrameHandler {
+    /**
+     * Called for each complete frame. The buffer is reused once this returns.
+     *
+     * @param buf frame bytes, starting with the message logo
+     * @param length number of bytes in buf, including a trailing NUL
+     * @param seq sequence number, or Integer.MIN_VALUE if none was sent
+     * @throws IOException if the frame can not be handled
+     */
+    public void frameDecoded(byte[] buf, int length, int seq) throws IOException;
+  }
+
+  private final byte[] frame;
+  private int length;
+  private int seq;
+  private boolean inFrame;
+  private boolean escape;
+  private boolean overflow;
+  private byte lastByte;
+  private long oversizedFrames;
+
+  /**
+   * Constructor.
+   *
+   * @param maxFrameLength largest decoded frame accepted
+   */
+  public FrameDecoder(int maxFrameLength) {
+    frame = new byte[maxFrameLength + 1];
+    reset();
+  }
+
+  /**
+   * Discard any partial frame, e.g. after reconnecting.
+   */
+  public void reset() {
+    inFrame = false;
+    escape = false;
+    overflow = false;
+    lastByte = 0;
+    length = 0;
+    seq = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Return the number of frames discarded for exceeding the maximum length.
+   *
+   * @return oversized frame count
+   */
+  public long getOversizedFrames() {
+    return oversizedFrames;
+  }
+
+  /**
+   * Decode a chunk of the stream.
+   *
+   * @param b source buffer
+   * @param off offset of first byte
+   * @param len number of bytes
+   * @param handler receiver of complete frames
+   * @throws IOException if the handler fails
+   */
+  public void decode(byte[] b, int off, int len, FrameHandler handler) throws IOException {
+    final int end = off + len;
+    int i = off;
+    while (i < end) {
+      if (!inFrame) {
+        // skip to the next unescaped STX
+        while (i < end) {
+          byte c = b[i++];
+          if (c == STX && lastByte != ESC) {
+            inFrame = true;
+            length = 0;
+            seq = Integer.MAX_VALUE;
+            escape = false;
+            overflow = false;
+            lastByte = c;
+            break;
+          }
+          lastByte = c;
+        }
+        continue;
+      }
+
+      while (i < end) {
+        byte c = b[i++];
+        if (escape) {
+          escape = false;
+          append(c);
+        } else if (c == ESC) {
+          escape = true;
+        } else if (c == ETX) {
+          inFrame = false;
+          lastByte = c;
+          endFrame(handler);
+          break;
+        } else {
+          append(c);
+        }
+      }
+    }
+  }
+
+  private void append(byte c) {
+    if (length >= frame.length - 1) {
+      overflow = true;
+      return;
+    }
+    frame[length++] = c;
+
+    // check for sequence number and reset index if found
+    if (length == SEQ_LENGTH && seq == Integer.MAX_VALUE) {
+      seq = parseSeq(frame);
+      if (seq != Integer.MIN_VALUE)
+        length = 0;
+    }
+  }
+
+  private void endFrame(FrameHandler handler) throws IOException {
+    if (overflow) {
+      oversizedFrames++;
+      return;
+    }
+    if (seq == Integer.MAX_VALUE)
+      seq = Integer.MIN_VALUE;
+
+    frame[length++] = 0;
+    handler.frameDecoded(frame, length, seq);
+  }
+
+  /**
+   * Parse an "SQ:nnn" prefix without allocating.
+   *
+   * @param b at least six bytes
+   * @return sequence number, or Integer.MIN_VALUE if b does not start with one
+   */
+  static int parseSeq(byte[] b) {
+    if (b[0] != 'S' || b[1] != 'Q' || b[2] != ':')
+      return Integer.MIN_VALUE;
+
+    int value = 0;
+    boolean digits = false;
+    for (int i = 3; i < SEQ_LENGTH; i++) {
+      byte c = b[i];
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        digits = true;
+      } else if (c != ' ' || (digits && i < SEQ_LENGTH - 1 && b[i + 1] != ' ')) {
+        return Integer.MIN_VALUE;
+      }
+    }
+    return digits ? value : Integer.MIN_VALUE;
+  }
+}
@@ -13,21 +13,36 @@ import gov.usgs.volcanoes.core.util.UtilException;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 /**
  * Stub for writing programs that communicate with Earthworm export_generic.
  *
+ * <p>The reader thread pulls large chunks from the socket and decodes frames
+ * with a {@link FrameDecoder}. Each message type is then delivered according
+ * to its {@link DispatchPolicy}. By default heartbeats are dispatched inline
+ * so they are never delayed by other traffic, and every other type gets its
+ * own bounded, ordered {@link DispatchQueue}. When a queue is full the new
+ * message is dropped and counted, so a slow listener never holds up the
+ * reader; types that must not lose messages may be given a BLOCK policy,
+ * which pushes back on the socket instead.
+ *
+ * <p>Heartbeats in each read are handled before the other messages of that
+ * read are queued, and time the reader spends waiting on a full BLOCK queue
+ * is not counted against the heartbeat watchdog.
+ *
  * @author Dan Cervelli
  */
 public class ImportGeneric extends Thread {
@@ -66,7 +81,7 @@ public class ImportGeneric extends Thread {
       while (!kill) {
         try {
           Thread.sleep(expectedHeartbeatInterval);
-          if (System.currentTimeMillis() - lastHeartbeat >= expectedHeartbeatInterval * 2) {
+          if (heartbeatOverdue(System.currentTimeMillis())) {
             logger.fine("Have not received heartbeat recently.  Reconnecting.");
             needReconnect = true;
             kill = true;
@@ -118,10 +133,12 @@ public class ImportGeneric extends Thread {
     }
   }
 
-  private static final byte ESC = 27;
-  private static final byte ETX = 3;
+  private static final byte ETX = FrameDecoder.ETX;
+  private static final byte STX = FrameDecoder.STX;
 
-  private static final byte STX = 2;
+  public static final int DEFAULT_MAX_MESSAGE_LENGTH = 65000;
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+  private static final int READ_BUFFER_SIZE = 65536;
 
   public static void main(String[] args) {
     if (args.length == 2) {
@@ -158,7 +175,17 @@ public class ImportGeneric extends Thread {
   protected Logger logger;
   protected int maxRetries = 3;
 
-  protected byte[] msgBuf;// = new byte[65000];
+  protected FrameDecoder decoder;
+  protected byte[] readBuf;
+  protected DispatchPolicy defaultPolicy =
+      DispatchPolicy.ordered(DEFAULT_QUEUE_CAPACITY, DispatchPolicy.Overflow.DROP);
+  protected final Map<MessageType, DispatchPolicy> policies =
+      new EnumMap<>(MessageType.class);
+  protected final Map<MessageType, DispatchQueue> dispatchQueues =
+      new EnumMap<>(MessageType.class);
+
+  private volatile boolean readerWaiting;
+  private volatile long readerResumed;
 
   protected boolean needReconnect;
   protected int port;
@@ -179,9 +206,11 @@ public class ImportGeneric extends Thread {
 
   public ImportGeneric() {
     super("ImportGeneric");
-    msgBuf = new byte[65000];
+    decoder = new FrameDecoder(DEFAULT_MAX_MESSAGE_LENGTH);
+    readBuf = new byte[READ_BUFFER_SIZE];
     logger = Logger.getLogger("gov.usgs.earthworm");
-    listeners = new HashMap<>();
+    listeners = new ConcurrentHashMap<>();
+    policies.put(MessageType.TYPE_HEARTBEAT, DispatchPolicy.inline());
   }
 
   public ImportGeneric(String h, int p) {
@@ -190,10 +219,10 @@ public class ImportGeneric extends Thread {
     port = p;
   }
 
-  public void addListener(MessageType type, MessageListener ml) {
+  public synchronized void addListener(MessageType type, MessageListener ml) {
     List<MessageListener> list = listeners.get(type);
     if (list == null) {
-      list = new ArrayList<>();
+      list = new CopyOnWriteArrayList<>();
       listeners.put(type, list);
     }
     list.add(ml);
@@ -231,6 +260,7 @@ public class ImportGeneric extends Thread {
           socketOut = new DataOutputStream(socket.getOutputStream());
           socketWriter = new PrintWriter(socket.getOutputStream());
           socketIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+          decoder.reset();
           logger.fine("ImportGeneric connected.");
           result = new Boolean(true);
           heartbeat = new HeartbeatThread();
@@ -276,8 +306,18 @@ public class ImportGeneric extends Thread {
     return b != null && b.booleanValue();
   }
 
+  /**
+   * Deliver a message to its listeners on the calling thread.
+   *
+   * @param msg the message
+   */
   public void dispatchMessage(Message msg) {
-    final List<MessageListener> list = listeners.get(msg.logo.getType());
+    final MessageType type = msg.logo.getType();
+    if (type == null) {
+      return;
+    }
+
+    final List<MessageListener> list = listeners.get(type);
     if (list != null) {
 
       for (final MessageListener ml : list) {
@@ -297,6 +337,161 @@ public class ImportGeneric extends Thread {
     return seq;
   }
 
+  /**
+   * Set how messages of one type are delivered. Messages already queued under
+   * a previous policy are discarded.
+   *
+   * @param type message type
+   * @param policy dispatch policy
+   */
+  public void setDispatchPolicy(MessageType type, DispatchPolicy policy) {
+    DispatchQueue old;
+    synchronized (dispatchQueues) {
+      policies.put(type, policy);
+      old = dispatchQueues.remove(type);
+    }
+    if (old != null) {
+      old.shutdown();
+    }
+  }
+
+  /**
+   * Set the policy for message types without their own policy.
+   *
+   * @param policy dispatch policy
+   */
+  public void setDefaultDispatchPolicy(DispatchPolicy policy) {
+    synchronized (dispatchQueues) {
+      defaultPolicy = policy;
+    }
+  }
+
+  /**
+   * Return the policy used for a message type.
+   *
+   * @param type message type
+   * @return dispatch policy
+   */
+  public DispatchPolicy getDispatchPolicy(MessageType type) {
+    synchronized (dispatchQueues) {
+      final DispatchPolicy policy = policies.get(type);
+      return policy == null ? defaultPolicy : policy;
+    }
+  }
+
+  /**
+   * Return the queues created so far, for monitoring depth and drops.
+   *
+   * @return queues by message type
+   */
+  public Map<MessageType, DispatchQueue> getDispatchQueues() {
+    synchronized (dispatchQueues) {
+      return Collections.unmodifiableMap(new EnumMap<>(dispatchQueues));
+    }
+  }
+
+  /**
+   * Return one line per dispatch queue describing its depth and throughput.
+   *
+   * @return queue status
+   */
+  public String getDispatchStatus() {
+    final StringBuilder sb = new StringBuilder();
+    for (final DispatchQueue q : getDispatchQueues().values()) {
+      sb.append(q).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Return the queue for a message type, creating it from the type's current
+   * policy if needed. The policy is read and the queue stored under one lock
+   * so a concurrent {@link #setDispatchPolicy} can not be lost.
+   *
+   * @param type message type
+   * @return the queue, or null if the type is dispatched inline
+   */
+  private DispatchQueue getDispatchQueue(MessageType type) {
+    synchronized (dispatchQueues) {
+      DispatchQueue queue = dispatchQueues.get(type);
+      if (queue == null) {
+        final DispatchPolicy policy = getDispatchPolicy(type);
+        if (policy.getMode() == DispatchPolicy.Mode.INLINE) {
+          return null;
+        }
+
+        queue = new DispatchQueue(getName() + "-" + type, policy, new MessageListener() {
+          @Override
+          public void messageReceived(Message msg) {
+            dispatchMessage(msg);
+          }
+        });
+        queue.setLogger(logger);
+        dispatchQueues.put(type, queue);
+      }
+      return queue;
+    }
+  }
+
+  /**
+   * Route a decoded message according to the policy for its type.
+   *
+   * @param msg the message
+   * @throws InterruptedException if interrupted waiting on a full BLOCK queue
+   */
+  protected void queueMessage(Message msg) throws InterruptedException {
+    final MessageType type = msg.logo.getType();
+    final DispatchQueue queue = type == null ? null : getDispatchQueue(type);
+    if (queue == null) {
+      dispatchMessage(msg);
+    } else if (queue.isBlocking() && queue.getDepth() >= queue.getCapacity()) {
+      readerWaiting = true;
+      try {
+        queue.submit(msg);
+      } finally {
+        readerResumed = System.currentTimeMillis();
+        readerWaiting = false;
+      }
+    } else {
+      queue.submit(msg);
+    }
+  }
+
+  /**
+   * Route the messages from one read. Heartbeats go first, so they are
+   * handled before any BLOCK queue can make the reader wait; the other
+   * messages keep their order.
+   *
+   * @param msgs the messages, in arrival order
+   * @throws InterruptedException if interrupted waiting on a full BLOCK queue
+   */
+  protected void queueMessages(List<Message> msgs) throws InterruptedException {
+    for (final Message msg : msgs) {
+      if (msg.logo.getType() == MessageType.TYPE_HEARTBEAT) {
+        queueMessage(msg);
+      }
+    }
+    for (final Message msg : msgs) {
+      if (msg.logo.getType() != MessageType.TYPE_HEARTBEAT) {
+        queueMessage(msg);
+      }
+    }
+  }
+
+  /**
+   * Has no heartbeat come for two expected intervals? Time the reader spends
+   * waiting on a full BLOCK queue does not count, since it reads nothing then.
+   *
+   * @param now current time in ms
+   * @return true if the link should be dropped
+   */
+  boolean heartbeatOverdue(long now) {
+    if (readerWaiting) {
+      return false;
+    }
+    return now - Math.max(lastHeartbeat, readerResumed) >= expectedHeartbeatInterval * 2;
+  }
+
   public String getHost() {
     return host;
   }
@@ -325,11 +520,17 @@ public class ImportGeneric extends Thread {
     list.remove(ml);
   }
 
-  // TODO: prevent buffer overflows.
   @Override
   public void run() {
+    final List<Message> decoded = new ArrayList<>();
+    final FrameDecoder.FrameHandler handler = new FrameDecoder.FrameHandler() {
+      @Override
+      public void frameDecoded(byte[] buf, int length, int seq) throws IOException {
+        decoded.add(MessageFactory.createMessage(buf, length, seq));
+      }
+    };
+
     // logger.fine("Starting listener thread.");
-    byte lastByte = ESC;
     while (!shutdown) {
       try {
         if (needReconnect) {
@@ -342,50 +543,21 @@ public class ImportGeneric extends Thread {
           continue;
         }
 
-        boolean start = false;
-
-        try {
-          final byte b = socketIn.readByte();
-          if (b == STX) {
-            if (lastByte != ESC) {
-              start = true;
-            } else {
-              lastByte = b;
-            }
-          }
-        } catch (final EOFException e) {
+        final int n = socketIn.read(readBuf);
+        if (n == -1) {
           needReconnect = true;
-        }
-
-        if (start) {
-          int i = 0;
-          int seq = Integer.MAX_VALUE;
-          boolean done = false;
-          boolean escape = false;
-          while (!done) {
-            final byte b3 = socketIn.readByte();
-            if (!escape && b3 == ETX) {
-              done = true;
-            } else if (!escape && b3 == ESC) {
-              escape = true;
-            } else {
-              msgBuf[i++] = b3;
-              escape = false;
-            }
-
-            // check for sequence number and reset index if found
-            if (i == 6 && seq == Integer.MAX_VALUE) {
-              seq = findSeq(new String(msgBuf, 0, 6));
-              if (seq != Integer.MIN_VALUE) {
-                i = 0;
-              }
-            }
+        } else {
+          try {
+            decoder.decode(readBuf, 0, n, handler);
+            queueMessages(decoded);
+          } catch (final InterruptedException e) {
+            logger.warning("ImportGeneric interrupted, messages dropped.");
+            Thread.currentThread().interrupt();
+          } finally {
+            decoded.clear();
           }
-          // message done
-          msgBuf[i++] = 0;
-          final Message msg = MessageFactory.createMessage(msgBuf, i, seq);
-          dispatchMessage(msg);
         }
+
         if (shutdown) {
           close();
         }
@@ -398,6 +570,13 @@ public class ImportGeneric extends Thread {
         outOfMemoryErrorOccurred(e);
       }
     }
+
+    synchronized (dispatchQueues) {
+      for (final DispatchQueue queue : dispatchQueues.values()) {
+        queue.shutdown();
+      }
+      dispatchQueues.clear();
+    }
   }
 
   public void sendAck(int seq) {
@@ -2,11 +2,15 @@ package gov.usgs.volcanoes.core.legacy.net;
 
 import gov.usgs.volcanoes.core.time.Time;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
- *
+ * Per-connection statistics. An instance is attached to the connection's
+ * SelectionKey so the selector loop can reach it without a map lookup.
+ * Counters are updated without locking.
  *
  * @author Dan Cervelli
  */
@@ -33,17 +37,34 @@ public class ConnectionStatistics {
     }
   }
 
+  private static final AtomicLongFieldUpdater<ConnectionStatistics> RX_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(ConnectionStatistics.class, "numBytesReceived");
+  private static final AtomicLongFieldUpdater<ConnectionStatistics> TX_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(ConnectionStatistics.class, "numBytesSent");
+  private static final AtomicLongFieldUpdater<ConnectionStatistics> COMMAND_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(ConnectionStatistics.class, "numCommands");
+
   public SocketChannel channel;
   public String address;
   public long index;
   public long connectTime;
-  public long lastRequestTime;
-  public long numBytesReceived;
-  public long numBytesSent;
-  private String lastCommand;
-  private boolean runningCommand;
-  private long commandStart;
-  public boolean isTraced;
+  public volatile long lastRequestTime;
+  public volatile long numBytesReceived;
+  public volatile long numBytesSent;
+  public volatile long numCommands;
+  private volatile String lastCommand;
+  private volatile boolean runningCommand;
+  private volatile long commandStart;
+  public volatile boolean isTraced;
+
+  /** partial command carried between reads, owned by the selector thread. */
+  ByteBuffer commandBuffer;
+
+  /** idle wheel links, guarded by the wheel. */
+  volatile IdleTimerWheel wheel;
+  ConnectionStatistics wheelPrev;
+  ConnectionStatistics wheelNext;
+  int wheelSlot = -1;
 
   public ConnectionStatistics(SocketChannel ch) {
     channel = ch;
@@ -53,29 +74,46 @@ public class ConnectionStatistics {
 
   public void touch() {
     lastRequestTime = System.currentTimeMillis();
+    IdleTimerWheel w = wheel;
+    if (w != null)
+      w.touch(this);
   }
 
   public void beginCommand(String command) {
-    runningCommand = true;
     commandStart = System.currentTimeMillis();
-    lastCommand = command;
-
-    int eol = lastCommand.indexOf('\n');
-    if (eol != -1)
-      lastCommand = lastCommand.substring(0, eol);
-
+    int eol = command.indexOf('\n');
+    lastCommand = eol == -1 ? command : command.substring(0, eol);
+    COMMAND_UPDATER.incrementAndGet(this);
+    runningCommand = true;
   }
 
   public void endCommand() {
+    finishCommand();
+  }
+
+  /**
+   * Mark the current command complete, as endCommand() does.
+   *
+   * @return command run time in ms, or -1 if no command was running
+   */
+  public long finishCommand() {
+    if (!runningCommand)
+      return -1;
+
     runningCommand = false;
+    return System.currentTimeMillis() - commandStart;
+  }
+
+  public boolean isRunningCommand() {
+    return runningCommand;
   }
 
   public void read(int nb) {
-    numBytesReceived += nb;
+    RX_UPDATER.addAndGet(this, nb);
   }
 
   public void sent(int nb) {
-    numBytesSent += nb;
+    TX_UPDATER.addAndGet(this, nb);
   }
 
   public static String getHeaderString() {
@@ -1,26 +1,40 @@
 package gov.usgs.volcanoes.core.legacy.net;
 
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A singleton class meant to hold the connection parameters for a daemon
+ * A singleton class meant to hold the connection parameters for a daemon.
+ *
+ * <p>The registry is lock-free. The selector loop should reach a connection's
+ * statistics through {@link #getConnectionStatistics(SelectionKey)}, which
+ * reads the key attachment, and use the ConnectionStatistics overloads of
+ * read/sent/beginCommand/endCommand. The SocketChannel overloads remain for
+ * callers which only have a channel.
  *
  * @author Tom Parker
  *
  */
 public class Connections {
-  private Map<SocketChannel, ConnectionStatistics> connectionStats = Collections.synchronizedMap(new HashMap<SocketChannel, ConnectionStatistics>());
-  private long connectionIndex = 0;
-  private int maxConnections = 20;
+  private final ConcurrentHashMap<SocketChannel, ConnectionStatistics> connectionStats;
+  private final AtomicLong connectionIndex = new AtomicLong();
+  private volatile int maxConnections = 20;
+
+  private final StripedCounter totalBytesReceived = new StripedCounter();
+  private final StripedCounter totalBytesSent = new StripedCounter();
+  private final StripedCounter totalCommands = new StripedCounter();
+  private final LatencyHistogram commandLatency = new LatencyHistogram();
+  private final IdleTimerWheel idleWheel = new IdleTimerWheel();
 
   private Connections() {
-    connectionStats = Collections.synchronizedMap(new HashMap<SocketChannel, ConnectionStatistics>());
+    connectionStats = new ConcurrentHashMap<SocketChannel, ConnectionStatistics>();
   }
 
   public static Connections getInstance() {
@@ -44,13 +58,44 @@ public class Connections {
     if (cs == null) {
       cs = new ConnectionStatistics(channel);
       cs.address = getHost(channel);
-      cs.index = connectionIndex++;
+      cs.index = connectionIndex.getAndIncrement();
       cs.connectTime = System.currentTimeMillis();
-      connectionStats.put(channel, cs);
+      cs.lastRequestTime = cs.connectTime;
+      ConnectionStatistics existing = connectionStats.putIfAbsent(channel, cs);
+      if (existing != null)
+        cs = existing;
+      else
+        idleWheel.add(cs);
     }
     return cs;
   }
 
+  /**
+   * Return the statistics attached to a selection key, registering the
+   * key's channel and attaching its statistics if needed.
+   *
+   * @param key key for a SocketChannel
+   * @return statistics for the key's channel
+   */
+  public ConnectionStatistics getConnectionStatistics(SelectionKey key) {
+    Object attachment = key.attachment();
+    if (attachment instanceof ConnectionStatistics)
+      return (ConnectionStatistics) attachment;
+
+    ConnectionStatistics cs = getConnectionStatistics((SocketChannel) key.channel());
+    key.attach(cs);
+    return cs;
+  }
+
+  /**
+   * Return the wheel ordering open connections by last request time.
+   *
+   * @return idle wheel
+   */
+  public IdleTimerWheel getIdleWheel() {
+    return idleWheel;
+  }
+
   public static String getHost(SocketChannel channel) {
     String addr;
 
@@ -71,27 +116,68 @@ public class Connections {
   }
 
   public void remove(SocketChannel channel) {
-    connectionStats.remove(channel);
+    ConnectionStatistics cs = connectionStats.remove(channel);
+    if (cs != null)
+      idleWheel.remove(cs);
   }
 
   public void sent(SocketChannel channel, int bytesSent) {
-    ConnectionStatistics cs = connectionStats.get(channel);
+    sent(connectionStats.get(channel), bytesSent);
+  }
+
+  public void sent(ConnectionStatistics cs, int bytesSent) {
+    totalBytesSent.add(bytesSent);
     if (cs != null)
       cs.sent(bytesSent);
   }
 
   public void read(SocketChannel channel, int bytesRead) {
-    ConnectionStatistics cs = connectionStats.get(channel);
+    read(connectionStats.get(channel), bytesRead);
+  }
+
+  public void read(ConnectionStatistics cs, int bytesRead) {
+    totalBytesReceived.add(bytesRead);
     if (cs != null)
       cs.read(bytesRead);
   }
 
   public void beginCommand(SocketChannel channel, String commandString) {
-    ConnectionStatistics cs = connectionStats.get(channel);
+    beginCommand(connectionStats.get(channel), commandString);
+  }
+
+  public void beginCommand(ConnectionStatistics cs, String commandString) {
+    totalCommands.increment();
     if (cs != null)
       cs.beginCommand(commandString);
   }
 
+  public long getTotalBytesReceived() {
+    return totalBytesReceived.sum();
+  }
+
+  public long getTotalBytesSent() {
+    return totalBytesSent.sum();
+  }
+
+  public long getTotalCommands() {
+    return totalCommands.sum();
+  }
+
+  public LatencyHistogram getCommandLatency() {
+    return commandLatency;
+  }
+
+  /**
+   * Take a snapshot of the registry for export. Cost is linear in the number
+   * of open connections plus a sort of three primitive arrays.
+   *
+   * @return snapshot
+   */
+  public ConnectionsSnapshot getSnapshot() {
+    return new ConnectionsSnapshot(connectionStats.values(), maxConnections,
+        totalBytesReceived.sum(), totalBytesSent.sum(), totalCommands.sum(), commandLatency);
+  }
+
   public String printConnections(String s) {
     char col = 'T';
     if (s.length() > 1)
@@ -154,8 +240,7 @@ public class Connections {
   }
 
   public void toggleTrace(int index) {
-    for (SocketChannel sc : connectionStats.keySet()) {
-      ConnectionStatistics cs = connectionStats.get(sc);
+    for (ConnectionStatistics cs : connectionStats.values()) {
       if (cs.index == index)
         cs.isTraced = cs.isTraced ? false : true;
     }
@@ -164,13 +249,20 @@ public class Connections {
 
   public boolean isTraced(SocketChannel channel) {
     ConnectionStatistics cs = connectionStats.get(channel);
-    return cs.isTraced;
+    return cs != null && cs.isTraced;
   }
 
   public void endCommand(SocketChannel channel) {
-    ConnectionStatistics cs = connectionStats.get(channel);
-    if (cs != null)
-      cs.endCommand();
+    endCommand(connectionStats.get(channel));
+  }
+
+  public void endCommand(ConnectionStatistics cs) {
+    if (cs == null)
+      return;
+
+    long runTime = cs.finishCommand();
+    if (runTime >= 0)
+      commandLatency.record(runTime);
   }
 
 }
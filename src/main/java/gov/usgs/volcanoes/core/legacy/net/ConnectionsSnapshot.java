@@ -0,0 +1,190 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable, point-in-time view of the connection registry suitable for
+ * exporting to a metrics endpoint. Per-connection distributions are computed
+ * once when the snapshot is taken.
+ */
+public class ConnectionsSnapshot {
+  /** Percentiles included in {@link #toMetrics()}. */
+  public static final double[] PERCENTILES = new double[] {50, 90, 99};
+
+  private final long time;
+  private final int numConnections;
+  private final int maxConnections;
+  private final int runningCommands;
+  private final long totalBytesReceived;
+  private final long totalBytesSent;
+  private final long totalCommands;
+  private final long[] bytesReceived;
+  private final long[] bytesSent;
+  private final long[] commands;
+  private final long latencyCount;
+  private final double latencyMean;
+  private final long[] latencyPercentiles;
+
+  ConnectionsSnapshot(Collection<ConnectionStatistics> stats, int maxConnections,
+      long totalBytesReceived, long totalBytesSent, long totalCommands,
+      LatencyHistogram latency) {
+    time = System.currentTimeMillis();
+    this.maxConnections = maxConnections;
+    this.totalBytesReceived = totalBytesReceived;
+    this.totalBytesSent = totalBytesSent;
+    this.totalCommands = totalCommands;
+
+    ConnectionStatistics[] css = stats.toArray(new ConnectionStatistics[0]);
+    numConnections = css.length;
+    bytesReceived = new long[numConnections];
+    bytesSent = new long[numConnections];
+    commands = new long[numConnections];
+    int running = 0;
+    for (int i = 0; i < numConnections; i++) {
+      bytesReceived[i] = css[i].numBytesReceived;
+      bytesSent[i] = css[i].numBytesSent;
+      commands[i] = css[i].numCommands;
+      if (css[i].isRunningCommand()) {
+        running++;
+      }
+    }
+    runningCommands = running;
+    Arrays.sort(bytesReceived);
+    Arrays.sort(bytesSent);
+    Arrays.sort(commands);
+
+    latencyCount = latency.getCount();
+    latencyMean = latency.getMean();
+    latencyPercentiles = new long[PERCENTILES.length];
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      latencyPercentiles[i] = latency.getPercentile(PERCENTILES[i]);
+    }
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public int getNumConnections() {
+    return numConnections;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public int getRunningCommands() {
+    return runningCommands;
+  }
+
+  public long getTotalBytesReceived() {
+    return totalBytesReceived;
+  }
+
+  public long getTotalBytesSent() {
+    return totalBytesSent;
+  }
+
+  public long getTotalCommands() {
+    return totalCommands;
+  }
+
+  public long getLatencyCount() {
+    return latencyCount;
+  }
+
+  public double getLatencyMean() {
+    return latencyMean;
+  }
+
+  /**
+   * Return a percentile of bytes received over open connections.
+   *
+   * @param p percentile, 0-100
+   * @return bytes
+   */
+  public long getBytesReceivedPercentile(double p) {
+    return percentile(bytesReceived, p);
+  }
+
+  /**
+   * Return a percentile of bytes sent over open connections.
+   *
+   * @param p percentile, 0-100
+   * @return bytes
+   */
+  public long getBytesSentPercentile(double p) {
+    return percentile(bytesSent, p);
+  }
+
+  /**
+   * Return a percentile of commands run over open connections.
+   *
+   * @param p percentile, 0-100
+   * @return command count
+   */
+  public long getCommandsPercentile(double p) {
+    return percentile(commands, p);
+  }
+
+  /**
+   * Return a command latency percentile in milliseconds. Only the
+   * percentiles listed in {@link #PERCENTILES} are retained.
+   *
+   * @param p percentile, one of {@link #PERCENTILES}
+   * @return latency in ms, or -1 if p was not retained
+   */
+  public long getLatencyPercentile(double p) {
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      if (PERCENTILES[i] == p) {
+        return latencyPercentiles[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Flatten the snapshot into metric names and values.
+   *
+   * @return ordered map of metric name to value
+   */
+  public Map<String, Number> toMetrics() {
+    Map<String, Number> metrics = new LinkedHashMap<String, Number>();
+    metrics.put("connections.open", numConnections);
+    metrics.put("connections.max", maxConnections);
+    metrics.put("commands.running", runningCommands);
+    metrics.put("bytes.received.total", totalBytesReceived);
+    metrics.put("bytes.sent.total", totalBytesSent);
+    metrics.put("commands.total", totalCommands);
+    metrics.put("latency.count", latencyCount);
+    metrics.put("latency.mean", latencyMean);
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      String p = "p" + (int) PERCENTILES[i];
+      metrics.put("bytes.received." + p, getBytesReceivedPercentile(PERCENTILES[i]));
+      metrics.put("bytes.sent." + p, getBytesSentPercentile(PERCENTILES[i]));
+      metrics.put("commands." + p, getCommandsPercentile(PERCENTILES[i]));
+      metrics.put("latency." + p, latencyPercentiles[i]);
+    }
+    return metrics;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Number> e : toMetrics().entrySet()) {
+      sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(Math.min(100, Math.max(0, p)) / 100 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+}
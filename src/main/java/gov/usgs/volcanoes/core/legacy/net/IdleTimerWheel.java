@@ -0,0 +1,178 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timer wheel of connections keyed by the time they were last
+ * touched. Each slot holds an intrusive doubly-linked list threaded through
+ * the ConnectionStatistics themselves, so touching, adding and removing a
+ * connection are O(1) and allocate nothing.
+ *
+ * <p>Connections are always appended at the current time, so every slot list
+ * is ordered oldest first even when it holds entries from earlier turns of
+ * the wheel. Finding the least recently used connection or sweeping idle
+ * ones therefore only needs to look at slot heads, which costs O(slots) no
+ * matter how many connections are open.
+ */
+public class IdleTimerWheel {
+  public static final long DEFAULT_TICK_MS = 1000;
+  public static final int DEFAULT_SLOTS = 64;
+
+  private final long tickMs;
+  private final ConnectionStatistics[] heads;
+  private final ConnectionStatistics[] tails;
+  private final int mask;
+  private int size;
+
+  /**
+   * Create a wheel with the default tick and slot count.
+   */
+  public IdleTimerWheel() {
+    this(DEFAULT_TICK_MS, DEFAULT_SLOTS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param tickMs width of each slot in ms
+   * @param slots number of slots; rounded up to a power of two
+   */
+  public IdleTimerWheel(long tickMs, int slots) {
+    if (tickMs <= 0)
+      throw new IllegalArgumentException("tickMs must be positive");
+
+    int n = 1;
+    while (n < slots)
+      n <<= 1;
+
+    this.tickMs = tickMs;
+    mask = n - 1;
+    heads = new ConnectionStatistics[n];
+    tails = new ConnectionStatistics[n];
+  }
+
+  public long getTickMs() {
+    return tickMs;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Put a connection on the wheel. Later calls to
+   * {@link ConnectionStatistics#touch()} will move it.
+   *
+   * @param cs connection to add
+   */
+  public synchronized void add(ConnectionStatistics cs) {
+    cs.wheel = this;
+    touch(cs);
+  }
+
+  /**
+   * Move a connection to the slot for its lastRequestTime. Does nothing if the
+   * connection has been removed.
+   *
+   * @param cs connection to place
+   */
+  public synchronized void touch(ConnectionStatistics cs) {
+    if (cs.wheel != this)
+      return;
+
+    int slot = slotFor(cs.lastRequestTime);
+    if (cs.wheelSlot == slot && tails[slot] == cs)
+      return;
+
+    if (cs.wheelSlot != -1)
+      unlink(cs);
+    else
+      size++;
+
+    link(cs, slot);
+  }
+
+  /**
+   * Take a connection off the wheel. Does nothing if it is not on the wheel.
+   *
+   * @param cs connection to remove
+   */
+  public synchronized void remove(ConnectionStatistics cs) {
+    if (cs.wheel == this)
+      cs.wheel = null;
+    if (cs.wheelSlot == -1)
+      return;
+
+    unlink(cs);
+    size--;
+  }
+
+  /**
+   * Return the least recently touched connection.
+   *
+   * @return oldest connection, or null if the wheel is empty
+   */
+  public synchronized ConnectionStatistics oldest() {
+    ConnectionStatistics oldest = null;
+    for (ConnectionStatistics head : heads) {
+      if (head != null && (oldest == null || head.lastRequestTime < oldest.lastRequestTime))
+        oldest = head;
+    }
+    return oldest;
+  }
+
+  /**
+   * Remove and return every connection last touched before a cutoff.
+   *
+   * @param cutoff time in ms; connections with lastRequestTime &lt; cutoff expire
+   * @return expired connections, oldest slots first
+   */
+  public synchronized List<ConnectionStatistics> expire(long cutoff) {
+    List<ConnectionStatistics> expired = new ArrayList<ConnectionStatistics>();
+    for (int slot = 0; slot < heads.length; slot++) {
+      ConnectionStatistics cs = heads[slot];
+      while (cs != null && cs.lastRequestTime < cutoff) {
+        ConnectionStatistics next = cs.wheelNext;
+        cs.wheel = null;
+        unlink(cs);
+        size--;
+        expired.add(cs);
+        cs = next;
+      }
+    }
+    return expired;
+  }
+
+  private int slotFor(long time) {
+    return (int) ((time / tickMs) & mask);
+  }
+
+  private void link(ConnectionStatistics cs, int slot) {
+    cs.wheelSlot = slot;
+    cs.wheelNext = null;
+    cs.wheelPrev = tails[slot];
+    if (tails[slot] == null)
+      heads[slot] = cs;
+    else
+      tails[slot].wheelNext = cs;
+    tails[slot] = cs;
+  }
+
+  private void unlink(ConnectionStatistics cs) {
+    int slot = cs.wheelSlot;
+    if (cs.wheelPrev == null)
+      heads[slot] = cs.wheelNext;
+    else
+      cs.wheelPrev.wheelNext = cs.wheelNext;
+
+    if (cs.wheelNext == null)
+      tails[slot] = cs.wheelPrev;
+    else
+      cs.wheelNext.wheelPrev = cs.wheelPrev;
+
+    cs.wheelPrev = null;
+    cs.wheelNext = null;
+    cs.wheelSlot = -1;
+  }
+}
@@ -0,0 +1,116 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with log-linear buckets. Each
+ * power of two is split into four sub-buckets, so recorded values are
+ * reported to within 25% using a fixed 2KB of counters.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final StripedCounter total;
+  private final StripedCounter sum;
+
+  /**
+   * Constructor.
+   */
+  public LatencyHistogram() {
+    counts = new AtomicLongArray(NUM_BUCKETS);
+    total = new StripedCounter();
+    sum = new StripedCounter();
+  }
+
+  /**
+   * Record a value. Negative values are recorded as zero.
+   *
+   * @param value value to record
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(bucketIndex(v));
+    total.increment();
+    sum.add(v);
+  }
+
+  /**
+   * Return the number of values recorded.
+   *
+   * @return count
+   */
+  public long getCount() {
+    return total.sum();
+  }
+
+  /**
+   * Return the mean of all recorded values.
+   *
+   * @return mean, or 0 if nothing has been recorded
+   */
+  public double getMean() {
+    long n = total.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Return an approximate percentile.
+   *
+   * @param p percentile, 0-100
+   * @return lower bound of the bucket holding the requested rank
+   */
+  public long getPercentile(double p) {
+    long[] snapshot = new long[NUM_BUCKETS];
+    long n = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(Math.min(100, Math.max(0, p)) / 100 * n);
+    rank = Math.max(1, rank);
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return bucketValue(i);
+      }
+    }
+    return bucketValue(NUM_BUCKETS - 1);
+  }
+
+  /**
+   * Discard all recorded values.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    total.reset();
+    sum.reset();
+  }
+
+  static int bucketIndex(long v) {
+    if (v < SUB_BUCKETS) {
+      return (int) v;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) (v >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exp - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+  }
+
+  static long bucketValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exp = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+    int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    return (1L << exp) + ((long) sub << (exp - SUB_BUCKET_BITS));
+  }
+}
@@ -12,16 +12,15 @@ import java.net.SocketAddress;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -53,10 +52,21 @@ public class Server {
 
   protected Connections connections = Connections.getInstance();
 
+  /** selector used by startListening, null until listening. */
+  protected volatile Selector selector;
+
   protected boolean dropOldest = true;
 
+  /**
+   * @deprecated use {@link Connections#getTotalBytesSent()}, which is safe to
+   *             read while other threads send.
+   */
+  @Deprecated
   protected long totalBytesSent = 0;
 
+  /** connections idle longer than this many ms are dropped; 0 disables. */
+  protected long idleTimeout = 0;
+
   protected Server() {
     commandHandlerPool = new Pool<CommandHandler>();
   }
@@ -161,9 +171,9 @@ public class Server {
       return;
 
     // imcomplete buffer from last attempt?
-    Object attachment = selectionKey.attachment();
-    if (attachment != null)
-      commandBuffer = (ByteBuffer) attachment;
+    ConnectionStatistics cs = connections.getConnectionStatistics(selectionKey);
+    if (cs.commandBuffer != null)
+      commandBuffer = cs.commandBuffer;
     else
       commandBuffer = ByteBuffer.allocate(COMMAND_BUFFER_SIZE);
 
@@ -174,7 +184,7 @@ public class Server {
       if (bytesRead == -1)
         close = true;
       else {
-        connections.read(channel, bytesRead);
+        connections.read(cs, bytesRead);
         inBuffer.flip();
         if (readLine(inBuffer, commandBuffer)) {
 
@@ -192,21 +202,21 @@ public class Server {
 
           commandBuffer.flip();
           String commandString = netTools.decoder.decode(commandBuffer).toString();
-          if (connections.isTraced(channel)) {
+          if (cs.isTraced) {
             SocketAddress s = channel.socket().getRemoteSocketAddress();
             if (s != null)
               LOGGER.warn("{}: {}", s, commandString);
           }
-          connections.beginCommand(channel, commandString);
+          connections.beginCommand(cs, commandString);
           dispatchCommand(channel, selectionKey, commandString);
           commandBuffer.clear();
         }
 
         // command incomplete, check again next time.
         if (commandBuffer.position() != 0)
-          selectionKey.attach(commandBuffer);
+          cs.commandBuffer = commandBuffer;
         else
-          selectionKey.attach(null);
+          cs.commandBuffer = null;
       }
     } catch (IOException e) {
       close = true;
@@ -289,7 +299,7 @@ public class Server {
     StringBuffer sb = new StringBuffer();
     sb.append(connections.printConnections(s));
     sb.append("Available command handlers: " + commandHandlerPool.size() + "/" + maxReadHandlers + "\n");
-    sb.append("Total bytes sent:           " + StringUtils.numBytesToString(totalBytesSent) + "\n");
+    sb.append("Total bytes sent:           " + StringUtils.numBytesToString(connections.getTotalBytesSent()) + "\n");
 
     System.out.println(sb);
   }
@@ -308,31 +318,47 @@ public class Server {
 
   public void dropConnections(long idleLimit) {
     LOGGER.info("Dropping connections.");
-    List<SocketChannel> channels = new ArrayList<SocketChannel>(connections.connectionCount());
-    // must move current connections to a list so that they can be dropped
-    Map<SocketChannel, ConnectionStatistics> connectionStats = connections.getConnections();
-    for (SocketChannel sc : connectionStats.keySet()) {
-      ConnectionStatistics cs = connectionStats.get(sc);
-      if (System.currentTimeMillis() - cs.lastRequestTime > idleLimit)
-        channels.add(sc);
-    }
-
-    for (SocketChannel sc : channels)
-      closeConnection(sc, null);
+    for (ConnectionStatistics cs : expireIdle(idleLimit))
+      closeConnection(cs.channel, null);
   }
 
   public void dropOldestConnection() {
-    long least = Long.MAX_VALUE;
-    SocketChannel lc = null;
-    Map<SocketChannel, ConnectionStatistics> connectionStats = connections.getConnections();
-    for (ConnectionStatistics cs : connectionStats.values()) {
-      if (cs.lastRequestTime < least) {
-        least = cs.lastRequestTime;
-        lc = cs.channel;
-      }
-    }
-    if (lc != null)
-      closeConnection(lc, null);
+    ConnectionStatistics cs = connections.getIdleWheel().oldest();
+    if (cs != null)
+      closeConnection(cs.channel, null);
+  }
+
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Take connections idle for longer than a limit off the idle wheel. Cost
+   * depends on the number of wheel slots and expired connections, not on the
+   * number of open connections.
+   *
+   * @param idleLimit idle time in ms
+   * @return expired connections, which the caller should close
+   */
+  protected List<ConnectionStatistics> expireIdle(long idleLimit) {
+    return connections.getIdleWheel().expire(System.currentTimeMillis() - idleLimit);
+  }
+
+  /**
+   * Drop connections idle longer than idleTimeout. Called from the selector
+   * loop at most once per wheel tick.
+   */
+  protected void dropIdleConnections() {
+    List<ConnectionStatistics> idle = expireIdle(idleTimeout);
+    for (ConnectionStatistics cs : idle)
+      closeConnection(cs.channel, null);
+
+    if (!idle.isEmpty())
+      LOGGER.info("Dropped {} idle connections.", idle.size());
   }
 
   public void toggleTrace(String cmd) {
@@ -344,14 +370,67 @@ public class Server {
     }
   }
 
+  /**
+   * Return true if the server has what it needs to start listening.
+   * Subclasses which override processRead may not need command handlers.
+   *
+   * @return true if ready
+   */
+  protected boolean isReady() {
+    return commandHandlerPool.size() > 0 && serverPort != -1;
+  }
+
+  /**
+   * Called on the selector thread after a connection has been accepted and
+   * registered for reads.
+   *
+   * @param channel new connection
+   * @param selectionKey its selection key
+   */
+  protected void connectionAccepted(SocketChannel channel, SelectionKey selectionKey) {}
+
+  /**
+   * Called on the selector thread when a channel registered for OP_WRITE can
+   * be written. Servers which write from command handler threads never
+   * register for OP_WRITE and need not override this.
+   *
+   * @param selectionKey writable key
+   */
+  protected void processWrite(SelectionKey selectionKey) {}
+
+  /**
+   * Called on the selector thread before each select. Other threads must not
+   * change interest ops themselves, since that may block while the selector
+   * is selecting; they queue the change, wake the selector and let this apply
+   * it.
+   */
+  protected void beforeSelect() {}
+
+  /**
+   * Stop the selector loop started by startListening and release the
+   * listening socket. Open connections are left alone.
+   */
+  public void stopListening() {
+    Selector s = selector;
+    if (s == null)
+      return;
+
+    try {
+      s.close();
+    } catch (IOException e) {
+      LOGGER.warn("Could not close selector.", e);
+    }
+  }
+
   protected void startListening() {
-    if (commandHandlerPool.size() <= 0 || serverPort == -1)
+    if (!isReady())
       return;
 
+    ServerSocketChannel serverChannel = null;
     try {
-      Selector selector = Selector.open();
+      selector = Selector.open();
 
-      ServerSocketChannel serverChannel = ServerSocketChannel.open();
+      serverChannel = ServerSocketChannel.open();
       serverChannel.configureBlocking(false);
       if (serverIP == null) {
         serverChannel.socket().bind(new InetSocketAddress(serverPort));
@@ -365,8 +444,20 @@ public class Server {
 
       LOGGER.info("listening on port {}.", serverPort);
 
+      long tickMs = connections.getIdleWheel().getTickMs();
+      long nextIdleCheck = System.currentTimeMillis() + tickMs;
       while (true) {
-        selector.select();
+        beforeSelect();
+        if (idleTimeout > 0) {
+          selector.select(tickMs);
+          long now = System.currentTimeMillis();
+          if (now >= nextIdleCheck) {
+            dropIdleConnections();
+            nextIdleCheck = now + tickMs;
+          }
+        } else {
+          selector.select();
+        }
 
         // TODO: figure out why this threw a nullPointer exception in
         // production
@@ -421,23 +512,37 @@ public class Server {
               log(Level.DEBUG, String.format("Connection accepted: %d/%d",
                   connections.getNumConnections(), connections.getMaxConnections()), channel);
               channel.configureBlocking(false);
-              channel.register(selector, SelectionKey.OP_READ);
+              SelectionKey key = channel.register(selector, SelectionKey.OP_READ, cs);
+              connectionAccepted(channel, key);
             }
 
             if (selKey.isValid() && selKey.isReadable()) {
               SocketChannel channel = (SocketChannel) selKey.channel();
               if (channel.isOpen() && channel.isConnected()) {
-                ConnectionStatistics cs = connections.getConnectionStatistics(channel);
+                ConnectionStatistics cs = connections.getConnectionStatistics(selKey);
                 cs.touch();
                 processRead(selKey);
               }
             }
+
+            if (selKey.isValid() && selKey.isWritable())
+              processWrite(selKey);
           } catch (CancelledKeyException e) {
           }
         }
       }
+    } catch (ClosedSelectorException e) {
+      LOGGER.info("stopped listening on port {}.", serverPort);
     } catch (IOException e) {
       LOGGER.error("Fatal exception.", e);
+    } finally {
+      if (serverChannel != null) {
+        try {
+          serverChannel.close();
+        } catch (IOException e) {
+          LOGGER.warn("Could not close server channel.", e);
+        }
+      }
     }
   }
 }
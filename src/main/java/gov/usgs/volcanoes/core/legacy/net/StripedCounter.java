@@ -0,0 +1,86 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter which spreads updates over several padded cells so that
+ * threads rarely contend on the same cache line. Reads sum the cells and are
+ * therefore only weakly consistent with concurrent updates.
+ */
+public class StripedCounter {
+  /** longs between used cells, keeps each cell on its own cache line. */
+  private static final int PAD = 8;
+
+  private final AtomicLongArray cells;
+  private final int mask;
+
+  /**
+   * Create a counter with a stripe for each available processor.
+   */
+  public StripedCounter() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create a counter.
+   *
+   * @param stripes minimum number of stripes; rounded up to a power of two
+   */
+  public StripedCounter(int stripes) {
+    int n = 1;
+    while (n < stripes) {
+      n <<= 1;
+    }
+    mask = n - 1;
+    cells = new AtomicLongArray(n * PAD);
+  }
+
+  /**
+   * Add to the counter.
+   *
+   * @param x amount to add
+   */
+  public void add(long x) {
+    cells.getAndAdd(index(), x);
+  }
+
+  /**
+   * Add one to the counter.
+   */
+  public void increment() {
+    add(1);
+  }
+
+  /**
+   * Return the current total.
+   *
+   * @return sum of all stripes
+   */
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < cells.length(); i += PAD) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+  /**
+   * Reset all stripes to zero.
+   */
+  public void reset() {
+    for (int i = 0; i < cells.length(); i += PAD) {
+      cells.set(i, 0);
+    }
+  }
+
+  private int index() {
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((h >>> 16) & mask) * PAD;
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(sum());
+  }
+}
@@ -0,0 +1,570 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import gov.usgs.volcanoes.core.util.SharedExecutor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A PNG encoder which compresses independent bands of scanlines in parallel.
+ *
+ * <p>The image is split into bands of rows. Each band is filtered and
+ * compressed on a worker with its own raw Deflater and ends on a SYNC_FLUSH
+ * boundary, so the compressed bands simply concatenate into one zlib stream
+ * in the manner of pigz. The Adler-32 checksums of the bands are combined
+ * arithmetically. Each band is written as its own IDAT chunk as soon as it and
+ * every band before it are done, so output streams without building the whole
+ * file in memory.
+ *
+ * <p>Pixels are read straight from the int[] bank of TYPE_INT_RGB and
+ * TYPE_INT_ARGB images. Other image types are read a row at a time through
+ * getRGB. With adaptive filtering each row uses whichever of the five PNG
+ * filters gives the smallest sum of absolute differences.
+ */
+public class ParallelPngEncoder {
+  public static final int DEFAULT_COMPRESSION_LEVEL = 7;
+
+  /** uncompressed bytes per band. */
+  private static final int BAND_BYTES = 256 * 1024;
+
+  private static final byte[] SIGNATURE = {-119, 80, 78, 71, 13, 10, 26, 10};
+  private static final byte[] IHDR = {73, 72, 68, 82};
+  private static final byte[] IDAT = {73, 68, 65, 84};
+  private static final byte[] IEND = {73, 69, 78, 68};
+
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  /** scratch space kept by each worker thread; its output is copied out. */
+  private static final ThreadLocal<Scratch> WORKER_SCRATCH = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch(DEFAULT_COMPRESSION_LEVEL);
+    }
+  };
+
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private boolean encodeAlpha = false;
+  private boolean adaptiveFilter = true;
+  private boolean parallel = true;
+
+  /**
+   * Set the zlib compression level.
+   *
+   * @param level 0-9
+   */
+  public void setCompressionLevel(int level) {
+    if (level >= 0 && level <= 9) {
+      compressionLevel = level;
+    }
+  }
+
+  /**
+   * Include the alpha channel in the output?
+   *
+   * @param encodeAlpha true to write RGBA, false to write RGB
+   */
+  public void setEncodeAlpha(boolean encodeAlpha) {
+    this.encodeAlpha = encodeAlpha;
+  }
+
+  /**
+   * Choose a filter per row, or always use filter type None.
+   *
+   * @param adaptiveFilter true for per-row adaptive filtering
+   */
+  public void setAdaptiveFilter(boolean adaptiveFilter) {
+    this.adaptiveFilter = adaptiveFilter;
+  }
+
+  /**
+   * Compress bands on the shared worker pool, or on the calling thread. Bands
+   * are always compressed on the calling thread if it is itself a worker.
+   *
+   * @param parallel true to use worker threads
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Encode an image to a byte array.
+   *
+   * @param image image to encode
+   * @return PNG bytes
+   * @throws IOException if encoding fails
+   */
+  public byte[] encode(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight());
+    encode(image, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode an image to a stream. The stream is not closed.
+   *
+   * @param image image to encode
+   * @param out destination
+   * @throws IOException if writing fails
+   */
+  public void encode(BufferedImage image, OutputStream out) throws IOException {
+    encode(image, out, null);
+  }
+
+  /**
+   * Encode an image to a stream, using caller-supplied scratch space for the
+   * bands compressed on the calling thread. The stream is not closed.
+   *
+   * @param image image to encode
+   * @param out destination
+   * @param scratch reusable buffers, or null
+   * @throws IOException if writing fails
+   */
+  public void encode(BufferedImage image, OutputStream out, Scratch scratch) throws IOException {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final int bpp = encodeAlpha ? 4 : 3;
+    final int rowBytes = width * bpp + 1;
+    final int rowsPerBand = Math.max(1, Math.min(height, BAND_BYTES / rowBytes));
+    final int bands = Math.max(1, (height + rowsPerBand - 1) / rowsPerBand);
+
+    DataOutputStream dos = new DataOutputStream(out);
+    dos.write(SIGNATURE);
+    writeHeader(dos, width, height);
+
+    // Bands on the calling thread are written out before the next one runs,
+    // so they can all share one scratch.
+    boolean ownScratch = scratch == null;
+    Scratch serial = ownScratch ? new Scratch(compressionLevel) : scratch;
+    List<Future<Band>> futures = new ArrayList<Future<Band>>(bands);
+    long adler = 1;
+    try {
+      boolean useExecutor = parallel && bands > 1 && !SharedExecutor.isWorker();
+      for (int i = 0; i < bands; i++) {
+        final int startRow = i * rowsPerBand;
+        final int endRow = Math.min(height, startRow + rowsPerBand);
+        boolean pooled = useExecutor && i > 0;
+        BandTask task = new BandTask(image, startRow, endRow, i == bands - 1,
+            pooled ? null : serial, pooled);
+        if (pooled) {
+          futures.add(SharedExecutor.compute().submit(task));
+        } else {
+          futures.add(new Immediate(task));
+        }
+      }
+
+      for (int i = 0; i < bands; i++) {
+        Band band = futures.get(i).get();
+        adler = combineAdler32(adler, band.adler, band.rawLength);
+        writeIdat(dos, band, i == 0, i == bands - 1 ? adler : -1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("PNG encoding interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("PNG encoding failed", e.getCause());
+    } finally {
+      for (Future<Band> f : futures) {
+        f.cancel(true);
+      }
+      if (ownScratch) {
+        serial.end();
+      }
+    }
+
+    writeChunk(dos, IEND, new byte[0], 0, 0);
+    dos.flush();
+  }
+
+  private void writeHeader(DataOutputStream dos, int width, int height) throws IOException {
+    byte[] ihdr = new byte[13];
+    putInt(ihdr, 0, width);
+    putInt(ihdr, 4, height);
+    ihdr[8] = 8; // bit depth
+    ihdr[9] = (byte) (encodeAlpha ? 6 : 2); // truecolor, with or without alpha
+    ihdr[10] = 0; // deflate
+    ihdr[11] = 0; // adaptive filtering
+    ihdr[12] = 0; // no interlace
+    writeChunk(dos, IHDR, ihdr, 0, ihdr.length);
+  }
+
+  private void writeIdat(DataOutputStream dos, Band band, boolean first, long adler)
+      throws IOException {
+    int length = band.length + (first ? 2 : 0) + (adler >= 0 ? 4 : 0);
+    CRC32 crc = new CRC32();
+    dos.writeInt(length);
+    dos.write(IDAT);
+    crc.update(IDAT);
+    if (first) {
+      byte[] zlibHeader = zlibHeader();
+      dos.write(zlibHeader);
+      crc.update(zlibHeader);
+    }
+    dos.write(band.data, 0, band.length);
+    crc.update(band.data, 0, band.length);
+    if (adler >= 0) {
+      byte[] trailer = new byte[4];
+      putInt(trailer, 0, (int) adler);
+      dos.write(trailer);
+      crc.update(trailer);
+    }
+    dos.writeInt((int) crc.getValue());
+  }
+
+  private static void writeChunk(DataOutputStream dos, byte[] type, byte[] data, int off, int len)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    dos.writeInt(len);
+    dos.write(type);
+    crc.update(type);
+    dos.write(data, off, len);
+    crc.update(data, off, len);
+    dos.writeInt((int) crc.getValue());
+  }
+
+  private byte[] zlibHeader() {
+    int cmf = 0x78; // deflate, 32K window
+    int flevel;
+    if (compressionLevel <= 1) {
+      flevel = 0;
+    } else if (compressionLevel <= 5) {
+      flevel = 1;
+    } else if (compressionLevel == 6) {
+      flevel = 2;
+    } else {
+      flevel = 3;
+    }
+    int flg = flevel << 6;
+    flg += 31 - ((cmf << 8) + flg) % 31;
+    return new byte[] {(byte) cmf, (byte) flg};
+  }
+
+  private static void putInt(byte[] b, int off, int v) {
+    b[off] = (byte) (v >>> 24);
+    b[off + 1] = (byte) (v >>> 16);
+    b[off + 2] = (byte) (v >>> 8);
+    b[off + 3] = (byte) v;
+  }
+
+  /**
+   * Combine the Adler-32 of two consecutive blocks, as zlib's
+   * adler32_combine.
+   *
+   * @param adler1 checksum of the first block
+   * @param adler2 checksum of the second block
+   * @param len2 length of the second block
+   * @return checksum of both blocks
+   */
+  static long combineAdler32(long adler1, long adler2, long len2) {
+    final long base = 65521;
+    long rem = len2 % base;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % base;
+    sum1 += (adler2 & 0xffff) + base - 1;
+    sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+    if (sum1 >= base) {
+      sum1 -= base;
+    }
+    if (sum1 >= base) {
+      sum1 -= base;
+    }
+    if (sum2 >= (base << 1)) {
+      sum2 -= (base << 1);
+    }
+    if (sum2 >= base) {
+      sum2 -= base;
+    }
+    return sum1 | (sum2 << 16);
+  }
+
+  /**
+   * Buffers which may be kept and reused across encodes by one thread.
+   */
+  public static class Scratch {
+    byte[] raw = new byte[0];
+    byte[] out = new byte[0];
+    byte[] prior = new byte[0];
+    byte[] current = new byte[0];
+    byte[][] candidates = new byte[5][0];
+    final long[] cost = new long[5];
+    int[] rgb = new int[0];
+    final Deflater deflater;
+
+    /**
+     * Constructor.
+     *
+     * @param level compression level the scratch space will be used with
+     */
+    public Scratch(int level) {
+      deflater = new Deflater(level, true);
+    }
+
+    void ensure(int rowPixels, int rowBytes, int rawBytes) {
+      if (raw.length < rawBytes) {
+        raw = new byte[rawBytes];
+        out = new byte[rawBytes + rawBytes / 1000 + 64];
+      }
+      if (prior.length < rowBytes) {
+        prior = new byte[rowBytes];
+        current = new byte[rowBytes];
+        for (int i = 0; i < candidates.length; i++) {
+          candidates[i] = new byte[rowBytes];
+        }
+      }
+      if (rgb.length < rowPixels) {
+        rgb = new int[rowPixels];
+      }
+    }
+
+    /**
+     * Release the native deflater. The scratch space can not be used after
+     * this.
+     */
+    public void end() {
+      deflater.end();
+    }
+  }
+
+  private static class Band {
+    byte[] data;
+    int length;
+    long adler;
+    long rawLength;
+  }
+
+  /** A future that runs its task on the calling thread when asked for. */
+  private static class Immediate implements Future<Band> {
+    private final BandTask task;
+
+    Immediate(BandTask task) {
+      this.task = task;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    public boolean isCancelled() {
+      return false;
+    }
+
+    public boolean isDone() {
+      return false;
+    }
+
+    public Band get() throws ExecutionException {
+      try {
+        return task.call();
+      } catch (RuntimeException e) {
+        throw new ExecutionException(e);
+      }
+    }
+
+    public Band get(long timeout, TimeUnit unit) throws ExecutionException {
+      return get();
+    }
+  }
+
+  private class BandTask implements Callable<Band> {
+    private final BufferedImage image;
+    private final int startRow;
+    private final int endRow;
+    private final boolean last;
+    private final Scratch scratch;
+    private final boolean pooled;
+
+    BandTask(BufferedImage image, int startRow, int endRow, boolean last, Scratch scratch,
+        boolean pooled) {
+      this.image = image;
+      this.startRow = startRow;
+      this.endRow = endRow;
+      this.last = last;
+      this.scratch = scratch;
+      this.pooled = pooled;
+    }
+
+    public Band call() {
+      final int width = image.getWidth();
+      final int bpp = encodeAlpha ? 4 : 3;
+      final int rowBytes = width * bpp;
+      final int rawLength = (rowBytes + 1) * (endRow - startRow);
+
+      Scratch s = pooled ? WORKER_SCRATCH.get() : scratch;
+      s.ensure(width, rowBytes, rawLength);
+
+      byte[] prior = s.prior;
+      byte[] current = s.current;
+      if (startRow > 0) {
+        readRow(startRow - 1, prior, s);
+      } else {
+        Arrays.fill(prior, 0, rowBytes, (byte) 0);
+      }
+
+      int pos = 0;
+      for (int y = startRow; y < endRow; y++) {
+        readRow(y, current, s);
+        pos = filterRow(current, prior, rowBytes, bpp, s, pos);
+        byte[] t = prior;
+        prior = current;
+        current = t;
+      }
+      s.prior = prior;
+      s.current = current;
+
+      Adler32 adler = new Adler32();
+      adler.update(s.raw, 0, rawLength);
+
+      Deflater deflater = s.deflater;
+      deflater.reset();
+      deflater.setLevel(compressionLevel);
+      deflater.setInput(s.raw, 0, rawLength);
+      if (last) {
+        deflater.finish();
+      }
+
+      Band band = new Band();
+      byte[] out = s.out;
+      int n = 0;
+      while (true) {
+        if (n == out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+        int space = out.length - n;
+        int len = last ? deflater.deflate(out, n, space)
+            : deflater.deflate(out, n, space, Deflater.SYNC_FLUSH);
+        n += len;
+        // After a level change the first call can return with input left over.
+        if (last ? deflater.finished() : len < space && deflater.needsInput()) {
+          break;
+        }
+      }
+      s.out = out;
+      band.data = pooled ? Arrays.copyOf(out, n) : out;
+      band.length = n;
+      band.adler = adler.getValue();
+      band.rawLength = rawLength;
+      return band;
+    }
+
+    private void readRow(int y, byte[] dest, Scratch s) {
+      final int width = image.getWidth();
+      int[] pixels;
+      int off;
+      int type = image.getType();
+      if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+          && image.getRaster().getDataBuffer() instanceof DataBufferInt
+          && image.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) image.getSampleModel();
+        DataBufferInt db = (DataBufferInt) image.getRaster().getDataBuffer();
+        pixels = db.getData();
+        off = db.getOffset() + (y - image.getRaster().getSampleModelTranslateY()) * sm.getScanlineStride()
+            - image.getRaster().getSampleModelTranslateX();
+        if (type == BufferedImage.TYPE_INT_RGB && encodeAlpha) {
+          unpack(pixels, off, width, dest, true, true);
+          return;
+        }
+      } else {
+        pixels = s.rgb;
+        off = 0;
+        image.getRGB(0, y, width, 1, pixels, 0, width);
+      }
+      unpack(pixels, off, width, dest, encodeAlpha, false);
+    }
+
+    private void unpack(int[] pixels, int off, int width, byte[] dest, boolean alpha,
+        boolean opaque) {
+      int d = 0;
+      for (int x = 0; x < width; x++) {
+        int p = pixels[off + x];
+        dest[d++] = (byte) (p >> 16);
+        dest[d++] = (byte) (p >> 8);
+        dest[d++] = (byte) p;
+        if (alpha) {
+          dest[d++] = opaque ? (byte) 0xff : (byte) (p >>> 24);
+        }
+      }
+    }
+
+    /**
+     * Filter one row into the raw buffer.
+     *
+     * @return new position in the raw buffer
+     */
+    private int filterRow(byte[] cur, byte[] prior, int rowBytes, int bpp, Scratch s, int pos) {
+      byte[] raw = s.raw;
+      if (!adaptiveFilter) {
+        raw[pos++] = FILTER_NONE;
+        System.arraycopy(cur, 0, raw, pos, rowBytes);
+        return pos + rowBytes;
+      }
+
+      byte[][] c = s.candidates;
+      long[] cost = s.cost;
+      Arrays.fill(cost, 0);
+      for (int i = 0; i < rowBytes; i++) {
+        int x = cur[i] & 0xff;
+        int a = i >= bpp ? cur[i - bpp] & 0xff : 0;
+        int b = prior[i] & 0xff;
+        int cc = i >= bpp ? prior[i - bpp] & 0xff : 0;
+
+        byte f0 = (byte) x;
+        byte f1 = (byte) (x - a);
+        byte f2 = (byte) (x - b);
+        byte f3 = (byte) (x - ((a + b) >> 1));
+        byte f4 = (byte) (x - paeth(a, b, cc));
+        c[0][i] = f0;
+        c[1][i] = f1;
+        c[2][i] = f2;
+        c[3][i] = f3;
+        c[4][i] = f4;
+        cost[0] += Math.abs(f0);
+        cost[1] += Math.abs(f1);
+        cost[2] += Math.abs(f2);
+        cost[3] += Math.abs(f3);
+        cost[4] += Math.abs(f4);
+      }
+
+      int best = FILTER_NONE;
+      for (int f = FILTER_SUB; f <= FILTER_PAETH; f++) {
+        if (cost[f] < cost[best]) {
+          best = f;
+        }
+      }
+      raw[pos++] = (byte) best;
+      System.arraycopy(c[best], 0, raw, pos, rowBytes);
+      return pos + rowBytes;
+    }
+  }
+
+  private static int paeth(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    } else if (pb <= pc) {
+      return b;
+    } else {
+      return c;
+    }
+  }
+}
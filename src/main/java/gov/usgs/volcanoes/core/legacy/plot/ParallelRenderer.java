@@ -0,0 +1,231 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import gov.usgs.volcanoes.core.legacy.plot.render.FrameRenderer;
+import gov.usgs.volcanoes.core.legacy.plot.render.Renderer;
+import gov.usgs.volcanoes.core.legacy.plot.render.TextRenderer;
+import gov.usgs.volcanoes.core.util.SharedExecutor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the FrameRenderers of a Plot concurrently.
+ *
+ * <p>Each FrameRenderer draws on a worker thread into its own tile, which
+ * covers its graph area widened by the plot's tile insets. Tiles start filled
+ * with the plot background, so anti-aliased edges blend exactly as they would
+ * on the plot itself. Tiles are then composited in declared order, copying
+ * only pixels which differ from the background; other renderers are drawn
+ * in place between them. When renderers do not overlap and stay within their
+ * tiles the result is identical to serial rendering.
+ *
+ * <p>Only images with an opaque background, packed int pixels, and an
+ * identity transform are rendered this way, and never from a worker thread.
+ */
+class ParallelRenderer {
+  private ParallelRenderer() {}
+
+  /**
+   * Can this plot be rendered in parallel onto this image?
+   *
+   * @param plot the plot
+   * @param image the destination image
+   * @param g graphics context for the image
+   * @return true if parallel rendering is possible and worthwhile
+   */
+  static boolean canRender(Plot plot, BufferedImage image, Graphics2D g) {
+    if (SharedExecutor.isWorker()) {
+      return false;
+    }
+    Color bg = plot.getBackgroundColor();
+    if (bg == null || bg.getAlpha() != 255) {
+      return false;
+    }
+    int type = image.getType();
+    if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+      return false;
+    }
+    if (!g.getTransform().isIdentity() || g.getClip() != null) {
+      return false;
+    }
+
+    int frames = 0;
+    for (Renderer renderer : plot.getRenderers()) {
+      if (renderer instanceof FrameRenderer) {
+        frames++;
+      }
+    }
+    return frames > 1;
+  }
+
+  /**
+   * Render the plot.
+   *
+   * @param plot the plot
+   * @param image the destination image
+   * @param g graphics context for the image
+   * @throws PlotException if a renderer fails
+   */
+  static void render(Plot plot, BufferedImage image, Graphics2D g) throws PlotException {
+    final Color bg = plot.getBackgroundColor();
+    final boolean alpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+    final RenderingHints hints = (RenderingHints) g.getRenderingHints().clone();
+    final Rectangle plotBounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+    final Insets insets = plot.getTileInsets();
+    final List<Renderer> renderers = new ArrayList<Renderer>(plot.getRenderers());
+
+    g.setColor(bg);
+    g.fillRect(0, 0, plotBounds.width, plotBounds.height);
+    g.setColor(Color.black);
+
+    List<Future<Tile>> tiles = new ArrayList<Future<Tile>>(renderers.size());
+    for (Renderer renderer : renderers) {
+      Future<Tile> tile = null;
+      if (renderer instanceof FrameRenderer) {
+        FrameRenderer fr = (FrameRenderer) renderer;
+        Rectangle bounds = new Rectangle(fr.getGraphX() - insets.left, fr.getGraphY() - insets.top,
+            fr.getGraphWidth() + insets.left + insets.right,
+            fr.getGraphHeight() + insets.top + insets.bottom).intersection(plotBounds);
+        if (!bounds.isEmpty()) {
+          tile = SharedExecutor.compute().submit(new TileTask(fr, bounds, bg, alpha, hints));
+        }
+      }
+      tiles.add(tile);
+    }
+
+    try {
+      for (int i = 0; i < renderers.size(); i++) {
+        Future<Tile> future = tiles.get(i);
+        if (future == null) {
+          Renderer renderer = renderers.get(i);
+          if (renderer instanceof TextRenderer) {
+            ((TextRenderer) renderer).antiAlias = true;
+          }
+          renderer.render(g);
+          continue;
+        }
+
+        Tile tile = future.get();
+        tiles.set(i, null);
+        try {
+          tile.compositeOnto(image);
+        } finally {
+          tile.surface.release();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PlotException("Interrupted while rendering");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new PlotException(String.valueOf(cause));
+    } finally {
+      for (Future<Tile> future : tiles) {
+        if (future != null && !future.cancel(false)) {
+          try {
+            future.get().surface.release();
+          } catch (Exception e) {
+            // failed tiles hold no surface
+          }
+        }
+      }
+    }
+  }
+
+  private static class TileTask implements Callable<Tile> {
+    private final FrameRenderer renderer;
+    private final Rectangle bounds;
+    private final Color bg;
+    private final boolean alpha;
+    private final RenderingHints hints;
+
+    TileTask(FrameRenderer renderer, Rectangle bounds, Color bg, boolean alpha,
+        RenderingHints hints) {
+      this.renderer = renderer;
+      this.bounds = bounds;
+      this.bg = bg;
+      this.alpha = alpha;
+      this.hints = hints;
+    }
+
+    public Tile call() {
+      RenderSurface surface =
+          RenderSurfacePool.getShared().acquire(bounds.width, bounds.height, alpha);
+      Graphics2D g = surface.createGraphics();
+      boolean rendered = false;
+      try {
+        g.setRenderingHints(hints);
+        g.setColor(bg);
+        g.fillRect(0, 0, bounds.width, bounds.height);
+        int[] pixel = new int[1];
+        surface.getImage().getRaster().getDataElements(0, 0, pixel);
+
+        g.translate(-bounds.x, -bounds.y);
+        g.setColor(Color.black);
+        renderer.render(g);
+        rendered = true;
+        return new Tile(surface, bounds, pixel[0]);
+      } finally {
+        g.dispose();
+        if (!rendered) {
+          surface.release();
+        }
+      }
+    }
+  }
+
+  private static class Tile {
+    final RenderSurface surface;
+    final Rectangle bounds;
+    final int background;
+
+    Tile(RenderSurface surface, Rectangle bounds, int background) {
+      this.surface = surface;
+      this.bounds = bounds;
+      this.background = background;
+    }
+
+    /**
+     * Copy every pixel which is not background onto the destination.
+     */
+    void compositeOnto(BufferedImage image) {
+      Raster src = surface.getImage().getRaster();
+      WritableRaster dst = image.getRaster();
+      int w = bounds.width;
+      int[] srcRow = new int[w];
+      int[] dstRow = new int[w];
+      for (int y = 0; y < bounds.height; y++) {
+        src.getDataElements(0, y, w, 1, srcRow);
+        int first = 0;
+        while (first < w && srcRow[first] == background) {
+          first++;
+        }
+        if (first == w) {
+          continue;
+        }
+        int dy = bounds.y + y;
+        dst.getDataElements(bounds.x, dy, w, 1, dstRow);
+        for (int x = first; x < w; x++) {
+          if (srcRow[x] != background) {
+            dstRow[x] = srcRow[x];
+          }
+        }
+        dst.setDataElements(bounds.x, dy, w, 1, dstRow);
+      }
+    }
+  }
+}
@@ -1,7 +1,5 @@
 package gov.usgs.volcanoes.core.legacy.plot;
 
-import gov.usgs.volcanoes.core.contrib.PngEncoder;
-import gov.usgs.volcanoes.core.contrib.PngEncoderB;
 import gov.usgs.volcanoes.core.legacy.plot.render.Renderer;
 import gov.usgs.volcanoes.core.legacy.plot.render.TextRenderer;
 
@@ -10,16 +8,19 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Insets;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.print.Book;
 import java.awt.print.PageFormat;
 import java.awt.print.Paper;
 import java.awt.print.Printable;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -66,6 +67,8 @@ public class Plot implements Printable {
   protected static final Logger LOGGER = LoggerFactory.getLogger(Plot.class);
   private Dimension size; // plot size in pixels
   private Color backgroundColor;
+  private boolean parallel;
+  private Insets tileInsets;
   protected List<Renderer> renderers;
 
   /**
@@ -85,6 +88,7 @@ public class Plot implements Printable {
     size = new Dimension(w, h);
     renderers = new ArrayList<Renderer>();
     backgroundColor = Color.WHITE;
+    tileInsets = new Insets(20, 100, 50, 100);
   }
 
   /**
@@ -132,6 +136,49 @@ public class Plot implements Printable {
     return backgroundColor;
   }
 
+  /**
+   * Sets parallel rendering. When set, images with an opaque background are
+   * rendered with each FrameRenderer drawn into its own tile on a worker
+   * thread. Renderers must not overlap or draw outside their tiles.
+   * 
+   * @param parallel true to render FrameRenderers in parallel
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Sets how far past its graph area a FrameRenderer may draw when rendering
+   * in parallel, to make room for axis labels.
+   * 
+   * @param insets the tile insets
+   */
+  public void setTileInsets(Insets insets) {
+    tileInsets = (Insets) insets.clone();
+  }
+
+  public Insets getTileInsets() {
+    return (Insets) tileInsets.clone();
+  }
+
+  /**
+   * Render onto an image, in parallel if enabled and possible.
+   * 
+   * @param image the image
+   * @param g graphics context for the image
+   */
+  private void render(BufferedImage image, Graphics2D g) throws PlotException {
+    if (parallel && ParallelRenderer.canRender(this, image, g)) {
+      ParallelRenderer.render(this, image, g);
+    } else {
+      render(g);
+    }
+  }
+
   /**
    * Perform rendering to buffered image.
    * 
@@ -142,31 +189,76 @@ public class Plot implements Printable {
     int type = (alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
     BufferedImage image = new BufferedImage(size.width, size.height, type);
     Graphics2D imageGraphics = (Graphics2D) image.getGraphics();
-    this.render(imageGraphics);
+    this.render(image, imageGraphics);
     return image;
   }
 
+  /**
+   * Perform rendering to a pooled surface. The caller must release the
+   * surface when done with it.
+   * 
+   * @param pool the pool to acquire the surface from
+   * @param alpha type of surface: true - TYPE_INT_ARGB, false - TYPE_INT_RGB
+   * @return the rendered surface
+   */
+  public RenderSurface render(RenderSurfacePool pool, boolean alpha) throws PlotException {
+    RenderSurface surface = pool.acquire(size.width, size.height, alpha);
+    Graphics2D g = surface.createGraphics();
+    boolean rendered = false;
+    try {
+      if (backgroundColor == null || backgroundColor.getAlpha() != 255) {
+        surface.clear(alpha ? 0 : 0xff000000);
+      }
+      render(surface.getImage(), g);
+      rendered = true;
+    } finally {
+      g.dispose();
+      if (!rendered) {
+        surface.release();
+      }
+    }
+    return surface;
+  }
+
   /**
    * Outputs the plot to a png file.
    * 
    * @param fn the output filename
    */
   public void writePNG(String fn) throws PlotException {
-    BufferedImage image = getAsBufferedImage(true);
-    PngEncoderB png = new PngEncoderB(image, false, PngEncoder.FILTER_NONE, 7);
+    OutputStream out = null;
     try {
-      FileOutputStream out = new FileOutputStream(fn);
-      byte[] bytes = png.pngEncode();
-      out.write(bytes);
-      out.close();
+      out = new BufferedOutputStream(new FileOutputStream(fn), 64 * 1024);
+      writePNG(out);
     } catch (FileNotFoundException e) {
       LOGGER.error(e.getMessage());
       throw new PlotException(e.getMessage());
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          LOGGER.error(e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Outputs the plot as a png to a stream. The stream is not closed.
+   * 
+   * @param out the output stream
+   */
+  public void writePNG(OutputStream out) throws PlotException {
+    RenderSurface surface = render(RenderSurfacePool.getShared(), true);
+    try {
+      new ParallelPngEncoder().encode(surface.getImage(), out, surface.getScratch());
     } catch (IOException e) {
       LOGGER.error(e.getMessage());
       throw new PlotException(e.getMessage());
+    } finally {
+      surface.release();
     }
-
   }
 
   /**
@@ -190,13 +282,13 @@ public class Plot implements Printable {
    * @return the bytes
    */
   public byte[] getPNGBytes() throws PlotException {
-    BufferedImage image = getAsBufferedImage(true);
+    RenderSurface surface = render(RenderSurfacePool.getShared(), true);
     try {
-      PngEncoderB png = new PngEncoderB(image, false, PngEncoder.FILTER_NONE, 7);
-      byte[] bytes = png.pngEncode();
-      return bytes;
+      return surface.encodePNG(new ParallelPngEncoder());
     } catch (Exception e) {
       e.printStackTrace();
+    } finally {
+      surface.release();
     }
     return null;
   }
@@ -1,8 +1,6 @@
 package gov.usgs.volcanoes.core.legacy.plot;
 
 import gov.usgs.volcanoes.core.configfile.ConfigFile;
-import gov.usgs.volcanoes.core.contrib.PngEncoder;
-import gov.usgs.volcanoes.core.contrib.PngEncoderB;
 import gov.usgs.volcanoes.core.legacy.plot.color.ColorCycler;
 import gov.usgs.volcanoes.core.legacy.plot.color.ColorParser;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.SmartTick;
@@ -24,6 +22,7 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -31,6 +30,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -675,10 +675,8 @@ public class Plotter {
    */
   protected void writePNG(String fn) {
     try {
-      PngEncoderB png = new PngEncoderB(image, false, PngEncoder.FILTER_NONE, 7);
-      FileOutputStream out = new FileOutputStream(fn);
-      byte[] bytes = png.pngEncode();
-      out.write(bytes);
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(fn), 64 * 1024);
+      new ParallelPngEncoder().encode(image, out);
       out.close();
     } catch (Exception e) {
       e.printStackTrace();
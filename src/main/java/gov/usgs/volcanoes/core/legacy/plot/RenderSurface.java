@@ -0,0 +1,181 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A reusable render target checked out of a {@link RenderSurfacePool}. A
+ * surface wraps a window of a larger pooled image, sized exactly to the
+ * request, along with PNG encoder scratch space and an output buffer.
+ *
+ * <p>A surface belongs to the thread that acquired it until it is released.
+ * Nothing obtained from it, including the image, may be used after release.
+ */
+public class RenderSurface {
+  private final RenderSurfacePool pool;
+  private final BufferedImage backing;
+  private final boolean alpha;
+  private BufferedImage image;
+  private ParallelPngEncoder.Scratch scratch;
+  private ByteArrayOutputStream buffer;
+  volatile boolean checkedOut;
+
+  RenderSurface(RenderSurfacePool pool, int width, int height, boolean alpha) {
+    this.pool = pool;
+    this.alpha = alpha;
+    backing = new BufferedImage(width, height,
+        alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+  }
+
+  /**
+   * Resize the visible window. Called by the pool on checkout.
+   *
+   * @param width requested width, no larger than the backing image
+   * @param height requested height, no larger than the backing image
+   */
+  void setSize(int width, int height) {
+    if (image == null || image.getWidth() != width || image.getHeight() != height) {
+      if (width == backing.getWidth() && height == backing.getHeight()) {
+        image = backing;
+      } else {
+        image = backing.getSubimage(0, 0, width, height);
+      }
+    }
+  }
+
+  /**
+   * Gets the image, exactly the size requested.
+   *
+   * @return the image
+   */
+  public BufferedImage getImage() {
+    return image;
+  }
+
+  public int getWidth() {
+    return image.getWidth();
+  }
+
+  public int getHeight() {
+    return image.getHeight();
+  }
+
+  public boolean hasAlpha() {
+    return alpha;
+  }
+
+  int getCapacityWidth() {
+    return backing.getWidth();
+  }
+
+  int getCapacityHeight() {
+    return backing.getHeight();
+  }
+
+  /**
+   * Gets the pixel array behind the image. The window starts at index 0 and
+   * rows are {@link #getScanlineStride()} apart.
+   *
+   * @return the packed pixels
+   */
+  public int[] getPixels() {
+    return ((DataBufferInt) backing.getRaster().getDataBuffer()).getData();
+  }
+
+  public int getScanlineStride() {
+    return backing.getWidth();
+  }
+
+  /**
+   * Creates a fresh Graphics2D over the image. The caller must dispose of it.
+   *
+   * @return the graphics context
+   */
+  public Graphics2D createGraphics() {
+    return image.createGraphics();
+  }
+
+  /**
+   * Fills the visible window with one color by writing the raster directly.
+   *
+   * @param argb the packed color
+   */
+  public void clear(int argb) {
+    int[] data = getPixels();
+    int stride = getScanlineStride();
+    int width = image.getWidth();
+    int height = image.getHeight();
+    if (width == stride) {
+      Arrays.fill(data, 0, width * height, argb);
+    } else {
+      for (int y = 0, off = 0; y < height; y++, off += stride) {
+        Arrays.fill(data, off, off + width, argb);
+      }
+    }
+  }
+
+  /**
+   * Gets PNG encoder scratch space kept with this surface.
+   *
+   * @return the scratch space
+   */
+  public ParallelPngEncoder.Scratch getScratch() {
+    if (scratch == null) {
+      scratch = new ParallelPngEncoder.Scratch(ParallelPngEncoder.DEFAULT_COMPRESSION_LEVEL);
+    }
+    return scratch;
+  }
+
+  /**
+   * Gets an empty output buffer kept with this surface. Its capacity grows to
+   * fit the largest encode and is retained.
+   *
+   * @return the reset buffer
+   */
+  public ByteArrayOutputStream getOutputBuffer() {
+    if (buffer == null) {
+      buffer = new ByteArrayOutputStream(64 * 1024);
+    }
+    buffer.reset();
+    return buffer;
+  }
+
+  /**
+   * Encode the image as a PNG using this surface's buffers.
+   *
+   * @param encoder the encoder
+   * @return the PNG bytes
+   * @throws IOException if encoding fails
+   */
+  public byte[] encodePNG(ParallelPngEncoder encoder) throws IOException {
+    ByteArrayOutputStream out = getOutputBuffer();
+    encoder.encode(image, out, getScratch());
+    return out.toByteArray();
+  }
+
+  /**
+   * Return this surface to its pool.
+   */
+  public void release() {
+    pool.release(this);
+  }
+
+  /**
+   * Release native resources held by this surface.
+   */
+  void dispose() {
+    if (scratch != null) {
+      scratch.end();
+      scratch = null;
+    }
+    buffer = null;
+  }
+
+  long getBytes() {
+    return 4L * backing.getWidth() * backing.getHeight();
+  }
+}
@@ -0,0 +1,178 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of {@link RenderSurface}s bucketed by size. Requested dimensions are
+ * rounded up to a multiple of {@link #BUCKET} pixels, so plots of similar size
+ * share backing images. Idle surfaces are limited per bucket and in total
+ * bytes; surfaces released past either limit are discarded.
+ *
+ * <p>The pool is thread-safe. Each surface is confined to one thread between
+ * acquire and release.
+ */
+public class RenderSurfacePool {
+  public static final int BUCKET = 64;
+  public static final int DEFAULT_MAX_IDLE_PER_BUCKET = 4;
+  public static final long DEFAULT_MAX_IDLE_BYTES = 256L * 1024 * 1024;
+
+  private static final RenderSurfacePool SHARED = new RenderSurfacePool();
+
+  private final ConcurrentHashMap<Long, Queue<RenderSurface>> idle;
+  private final int maxIdlePerBucket;
+  private final long maxIdleBytes;
+  private final AtomicLong idleBytes;
+  private final AtomicLong created;
+  private final AtomicLong reused;
+  private final AtomicLong discarded;
+
+  /**
+   * Creates a pool with default limits.
+   */
+  public RenderSurfacePool() {
+    this(DEFAULT_MAX_IDLE_PER_BUCKET, DEFAULT_MAX_IDLE_BYTES);
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param maxIdlePerBucket idle surfaces kept for each size bucket
+   * @param maxIdleBytes total bytes of idle surfaces kept
+   */
+  public RenderSurfacePool(int maxIdlePerBucket, long maxIdleBytes) {
+    this.maxIdlePerBucket = maxIdlePerBucket;
+    this.maxIdleBytes = maxIdleBytes;
+    idle = new ConcurrentHashMap<Long, Queue<RenderSurface>>();
+    idleBytes = new AtomicLong();
+    created = new AtomicLong();
+    reused = new AtomicLong();
+    discarded = new AtomicLong();
+  }
+
+  /**
+   * Gets the pool shared by Plot.
+   *
+   * @return the shared pool
+   */
+  public static RenderSurfacePool getShared() {
+    return SHARED;
+  }
+
+  private static int bucket(int n) {
+    return (n + BUCKET - 1) / BUCKET * BUCKET;
+  }
+
+  private static Long key(int width, int height, boolean alpha) {
+    return ((long) width << 32) | ((long) height << 1) | (alpha ? 1 : 0);
+  }
+
+  /**
+   * Checks out a surface of exactly the given size. The contents are
+   * undefined; clear it or paint every pixel.
+   *
+   * @param width width in pixels
+   * @param height height in pixels
+   * @param alpha true for TYPE_INT_ARGB, false for TYPE_INT_RGB
+   * @return the surface
+   */
+  public RenderSurface acquire(int width, int height, boolean alpha) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("invalid surface size " + width + "x" + height);
+    }
+
+    int bw = bucket(width);
+    int bh = bucket(height);
+    RenderSurface surface = null;
+    Queue<RenderSurface> queue = idle.get(key(bw, bh, alpha));
+    if (queue != null) {
+      surface = queue.poll();
+    }
+    if (surface != null) {
+      idleBytes.addAndGet(-surface.getBytes());
+      reused.incrementAndGet();
+    } else {
+      surface = new RenderSurface(this, bw, bh, alpha);
+      created.incrementAndGet();
+    }
+    surface.checkedOut = true;
+    surface.setSize(width, height);
+    return surface;
+  }
+
+  /**
+   * Returns a surface to the pool.
+   *
+   * @param surface a surface acquired from this pool
+   */
+  public void release(RenderSurface surface) {
+    if (!surface.checkedOut) {
+      throw new IllegalStateException("surface is not checked out");
+    }
+    surface.checkedOut = false;
+
+    Long key = key(surface.getCapacityWidth(), surface.getCapacityHeight(), surface.hasAlpha());
+    Queue<RenderSurface> queue = idle.get(key);
+    if (queue == null) {
+      queue = new ConcurrentLinkedQueue<RenderSurface>();
+      Queue<RenderSurface> q = idle.putIfAbsent(key, queue);
+      if (q != null) {
+        queue = q;
+      }
+    }
+
+    long bytes = surface.getBytes();
+    if (queue.size() >= maxIdlePerBucket) {
+      discard(surface);
+      return;
+    }
+    if (idleBytes.addAndGet(bytes) > maxIdleBytes) {
+      idleBytes.addAndGet(-bytes);
+      discard(surface);
+      return;
+    }
+    queue.offer(surface);
+  }
+
+  private void discard(RenderSurface surface) {
+    surface.dispose();
+    discarded.incrementAndGet();
+  }
+
+  /**
+   * Discards all idle surfaces.
+   */
+  public void clear() {
+    for (Queue<RenderSurface> queue : idle.values()) {
+      RenderSurface surface;
+      while ((surface = queue.poll()) != null) {
+        idleBytes.addAndGet(-surface.getBytes());
+        surface.dispose();
+      }
+    }
+  }
+
+  public long getIdleBytes() {
+    return idleBytes.get();
+  }
+
+  public long getCreated() {
+    return created.get();
+  }
+
+  public long getReused() {
+    return reused.get();
+  }
+
+  public long getDiscarded() {
+    return discarded.get();
+  }
+
+  @Override
+  public String toString() {
+    return "RenderSurfacePool: created=" + getCreated() + " reused=" + getReused() + " discarded="
+        + getDiscarded() + " idleBytes=" + getIdleBytes();
+  }
+}
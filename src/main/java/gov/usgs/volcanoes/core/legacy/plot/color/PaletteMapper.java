@@ -0,0 +1,175 @@
+package gov.usgs.volcanoes.core.legacy.plot.color;
+
+import gov.usgs.volcanoes.core.util.SharedExecutor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Maps a grid of values onto palette indices [0, 254] of an indexed image,
+ * linearly between a minimum and maximum power. Index 255 is left for
+ * transparency.</p>
+ *
+ * <p>Power may be the value itself or a decibel-style log of it. Instead of
+ * evaluating the mapping for every cell, the value at which each index begins
+ * is precomputed, so a cell costs a short binary search and no log10. Large
+ * grids are mapped in bands on the shared worker pool, unless already on
+ * it.</p>
+ */
+public class PaletteMapper {
+  public static final int LEVELS = 255;
+
+  private static final int BAND_CELLS = 64 * 1024;
+
+  private final IndexColorModel palette;
+  private final double slope;
+  private final double intercept;
+  private final double multiplier;
+  private final double reference;
+  private final boolean log;
+
+  /** thresholds[k] is the smallest value mapped to index k or above. */
+  private final double[] thresholds;
+
+  private PaletteMapper(IndexColorModel palette, double minPower, double maxPower, boolean log,
+      double multiplier, double reference) {
+    this.palette = palette;
+    this.log = log;
+    this.multiplier = multiplier;
+    this.reference = reference;
+    slope = (LEVELS - 1) / (maxPower - minPower);
+    intercept = -slope * minPower;
+
+    boolean monotonic = slope > 0 && !Double.isInfinite(slope) && (!log || multiplier > 0);
+    if (monotonic) {
+      thresholds = new double[LEVELS];
+      thresholds[0] = Double.NEGATIVE_INFINITY;
+      for (int k = 1; k < LEVELS; k++) {
+        double power = (k - intercept) / slope;
+        thresholds[k] = log ? reference * Math.pow(10, power / multiplier) : power;
+      }
+    } else {
+      thresholds = null;
+    }
+  }
+
+  /**
+   * Map values directly to power.
+   *
+   * @param palette palette of the image
+   * @param minPower power mapped to index 0
+   * @param maxPower power mapped to index 254
+   * @return the mapper
+   */
+  public static PaletteMapper linear(IndexColorModel palette, double minPower, double maxPower) {
+    return new PaletteMapper(palette, minPower, maxPower, false, 1, 1);
+  }
+
+  /**
+   * Map values to power as multiplier * log10(value / reference).
+   *
+   * @param palette palette of the image
+   * @param minPower power mapped to index 0
+   * @param maxPower power mapped to index 254
+   * @param multiplier log multiplier
+   * @param reference reference value
+   * @return the mapper
+   */
+  public static PaletteMapper log(IndexColorModel palette, double minPower, double maxPower,
+      double multiplier, double reference) {
+    return new PaletteMapper(palette, minPower, maxPower, true, multiplier, reference);
+  }
+
+  /**
+   * Get the palette index for a value.
+   *
+   * @param value the value
+   * @return index in [0, 254]
+   */
+  public int index(double value) {
+    if (thresholds == null) {
+      double power = log ? multiplier * Math.log10(value / reference) : value;
+      double index = slope * power + intercept;
+      if (index < 0) {
+        index = 0;
+      } else if (index > LEVELS - 1) {
+        index = LEVELS - 1;
+      }
+      return (int) index;
+    }
+
+    if (!(value >= thresholds[1])) {
+      return 0;
+    }
+    int lo = 1;
+    int hi = LEVELS - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (value >= thresholds[mid]) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Map a grid to an indexed image. Image row r holds values[values.length - 1 - r],
+   * so the first row of values is at the bottom.
+   *
+   * @param values grid of values, all rows the same length
+   * @return the image
+   */
+  public BufferedImage map(final double[][] values) {
+    final int height = values.length;
+    final int width = values[0].length;
+    BufferedImage image =
+        new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+    final byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+    int rowsPerBand = Math.max(1, BAND_CELLS / Math.max(1, width));
+    if (rowsPerBand >= height || SharedExecutor.isWorker()) {
+      mapRows(values, pixels, width, 0, height);
+      return image;
+    }
+
+    List<Future<?>> bands = new ArrayList<Future<?>>();
+    for (int start = 0; start < height; start += rowsPerBand) {
+      final int from = start;
+      final int to = Math.min(height, start + rowsPerBand);
+      bands.add(SharedExecutor.compute().submit(new Runnable() {
+        public void run() {
+          mapRows(values, pixels, width, from, to);
+        }
+      }));
+    }
+    try {
+      for (Future<?> band : bands) {
+        band.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while mapping", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("mapping failed", e.getCause());
+    }
+    return image;
+  }
+
+  private void mapRows(double[][] values, byte[] pixels, int width, int from, int to) {
+    int height = values.length;
+    for (int r = from; r < to; r++) {
+      double[] row = values[height - 1 - r];
+      int off = r * width;
+      for (int c = 0; c < width; c++) {
+        pixels[off + c] = (byte) index(row[c]);
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package gov.usgs.volcanoes.core.legacy.plot.decorate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Tick positions and labels for a time axis, memoized across renders.</p>
+ *
+ * <p>Choosing time ticks walks every candidate interval with calendar
+ * arithmetic and formats a date per tick, which costs tens of microseconds for
+ * each axis. Panels drawn over and over with the same extents, tick count and
+ * month label format get the same layout from a shared LRU instead. The
+ * arrays of a layout are shared and must not be modified.</p>
+ */
+public final class AxisLayout {
+  public static final int CACHE_SIZE = 512;
+
+  private static final Map<Key, AxisLayout> CACHE =
+      new LinkedHashMap<Key, AxisLayout>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, AxisLayout> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  private final double[] ticks;
+  private final String[] labels;
+
+  private AxisLayout(double[] ticks, String[] labels) {
+    this.ticks = ticks;
+    this.labels = labels;
+  }
+
+  /**
+   * Get the layout of a time axis, as from {@link SmartTick#autoTimeTick}.
+   *
+   * @param ts the start time as a j2ksec
+   * @param te the end time as a j2ksec
+   * @param ticks the desired number of ticks, usually derived from the axis length
+   * @return the layout
+   */
+  public static AxisLayout time(double ts, double te, int ticks) {
+    String format = SmartTick.getMonthTickerLabelFormatString();
+    Key key = new Key(ts, te, ticks, format);
+    AxisLayout layout;
+    synchronized (CACHE) {
+      layout = CACHE.get(key);
+    }
+    if (layout != null) {
+      return layout;
+    }
+
+    Object[] stt = SmartTick.computeTimeTicks(ts, te, ticks);
+    layout = new AxisLayout((double[]) stt[0], (String[]) stt[1]);
+    // labels made while the format changed are not kept under either format
+    if (format.equals(SmartTick.getMonthTickerLabelFormatString())) {
+      synchronized (CACHE) {
+        CACHE.put(key, layout);
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * Discard all cached layouts.
+   */
+  public static void clear() {
+    synchronized (CACHE) {
+      CACHE.clear();
+    }
+  }
+
+  /**
+   * Get the tick values, in j2ksec.
+   *
+   * @return shared tick array
+   */
+  public double[] getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Get the tick labels.
+   *
+   * @return shared label array
+   */
+  public String[] getLabels() {
+    return labels;
+  }
+
+  private static class Key {
+    private final double ts;
+    private final double te;
+    private final int ticks;
+    private final String format;
+
+    Key(double ts, double te, int ticks, String format) {
+      this.ts = ts;
+      this.te = te;
+      this.ticks = ticks;
+      this.format = format;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      return Double.doubleToLongBits(ts) == Double.doubleToLongBits(k.ts)
+          && Double.doubleToLongBits(te) == Double.doubleToLongBits(k.te) && ticks == k.ticks
+          && format.equals(k.format);
+    }
+
+    @Override
+    public int hashCode() {
+      long h = Double.doubleToLongBits(ts);
+      h = 31 * h + Double.doubleToLongBits(te);
+      h = 31 * h + ticks;
+      h = 31 * h + format.hashCode();
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
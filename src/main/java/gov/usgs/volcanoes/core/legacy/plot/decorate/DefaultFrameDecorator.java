@@ -266,7 +266,8 @@ public class DefaultFrameDecorator extends FrameDecorator {
         if (hTicks == -1) {
           hTicks = fr.getGraphWidth() / 108;
         }
-        stt = SmartTick.autoTimeTick(fr.getMinXAxis(), fr.getMaxXAxis(), hTicks);
+        AxisLayout layout = AxisLayout.time(fr.getMinXAxis(), fr.getMaxXAxis(), hTicks);
+        stt = new Object[] {layout.getTicks(), layout.getLabels()};
         break;
       default:
         break;
@@ -146,7 +146,8 @@ public class SmartTick {
 
   /**
    * Generates time ticks over a specified time interval. The ticks parameter
-   * is a suggestion: it is not guaranteed to produce that many ticks.
+   * is a suggestion: it is not guaranteed to produce that many ticks. Results
+   * are memoized; see {@link AxisLayout}.
    * 
    * @param ts the start time as a j2ksec
    * @param te the end time as a j2ksec
@@ -154,12 +155,26 @@ public class SmartTick {
    * @return the dates (in j2ksecs) of the ticks
    */
   public static Object[] autoTimeTick(double ts, double te, int ticks) {
+    AxisLayout layout = AxisLayout.time(ts, te, ticks);
+    return new Object[] {layout.getTicks().clone(), layout.getLabels().clone()};
+  }
+
+  /**
+   * Generates time ticks without consulting the cache.
+   * 
+   * @param ts the start time as a j2ksec
+   * @param te the end time as a j2ksec
+   * @param ticks the desired number of ticks
+   * @return the dates (in j2ksecs) of the ticks
+   */
+  static Object[] computeTimeTicks(double ts, double te, int ticks) {
     int ti = -1;
     long mindt = Integer.MAX_VALUE;
     for (int i = 0; i < tickers.length; i++) {
-      if (Math.abs(tickers[i].numTicks(ts, te) - ticks) < mindt) {
+      long dt = Math.abs(tickers[i].numTicks(ts, te) - ticks);
+      if (dt < mindt) {
         ti = i;
-        mindt = Math.abs(tickers[i].numTicks(ts, te) - ticks);
+        mindt = dt;
       }
     }
     return tickers[ti].getTicks(ts, te);
@@ -187,7 +202,7 @@ public class SmartTick {
      * 
      * @param s label format
      */
-    public void setLabelFormatString(String s) {
+    public synchronized void setLabelFormatString(String s) {
       labelFormatString = s;
       dateFormat = new SimpleDateFormat(labelFormatString);
       dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -236,9 +251,12 @@ public class SmartTick {
       int nt = (int) numTicks(ts, te);
       double[] ticks = new double[nt];
       String[] labels = new String[nt];
-      for (int i = 0; i < nt; i++) {
-        ticks[i] = minTick + i * interval;
-        labels[i] = dateFormat.format(J2kSec.asDate(ticks[i]));
+      // SimpleDateFormat is not thread-safe
+      synchronized (this) {
+        for (int i = 0; i < nt; i++) {
+          ticks[i] = minTick + i * interval;
+          labels[i] = dateFormat.format(J2kSec.asDate(ticks[i]));
+        }
       }
       return new Object[] {ticks, labels};
     }
@@ -602,6 +620,22 @@ public class SmartTick {
     setLabelFormatString(MonthTicker.class, s);
   }
 
+  /**
+   * Get label format string of the Month Tickers.
+   * 
+   * @return label format String
+   */
+  static String getMonthTickerLabelFormatString() {
+    for (TimeTicker t : tickers) {
+      if (t instanceof MonthTicker) {
+        synchronized (t) {
+          return t.labelFormatString;
+        }
+      }
+    }
+    return null;
+  }
+
   /** Standard time tickers. */
   private static final TimeTicker[] tickers =
       new TimeTicker[] {new YearTicker(10), new YearTicker(5), new YearTicker(4), new YearTicker(3),
@@ -0,0 +1,91 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * <p>A bitmap of the pixels of a composite image already covered by tiles.</p>
+ *
+ * <p>A pixel is marked only when a rectangle covers all of it, and a
+ * rectangle is covered only when every pixel it touches is marked, so
+ * <code>covers()</code> never claims more than the union of the rectangles
+ * added. Unlike <code>java.awt.geom.Area</code> the cost of each test is
+ * bounded by the rectangle's size, not by the number of rectangles
+ * added.</p>
+ */
+final class CoverageMask {
+  private final int width;
+  private final int height;
+  private final int words;
+  private final long[] bits;
+
+  /**
+   * Constructor.
+   *
+   * @param width width in pixels
+   * @param height height in pixels
+   */
+  CoverageMask(int width, int height) {
+    this.width = Math.max(width, 0);
+    this.height = Math.max(height, 0);
+    words = (this.width + 63) >>> 6;
+    bits = new long[words * this.height];
+  }
+
+  /**
+   * Mark the pixels entirely inside a rectangle.
+   *
+   * @param rect the rectangle, in pixels
+   */
+  void add(Rectangle2D.Double rect) {
+    int x0 = Math.max(0, (int) Math.ceil(rect.x));
+    int y0 = Math.max(0, (int) Math.ceil(rect.y));
+    int x1 = Math.min(width, (int) Math.floor(rect.x + rect.width));
+    int y1 = Math.min(height, (int) Math.floor(rect.y + rect.height));
+    if (x0 >= x1) {
+      return;
+    }
+    for (int y = y0; y < y1; y++) {
+      int row = y * words;
+      for (int w = x0 >>> 6; w <= (x1 - 1) >>> 6; w++) {
+        bits[row + w] |= mask(w, x0, x1);
+      }
+    }
+  }
+
+  /**
+   * Is every pixel a rectangle touches inside the image already marked?
+   *
+   * @param rect the rectangle, in pixels
+   * @return true if the rectangle adds nothing
+   */
+  boolean covers(Rectangle2D.Double rect) {
+    int x0 = Math.max(0, (int) Math.floor(rect.x));
+    int y0 = Math.max(0, (int) Math.floor(rect.y));
+    int x1 = Math.min(width, (int) Math.ceil(rect.x + rect.width));
+    int y1 = Math.min(height, (int) Math.ceil(rect.y + rect.height));
+    if (x0 >= x1 || y0 >= y1) {
+      return false;
+    }
+    for (int y = y0; y < y1; y++) {
+      int row = y * words;
+      for (int w = x0 >>> 6; w <= (x1 - 1) >>> 6; w++) {
+        long m = mask(w, x0, x1);
+        if ((bits[row + w] & m) != m) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Bits of word w which lie in [x0, x1). */
+  private static long mask(int w, int x0, int x1) {
+    int from = Math.max(x0 - (w << 6), 0);
+    int to = Math.min(x1 - (w << 6), 64);
+    long m = -1L << from;
+    if (to < 64) {
+      m &= (1L << to) - 1;
+    }
+    return m;
+  }
+}
@@ -4,8 +4,10 @@ import gov.usgs.volcanoes.core.CodeTimer;
 import gov.usgs.volcanoes.core.math.proj.GeoRange;
 import gov.usgs.volcanoes.core.math.proj.Projection;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
@@ -30,6 +32,9 @@ public class GeoImage implements Comparable<GeoImage> {
   private int priority = 0;
 
   private BufferedImage image;
+  private BufferedImage[] levels;
+  private String[] levelFiles;
+  private Dimension[] levelSizes;
 
   /**
    * Default constructor
@@ -81,6 +86,56 @@ public class GeoImage implements Comparable<GeoImage> {
     filename = root + File.separatorChar + filename;
   }
 
+  /**
+   * Add a prebuilt pyramid level, as written by <code>JGWToIndex</code>.
+   * 
+   * @param root
+   *            base directory of the level's file, or null
+   * @param is
+   *            comma-separated parameter string: level, file name, and
+   *            optionally pixel width and height, which a loaded level must
+   *            match to be used
+   */
+  public void addLevel(String root, String is) {
+    String[] ss = is.split(",");
+    int level = Integer.parseInt(ss[0].trim());
+    String fn = ss[1].trim();
+    if (root != null)
+      fn = root + File.separatorChar + fn;
+    if (levelFiles == null || level >= levelFiles.length) {
+      levelFiles =
+          levelFiles == null ? new String[level + 1] : Arrays.copyOf(levelFiles, level + 1);
+      levelSizes =
+          levelSizes == null ? new Dimension[level + 1] : Arrays.copyOf(levelSizes, level + 1);
+    }
+    levelFiles[level] = fn;
+    levelSizes[level] = ss.length < 4 ? null
+        : new Dimension(Integer.parseInt(ss[2].trim()), Integer.parseInt(ss[3].trim()));
+  }
+
+  /**
+   * Get the file of a prebuilt pyramid level.
+   * 
+   * @param level the level
+   * @return the file name, or null if the level was not prebuilt
+   */
+  public String getLevelFile(int level) {
+    return levelFiles == null || level >= levelFiles.length ? null : levelFiles[level];
+  }
+
+  /**
+   * Get the size of a prebuilt pyramid level, as listed in the index.
+   * 
+   * @param level the level
+   * @return the size, or null if the level was not prebuilt or listed
+   *         without one
+   */
+  public Dimension getLevelSize(int level) {
+    Dimension size =
+        levelSizes == null || level >= levelSizes.length ? null : levelSizes[level];
+    return size == null ? null : new Dimension(size);
+  }
+
   /**
    * I've tried the following methods of loading images (order by quickness):
    * 0. JPEGCodec 
@@ -134,9 +189,10 @@ public class GeoImage implements Comparable<GeoImage> {
   /**
    * If image stored in memory, remove links to it
    */
-  public void disposeImage() {
+  public synchronized void disposeImage() {
     if (!filename.equals("memory"))
       image = null;
+    levels = null;
   }
 
   /**
@@ -167,13 +223,49 @@ public class GeoImage implements Comparable<GeoImage> {
   /**
    * Get image to draw
    */
-  public BufferedImage getImage() {
+  public synchronized BufferedImage getImage() {
     if (image == null)
       loadImage();
 
     return image;
   }
 
+  /**
+   * Get the image at a pyramid level if it is loaded, without loading it.
+   * 
+   * @param level 0 for full resolution, or a level made by
+   *            <code>GeoImageLoader</code>
+   */
+  synchronized BufferedImage getLoadedImage(int level) {
+    if (level == 0)
+      return image;
+    return levels == null || level >= levels.length ? null : levels[level];
+  }
+
+  synchronized void setLoadedImage(int level, BufferedImage im) {
+    if (level == 0) {
+      image = im;
+      return;
+    }
+    if (levels == null || level >= levels.length)
+      levels = levels == null ? new BufferedImage[level + 1] : Arrays.copyOf(levels, level + 1);
+    levels[level] = im;
+  }
+
+  /**
+   * Get the number of pixels held in memory, over all levels.
+   */
+  synchronized long getLoadedPixels() {
+    long pixels = 0;
+    if (image != null)
+      pixels += (long) image.getWidth() * image.getHeight();
+    if (levels != null)
+      for (BufferedImage im : levels)
+        if (im != null)
+          pixels += (long) im.getWidth() * im.getHeight();
+    return pixels;
+  }
+
   /**
    * Getter for priority
    */
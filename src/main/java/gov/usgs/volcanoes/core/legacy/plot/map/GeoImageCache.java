@@ -0,0 +1,164 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Keeps the most recently drawn <code>GeoImage</code>s decoded, up to a
+ * total number of pixels.</p>
+ *
+ * <p>Lookups and updates are constant time and the total is kept as images
+ * come and go. Images pinned by a composite in progress are passed over when
+ * evicting; the cache may run over its limit until they are unpinned.
+ * Evicted images are disposed so their pixels can be collected.</p>
+ */
+final class GeoImageCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(GeoImageCache.class);
+
+  private final LinkedHashMap<GeoImage, Long> images =
+      new LinkedHashMap<GeoImage, Long>(64, 0.75f, true);
+  private final Map<GeoImage, Integer> pins = new HashMap<GeoImage, Integer>();
+  private long maxSize;
+  private long size;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize maximum total pixels
+   */
+  GeoImageCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Set the maximum total pixels, evicting if needed.
+   *
+   * @param maxSize maximum total pixels
+   */
+  void setMaxSize(long maxSize) {
+    List<GeoImage> evicted;
+    synchronized (this) {
+      this.maxSize = maxSize;
+      evicted = evict();
+    }
+    dispose(evicted);
+  }
+
+  /**
+   * Keep an image from being evicted until it is unpinned. Pins nest.
+   *
+   * @param image the image
+   */
+  synchronized void pin(GeoImage image) {
+    Integer count = pins.get(image);
+    pins.put(image, count == null ? 1 : count + 1);
+  }
+
+  /**
+   * Release one pin on an image.
+   *
+   * @param image the image
+   */
+  synchronized void unpin(GeoImage image) {
+    Integer count = pins.get(image);
+    if (count == null) {
+      return;
+    }
+    if (count == 1) {
+      pins.remove(image);
+    } else {
+      pins.put(image, count - 1);
+    }
+  }
+
+  /**
+   * Record that an image was used at full resolution.
+   *
+   * @param image the image
+   */
+  void touch(GeoImage image) {
+    touch(image, (long) image.getPixelWidth() * image.getPixelHeight());
+  }
+
+  /**
+   * Record that an image was used, adding it if it is new or updating the
+   * pixels it holds, then evict the least recently used unpinned images while
+   * over the limit. Evicted images are disposed outside the lock, since
+   * another thread may hold one while decoding it.
+   *
+   * @param image the image
+   * @param pixels the pixels the image holds in memory
+   */
+  void touch(GeoImage image, long pixels) {
+    List<GeoImage> evicted;
+    synchronized (this) {
+      Long old = images.put(image, pixels);
+      size += pixels - (old == null ? 0 : old);
+      evicted = evict();
+    }
+    dispose(evicted);
+  }
+
+  private static void dispose(List<GeoImage> evicted) {
+    for (GeoImage image : evicted) {
+      image.disposeImage();
+    }
+  }
+
+  private List<GeoImage> evict() {
+    List<GeoImage> evicted = new ArrayList<GeoImage>();
+    Iterator<Map.Entry<GeoImage, Long>> it = images.entrySet().iterator();
+    while (size > maxSize && it.hasNext()) {
+      Map.Entry<GeoImage, Long> entry = it.next();
+      GeoImage image = entry.getKey();
+      if (pins.containsKey(image)) {
+        LOGGER.debug("GeoImageSet Purge: skipped pinned {}", image);
+        continue;
+      }
+      LOGGER.debug("GeoImageSet Purge: {}", image);
+      it.remove();
+      size -= entry.getValue();
+      evicted.add(image);
+    }
+
+    if (size > maxSize) {
+      LOGGER.info("overfull GeoImageCache by {} pixels", size - maxSize);
+    }
+    return evicted;
+  }
+
+  /**
+   * Is an image cached?
+   *
+   * @param image the image
+   * @return true if cached
+   */
+  synchronized boolean contains(GeoImage image) {
+    return images.containsKey(image);
+  }
+
+  /**
+   * Get the number of images cached.
+   *
+   * @return image count
+   */
+  synchronized int count() {
+    return images.size();
+  }
+
+  /**
+   * Get the total pixels of the images cached.
+   *
+   * @return pixel count
+   */
+  synchronized long size() {
+    return size;
+  }
+}
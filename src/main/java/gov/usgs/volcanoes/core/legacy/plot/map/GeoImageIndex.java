@@ -0,0 +1,178 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>An R-tree over the ranges of a list of <code>GeoImage</code>s, bulk
+ * loaded by sort-tile-recursive packing.</p>
+ *
+ * <p>Ranges which cross the antimeridian are indexed as two rectangles, one
+ * either side, the same way <code>GeoRange.overlaps()</code> splits them.
+ * Queries return the images whose ranges overlap, in list order, so callers
+ * see exactly what a linear scan with <code>overlaps()</code> would give.</p>
+ */
+final class GeoImageIndex {
+  private static final int NODE_SIZE = 16;
+
+  private static final Comparator<Node> BY_X = new Comparator<Node>() {
+    public int compare(Node a, Node b) {
+      return Double.compare(a.minX + a.maxX, b.minX + b.maxX);
+    }
+  };
+
+  private static final Comparator<Node> BY_Y = new Comparator<Node>() {
+    public int compare(Node a, Node b) {
+      return Double.compare(a.minY + a.maxY, b.minY + b.maxY);
+    }
+  };
+
+  private final List<GeoImage> images;
+  private final Node root;
+
+  /**
+   * Constructor.
+   *
+   * @param images the images to index; the list must not change afterwards
+   */
+  GeoImageIndex(List<GeoImage> images) {
+    this.images = images;
+    List<Node> level = new ArrayList<Node>(images.size());
+    for (int i = 0; i < images.size(); i++) {
+      for (Rectangle2D.Double rect : split(images.get(i).getRange())) {
+        level.add(new Node(rect, i));
+      }
+    }
+    while (level.size() > NODE_SIZE) {
+      level = pack(level);
+    }
+    root = level.isEmpty() ? null : new Node(level.toArray(new Node[level.size()]));
+  }
+
+  /**
+   * Get the number of images indexed.
+   *
+   * @return image count
+   */
+  int size() {
+    return images.size();
+  }
+
+  /**
+   * Find the images which overlap a range.
+   *
+   * @param range the range
+   * @return overlapping images, in list order
+   */
+  List<GeoImage> query(GeoRange range) {
+    List<GeoImage> result = new ArrayList<GeoImage>();
+    if (root == null) {
+      return result;
+    }
+
+    BitSet hits = new BitSet(images.size());
+    for (Rectangle2D.Double rect : split(range)) {
+      search(root, rect, hits);
+    }
+    for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+      GeoImage gi = images.get(i);
+      if (gi.getRange().overlaps(range)) {
+        result.add(gi);
+      }
+    }
+    return result;
+  }
+
+  private static void search(Node node, Rectangle2D.Double rect, BitSet hits) {
+    for (Node child : node.children) {
+      if (child.minX > rect.x + rect.width || child.maxX < rect.x
+          || child.minY > rect.y + rect.height || child.maxY < rect.y) {
+        continue;
+      }
+      if (child.children == null) {
+        hits.set(child.image);
+      } else {
+        search(child, rect, hits);
+      }
+    }
+  }
+
+  /**
+   * Pack one level of the tree into the next: slice by x, then fill nodes by
+   * y within each slice.
+   */
+  private static List<Node> pack(List<Node> level) {
+    int nodes = (level.size() + NODE_SIZE - 1) / NODE_SIZE;
+    int slices = (int) Math.ceil(Math.sqrt(nodes));
+    int sliceSize = slices * NODE_SIZE;
+
+    Node[] sorted = level.toArray(new Node[level.size()]);
+    Arrays.sort(sorted, BY_X);
+    List<Node> parents = new ArrayList<Node>(nodes);
+    for (int s = 0; s < sorted.length; s += sliceSize) {
+      int sliceEnd = Math.min(sorted.length, s + sliceSize);
+      Arrays.sort(sorted, s, sliceEnd, BY_Y);
+      for (int i = s; i < sliceEnd; i += NODE_SIZE) {
+        parents.add(new Node(Arrays.copyOfRange(sorted, i, Math.min(sliceEnd, i + NODE_SIZE))));
+      }
+    }
+    return parents;
+  }
+
+  /**
+   * Split a range at the antimeridian, as <code>GeoRange.overlaps()</code>
+   * does.
+   */
+  private static Rectangle2D.Double[] split(GeoRange range) {
+    Rectangle2D.Double rect = range.getRectangle();
+    if (rect.x + rect.width <= 180) {
+      return new Rectangle2D.Double[] {rect};
+    }
+    double d = rect.x + rect.width - 180;
+    rect.width = 180 - rect.x;
+    return new Rectangle2D.Double[] {rect, new Rectangle2D.Double(-180, rect.y, d, rect.height)};
+  }
+
+  private static class Node {
+    final double minX;
+    final double minY;
+    final double maxX;
+    final double maxY;
+    final Node[] children;
+    final int image;
+
+    Node(Rectangle2D.Double rect, int image) {
+      minX = rect.x;
+      minY = rect.y;
+      maxX = rect.x + rect.width;
+      maxY = rect.y + rect.height;
+      children = null;
+      this.image = image;
+    }
+
+    Node(Node[] children) {
+      double x0 = Double.MAX_VALUE;
+      double y0 = Double.MAX_VALUE;
+      double x1 = -Double.MAX_VALUE;
+      double y1 = -Double.MAX_VALUE;
+      for (Node child : children) {
+        x0 = Math.min(x0, child.minX);
+        y0 = Math.min(y0, child.minY);
+        x1 = Math.max(x1, child.maxX);
+        y1 = Math.max(y1, child.maxY);
+      }
+      minX = x0;
+      minY = y0;
+      maxX = x1;
+      maxY = y1;
+      this.children = children;
+      image = -1;
+    }
+  }
+}
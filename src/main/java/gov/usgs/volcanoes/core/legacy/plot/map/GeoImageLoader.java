@@ -0,0 +1,294 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import gov.usgs.volcanoes.core.CodeTimer;
+import gov.usgs.volcanoes.core.legacy.plot.ParallelPngEncoder;
+import gov.usgs.volcanoes.core.util.SharedExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>Decodes <code>GeoImage</code>s on the shared worker pool, at full
+ * resolution or at a pyramid level.</p>
+ *
+ * <p>Level n is the source downsampled by 2^n with a box filter. Levels
+ * prebuilt by <code>JGWToIndex</code> are read as they are, or downsampled
+ * further. Others are made from the source, kept on the
+ * <code>GeoImage</code> and, given a directory, written there as PNGs so
+ * later requests, in this process or the next, read the small image instead
+ * of decoding the source. Files are named for the source and its
+ * modification time, so an edited source gets new levels.</p>
+ */
+final class GeoImageLoader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(GeoImageLoader.class);
+
+  /** Coarsest level made; 2^6 = 64 source pixels per level pixel. */
+  static final int MAX_LEVEL = 6;
+
+  /**
+   * Prefetches get a thread of their own so they never hold up a request,
+   * and only one so they take little from it.
+   */
+  private static final ExecutorService PREFETCH = SharedExecutor.newPool("GeoImagePrefetch-", 1);
+
+  private final File directory;
+  private final Set<GeoImage> prefetching =
+      Collections.newSetFromMap(new ConcurrentHashMap<GeoImage, Boolean>());
+
+  /**
+   * Constructor.
+   *
+   * @param directory where to keep decoded levels, or null for memory only
+   */
+  GeoImageLoader(File directory) {
+    this.directory = directory;
+    if (directory != null) {
+      directory.mkdirs();
+    }
+  }
+
+  /**
+   * Get the level to draw an image at a given scale: the coarsest with at
+   * least one pixel per output pixel.
+   *
+   * @param scale output pixels per source pixel
+   * @return the level, 0 for full resolution
+   */
+  static int getLevel(double scale) {
+    int level = 0;
+    while (level < MAX_LEVEL && scale * (1 << (level + 1)) <= 1)
+      level++;
+    return level;
+  }
+
+  /**
+   * Start loading an image on the shared worker pool. On a worker thread the
+   * image is loaded before returning.
+   *
+   * @param image the image
+   * @param level the pyramid level
+   * @return the decoded image, when done
+   */
+  Future<BufferedImage> load(final GeoImage image, final int level) {
+    FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+      public BufferedImage call() {
+        return get(image, level);
+      }
+    });
+    if (SharedExecutor.isWorker())
+      task.run();
+    else
+      SharedExecutor.compute().execute(task);
+    return task;
+  }
+
+  /**
+   * Load an image in the background, then run a task. Does nothing if the
+   * image is already being prefetched.
+   *
+   * @param image the image
+   * @param level the pyramid level
+   * @param then run after loading, on the worker thread
+   */
+  void prefetch(final GeoImage image, final int level, final Runnable then) {
+    if (!prefetching.add(image))
+      return;
+    PREFETCH.execute(new Runnable() {
+      public void run() {
+        try {
+          get(image, level);
+          then.run();
+        } finally {
+          prefetching.remove(image);
+        }
+      }
+    });
+  }
+
+  /**
+   * Load an image on this thread. An image is decoded once however many
+   * threads ask for it.
+   *
+   * @param image the image
+   * @param level the pyramid level
+   * @return the decoded image, or null if it could not be read
+   */
+  BufferedImage get(GeoImage image, int level) {
+    if (level == 0)
+      return image.getImage();
+
+    synchronized (image) {
+      BufferedImage im = image.getLoadedImage(level);
+      if (im == null) {
+        im = read(image, level);
+        if (im != null)
+          image.setLoadedImage(level, im);
+      }
+      return im;
+    }
+  }
+
+  private BufferedImage read(GeoImage image, int level) {
+    String prebuilt = image.getLevelFile(level);
+    if (prebuilt != null) {
+      BufferedImage im = read(new File(prebuilt));
+      Dimension size = image.getLevelSize(level);
+      if (im != null && size != null
+          && (im.getWidth() != size.width || im.getHeight() != size.height)) {
+        LOGGER.warn("level {} is {}x{}, index says {}x{}", prebuilt, im.getWidth(),
+            im.getHeight(), size.width, size.height);
+        im = null;
+      }
+      if (im != null)
+        return im;
+    }
+
+    File file = file(image, level);
+    if (file != null && file.isFile()) {
+      BufferedImage im = read(file);
+      if (im != null)
+        return im;
+    }
+
+    // downsample the nearest finer prebuilt level, if any
+    for (int finer = level - 1; finer > 0; finer--) {
+      if (image.getLevelFile(finer) == null)
+        continue;
+      BufferedImage im = get(image, finer);
+      if (im != null) {
+        im = downsample(im, level - finer);
+        if (file != null)
+          write(file, im);
+        return im;
+      }
+    }
+
+    // decoding the source is what the levels are here to avoid, so keep it
+    // only if it was already loaded
+    BufferedImage source = image.getLoadedImage(0);
+    if (source == null) {
+      CodeTimer ct = new CodeTimer("imageLoad: " + image.getFilename());
+      try {
+        source = ImageIO.read(new File(image.getFilename()));
+      } catch (IOException e) {
+        LOGGER.warn("cannot read {}: {}", image.getFilename(), e.getMessage());
+      }
+      ct.stopAndReport();
+      if (source == null)
+        return null;
+    }
+
+    BufferedImage im = downsample(source, level);
+    if (file != null)
+      write(file, im);
+    return im;
+  }
+
+  private static BufferedImage read(File file) {
+    try {
+      return ImageIO.read(file);
+    } catch (IOException e) {
+      LOGGER.debug("unreadable level {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  private File file(GeoImage image, int level) {
+    if (directory == null || image.getFilename().equals("memory"))
+      return null;
+    File source = new File(image.getFilename());
+    String name = String.format("%s-%08x-%d-%d.png", source.getName(),
+        source.getAbsolutePath().hashCode(), source.lastModified(), level);
+    return new File(directory, name);
+  }
+
+  private static void write(File file, BufferedImage im) {
+    // write beside the level and rename, so readers never see a partial file
+    File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+      try {
+        new ParallelPngEncoder().encode(im, out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("cannot write level {}: {}", file, e.getMessage());
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Downsample an image by 2^level, averaging each block of source pixels.
+   * Edge blocks average the pixels that exist, so the result spans the same
+   * ground as the source.
+   *
+   * @param src the source image
+   * @param level the number of halvings
+   * @return the downsampled image
+   */
+  static BufferedImage downsample(BufferedImage src, int level) {
+    int sw = src.getWidth();
+    int sh = src.getHeight();
+    int block = 1 << level;
+    int dw = (sw + block - 1) / block;
+    int dh = (sh + block - 1) / block;
+    boolean alpha = src.getColorModel().hasAlpha();
+
+    int[] row = new int[sw * block];
+    long[] sums = new long[dw * 4];
+    int[] counts = new int[dw];
+    int[] out = new int[dw];
+    BufferedImage dest = new BufferedImage(dw, dh,
+        alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    for (int dy = 0; dy < dh; dy++) {
+      int y0 = dy * block;
+      int rows = Math.min(block, sh - y0);
+      src.getRGB(0, y0, sw, rows, row, 0, sw);
+      Arrays.fill(sums, 0);
+      Arrays.fill(counts, 0);
+      for (int y = 0; y < rows; y++) {
+        for (int x = 0; x < sw; x++) {
+          int p = row[y * sw + x];
+          int d = x / block;
+          sums[d * 4] += p >>> 24;
+          sums[d * 4 + 1] += (p >> 16) & 0xff;
+          sums[d * 4 + 2] += (p >> 8) & 0xff;
+          sums[d * 4 + 3] += p & 0xff;
+          counts[d]++;
+        }
+      }
+      for (int d = 0; d < dw; d++) {
+        int n = counts[d];
+        int half = n / 2;
+        out[d] = (int) ((sums[d * 4] + half) / n) << 24 | (int) ((sums[d * 4 + 1] + half) / n) << 16
+            | (int) ((sums[d * 4 + 2] + half) / n) << 8 | (int) ((sums[d * 4 + 3] + half) / n);
+      }
+      dest.setRGB(0, dy, dw, 1, out, 0, dw);
+    }
+    return dest;
+  }
+}
@@ -12,19 +12,23 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.RenderedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 
@@ -39,20 +43,24 @@ import org.slf4j.LoggerFactory;
 public class GeoImageSet {
   private static final int ONE_MEGABYTE = 1024 * 1024;
   private static final double AREAL_THRESHOLD = 0.08;
+  private static final int MAX_PREFETCH = 64;
+  private static final AtomicLong NEXT_ID = new AtomicLong();
+  /** Names this set in MapCache keys, which must not keep it reachable. */
+  private final long id = NEXT_ID.getAndIncrement();
   private List<GeoImage> images;
-  private List<GeoImageCacheEntry> loadedImages;
+  private GeoImageIndex index;
+  private final GeoImageCache loadedImages;
+  private volatile GeoImageLoader loader = new GeoImageLoader(null);
+  private volatile boolean prefetch = true;
 
-  private int maxLoadedImagesSize = 32 * ONE_MEGABYTE;
   protected static final Logger LOGGER = LoggerFactory.getLogger(GeoImageSet.class);
 
-  private boolean arealCacheSort = true;
-
   /**
    * Default constructor
    */
   public GeoImageSet() {
     images = new ArrayList<GeoImage>();
-    loadedImages = new LinkedList<GeoImageCacheEntry>();
+    loadedImages = new GeoImageCache(32 * ONE_MEGABYTE);
   }
 
   /**
@@ -62,18 +70,37 @@ public class GeoImageSet {
   public GeoImageSet(String indexFilename) {
     this();
     try {
-      BufferedReader in = new BufferedReader(new FileReader(indexFilename));
+      readIndex(new File(indexFilename), null);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Read an index of images. Lines starting with '+' are prebuilt pyramid
+   * levels of the image before them, as written by <code>JGWToIndex</code>
+   * -levels; readers from before those lines fail on them, so indexes which
+   * have them need this version or later.
+   */
+  private void readIndex(File file, String root) throws IOException {
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      GeoImage gi = null;
       String s = null;
       while ((s = in.readLine()) != null) {
         s = s.trim();
-        if (s.length() > 0 && !s.startsWith("#")) {
-          GeoImage gi = new GeoImage(s);
-          images.add(gi);
+        if (s.length() == 0 || s.startsWith("#"))
+          continue;
+        if (s.startsWith("+")) {
+          if (gi != null)
+            gi.addLevel(root, s.substring(1));
+        } else {
+          gi = root == null ? new GeoImage(s) : new GeoImage(root, s);
+          addImage(gi);
         }
       }
+    } finally {
       in.close();
-    } catch (Exception e) {
-      e.printStackTrace();
     }
   }
 
@@ -97,16 +124,7 @@ public class GeoImageSet {
         if (mp.exists()) {
           LOGGER.info("loading MapPack: {}", mp.getPath());
           try {
-            BufferedReader in = new BufferedReader(new FileReader(mp));
-            String s = null;
-            while ((s = in.readLine()) != null) {
-              s = s.trim();
-              if (s.length() > 0 && !s.startsWith("#")) {
-                GeoImage gi = new GeoImage(f.getPath(), s);
-                gis.images.add(gi);
-              }
-            }
-            in.close();
+            gis.readIndex(mp, f.getPath());
           } catch (Exception e) {
             e.printStackTrace();
           }
@@ -121,141 +139,65 @@ public class GeoImageSet {
   }
 
   /**
-   * Class is used to cashing GeoImages. Contains link
-   * to GeoImage and it's last access time. Also provide sorting capabilities.
-   *
+   * The images read so far, in index order.
    */
-  private class GeoImageCacheEntry implements Comparable<GeoImageCacheEntry> {
-    public GeoImage image;
-    public long lastAccess;
-
-    public GeoImageCacheEntry(GeoImage img) {
-      image = img;
-      touch();
-    }
-
-    /**
-     * Sorts by rectangular lon/lat area; if the difference is negligible then
-     * sorts by last accessed time.
-     * @param oce the other cache entry
-     * @return the comparison result
-     */
-    public int compareTo(GeoImageCacheEntry oce) {
-      if (arealCacheSort) {
-        double a1 = image.getLonLatArea();
-        double a2 = oce.image.getLonLatArea();
-        int val = (int) ((a1 - a2) * 100000);
-        if (val > 100)
-          return val;
-      }
-
-      return (int) (lastAccess - oce.lastAccess);
-    }
-
-    public int getMemorySize() {
-      return image.getPixelWidth() * image.getPixelHeight();
-    }
-
-    public void touch() {
-      lastAccess = System.currentTimeMillis();
-    }
-
-
-    @Override
-    public boolean equals(Object other) {
-      if (other instanceof GeoImageCacheEntry) {
-        return compareTo((GeoImageCacheEntry) other) == 0;
-      } else {
-        return false;
-      }
-    }
-    // public boolean equals(Object o) {
-    // if (o instanceof GeoImageCacheEntry) {
-    // GeoImageCacheEntry ce = (GeoImageCacheEntry) o;
-    // return (image.getFilename().equals(ce.image.getFilename()));
-    // } else if (o instanceof GeoImage) {
-    // GeoImage gi = (GeoImage) o;
-    // return (image.getFilename().equals(gi.getFilename()));
-    // } else
-    // return false;
-    // }
+  synchronized List<GeoImage> getImages() {
+    return new ArrayList<GeoImage>(images);
   }
 
-  public void setArealCacheSort(boolean b) {
-    arealCacheSort = b;
+  private synchronized void addImage(GeoImage gi) {
+    images.add(gi);
+    index = null;
   }
 
+  /**
+   * Does nothing; cached images are now always evicted least recently used
+   * first.
+   *
+   * @param b ignored
+   * @deprecated areal ordering needed a sort of the whole cache on every purge
+   */
+  @Deprecated
+  public void setArealCacheSort(boolean b) {}
+
   /**
    * Sets the maximum size of cached images.
    * 
    * @param mp maximum loaded images size in megapixels (approximately)
    */
   public void setMaxLoadedImagesSize(int mp) {
-    maxLoadedImagesSize = mp * ONE_MEGABYTE;
+    loadedImages.setMaxSize((long) mp * ONE_MEGABYTE);
   }
 
   /**
-   * Gets the size of cached images.
+   * Keep downsampled images on disk, so zoomed out maps read them instead of
+   * decoding full resolution sources.
+   * 
+   * @param dir cache directory, or null to keep them in memory only
    */
-  private int getLoadedImagesSize() {
-    int size = 0;
-    for (Iterator<GeoImageCacheEntry> it = loadedImages.iterator(); it.hasNext();)
-      size += (it.next()).getMemorySize();
-
-    return size;
+  public void setImageCacheDirectory(File dir) {
+    loader = new GeoImageLoader(dir);
   }
 
   /**
-   * Clears cache
+   * Sets whether images around each composite are loaded in the background.
+   * 
+   * @param b true to prefetch, the default
    */
-  private void purgeLoadedImages(List<GeoImage> avoid) {
-    Collections.sort(loadedImages);
-
-    int needToDelete = getLoadedImagesSize() - maxLoadedImagesSize;
-
-    Iterator<GeoImageCacheEntry> it = loadedImages.iterator();
-    while (it.hasNext() && needToDelete > 0) {
-      GeoImageCacheEntry ce = it.next();
-      if (avoid == null || !avoid.contains(ce.image)) {
-        LOGGER.debug("GeoImageSet Purge: {}", ce.image);
-        it.remove();
-        needToDelete -= ce.getMemorySize();
-        ce.image.disposeImage();
-      } else
-        LOGGER.debug("SKIPPED DUE TO AVOID");
-    }
-
-    if (needToDelete > 0) {
-      LOGGER.info("overfull GeoImageCache by {} bytes", needToDelete);
-    }
+  public void setPrefetch(boolean b) {
+    prefetch = b;
   }
 
-  private void addLoadedImage(GeoImage image, List<GeoImage> avoidPurging) {
-    GeoImageCacheEntry ce = null;
-    for (Iterator<GeoImageCacheEntry> it = loadedImages.iterator(); it.hasNext();) {
-      GeoImageCacheEntry o = it.next();
-      if (o.image.equals(image)) {
-        ce = o;
-        break;
-      }
-    }
-
-    if (ce == null) {
-      ce = new GeoImageCacheEntry(image);
-      loadedImages.add(ce);
-    } else {
-      ce.touch();
-    }
-
-    if (getLoadedImagesSize() > maxLoadedImagesSize) {
-      purgeLoadedImages(avoidPurging);
-    }
+  private synchronized GeoImageIndex getIndex() {
+    if (index == null)
+      index = new GeoImageIndex(images);
+    return index;
   }
 
   /**
    * Create one composite image using list as data source
    */
-  public synchronized GeoImage getCompositeImage(GeoRange range, int ppdLon, int ppdLat) {
+  public GeoImage getCompositeImage(GeoRange range, int ppdLon, int ppdLat) {
     return getCompositeImage(range, ppdLon, ppdLat, Double.NaN);
   }
 
@@ -266,15 +208,17 @@ public class GeoImageSet {
     public double ty;
     public double sx;
     public double sy;
+    public int level;
 
     public ImageTranslation(GeoImage im, Rectangle2D.Double r, double tx, double ty, double sx,
-        double sy) {
+        double sy, int level) {
       image = im;
       rect = r;
       this.tx = tx;
       this.ty = ty;
       this.sx = sx;
       this.sy = sy;
+      this.level = level;
     }
 
     public int compareTo(ImageTranslation o) {
@@ -285,7 +229,7 @@ public class GeoImageSet {
   /**
    * Create one composite image using list as data source
    */
-  public synchronized GeoImage getCompositeImage(GeoRange range, int ppdLon, int ppdLat,
+  public GeoImage getCompositeImage(GeoRange range, int ppdLon, int ppdLat,
       double scale) {
     CodeTimer ct = new CodeTimer("getCompositeImage");
     double width = range.getLonRange() * (double) ppdLon;
@@ -296,81 +240,83 @@ public class GeoImageSet {
         new BufferedImage((int) width, (int) height, BufferedImage.TYPE_INT_ARGB);
 
     ArrayList<ImageTranslation> txs = new ArrayList<ImageTranslation>();
-    for (GeoImage gi : images) {
+    for (GeoImage gi : select(range, area, ppdLon, ppdLat, scale)) {
       GeoRange imageRange = gi.getRange();
-      if (imageRange.overlaps(range)) {
-        double xs = imageRange.getLonRange() * ppdLon;
-        double ys = imageRange.getLatRange() * ppdLat;
-        double subsetArea = xs * ys;
-
-        double a = subsetArea / area;
-        boolean added = false;
-        if (Double.isNaN(scale)) {
-          if (a > AREAL_THRESHOLD)
-            added = true;
-        } else {
-          if (gi.inScale(scale, a))
-            added = true;
-        }
-
-        if (added) {
-          double lr = (imageRange.getWest() - range.getWest());
-          double tx = lr * ppdLon;
-          double ty = (range.getNorth() - imageRange.getNorth()) * ppdLat;
-          double sx = 1.0 / (gi.getPixelsPerLon() / ppdLon);
-          double sy = 1.0 / (gi.getPixelsPerLat() / ppdLat);
-          double w = gi.getPixelWidth() * sx;
-          double h = gi.getPixelHeight() * sy;
-          Rectangle2D.Double r1 = new Rectangle2D.Double(tx, ty, w, h);
-          r1 = (Rectangle2D.Double) r1.createIntersection(mask);
-          if (r1.width > 0) {
-            ImageTranslation it1 = new ImageTranslation(gi, r1, tx, ty, sx, sy);
-            txs.add(it1);
-          }
+      double lr = (imageRange.getWest() - range.getWest());
+      double tx = lr * ppdLon;
+      double ty = (range.getNorth() - imageRange.getNorth()) * ppdLat;
+      double sx = 1.0 / (gi.getPixelsPerLon() / ppdLon);
+      double sy = 1.0 / (gi.getPixelsPerLat() / ppdLat);
+      double w = gi.getPixelWidth() * sx;
+      double h = gi.getPixelHeight() * sy;
+      int level = GeoImageLoader.getLevel(Math.max(sx, sy));
+      Rectangle2D.Double r1 = new Rectangle2D.Double(tx, ty, w, h);
+      r1 = (Rectangle2D.Double) r1.createIntersection(mask);
+      if (r1.width > 0) {
+        ImageTranslation it1 = new ImageTranslation(gi, r1, tx, ty, sx, sy, level);
+        txs.add(it1);
+      }
 
-          lr += 360;
-          tx = lr * ppdLon;
-          Rectangle2D.Double r2 = new Rectangle2D.Double(tx, ty, w, h);
-          r2 = (Rectangle2D.Double) r2.createIntersection(mask);
-          if (r2.width > 0) {
-            ImageTranslation it2 = new ImageTranslation(gi, r2, tx, ty, sx, sy);
-            txs.add(it2);
-          }
-        }
+      lr += 360;
+      tx = lr * ppdLon;
+      Rectangle2D.Double r2 = new Rectangle2D.Double(tx, ty, w, h);
+      r2 = (Rectangle2D.Double) r2.createIntersection(mask);
+      if (r2.width > 0) {
+        ImageTranslation it2 = new ImageTranslation(gi, r2, tx, ty, sx, sy, level);
+        txs.add(it2);
       }
     }
 
-    Area a = new Area();
+    CoverageMask coverage = new CoverageMask((int) width, (int) height);
     Collections.sort(txs);
     ListIterator<ImageTranslation> lit = txs.listIterator(txs.size());
     while (lit.hasPrevious()) {
       ImageTranslation it = lit.previous();
-      if (a.contains(it.rect))
+      if (coverage.covers(it.rect))
         lit.remove();
       else
-        a.add(new Area(it.rect));
+        coverage.add(it.rect);
     }
 
-
-
-    List<GeoImage> gis = new ArrayList<GeoImage>(txs.size());
+    // start every decode before drawing the first
+    List<Future<BufferedImage>> loads = new ArrayList<Future<BufferedImage>>(txs.size());
     for (ImageTranslation it : txs) {
-      gis.add(it.image);
+      loadedImages.pin(it.image);
+      loads.add(loader.load(it.image, it.level));
     }
+    if (prefetch)
+      prefetch(range, area, ppdLon, ppdLat, scale, txs);
 
     ct.mark("preload");
     Graphics2D g2 = (Graphics2D) buffer.getGraphics();
-    for (ImageTranslation it : txs) {
-      GeoImage gi = it.image;
-      AffineTransform at = new AffineTransform();
-      at.translate(it.tx, it.ty);
-      at.scale(it.sx, it.sy);
-      g2.drawRenderedImage(gi.getImage(), at);
-
-      gis.remove(gi);
-      addLoadedImage(gi, gis);
+    int drawn = 0;
+    try {
+      for (ImageTranslation it : txs) {
+        GeoImage gi = it.image;
+        BufferedImage im = loads.get(drawn).get();
+        if (im != null) {
+          // a level pixel covers 2^level source pixels
+          AffineTransform at = new AffineTransform();
+          at.translate(it.tx, it.ty);
+          at.scale(it.sx * (1 << it.level), it.sy * (1 << it.level));
+          g2.drawRenderedImage(im, at);
+        }
+
+        // record the image while it is pinned, so the touch cannot evict it
+        loadedImages.touch(gi, gi.getLoadedPixels());
+        loadedImages.unpin(gi);
+        drawn++;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while loading images", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("image load failed", e.getCause());
+    } finally {
+      for (int i = drawn; i < txs.size(); i++)
+        loadedImages.unpin(txs.get(i).image);
+      g2.dispose();
     }
-    g2.dispose();
 
     GeoRange newRange = new GeoRange(range);
     GeoImage result = GeoImage.createMemoryImage(buffer, newRange);
@@ -378,24 +324,107 @@ public class GeoImageSet {
     return result;
   }
 
+  /**
+   * Find the images to draw for a range: those overlapping it which are large
+   * enough relative to the composite or, given a scale, are in scale.
+   */
+  private List<GeoImage> select(GeoRange range, double area, int ppdLon, int ppdLat,
+      double scale) {
+    List<GeoImage> selected = new ArrayList<GeoImage>();
+    for (GeoImage gi : getIndex().query(range)) {
+      GeoRange imageRange = gi.getRange();
+      double xs = imageRange.getLonRange() * ppdLon;
+      double ys = imageRange.getLatRange() * ppdLat;
+      double a = xs * ys / area;
+      if (Double.isNaN(scale) ? a > AREAL_THRESHOLD : gi.inScale(scale, a))
+        selected.add(gi);
+    }
+    return selected;
+  }
+
+  /**
+   * Start loading the images a pan away from a composite, at the level they
+   * would be drawn at, so the next request finds them decoded.
+   */
+  private void prefetch(GeoRange range, double area, int ppdLon, int ppdLat, double scale,
+      List<ImageTranslation> txs) {
+    double lonRange = range.getLonRange();
+    double latRange = range.getLatRange();
+    GeoRange around;
+    if (lonRange * 3 >= 360)
+      around = new GeoRange(-180, 180, Math.max(-90, range.getSouth() - latRange),
+          Math.min(90, range.getNorth() + latRange));
+    else
+      around = new GeoRange(range.getWest() - lonRange, range.getEast() + lonRange,
+          Math.max(-90, range.getSouth() - latRange), Math.min(90, range.getNorth() + latRange));
+
+    Set<GeoImage> drawn = new HashSet<GeoImage>();
+    for (ImageTranslation it : txs)
+      drawn.add(it.image);
+
+    int count = 0;
+    for (final GeoImage gi : select(around, area, ppdLon, ppdLat, scale)) {
+      if (count >= MAX_PREFETCH)
+        break;
+      if (drawn.contains(gi) || loadedImages.contains(gi))
+        continue;
+      double sx = ppdLon / gi.getPixelsPerLon();
+      double sy = ppdLat / gi.getPixelsPerLat();
+      loader.prefetch(gi, GeoImageLoader.getLevel(Math.max(sx, sy)), new Runnable() {
+        public void run() {
+          loadedImages.touch(gi, gi.getLoadedPixels());
+        }
+      });
+      count++;
+    }
+  }
+
   /** Shortcut for getMapBackground(proj, range, width, Double.NaN)
    * @param proj the Projection
    * @param range a GeoRange
    * @param width the width of the image
    * @return the map background as a rendered image
    */
-  public synchronized RenderedImage getMapBackground(Projection proj, GeoRange range, int width) {
+  public RenderedImage getMapBackground(Projection proj, GeoRange range, int width) {
     return getMapBackground(proj, range, width, Double.NaN);
   }
 
-  /** Get a map background as a rendered image
+  /**
+   * Set the most memory kept by recently rendered map backgrounds and line
+   * work, shared by all image sets and map renderers.
+   * @param bytes maximum total bytes; 0 to cache nothing
+   */
+  public static void setBackgroundCacheSize(long bytes) {
+    MapCache.SHARED.setMaxSize(bytes);
+  }
+
+  /** Get a map background as a rendered image. A background recently
+   * rendered for an equal projection, range, width and scale is reused; the
+   * caller gets its own copy, which it may draw on.
    * @param proj the Projection
    * @param range a GeoRange
    * @param width the width of the image
    * @param scale scale of image
    * @return the map background as a rendered image
    */
-  public synchronized RenderedImage getMapBackground(Projection proj, GeoRange range, int width,
+  public RenderedImage getMapBackground(Projection proj, GeoRange range, int width,
+      double scale) {
+    Object key;
+    synchronized (this) {
+      key = MapCache.key(proj, range, id, images.size(), width, scale);
+    }
+    BufferedImage im = (BufferedImage) MapCache.SHARED.get(key);
+    if (im == null) {
+      im = renderMapBackground(proj, range, width, scale);
+      if (im == null)
+        return null;
+      MapCache.SHARED.put(key, im, MapCache.bytes(im));
+    }
+    ColorModel cm = im.getColorModel();
+    return new BufferedImage(cm, im.copyData(null), cm.isAlphaPremultiplied(), null);
+  }
+
+  private BufferedImage renderMapBackground(Projection proj, GeoRange range, int width,
       double scale) {
     int grid = 20;
     width += grid - width % grid;
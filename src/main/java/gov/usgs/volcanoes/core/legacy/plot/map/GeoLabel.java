@@ -25,6 +25,15 @@ public class GeoLabel {
   public Point2D.Double location;
   public PointRenderer marker;
 
+  /** Labels with higher priority are placed first when labels collide. */
+  public int priority = 0;
+
+  /** Smallest map scale, in projected units per pixel, to show at; NaN for any. */
+  public double minScale = Double.NaN;
+
+  /** Largest map scale, in projected units per pixel, to show at; NaN for any. */
+  public double maxScale = Double.NaN;
+
   // public Stroke stroke = new BasicStroke(1.0f);
 
   /**
@@ -77,6 +86,8 @@ public class GeoLabel {
    * labelText;lon,lat,type
    * 
    * labelText;lon,lat,type,size,color,stroke,fontName,fontStyle,fontSize,color
+   * 
+   * The last may be followed by a priority, then a minimum and maximum scale.
    */
   public static GeoLabel fromString(String s) {
     char pType = 's';
@@ -106,6 +117,12 @@ public class GeoLabel {
             (int) Font.class.getDeclaredField(options[8].trim()).getInt(null),
             Integer.parseInt(options[7].trim()));
         fColor = (Color) Color.class.getDeclaredField(options[9].trim()).get(null);
+        if (options.length > 10)
+          gl.priority = Integer.parseInt(options[10].trim());
+        if (options.length > 12) {
+          gl.minScale = Double.parseDouble(options[11].trim());
+          gl.maxScale = Double.parseDouble(options[12].trim());
+        }
       } catch (Exception e) {
         System.err.println("Can't parse geolable string for " + gl.text + " using defaults.");
       }
@@ -123,4 +140,17 @@ public class GeoLabel {
 
     return gl;
   }
+
+  /**
+   * Should the label be shown on a map of a given scale?
+   * 
+   * @param scale projected units per pixel, or NaN to ignore scale
+   * @return true if in scale
+   */
+  public boolean inScale(double scale) {
+    if (Double.isNaN(scale))
+      return true;
+    return (Double.isNaN(minScale) || scale >= minScale)
+        && (Double.isNaN(maxScale) || scale < maxScale);
+  }
 }
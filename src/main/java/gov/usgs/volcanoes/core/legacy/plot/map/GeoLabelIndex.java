@@ -0,0 +1,140 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A lon/lat grid over a list of <code>GeoLabel</code>s.</p>
+ *
+ * <p>Cells are sized for a few labels each and hold label positions in list
+ * order, packed into one array. A query visits only the cells under the
+ * range, two runs of columns if it crosses the antimeridian, and checks
+ * each label with <code>GeoRange.contains()</code>, so results match a scan
+ * of the whole list, in the same order.</p>
+ */
+final class GeoLabelIndex {
+  private static final double MIN_CELL = 0.05;
+  private static final double MAX_CELL = 10;
+  private static final int LABELS_PER_CELL = 4;
+
+  private final List<GeoLabel> labels;
+  private final int size;
+  private final double cell;
+  private final int columns;
+  private final int rows;
+  private final int[] cellStart;
+  private final int[] entries;
+
+  /**
+   * Constructor.
+   *
+   * @param labels the labels to index; the list must not change afterwards
+   */
+  GeoLabelIndex(List<GeoLabel> labels) {
+    this.labels = labels;
+    int n = labels.size();
+    size = n;
+    double c = Math.sqrt(360.0 * 180.0 * LABELS_PER_CELL / Math.max(n, 1));
+    cell = Math.max(MIN_CELL, Math.min(MAX_CELL, c));
+    columns = (int) Math.ceil(360 / cell);
+    rows = (int) Math.ceil(180 / cell);
+
+    int[] cells = new int[n];
+    cellStart = new int[columns * rows + 1];
+    for (int i = 0; i < n; i++) {
+      GeoLabel l = labels.get(i);
+      cells[i] = column(GeoRange.normalize(l.location.x)) + row(l.location.y) * columns;
+      cellStart[cells[i] + 1]++;
+    }
+    for (int i = 0; i < columns * rows; i++) {
+      cellStart[i + 1] += cellStart[i];
+    }
+    entries = new int[n];
+    int[] fill = Arrays.copyOf(cellStart, columns * rows);
+    for (int i = 0; i < n; i++) {
+      entries[fill[cells[i]]++] = i;
+    }
+  }
+
+  private int column(double lon) {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180) / cell)));
+  }
+
+  private int row(double lat) {
+    if (Double.isNaN(lat)) {
+      return 0;
+    }
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / cell)));
+  }
+
+  /**
+   * Get the number of labels indexed.
+   *
+   * @return label count when the index was built
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Find the labels inside a range.
+   *
+   * @param range the range
+   * @return labels in the range, in list order
+   */
+  List<GeoLabel> query(GeoRange range) {
+    int r0 = row(range.getSouth());
+    int r1 = row(range.getNorth());
+    int c0 = column(range.getWest());
+    int c1 = column(range.getEast());
+
+    Hits hits = new Hits();
+    if (range.getWest() < range.getEast()) {
+      collect(range, c0, c1, r0, r1, hits);
+    } else {
+      collect(range, c0, columns - 1, r0, r1, hits);
+      collect(range, 0, c1, r0, r1, hits);
+    }
+
+    Arrays.sort(hits.found, 0, hits.count);
+    List<GeoLabel> result = new ArrayList<GeoLabel>(hits.count);
+    int last = -1;
+    for (int i = 0; i < hits.count; i++) {
+      if (hits.found[i] != last) {
+        result.add(labels.get(hits.found[i]));
+        last = hits.found[i];
+      }
+    }
+    return result;
+  }
+
+  private void collect(GeoRange range, int c0, int c1, int r0, int r1, Hits hits) {
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cellIndex = c + r * columns;
+        for (int e = cellStart[cellIndex]; e < cellStart[cellIndex + 1]; e++) {
+          int i = entries[e];
+          if (range.contains(labels.get(i).location)) {
+            hits.add(i);
+          }
+        }
+      }
+    }
+  }
+
+  /** Positions of labels found, in the order found. */
+  private static class Hits {
+    int[] found = new int[16];
+    int count;
+
+    void add(int i) {
+      if (count == found.length) {
+        found = Arrays.copyOf(found, count * 2);
+      }
+      found[count++] = i;
+    }
+  }
+}
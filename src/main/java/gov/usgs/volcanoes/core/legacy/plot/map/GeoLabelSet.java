@@ -6,7 +6,10 @@ import gov.usgs.volcanoes.core.math.proj.GeoRange;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -15,21 +18,29 @@ import java.util.List;
  * @author Dan Cervelli
  */
 public class GeoLabelSet {
-  private List<GeoLabel> geoLabels;
+  private static final Comparator<GeoLabel> BY_PRIORITY = new Comparator<GeoLabel>() {
+    public int compare(GeoLabel a, GeoLabel b) {
+      return b.priority < a.priority ? -1 : (b.priority == a.priority ? 0 : 1);
+    }
+  };
+
+  private final Labels geoLabels;
+  private GeoLabelIndex index;
+  private int indexed;
 
   /**
    * Default constructor
    */
   public GeoLabelSet() {
-    geoLabels = new ArrayList<GeoLabel>();
+    geoLabels = new Labels(new ArrayList<GeoLabel>());
   }
 
   /**
    * Constructor
-   * @param list List of GeoLabels to initialize
+   * @param list List of GeoLabels to initialize; it is copied
    */
   public GeoLabelSet(List<GeoLabel> list) {
-    geoLabels = list;
+    geoLabels = new Labels(new ArrayList<GeoLabel>(list));
   }
 
   /**
@@ -69,7 +80,7 @@ public class GeoLabelSet {
         if (s.length() > 0 && !s.startsWith("#")) {
           GeoLabel l = GeoLabel.fromString(s);
           if (l != null)
-            geoLabels.add(l);
+            add(l);
         }
       }
       in.close();
@@ -83,12 +94,12 @@ public class GeoLabelSet {
    * Add one GeoLabel
    * @param gl GeoLabel to add
    */
-  public void add(GeoLabel gl) {
+  public synchronized void add(GeoLabel gl) {
     geoLabels.add(gl);
   }
 
   /**
-   * Getter for whole labels list
+   * Getter for whole labels list. Changes to it are seen by later subsets.
    * @return list of GeoLabels
    */
   public List<GeoLabel> getGeoLabels() {
@@ -101,13 +112,77 @@ public class GeoLabelSet {
    * @return set of labels for range
    */
   public GeoLabelSet getSubset(GeoRange range) {
-    ArrayList<GeoLabel> result = new ArrayList<GeoLabel>();
-    for (GeoLabel l : geoLabels) {
-      if (range.contains(l.location))
+    return new GeoLabelSet(getIndex().query(range));
+  }
+
+  /**
+   * Get the labels to show on a map, in the order they should claim space:
+   * highest priority first, then in list order.
+   * @param range range to get labels for
+   * @param scale map scale in projected units per pixel, or NaN to ignore
+   * @return set of labels for range and scale
+   */
+  public GeoLabelSet getSubset(GeoRange range, double scale) {
+    List<GeoLabel> result = new ArrayList<GeoLabel>();
+    for (GeoLabel l : getIndex().query(range)) {
+      if (l.inScale(scale))
         result.add(l);
     }
-
+    Collections.sort(result, BY_PRIORITY);
     return new GeoLabelSet(result);
   }
 
+  private synchronized GeoLabelIndex getIndex() {
+    if (index == null || indexed != geoLabels.changes) {
+      index = new GeoLabelIndex(geoLabels);
+      indexed = geoLabels.changes;
+    }
+    return index;
+  }
+
+  /**
+   * The list is public through getGeoLabels(), so it counts its changes for
+   * getIndex() to tell when the index is stale.
+   */
+  private static class Labels extends AbstractList<GeoLabel> {
+    private final List<GeoLabel> list;
+    private volatile int changes;
+
+    Labels(List<GeoLabel> list) {
+      this.list = list;
+    }
+
+    @Override
+    public GeoLabel get(int i) {
+      return list.get(i);
+    }
+
+    @Override
+    public int size() {
+      return list.size();
+    }
+
+    @Override
+    public GeoLabel set(int i, GeoLabel gl) {
+      GeoLabel old = list.set(i, gl);
+      changes++;
+      return old;
+    }
+
+    @Override
+    public void add(int i, GeoLabel gl) {
+      list.add(i, gl);
+      changes++;
+      modCount++;
+    }
+
+    @Override
+    public GeoLabel remove(int i) {
+      GeoLabel old = list.remove(i);
+      changes++;
+      modCount++;
+      return old;
+    }
+  }
+
 }
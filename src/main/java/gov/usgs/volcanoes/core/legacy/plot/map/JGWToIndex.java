@@ -5,41 +5,112 @@ import gov.usgs.volcanoes.core.util.ResourceReader;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 import javax.imageio.ImageIO;
 
 /**
  * <p>Scans dir for .jgw files and send to stdout strings as follow:</p>
  * <p>name, width, height, west_coord, east_coord, south_coord, north_coord</p>
- * <p>Syntax is: JGWToIndex [dir_name]</p>
+ * <p>Syntax is: JGWToIndex [dir_name] [-levels n]</p>
  * <p>Default is current directory.</p>
- * 
+ * <p>With -levels, up to n (at most GeoImageLoader.MAX_LEVEL) pyramid levels
+ * are written beside each image, each half the size of the one before,
+ * stopping once an image fits in MIN_LEVEL_SIZE pixels. Each is listed after
+ * its image as:</p>
+ * <p>+level, name, width, height</p>
+ * <p>This changes the index format: readers older than the '+' lines take them
+ * for images and fail to parse the index, so only use -levels for map packs
+ * read by this version or later.</p>
+ *
  * @author Dan Cervelli
  */
 public class JGWToIndex {
+  public static final int MIN_LEVEL_SIZE = 256;
+
   public static void main(String[] args) throws IOException {
+    if (!run(args, System.out, System.err))
+      System.exit(1);
+  }
+
+  /**
+   * Parse the command line and write the index.
+   *
+   * @param args command line args
+   * @param out where to write the index
+   * @param err where to write a usage message
+   * @return false if the command line was not understood
+   * @throws IOException if an image cannot be read or a level written
+   */
+  static boolean run(String[] args, PrintStream out, PrintStream err) throws IOException {
     String dir = ".";
-    if (args.length > 0)
-      dir = args[0];
-    String[] files = new File(dir).list();
+    int levels = 0;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-levels")) {
+        levels = -1;
+        if (i + 1 < args.length) {
+          try {
+            levels = Integer.parseInt(args[++i]);
+          } catch (NumberFormatException e) {
+            // reported below
+          }
+        }
+        if (levels < 0 || levels > GeoImageLoader.MAX_LEVEL) {
+          err.println("Usage: JGWToIndex [dir_name] [-levels n], n from 0 to "
+              + GeoImageLoader.MAX_LEVEL);
+          return false;
+        }
+      } else
+        dir = args[i];
+    }
+    index(new File(dir), levels, out);
+    return true;
+  }
+
+  /**
+   * Write the index of a directory, with up to levels pyramid levels for each
+   * image.
+   *
+   * @param dir directory of .jgw and .jpg files
+   * @param levels number of pyramid levels, 0 to GeoImageLoader.MAX_LEVEL
+   * @param out where to write the index
+   * @throws IOException if an image cannot be read or a level written
+   */
+  static void index(File dir, int levels, PrintStream out) throws IOException {
+    if (levels < 0 || levels > GeoImageLoader.MAX_LEVEL) {
+      throw new IllegalArgumentException(
+          "levels must be 0 to " + GeoImageLoader.MAX_LEVEL + ": " + levels);
+    }
+    String[] files = dir.list();
     if (files == null) {
       throw new RuntimeException("No file list.");
     }
     for (String fn : files) {
       if (!fn.endsWith(".jgw"))
         continue;
-      ResourceReader rr = ResourceReader.getResourceReader(fn);
+      ResourceReader rr = ResourceReader.getResourceReader(new File(dir, fn).getPath());
       double[] jgw = new double[6];
       for (int i = 0; i < 6; i++)
         jgw[i] = Double.parseDouble(rr.nextLine());
       String jpg = fn.substring(0, fn.length() - 2) + "pg";
-      BufferedImage image = ImageIO.read(new File(jpg));
+      BufferedImage image = ImageIO.read(new File(dir, jpg));
       double w = jgw[4];
       double e = w + image.getWidth() * jgw[0];
       double n = jgw[5];
       double s = n + image.getHeight() * jgw[3];
-      System.out.printf("%s, %d, %d, %f, %f, %f, %f\n", jpg, image.getWidth(), image.getHeight(), w,
-          e, s, n);
+      out.printf("%s, %d, %d, %f, %f, %f, %f\n", jpg, image.getWidth(), image.getHeight(), w, e,
+          s, n);
+
+      BufferedImage level = image;
+      for (int l = 1; l <= levels
+          && Math.max(level.getWidth(), level.getHeight()) > MIN_LEVEL_SIZE; l++) {
+        level = GeoImageLoader.downsample(level, 1);
+        String name = jpg.substring(0, jpg.length() - 4) + "_L" + l + ".jpg";
+        if (!ImageIO.write(level, "jpg", new File(dir, name))) {
+          throw new IOException("no jpg writer for " + name);
+        }
+        out.printf("+%d, %s, %d, %d\n", l, name, level.getWidth(), level.getHeight());
+      }
     }
   }
 }
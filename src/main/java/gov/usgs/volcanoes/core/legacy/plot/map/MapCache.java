@@ -0,0 +1,171 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+import gov.usgs.volcanoes.core.math.proj.Projection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>Keeps recently rendered map parts, such as projected backgrounds and
+ * projected line work, up to a total number of bytes.</p>
+ *
+ * <p>Keys are made from the projection and range a part was rendered for,
+ * plus whatever else it depends on. Projections and ranges are mutable, so a
+ * key copies the range and records the projected extents of the range, which
+ * change when the projection is changed in place. Parts are shared between
+ * callers and must not be modified.</p>
+ */
+final class MapCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MapCache.class);
+
+  /** The cache shared by map renderers and image sets. */
+  static final MapCache SHARED = new MapCache(64 * 1024 * 1024);
+
+  private final LinkedHashMap<Key, Part> parts = new LinkedHashMap<Key, Part>(64, 0.75f, true);
+  private long maxSize;
+  private long size;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize maximum total bytes
+   */
+  MapCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Make a key for a part rendered with a projection over a range.
+   *
+   * @param proj the projection
+   * @param range the range
+   * @param more everything else the part depends on; arrays are compared by
+   *        content
+   * @return the key
+   */
+  static Object key(Projection proj, GeoRange range, Object... more) {
+    Object[] key = new Object[more.length + 5];
+    key[0] = proj.getClass();
+    key[1] = proj;
+    key[2] = proj.getEllipsoid();
+    key[3] = new GeoRange(range);
+    key[4] = range.getProjectedExtents(proj);
+    System.arraycopy(more, 0, key, 5, more.length);
+    return new Key(key);
+  }
+
+  /**
+   * Get a cached part.
+   *
+   * @param key the key
+   * @return the part, or null if not cached
+   */
+  synchronized Object get(Object key) {
+    Part part = parts.get(key);
+    return part == null ? null : part.value;
+  }
+
+  /**
+   * Cache a part, then evict the least recently used while over the limit.
+   * Parts bigger than the limit are not cached.
+   *
+   * @param key the key
+   * @param value the part
+   * @param bytes the memory the part holds
+   */
+  synchronized void put(Object key, Object value, long bytes) {
+    if (!(key instanceof Key) || value == null || bytes > maxSize)
+      return;
+    Part old = parts.put((Key) key, new Part(value, bytes));
+    size += bytes - (old == null ? 0 : old.bytes);
+    evict();
+  }
+
+  /**
+   * Set the maximum total bytes, evicting if needed.
+   *
+   * @param maxSize maximum total bytes; 0 to cache nothing
+   */
+  synchronized void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    evict();
+  }
+
+  private void evict() {
+    Iterator<Part> it = parts.values().iterator();
+    while (size > maxSize && it.hasNext()) {
+      Part part = it.next();
+      LOGGER.debug("MapCache purge: {} bytes", part.bytes);
+      it.remove();
+      size -= part.bytes;
+    }
+  }
+
+  /**
+   * Get the number of parts cached.
+   *
+   * @return part count
+   */
+  synchronized int count() {
+    return parts.size();
+  }
+
+  /**
+   * Get the total bytes of the parts cached.
+   *
+   * @return byte count
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Estimate the memory an image holds.
+   *
+   * @param image the image
+   * @return bytes
+   */
+  static long bytes(RenderedImage image) {
+    return (long) image.getWidth() * image.getHeight()
+        * Math.max(1, image.getColorModel().getPixelSize() / 8);
+  }
+
+  /** Key parts, compared by content. The hash is fixed when made. */
+  private static final class Key {
+    private final Object[] parts;
+    private final int hash;
+
+    Key(Object[] parts) {
+      this.parts = parts;
+      hash = Arrays.deepHashCode(parts);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key key = (Key) obj;
+      return hash == key.hash && Arrays.deepEquals(parts, key.parts);
+    }
+  }
+
+  /** A cached part and its size. */
+  private static final class Part {
+    final Object value;
+    final long bytes;
+
+    Part(Object value, long bytes) {
+      this.value = value;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -23,11 +23,13 @@ import java.awt.Rectangle;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.io.File;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>A renderer that renders a map</p>
@@ -188,8 +190,8 @@ public class MapRenderer extends BasicFrameRenderer {
       gridYreal[0] = range.getSouth();
       gridYreal[1] = range.getNorth();
     }
-    graticule = new LineData(gridXreal, gridYreal, false);
-    graticule.applyProjection(projection);
+    graticule = projectedLines(new Object[] {"graticule", gridXreal, gridYreal}, null,
+        gridXreal, gridYreal);
     labels = new ArrayList<Renderer>();
     if (xTickValues && (gridX != null)) {
       for (int i = 1; i < gridX.length - 1; i++) {
@@ -224,13 +226,34 @@ public class MapRenderer extends BasicFrameRenderer {
    * @param fn : File name containing line data
    */
   public void createLine(String fn) {
-    LineData ld = new LineData(fn);
-    ld.applyProjection(projection);
+    LineData ld = projectedLines(new Object[] {"line", fn, new File(fn).lastModified()}, fn,
+        null, null);
     userDefined.add(ld);
     // userDefined = new LineData(fn);
     // userDefined.applyProjection(projection);
   }
 
+  /**
+   * Get line work projected for this map, from the shared cache if it was
+   * recently projected for an equal projection and range. Line work is read
+   * from a file, or else is a grid.
+   * @param what what the lines depend on besides projection and range
+   * @param fn file to read, or null for a grid
+   * @param x grid x values
+   * @param y grid y values
+   * @return a copy of the projected lines, for the caller to style
+   */
+  private LineData projectedLines(Object[] what, String fn, double[] x, double[] y) {
+    Object key = MapCache.key(projection, range, what);
+    LineData ld = (LineData) MapCache.SHARED.get(key);
+    if (ld == null) {
+      ld = fn != null ? new LineData(fn) : new LineData(x, y, false);
+      ld.applyProjection(projection);
+      MapCache.SHARED.put(key, ld, ld.getPoints().size() * 48L);
+    }
+    return new LineData(ld);
+  }
+
   /**  
    * Create a box: a quadrilateral specified by the lower left hand corner, the width, and the height  
    * @param pts # How many point along each edge of the quadrilateral
@@ -241,20 +264,57 @@ public class MapRenderer extends BasicFrameRenderer {
     box.applyProjection(projection);
   }
 
-  /**  
-   * Yield true iff bb intersects any element of boxes
-   * @param boxes list of boxes to compare bb against
-   * @param bb a Rectangle
-   * @return true iff bb intersects any element of boxes
+  /**
+   * Placed label boxes, bucketed by screen cell so a test only looks at boxes
+   * nearby.
    */
-  private boolean boxOverlaps(List<Rectangle> boxes, Rectangle bb) {
-    for (Iterator<Rectangle> it2 = boxes.iterator(); it2.hasNext();) {
-      Rectangle rect = it2.next();
-      if (rect.intersects(bb))
-        return false;
+  private static class LabelBoxes {
+    private static final int CELL = 64;
+    private final Map<Long, List<Rectangle>> cells = new HashMap<Long, List<Rectangle>>();
+
+    private static int cell(int v) {
+      return (int) Math.floor(v / (double) CELL);
+    }
+
+    private static long key(int cx, int cy) {
+      return ((long) cx << 32) ^ (cy & 0xffffffffL);
     }
 
-    return true;
+    boolean intersects(Rectangle bb) {
+      for (int cx = cell(bb.x); cx <= cell(bb.x + bb.width); cx++)
+        for (int cy = cell(bb.y); cy <= cell(bb.y + bb.height); cy++) {
+          List<Rectangle> boxes = cells.get(key(cx, cy));
+          if (boxes != null)
+            for (Rectangle rect : boxes)
+              if (rect.intersects(bb))
+                return true;
+        }
+      return false;
+    }
+
+    void add(Rectangle bb) {
+      Rectangle copy = new Rectangle(bb);
+      for (int cx = cell(bb.x); cx <= cell(bb.x + bb.width); cx++)
+        for (int cy = cell(bb.y); cy <= cell(bb.y + bb.height); cy++) {
+          Long k = key(cx, cy);
+          List<Rectangle> boxes = cells.get(k);
+          if (boxes == null) {
+            boxes = new ArrayList<Rectangle>(4);
+            cells.put(k, boxes);
+          }
+          boxes.add(copy);
+        }
+    }
+  }
+
+  /**  
+   * Yield true iff bb intersects no element of boxes
+   * @param boxes boxes to compare bb against
+   * @param bb a Rectangle
+   * @return true iff bb intersects no element of boxes
+   */
+  private boolean boxOverlaps(LabelBoxes boxes, Rectangle bb) {
+    return !boxes.intersects(bb);
   }
 
   /**  
@@ -263,7 +323,7 @@ public class MapRenderer extends BasicFrameRenderer {
    * @param bb a Rectangle
    * @return Point where label can go; null if nowhere
    */
-  private Point allowLabel(List<Rectangle> boxes, Rectangle bb) {
+  private Point allowLabel(LabelBoxes boxes, Rectangle bb) {
     if (boxOverlaps(boxes, bb))
       return new Point(0, 0);
 
@@ -283,18 +343,17 @@ public class MapRenderer extends BasicFrameRenderer {
   }
 
   /**
-   * Render labels om map
+   * Render labels om map. Labels in range and scale are placed by priority,
+   * each skipped if it would collide with one already placed.
    * @param g the graphics object upon which to render
    */
   public void renderGeoLabels(Graphics2D g) {
-    ArrayList<Rectangle> boxes = new ArrayList<Rectangle>();
+    LabelBoxes boxes = new LabelBoxes();
 
     if (geoLabelSet != null) {
-      List<GeoLabel> gls = geoLabelSet.getGeoLabels();
+      double scale = (maxX - minX) / graphWidth;
+      List<GeoLabel> gls = geoLabelSet.getSubset(range, scale).getGeoLabels();
       for (GeoLabel gl : gls) {
-        if (!range.contains(gl.location))
-          continue;
-
         Point2D.Double pt = projection.forward(gl.location);
 
         if (gl.shadow) {
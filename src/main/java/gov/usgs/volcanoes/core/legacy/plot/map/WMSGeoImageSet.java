@@ -2,19 +2,34 @@ package gov.usgs.volcanoes.core.legacy.plot.map;
 
 import gov.usgs.volcanoes.core.math.proj.GeoRange;
 import gov.usgs.volcanoes.core.util.Retriable;
+import gov.usgs.volcanoes.core.util.SharedExecutor;
 import gov.usgs.volcanoes.core.util.UtilException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.imageio.ImageIO;
 
@@ -26,6 +41,11 @@ import javax.imageio.ImageIO;
  * <code>GeoImageSet</code> to retrieve maps from Web Map Service Server via
  * Internet
  * </p>
+ *
+ * <p>
+ * Maps are requested as a fixed grid of square tiles, several at a time,
+ * and can be kept on disk with <code>setTileStore()</code>.
+ * </p>
  * 
  * @author Dan Cervelli
  */
@@ -40,6 +60,22 @@ public class WMSGeoImageSet extends GeoImageSet {
 
   public static final String EPSG_4326 = "EPSG:4326";
 
+  /** Tile width and height in pixels. */
+  public static final int TILE_SIZE = 256;
+  private static final int MAX_ZOOM = 20;
+  private static final int CONNECT_TIMEOUT = 10000;
+  private static final int READ_TIMEOUT = 30000;
+
+  /** Default limit on the bytes of tiles kept by setTileStore(). */
+  public static final long DEFAULT_TILE_STORE_BYTES = 256L * 1024 * 1024;
+
+  /** Requests in flight to servers at once. */
+  private static final int MAX_CONNECTIONS = 4;
+
+  /** Fetches mostly wait on the network, so they get threads of their own. */
+  private static final ExecutorService EXECUTOR =
+      SharedExecutor.newPool("WMSTile-", MAX_CONNECTIONS);
+
   public enum ImageType {
     JPEG("image/jpeg"), PNG("image/png");
 
@@ -67,8 +103,9 @@ public class WMSGeoImageSet extends GeoImageSet {
   protected ExceptionType exceptionType;
   protected ImageType imageType;
 
-  protected BufferedReader in;
-  protected BufferedInputStream inputStream;
+  private volatile WMSTileStore store;
+  private final ConcurrentHashMap<String, Future<BufferedImage>> fetching =
+      new ConcurrentHashMap<String, Future<BufferedImage>>();
 
   /**
    * Default constructor
@@ -104,99 +141,257 @@ public class WMSGeoImageSet extends GeoImageSet {
       styles += "," + s;
   }
 
-  private void getReader(String resource) throws MalformedURLException, IOException {
-    if (resource.indexOf("://") != -1) {
-      URL url = new URL(resource);
-      inputStream = new BufferedInputStream(url.openStream());
-      in = new BufferedReader(new InputStreamReader(inputStream));
-    } else {
-      in = new BufferedReader(new FileReader(resource));
-    }
-  }
-
   public void getCapabilities() {
     char c = server.indexOf('?') == -1 ? '?' : '&';
     String request = server + c + "REQUEST=GetCapabilities";
 
     try {
-      getReader(request);
-      String s;
-      while ((s = in.readLine()) != null)
-        LOGGER.info(s);
+      BufferedReader in = new BufferedReader(new InputStreamReader(open(request)));
+      try {
+        String s;
+        while ((s = in.readLine()) != null)
+          LOGGER.info(s);
+      } finally {
+        in.close();
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
+  /**
+   * Keep tiles on disk, so later maps, in this process or the next, are drawn
+   * without asking the server. A stale tile is fetched again, but still used
+   * if the server cannot be reached. At most DEFAULT_TILE_STORE_BYTES of
+   * tiles are kept.
+   *
+   * @param directory where to keep tiles, or null to keep none
+   * @param maxAge milliseconds a tile stays fresh
+   */
+  public void setTileStore(File directory, long maxAge) {
+    setTileStore(directory, maxAge, DEFAULT_TILE_STORE_BYTES);
+  }
+
+  /**
+   * Keep tiles on disk, as setTileStore(directory, maxAge) does, but up to a
+   * given size. Past it the oldest tiles, fresh or stale and from any
+   * server, layer or style, are deleted.
+   *
+   * @param directory where to keep tiles, or null to keep none
+   * @param maxAge milliseconds a tile stays fresh
+   * @param maxBytes bytes of tiles to keep at most
+   */
+  public void setTileStore(File directory, long maxAge, long maxBytes) {
+    store = directory == null ? null : new WMSTileStore(directory, maxAge, maxBytes);
+  }
+
+  /**
+   * Get the zoom level to draw at: the coarsest whose tiles have at least the
+   * pixels per degree asked for.
+   *
+   * @param ppdLon pixels per degree of longitude
+   * @param ppdLat pixels per degree of latitude
+   * @return the zoom level; tiles span 360 / 2^zoom degrees
+   */
+  static int getZoom(int ppdLon, int ppdLat) {
+    int ppd = Math.max(ppdLon, ppdLat);
+    int zoom = 1;
+    while (zoom < MAX_ZOOM && TILE_SIZE * (double) (1 << zoom) / 360 < ppd)
+      zoom++;
+    return zoom;
+  }
+
+  /**
+   * Build a composite from a fixed grid of tiles. Tiles not in the store are
+   * fetched from the server concurrently; tiles that cannot be had are logged
+   * and left transparent.
+   */
   @Override
-  public synchronized GeoImage getCompositeImage(final GeoRange range, final int ppdLon,
-      final int ppdLat, final double scale) {
-    GeoImage ret = null;
+  public GeoImage getCompositeImage(final GeoRange range, final int ppdLon, final int ppdLat,
+      final double scale) {
+    int width = (int) (range.getLonRange() * ppdLon);
+    int height = (int) (range.getLatRange() * ppdLat);
+    if (width <= 0 || height <= 0)
+      return null;
+    double w = range.getWest();
+    double e = range.getEast();
+    if (w > e)
+      e += 360;
+    double n = range.getNorth();
+    double s = range.getSouth();
+
+    int zoom = getZoom(ppdLon, ppdLat);
+    int cols = 1 << zoom;
+    int rows = cols / 2;
+    double deg = 360.0 / cols;
+    int c0 = (int) Math.floor((w + 180) / deg);
+    int c1 = (int) Math.ceil((e + 180) / deg) - 1;
+    int r0 = Math.max(0, (int) Math.floor((90 - n) / deg));
+    int r1 = Math.min(rows - 1, (int) Math.ceil((90 - s) / deg) - 1);
+
+    List<Future<BufferedImage>> tiles = new ArrayList<Future<BufferedImage>>();
+    for (int r = r0; r <= r1; r++)
+      for (int c = c0; c <= c1; c++)
+        tiles.add(tile(zoom, ((c % cols) + cols) % cols, r));
+
+    BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = copy.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    double sx = width / (e - w);
+    double sy = height / (n - s);
+    int drawn = 0;
+    int i = 0;
     try {
-      Retriable<GeoImage> rt = new Retriable<GeoImage>("WMS", 3) {
-        @Override
-        public void attemptFix() {
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          BufferedImage tile;
           try {
-            Thread.sleep(500);
-          } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
+            tile = tiles.get(i++).get();
+          } catch (ExecutionException ex) {
+            LOGGER.warn("WMS failure for tile {}/{}/{}: {}", zoom, c, r, ex.getCause().toString());
+            continue;
           }
+          if (tile == null)
+            continue;
+          AffineTransform at = new AffineTransform();
+          at.translate((-180 + c * deg - w) * sx, (n - (90 - r * deg)) * sy);
+          at.scale(deg * sx / tile.getWidth(), deg * sy / tile.getHeight());
+          g.drawImage(tile, at, null);
+          drawn++;
         }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } finally {
+      g.dispose();
+    }
+    if (drawn == 0)
+      return null;
+    return GeoImage.createMemoryImage(copy, range);
+  }
 
-        @Override
-        public boolean attempt() throws UtilException {
-          GeoImage image = null;
-          double width = range.getLonRange() * (double) ppdLon;
-          double height = range.getLatRange() * (double) ppdLat;
-          double w = range.getWest();
-          double e = range.getEast();
-          if (w > e) {
-            e += 360;
-          }
+  /**
+   * Start getting a tile. A tile is fetched once however many composites
+   * ask for it at the same time.
+   */
+  private Future<BufferedImage> tile(final int zoom, final int col, final int row) {
+    final String source = server + "|" + layer + "|" + styles + "|" + imageType.mime;
+    final String key = source + "|" + zoom + "|" + col + "|" + row;
+    FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+      public BufferedImage call() {
+        try {
+          return loadTile(source, zoom, col, row);
+        } finally {
+          fetching.remove(key);
+        }
+      }
+    });
+    Future<BufferedImage> pending = fetching.putIfAbsent(key, task);
+    if (pending != null)
+      return pending;
+    EXECUTOR.execute(task);
+    return task;
+  }
+
+  private BufferedImage loadTile(String source, int zoom, int col, int row) {
+    WMSTileStore st = store;
+    String suffix = imageType == ImageType.PNG ? "png" : "jpg";
+    File file = st == null ? null : st.file(source, zoom, col, row, suffix);
+    if (file != null && st.isFresh(file)) {
+      BufferedImage im = decode(st.read(file));
+      if (im != null)
+        return im;
+    }
+
+    byte[][] bytes = new byte[1][];
+    BufferedImage im = fetch(zoom, col, row, bytes);
+    if (im != null) {
+      if (file != null)
+        st.write(file, bytes[0]);
+      return im;
+    }
+
+    if (file != null) {
+      im = decode(st.read(file));
+      if (im != null)
+        LOGGER.info("WMS unavailable, using stale tile {}", file);
+    }
+    return im;
+  }
 
-          char c = server.indexOf('?') == -1 ? '?' : '&';
-          String request = String.format(
-              "%s%cSERVICE=WMS" + "&VERSION=1.1.1" + "&REQUEST=GetMap" + "&LAYERS=%s" + "&STYLES=%s"
-                  + "&WIDTH=%d" + "&HEIGHT=%d" + "&FORMAT=%s" + "&EXCEPTIONS=%s" + "&SRS=%s"
-                  + "&BBOX=%.5f,%.5f,%.5f,%.5f",
-              server, c, layer, // "BMNG"
-              styles, (int) width, (int) height, imageType.mime, exceptionType.mime, EPSG_4326, w,
-              range.getSouth(), e, range.getNorth());
+  /**
+   * Fetch a tile from the server, retrying.
+   *
+   * @param bytes set to the bytes the server sent
+   * @return the tile, or null if it could not be had
+   */
+  private BufferedImage fetch(int zoom, int col, int row, final byte[][] bytes) {
+    double deg = 360.0 / (1 << zoom);
+    double w = -180 + col * deg;
+    double n = 90 - row * deg;
+    char c = server.indexOf('?') == -1 ? '?' : '&';
+    final String request = String.format(Locale.US,
+        "%s%cSERVICE=WMS" + "&VERSION=1.1.1" + "&REQUEST=GetMap" + "&LAYERS=%s" + "&STYLES=%s"
+            + "&WIDTH=%d" + "&HEIGHT=%d" + "&FORMAT=%s" + "&EXCEPTIONS=%s" + "&SRS=%s"
+            + "&BBOX=%.5f,%.5f,%.5f,%.5f",
+        server, c, layer, styles, TILE_SIZE, TILE_SIZE, imageType.mime, exceptionType.mime,
+        EPSG_4326, w, n - deg, w + deg, n);
 
-          LOGGER.info(request);
+    Retriable<BufferedImage> rt = new Retriable<BufferedImage>("WMS", 3) {
+      @Override
+      public void attemptFix() {
+        try {
+          Thread.sleep(500);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public boolean attempt() throws UtilException {
+        LOGGER.debug(request);
+        try {
+          InputStream in = open(request);
           try {
-            getReader(request);
-            inputStream.mark(16384);
-            // JPEGImageDecoder codec =
-            // JPEGCodec.createJPEGDecoder(inputStream);
-            // BufferedImage im = codec.decodeAsBufferedImage();
-
-            // TODO: make sure this works.
-            BufferedImage im = ImageIO.read(inputStream);
-            BufferedImage copy =
-                new BufferedImage(im.getWidth(), im.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            copy.getGraphics().drawImage(im, 0, 0, null);
-            image = GeoImage.createMemoryImage(copy, range);
-          } catch (Exception ex) {
-            try {
-              inputStream.reset();
-              String s;
-              LOGGER.warn("WMS failure: {}", ex);
-              while ((s = in.readLine()) != null)
-                LOGGER.warn("\t{}", s);
-            } catch (IOException ioex) {
-              ioex.printStackTrace();
-            }
+            bytes[0] = WMSTileStore.readFully(in);
+          } finally {
+            in.close();
           }
-          result = image;
-          return result != null;
+          result = decode(bytes[0]);
+          if (result == null)
+            LOGGER.warn("WMS failure: {}", new String(bytes[0], "UTF-8"));
+        } catch (IOException ex) {
+          LOGGER.warn("WMS failure: {}", ex.toString());
         }
-      };
+        return result != null;
+      }
+    };
 
-      ret = rt.go();
+    try {
+      return rt.go();
     } catch (UtilException e) {
-      // Do nothing
+      return null;
+    }
+  }
+
+  private static InputStream open(String resource) throws IOException {
+    if (resource.indexOf("://") == -1)
+      return new FileInputStream(resource);
+    URLConnection conn = new URL(resource).openConnection();
+    conn.setConnectTimeout(CONNECT_TIMEOUT);
+    conn.setReadTimeout(READ_TIMEOUT);
+    return conn.getInputStream();
+  }
+
+  private static BufferedImage decode(byte[] bytes) {
+    if (bytes == null)
+      return null;
+    try {
+      return ImageIO.read(new ByteArrayInputStream(bytes));
+    } catch (IOException e) {
+      return null;
     }
-    return ret;
   }
 }
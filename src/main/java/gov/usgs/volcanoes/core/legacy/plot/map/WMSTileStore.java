@@ -0,0 +1,235 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>Keeps WMS tiles on disk, as the server sent them, so maps can be drawn
+ * without asking again.</p>
+ *
+ * <p>Tiles are filed under a directory per server, layer, style and format,
+ * then by zoom level. A tile older than the maximum age is stale: it should
+ * be fetched again, but is still better than nothing when the server cannot
+ * be reached.</p>
+ *
+ * <p>Once the tiles kept come to more than the size limit, the oldest are
+ * deleted, whatever source they came from, until they are down to three
+ * quarters of it.</p>
+ */
+final class WMSTileStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WMSTileStore.class);
+
+  private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+    public int compare(File a, File b) {
+      long ta = a.lastModified();
+      long tb = b.lastModified();
+      return ta < tb ? -1 : (ta == tb ? 0 : 1);
+    }
+  };
+
+  private final File directory;
+  private final long maxAge;
+  private final long maxBytes;
+
+  /** Bytes kept, or -1 until the directory has been measured. */
+  private long bytes = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param directory where to keep tiles
+   * @param maxAge milliseconds a tile stays fresh
+   * @param maxBytes bytes of tiles to keep at most
+   */
+  WMSTileStore(File directory, long maxAge, long maxBytes) {
+    this.directory = directory;
+    this.maxAge = maxAge;
+    this.maxBytes = maxBytes;
+    directory.mkdirs();
+  }
+
+  /**
+   * Get the file a tile is kept in.
+   *
+   * @param source the server, layer, style and format the tile came from
+   * @param zoom the zoom level
+   * @param col the column
+   * @param row the row
+   * @param suffix the file suffix
+   * @return the file, which may not exist
+   */
+  File file(String source, int zoom, int col, int row, String suffix) {
+    return new File(directory,
+        digest(source) + File.separator + zoom + File.separator + col + "_" + row + "." + suffix);
+  }
+
+  /**
+   * Name a source's directory by the SHA-256 of its server, layer, style and
+   * format, so no two sources share one.
+   *
+   * @param source the source
+   * @return the digest in hex
+   */
+  static String digest(String source) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest(source.getBytes("UTF-8")))
+        sb.append(String.format("%02x", b & 0xff));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 unavailable", e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 unavailable", e);
+    }
+  }
+
+  /**
+   * Is a tile kept and younger than the maximum age?
+   *
+   * @param file the tile file
+   * @return true if fresh
+   */
+  boolean isFresh(File file) {
+    return file.isFile() && System.currentTimeMillis() - file.lastModified() < maxAge;
+  }
+
+  /**
+   * Read a kept tile, fresh or stale.
+   *
+   * @param file the tile file
+   * @return the tile bytes, or null if not kept or unreadable
+   */
+  byte[] read(File file) {
+    if (!file.isFile())
+      return null;
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        return readFully(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      LOGGER.debug("unreadable tile {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Keep a tile. It is written beside its file and renamed, so readers never
+   * see a partial tile.
+   *
+   * @param file the tile file
+   * @param bytes the tile bytes
+   */
+  void write(File file, byte[] bytes) {
+    long replaced = file.length();
+    file.getParentFile().mkdirs();
+    File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("cannot write tile {}: {}", file, e.getMessage());
+    } finally {
+      tmp.delete();
+    }
+    added(file.length() - replaced);
+  }
+
+  /**
+   * Count bytes written, and delete the oldest tiles if over the limit.
+   *
+   * @param n bytes added, less any replaced
+   */
+  private synchronized void added(long n) {
+    if (bytes < 0) {
+      bytes = 0;
+      for (File f : tiles(directory, new ArrayList<File>()))
+        bytes += f.length();
+    } else {
+      bytes += n;
+    }
+    if (bytes <= maxBytes)
+      return;
+
+    List<File> tiles = tiles(directory, new ArrayList<File>());
+    Collections.sort(tiles, OLDEST_FIRST);
+    bytes = 0;
+    for (File f : tiles)
+      bytes += f.length();
+    long target = maxBytes / 4 * 3;
+    for (File f : tiles) {
+      if (bytes <= target)
+        break;
+      long length = f.length();
+      if (f.delete()) {
+        bytes -= length;
+        File dir = f.getParentFile();
+        while (!dir.equals(directory) && dir.delete())
+          dir = dir.getParentFile();
+      }
+    }
+    LOGGER.debug("pruned tile store {} to {} bytes", directory, bytes);
+  }
+
+  /**
+   * List the tiles under a directory.
+   *
+   * @param dir the directory
+   * @param tiles where to add them
+   * @return tiles
+   */
+  private static List<File> tiles(File dir, List<File> tiles) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        if (f.isDirectory())
+          tiles(f, tiles);
+        else if (!f.getName().endsWith(".tmp"))
+          tiles.add(f);
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Read a stream to its end.
+   *
+   * @param in the stream
+   * @return the bytes read
+   * @throws IOException if the stream cannot be read
+   */
+  static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[16384];
+    int n;
+    while ((n = in.read(buf)) != -1)
+      out.write(buf, 0, n);
+    return out.toByteArray();
+  }
+}
@@ -1,5 +1,6 @@
 package gov.usgs.volcanoes.core.legacy.plot.render;
 
+import gov.usgs.volcanoes.core.legacy.plot.decorate.AxisLayout;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.SmartTick;
 import gov.usgs.volcanoes.core.legacy.plot.transform.Transformer;
 import gov.usgs.volcanoes.core.math.Util;
@@ -409,16 +410,14 @@ abstract public class FrameRenderer implements Renderer, Transformer {
    * @param isLabels true if bottom tick labels are desired
    */
   public void setXAxisToTime(int ticks, boolean isTicks, boolean isLabels) {
-    Object[] stt = SmartTick.autoTimeTick(getMinXAxis(), getMaxXAxis(), ticks);
-    if (stt != null) {
-      if (isTicks) {
-        axis.createBottomTicks((double[]) stt[0]);
-        axis.createTopTicks((double[]) stt[0]);
-        axis.createVerticalGridLines((double[]) stt[0]);
-      }
-      if (isLabels) {
-        axis.createBottomTickLabels((double[]) stt[0], (String[]) stt[1]);
-      }
+    AxisLayout layout = AxisLayout.time(getMinXAxis(), getMaxXAxis(), ticks);
+    if (isTicks) {
+      axis.createBottomTicks(layout.getTicks());
+      axis.createTopTicks(layout.getTicks());
+      axis.createVerticalGridLines(layout.getTicks());
+    }
+    if (isLabels) {
+      axis.createBottomTickLabels(layout.getTicks(), layout.getLabels());
     }
   }
 
@@ -1,15 +1,19 @@
 package gov.usgs.volcanoes.core.legacy.plot.render;
 
 import gov.usgs.volcanoes.core.data.HelicorderData;
+import gov.usgs.volcanoes.core.legacy.plot.RenderSurface;
+import gov.usgs.volcanoes.core.legacy.plot.RenderSurfacePool;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.FrameDecorator;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.SmartTick;
 import gov.usgs.volcanoes.core.time.J2kSec;
 import gov.usgs.volcanoes.core.time.Time;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
@@ -17,6 +21,7 @@ import java.awt.geom.GeneralPath;
 import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -65,6 +70,7 @@ public class HelicorderRenderer extends FrameRenderer {
 
   private FrameDecorator decorator;
   private boolean showDecorator = true;
+  private boolean rasterBars = true;
 
   public boolean xTickMarks = true;
   public boolean xTickValues = true;
@@ -409,6 +415,53 @@ public class HelicorderRenderer extends FrameRenderer {
     showDecorator = sd;
   }
 
+  /**
+   * Set whether bars may be written straight into a raster instead of being
+   * drawn one rectangle at a time. The raster path is used only when drawing
+   * to an image with opaque colors and no scaling, where the output is the
+   * same.
+   * 
+   * @param b true to allow the raster path
+   */
+  public void setRasterBars(boolean b) {
+    rasterBars = b;
+  }
+
+  /**
+   * Can bars be written to a raster and drawn with one image blit without
+   * changing the output?
+   * 
+   * @param g where to draw to
+   * @return true if so
+   */
+  private boolean canRasterBars(Graphics2D g) {
+    if (!rasterBars || graphWidth < 2 || graphHeight < 2) {
+      return false;
+    }
+    if (g.getDeviceConfiguration().getDevice().getType() != GraphicsDevice.TYPE_IMAGE_BUFFER) {
+      return false;
+    }
+    if (!AlphaComposite.SrcOver.equals(g.getComposite())) {
+      return false;
+    }
+    AffineTransform at = g.getTransform();
+    if ((at.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0
+        || at.getTranslateX() != Math.rint(at.getTranslateX())
+        || at.getTranslateY() != Math.rint(at.getTranslateY())) {
+      return false;
+    }
+    if (color != null) {
+      return color.getAlpha() == 255;
+    }
+    // clipped bars are drawn in opaque red
+    for (Color c : defaultColors) {
+      if (c.getAlpha() != 255) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Creates a standard legend, a small line and point sample followed by the specified names.
    * 
@@ -463,72 +516,86 @@ public class HelicorderRenderer extends FrameRenderer {
       int lastRow = -1;
       int numRows = j2k.rows();
       Color lastColor = null;
-      if (color != null) {
+      BarRaster bars = null;
+      if (canRasterBars(g)) {
+        bars = new BarRaster(graphX + 1, graphY + 1, graphWidth - 1, graphHeight - 1);
+      } else if (color != null) {
         g.setColor(color);
       }
-      for (int j = 0; j < numRows; j++) {
-        t1 = j2k.getQuick(j, 0);
-        int k = ((int) ((t1 - hcMinX) / timeChunk)) % defaultColors.length;
-        if (k < 0) {
-          k = 0;
-        }
-
-        if (color == null) {
-          if (lastColor != defaultColors[k]) {
-            g.setColor(defaultColors[k]);
-            lastColor = defaultColors[k];
+      try {
+        for (int j = 0; j < numRows; j++) {
+          t1 = j2k.getQuick(j, 0);
+          int k = ((int) ((t1 - hcMinX) / timeChunk)) % defaultColors.length;
+          if (k < 0) {
+            k = 0;
           }
-        }
 
-        t2 = t1 + 1;
+          Color c = color == null ? defaultColors[k] : color;
 
-        int r = getRow(t2);
-        if (r != lastRow) {
-          double st = hcMinX + r * timeChunk;
-          bias = data.getBiasBetween(st, st + timeChunk);
-          lastRow = r;
-        }
+          t2 = t1 + 1;
 
-        x = helicorderGetXPixel(t1);
-        w = helicorderGetXPixel(t2) - x;
-        ymax = max.getQuick(j, 0);
-        ymin = min.getQuick(j, 0);
+          int r = getRow(t2);
+          if (r != lastRow) {
+            double st = hcMinX + r * timeChunk;
+            bias = data.getBiasBetween(st, st + timeChunk);
+            lastRow = r;
+          }
 
-        if (ymax == Integer.MIN_VALUE || ymin == Integer.MIN_VALUE) {
-          continue;
-        }
+          x = helicorderGetXPixel(t1);
+          w = helicorderGetXPixel(t2) - x;
+          ymax = max.getQuick(j, 0);
+          ymin = min.getQuick(j, 0);
 
-        ymax -= bias;
-        ymin -= bias;
+          if (ymax == Integer.MIN_VALUE || ymin == Integer.MIN_VALUE) {
+            continue;
+          }
+
+          ymax -= bias;
+          ymin -= bias;
 
-        if (showClip && (ymax >= clipValue || ymin <= -clipValue)) {
-          lastClipTime = t1;
-          if (color == null) {
-            if (lastColor != Color.red) {
-              g.setColor(Color.red);
-              lastColor = Color.red;
+          if (showClip && (ymax >= clipValue || ymin <= -clipValue)) {
+            lastClipTime = t1;
+            if (color == null) {
+              c = Color.red;
             }
           }
-        }
 
-        if (ymax > clipValue) {
-          ymax = clipValue;
-        }
+          if (ymax > clipValue) {
+            ymax = clipValue;
+          }
+
+          if (ymin < -clipValue) {
+            ymin = -clipValue;
+          }
+
+          y = helicorderGetYPixel(t1, ymax);
+          h = helicorderGetYPixel(t1, ymin) - y;
+          int hgt = (int) (h + 1);
+          if (hgt < 1) {
+            hgt = 1;
+          }
+          if (forceCenter) {
+            y = helicorderGetYPixel(t1, 0) - hgt / 2;
+          }
 
-        if (ymin < -clipValue) {
-          ymin = -clipValue;
+          if (bars != null) {
+            bars.fill((int) (x + 1), (int) (y + 1), (int) (w + 1), hgt, c.getRGB());
+          } else {
+            if (c != lastColor) {
+              g.setColor(c);
+              lastColor = c;
+            }
+            g.fillRect((int) (x + 1), (int) (y + 1), (int) (w + 1), hgt);
+          }
         }
 
-        y = helicorderGetYPixel(t1, ymax);
-        h = helicorderGetYPixel(t1, ymin) - y;
-        int hgt = (int) (h + 1);
-        if (hgt < 1) {
-          hgt = 1;
+        if (bars != null) {
+          bars.draw(g);
         }
-        if (forceCenter) {
-          y = helicorderGetYPixel(t1, 0) - hgt / 2;
+      } finally {
+        if (bars != null) {
+          bars.release();
         }
-        g.fillRect((int) (x + 1), (int) (y + 1), (int) (w + 1), hgt);
       }
 
       g.setClip(origClip);
@@ -855,4 +922,87 @@ public class HelicorderRenderer extends FrameRenderer {
     Thread t = new Thread(r);
     t.start();
   }
+
+  /**
+   * Accumulates bars in a transparent raster covering the clipped graph area.
+   * Consecutive bars in the same columns and color whose spans touch are
+   * merged before being written, and each is clipped to the raster.
+   */
+  private static class BarRaster {
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final RenderSurface surface;
+    private final int[] pixels;
+    private final int stride;
+
+    private boolean pending;
+    private int px0;
+    private int px1;
+    private int py0;
+    private int py1;
+    private int prgb;
+
+    BarRaster(int x, int y, int w, int h) {
+      originX = x;
+      originY = y;
+      width = w;
+      height = h;
+      surface = RenderSurfacePool.getShared().acquire(w, h, true);
+      surface.clear(0);
+      pixels = surface.getPixels();
+      stride = surface.getScanlineStride();
+    }
+
+    /**
+     * Fill a rectangle, in graphics coordinates.
+     */
+    void fill(int x, int y, int w, int h, int rgb) {
+      if (w <= 0 || h <= 0) {
+        return;
+      }
+      int x0 = x - originX;
+      int y0 = y - originY;
+      int x1 = x0 + w;
+      int y1 = y0 + h;
+      if (pending && x0 == px0 && x1 == px1 && rgb == prgb && y0 <= py1 && y1 >= py0) {
+        py0 = Math.min(py0, y0);
+        py1 = Math.max(py1, y1);
+        return;
+      }
+      flush();
+      px0 = x0;
+      px1 = x1;
+      py0 = y0;
+      py1 = y1;
+      prgb = rgb;
+      pending = true;
+    }
+
+    private void flush() {
+      if (!pending) {
+        return;
+      }
+      int x0 = Math.max(px0, 0);
+      int x1 = Math.min(px1, width);
+      int y0 = Math.max(py0, 0);
+      int y1 = Math.min(py1, height);
+      if (x0 < x1) {
+        for (int y = y0, off = y0 * stride; y < y1; y++, off += stride) {
+          Arrays.fill(pixels, off + x0, off + x1, prgb);
+        }
+      }
+      pending = false;
+    }
+
+    void draw(Graphics2D g) {
+      flush();
+      g.drawImage(surface.getImage(), originX, originY, null);
+    }
+
+    void release() {
+      surface.release();
+    }
+  }
 }
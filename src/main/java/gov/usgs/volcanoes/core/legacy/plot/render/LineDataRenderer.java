@@ -38,6 +38,7 @@ public class LineDataRenderer extends FrameRenderer {
   private List<Renderer> renderers;
   private boolean antiAlias;
   private Paint paint;
+  private boolean decimate;
 
   /** The color for the lines
    */
@@ -71,6 +72,14 @@ public class LineDataRenderer extends FrameRenderer {
     paint = p;
   }
 
+  /** Sets whether lines drop points within a pixel column other than its
+   * extremes. See {@link PathDecimator}. Off by default.
+   * @param b decimate flag
+   */
+  public void setDecimate(boolean b) {
+    decimate = b;
+  }
+
   /** Renderers the line data.
    * @param g the graphics object upon which to render
    */
@@ -101,6 +110,8 @@ public class LineDataRenderer extends FrameRenderer {
         GeneralPath gp = getPolygon(lineData);
         g.setPaint(paint);
         g.fill(gp);
+      } else if (decimate) {
+        g.draw(getLines(lineData));
       } else {
         List<Point2D.Double> points = lineData.getPoints();
         Line2D.Double line = new Line2D.Double();
@@ -152,20 +163,58 @@ public class LineDataRenderer extends FrameRenderer {
    */
   public GeneralPath getPolygon(LineData line) {
     GeneralPath gp = new GeneralPath();
+    PathDecimator pd = decimate ? new PathDecimator(gp) : null;
     boolean first = true;
     for (Point2D.Double pt : line.getPoints()) {
       if (Double.isNaN(pt.x) || Double.isNaN(pt.y)) {
         first = true;
-        gp.closePath();
+        if (pd != null)
+          pd.closePath();
+        else
+          gp.closePath();
         continue;
       }
-      if (first) {
-        first = false;
-        gp.moveTo((float) getXPixel(pt.x) + 1, (float) getYPixel(pt.y) + 1);
+      double x = getXPixel(pt.x) + 1;
+      double y = getYPixel(pt.y) + 1;
+      if (pd != null) {
+        if (first)
+          pd.moveTo(x, y);
+        else
+          pd.lineTo(x, y);
+      } else if (first) {
+        gp.moveTo((float) x, (float) y);
       } else {
-        gp.lineTo((float) getXPixel(pt.x) + 1, (float) getYPixel(pt.y) + 1);
+        gp.lineTo((float) x, (float) y);
+      }
+      first = false;
+    }
+    if (pd != null)
+      pd.flush();
+    return gp;
+  }
+
+  /**
+   * Get the lines of the data as one decimated path, broken at NaN points.
+   * @param line the data
+   * @return the path
+   */
+  private GeneralPath getLines(LineData line) {
+    List<Point2D.Double> points = line.getPoints();
+    GeneralPath gp = new GeneralPath(GeneralPath.WIND_NON_ZERO, Math.min(points.size(), 4096));
+    PathDecimator pd = new PathDecimator(gp);
+    boolean first = true;
+    for (Point2D.Double pt : points) {
+      if (Double.isNaN(pt.x) || Double.isNaN(pt.y)) {
+        first = true;
+        continue;
       }
+      if (first)
+        pd.moveTo(getXPixel(pt.x), getYPixel(pt.y));
+      else
+        pd.lineTo(getXPixel(pt.x), getYPixel(pt.y));
+      first = false;
     }
+    pd.flush();
     return gp;
   }
 
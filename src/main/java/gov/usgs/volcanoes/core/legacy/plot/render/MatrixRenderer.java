@@ -28,6 +28,7 @@ public class MatrixRenderer extends BasicFrameRenderer {
   private boolean NO_DATA = false;
   private boolean[] visible;
   private int offset;
+  private boolean decimate;
 
   /** The line renderers.  The length of this array should equal the number 
    * of columns in the data.  A value of null for a column means that no 
@@ -316,6 +317,15 @@ public class MatrixRenderer extends BasicFrameRenderer {
     }
   }
 
+  /**
+   * Set whether lines drop points within a pixel column other than its
+   * extremes. See {@link PathDecimator}. Off by default.
+   * @param b decimate flag
+   */
+  public void setDecimate(boolean b) {
+    decimate = b;
+  }
+
   /**
    * Get data column offset (sometimes first column is rank)
    * @return data column offset
@@ -366,11 +376,16 @@ public class MatrixRenderer extends BasicFrameRenderer {
         }
 
         GeneralPath gp = null;
+        PathDecimator pd = null;
         if (sr != null) {
           gp = (GeneralPath) sr.shape;
           gp.reset();
-          gp.moveTo((float) getXPixel(data.getQuick(0, 0)),
-              (float) (getYPixel(data.getQuick(0, j + offset))));
+          if (decimate) {
+            pd = new PathDecimator(gp);
+          } else {
+            gp.moveTo((float) getXPixel(data.getQuick(0, 0)),
+                (float) (getYPixel(data.getQuick(0, j + offset))));
+          }
         }
 
         boolean lastnd = false;
@@ -392,7 +407,13 @@ public class MatrixRenderer extends BasicFrameRenderer {
 
           if ((gp != null) && (y != Double.NEGATIVE_INFINITY)) {
             if (!Double.isNaN(y)) {
-              if (lastnd || i == 0) {
+              if (pd != null) {
+                if (lastnd || i == 0) {
+                  pd.moveTo(getXPixel(x), getYPixel(y));
+                } else {
+                  pd.lineTo(getXPixel(x), getYPixel(y));
+                }
+              } else if (lastnd || i == 0) {
                 gp.moveTo((float) getXPixel(x), (float) getYPixel(y));
               } else {
                 gp.lineTo((float) getXPixel(x), (float) getYPixel(y));
@@ -404,6 +425,9 @@ public class MatrixRenderer extends BasicFrameRenderer {
           }
         }
 
+        if (pd != null) {
+          pd.flush();
+        }
         if (sr != null) {
           sr.render(g);
         }
@@ -0,0 +1,192 @@
+package gov.usgs.volcanoes.core.legacy.plot.render;
+
+import java.awt.geom.GeneralPath;
+
+/**
+ * <p>Builds a GeneralPath from points in pixel space, dropping points within
+ * a pixel column other than its extremes.</p>
+ *
+ * <p>Consecutive points falling in the same half of a pixel column are
+ * reduced to at most four: the first, the lowest, the highest and the last,
+ * in their original order. Each column keeps its highest and lowest points
+ * exactly, so no peak is lost, while the path holds no more than eight points
+ * per column crossed however many points there are. Lines between the points
+ * kept are rasterized a little differently from lines through all of them,
+ * so a few pixels along the line may differ, more so when antialiased.</p>
+ */
+public class PathDecimator {
+  private final GeneralPath path;
+
+  private boolean open;
+  private boolean move;
+  private int column;
+  private int count;
+  private float firstX;
+  private float firstY;
+  private float minX;
+  private float minY;
+  private int minIndex;
+  private float maxX;
+  private float maxY;
+  private int maxIndex;
+  private float lastX;
+  private float lastY;
+
+  private long points;
+  private long segments;
+
+  /**
+   * Constructor.
+   *
+   * @param path the path to append to
+   */
+  public PathDecimator(GeneralPath path) {
+    this.path = path;
+  }
+
+  /**
+   * Get the path.
+   *
+   * @return the path
+   */
+  public GeneralPath getPath() {
+    return path;
+  }
+
+  /**
+   * Start a new line.
+   *
+   * @param x x pixel
+   * @param y y pixel
+   */
+  public void moveTo(double x, double y) {
+    flush();
+    start((float) x, (float) y, true);
+  }
+
+  /**
+   * Continue the line.
+   *
+   * @param x x pixel
+   * @param y y pixel
+   */
+  public void lineTo(double x, double y) {
+    float fx = (float) x;
+    float fy = (float) y;
+    int c = column(fx);
+    if (!open || c != column) {
+      flush();
+      start(fx, fy, false);
+      return;
+    }
+
+    points++;
+    count++;
+    if (fy < minY) {
+      minX = fx;
+      minY = fy;
+      minIndex = count - 1;
+    }
+    if (fy > maxY) {
+      maxX = fx;
+      maxY = fy;
+      maxIndex = count - 1;
+    }
+    lastX = fx;
+    lastY = fy;
+  }
+
+  /**
+   * Close the current line.
+   */
+  public void closePath() {
+    flush();
+    path.closePath();
+  }
+
+  /**
+   * Pixel columns are split at the half, where Java2D's default stroke
+   * normalization moves coordinates into the next pixel, so a group stays in
+   * one pixel whether or not strokes are normalized.
+   */
+  private static int column(float x) {
+    double c = Math.floor(x);
+    return (int) c * 2 + (x - c >= 0.5 ? 1 : 0);
+  }
+
+  private void start(float x, float y, boolean moveTo) {
+    points++;
+    open = true;
+    move = moveTo || path.getCurrentPoint() == null;
+    column = column(x);
+    count = 1;
+    firstX = x;
+    firstY = y;
+    minX = x;
+    minY = y;
+    minIndex = 0;
+    maxX = x;
+    maxY = y;
+    maxIndex = 0;
+    lastX = x;
+    lastY = y;
+  }
+
+  /**
+   * Append any pending points to the path. Call before using the path.
+   */
+  public void flush() {
+    if (!open) {
+      return;
+    }
+    open = false;
+
+    if (move) {
+      path.moveTo(firstX, firstY);
+    } else {
+      path.lineTo(firstX, firstY);
+      segments++;
+    }
+    if (count == 1) {
+      return;
+    }
+
+    int last = count - 1;
+    if (minIndex <= maxIndex) {
+      emit(minIndex, minX, minY, last);
+      if (maxIndex != minIndex) {
+        emit(maxIndex, maxX, maxY, last);
+      }
+    } else {
+      emit(maxIndex, maxX, maxY, last);
+      emit(minIndex, minX, minY, last);
+    }
+    path.lineTo(lastX, lastY);
+    segments++;
+  }
+
+  private void emit(int index, float x, float y, int last) {
+    if (index != 0 && index != last) {
+      path.lineTo(x, y);
+      segments++;
+    }
+  }
+
+  /**
+   * Get the number of points given.
+   *
+   * @return point count
+   */
+  public long getPoints() {
+    return points;
+  }
+
+  /**
+   * Get the number of line segments added to the path.
+   *
+   * @return segment count
+   */
+  public long getSegments() {
+    return segments;
+  }
+}
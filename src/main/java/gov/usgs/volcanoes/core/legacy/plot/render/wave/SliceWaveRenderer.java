@@ -48,6 +48,9 @@ public class SliceWaveRenderer extends FrameRenderer {
 
   protected FrameDecorator decorator;
 
+  protected TileCache tileCache;
+  protected String tileChannel;
+
   public boolean xTickMarks = true;
   public boolean xTickValues = true;
   public boolean xUnits = true;
@@ -148,6 +151,17 @@ public class SliceWaveRenderer extends FrameRenderer {
     wave = w;
   }
 
+  /**
+   * Draw the wave from cached tiles. Tiles are keyed by channel, so the wave
+   * must be that channel's data.
+   * @param cache tile cache, or null to draw the wave directly
+   * @param channel channel name
+   */
+  public void setTileCache(TileCache cache, String channel) {
+    tileCache = cache;
+    tileChannel = channel;
+  }
+
   /**
    * Set limits on time axis.
    * @param t1 start time
@@ -305,10 +319,6 @@ public class SliceWaveRenderer extends FrameRenderer {
 
     g.clip(new Rectangle(graphX + 1, graphY + 1, graphWidth - 1, graphHeight - 1));
 
-    double st = wave.getStartTime();
-    double step = 1 / wave.getSamplingRate();
-    wave.reset();
-
     double bias;
     if (removeBias) {
       bias = wave.mean();
@@ -318,6 +328,89 @@ public class SliceWaveRenderer extends FrameRenderer {
 
     g.setColor(color);
 
+    if (tileCache != null) {
+      renderTiles(g, bias);
+    } else {
+      renderWave(g, bias);
+    }
+
+    if (getLegendRenderer() != null) {
+      g.setColor(Color.BLACK);
+      getLegendRenderer().render(g);
+    }
+    g.setClip(origClip);
+
+    if (axis != null) {
+      axis.postRender(g);
+    }
+    g.setStroke(origStroke);
+    g.setColor(origColor);
+  }
+
+  /**
+   * Draw the wave within the graph area from tiles, each rendered by a copy
+   * of this renderer over that tile's span.
+   * @param g where to render to
+   * @param bias value subtracted from each sample
+   */
+  protected void renderTiles(Graphics2D g, double bias) {
+    final Wave source = wave.getWave();
+    final Stroke stroke = g.getStroke();
+
+    // the mean changes as the view pans; rounded to whole pixels it rarely
+    // changes the tiles, and is never more than half a pixel out
+    double pixel = (maxY - minY) / graphHeight;
+    final double tileBias = pixel > 0 ? Math.rint(bias / pixel) * pixel : bias;
+
+    int settings = color.getRGB();
+    settings = 31 * settings + (drawSamples ? 1 : 0);
+    settings = 31 * settings + Double.valueOf(minY).hashCode();
+    settings = 31 * settings + Double.valueOf(maxY).hashCode();
+    settings = 31 * settings + Double.valueOf(tileBias).hashCode();
+    settings = 31 * settings + stroke.hashCode();
+
+    TileCache.Source tiles = new TileCache.Source() {
+      public void renderTile(Graphics2D tg, double t1, double t2, int width, int height) {
+        // start a pixel early, so the first column is joined to the last of
+        // the tile before as it would be in one view, and a sample either side
+        double step = 1 / source.getSamplingRate();
+        double dx = (t2 - t1) / width;
+        double start = Math.max(t1 - dx - step, source.getStartTime());
+        double end = Math.min(t2 + step, source.getEndTime());
+        if (start >= end) {
+          return;
+        }
+
+        SliceWaveRenderer tile = new SliceWaveRenderer();
+        tile.wave = new SliceWave(source);
+        tile.wave.setSlice(start, end);
+        tile.drawSamples = drawSamples;
+        tile.viewStartTime = t1 - dx;
+        tile.viewEndTime = t2;
+        tile.setLocation(-1, 0, width + 1, height);
+        tile.setExtents(t1 - dx, t2, minY, maxY);
+
+        tg.setStroke(stroke);
+        tg.setColor(color);
+        tile.renderWave(tg, tileBias);
+      }
+    };
+
+    tileCache.setData(tileChannel, source, 1 / source.getSamplingRate());
+    tileCache.draw(g, tileChannel, settings, tiles, viewStartTime, viewEndTime,
+        source.getStartTime(), source.getEndTime(), graphX, graphY, graphWidth, graphHeight);
+  }
+
+  /**
+   * Draw the wave within the graph area.
+   * @param g where to render to
+   * @param bias value subtracted from each sample
+   */
+  protected void renderWave(Graphics2D g, double bias) {
+    double st = wave.getStartTime();
+    double step = 1 / wave.getSamplingRate();
+    wave.reset();
+
     double ns = (double) wave.samples() * (viewEndTime - viewStartTime)
         / (wave.getEndTime() - wave.getStartTime());
     double spp = ns / (double) graphWidth;
@@ -387,17 +480,5 @@ public class SliceWaveRenderer extends FrameRenderer {
         lastMaxY = maxY;
       }
     }
-
-    if (getLegendRenderer() != null) {
-      g.setColor(Color.BLACK);
-      getLegendRenderer().render(g);
-    }
-    g.setClip(origClip);
-
-    if (axis != null) {
-      axis.postRender(g);
-    }
-    g.setStroke(origStroke);
-    g.setColor(origColor);
   }
 }
@@ -3,16 +3,22 @@ package gov.usgs.volcanoes.core.legacy.plot.render.wave;
 import gov.usgs.volcanoes.core.data.SliceWave;
 import gov.usgs.volcanoes.core.data.Spectrogram;
 import gov.usgs.volcanoes.core.legacy.plot.color.Jet2;
+import gov.usgs.volcanoes.core.legacy.plot.color.PaletteMapper;
 import gov.usgs.volcanoes.core.legacy.plot.color.Spectrum;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.DefaultFrameDecorator;
 import gov.usgs.volcanoes.core.legacy.plot.decorate.FrameDecorator;
 import gov.usgs.volcanoes.core.legacy.plot.render.AxisRenderer;
+import gov.usgs.volcanoes.core.legacy.plot.render.FrameRenderer;
 import gov.usgs.volcanoes.core.legacy.plot.render.ImageDataRenderer;
 import gov.usgs.volcanoes.core.time.J2kSec;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.awt.image.MemoryImageSource;
 import java.util.Date;
 
@@ -67,6 +73,9 @@ public class SpectrogramRenderer extends ImageDataRenderer {
 
   private double[][] powerBuffer;
 
+  protected TileCache tileCache;
+  protected String tileChannel;
+
   /**
    * Default constructor.
    */
@@ -166,70 +175,72 @@ public class SpectrogramRenderer extends ImageDataRenderer {
     decorator.update();
     wave.setSlice(viewStartTime, viewEndTime);
 
-    double[] signal = wave.getSignal();
-
     if (nfft == 0) {
       nfft = binSize;
     }
 
-    spectrogram = new Spectrogram(signal, (int) wave.getSamplingRate(), nfft, binSize,
-        (int) (binSize * overlap), 5);
-
-    if (logPower) {
-      powerBuffer = spectrogram.getLogSpectraAmplitude();
-    } else {
-      powerBuffer = spectrogram.getSpectraAmplitude();
+    if (useTiles()) {
+      // tiles compute their own spectrograms as they are rendered
+      spectrogram = null;
+      powerBuffer = null;
+      imgBuffer = null;
+      mis = null;
+      im = null;
+      this.setImage(null);
+      this.setDataExtents(wave.getStartTime(), wave.getEndTime(), 0, wave.getNyquist());
+      this.setExtents(viewStartTime, viewEndTime,
+          Math.max(minFreq, wave.getNyquist() / (nfft / 2)), maxFreq);
+      decorator.decorate(this);
+
+      double[] power = {minPower, maxPower};
+      return power;
     }
 
-    int imgXSize = powerBuffer.length;
-    int imgYSize = powerBuffer[0].length;
-
-    imgBuffer = new byte[imgXSize * imgYSize];
+    double[] signal = wave.getSignal();
+    spectrogram = new Spectrogram(signal, (int) wave.getSamplingRate(), nfft, binSize,
+        (int) (binSize * overlap), 5);
 
-    // Maps the range of power values to [0 254] (255/-1 is transparent).
+    // power is mapped straight from amplitude; the log power buffer is only
+    // built if asked for
+    powerBuffer = null;
+    double[][] amplitude = spectrogram.getSpectraAmplitude();
+    int imgXSize = amplitude.length;
 
     if (autoScale) {
-      maxPower = Double.MIN_VALUE;
-      minPower = Double.MAX_VALUE;
-      for (int i = 0; i < imgXSize; i++) {
-        for (int j = 0; j < imgYSize; j++) {
-
-          double power = powerBuffer[i][j];
-          if (power == Double.NEGATIVE_INFINITY || power == Double.POSITIVE_INFINITY
-              || power == 1E300 | power == -1E300) {
-            continue;
-          } else if (power > maxPower) {
-            maxPower = power;
-          } else if (power < minPower) {
-            minPower = power;
-          }
+      if (logPower) {
+        double minAmplitude = spectrogram.getMinPositiveSpectraAmplitude();
+        double maxAmplitude = spectrogram.getMaxSpectraAmplitude();
+        if (minAmplitude == Double.MAX_VALUE) {
+          maxPower = Double.MIN_VALUE;
+          minPower = Double.MAX_VALUE;
+        } else {
+          minPower = logPower(minAmplitude);
+          maxPower = logPower(maxAmplitude);
         }
+      } else {
+        minPower = spectrogram.getMinSpectraAmplitude();
+        maxPower = spectrogram.getMaxSpectraAmplitude();
       }
     }
 
-    double slope = 254 / (maxPower - minPower);
-    double intercept = -slope * minPower;
-    int counter = 0;
-    double index;
-    for (int i = imgXSize - 1; i >= 0; i--) {
-      for (int j = 0; j < imgYSize; j++) {
-        index = slope * powerBuffer[i][j] + intercept;
-        if (index < 0) {
-          index = 0;
-        } else if (index > 254) {
-          index = 254;
-        }
-        imgBuffer[counter++] = (byte) index;
-      }
+    // Maps the range of power values to [0 254] (255/-1 is transparent).
+    PaletteMapper mapper;
+    if (logPower) {
+      mapper = PaletteMapper.log(spectrum.palette, minPower, maxPower,
+          Spectrogram.DEFAULT_MULTIPLIER, Spectrogram.REFERENCE_AMPLITUDE);
+    } else {
+      mapper = PaletteMapper.linear(spectrum.palette, minPower, maxPower);
     }
-
-    if (mis == null
-        || (im != null && (im.getWidth(null) != imgXSize || im.getHeight(null) != imgYSize))) {
-      mis = new MemoryImageSource(imgYSize, imgXSize, spectrum.palette, imgBuffer, 0, imgYSize);
+    mis = null;
+    if (amplitude[0].length == 0) {
+      imgBuffer = new byte[0];
+      im = null;
+    } else {
+      BufferedImage image = mapper.map(amplitude);
+      imgBuffer = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+      im = image;
     }
 
-    im = Toolkit.getDefaultToolkit().createImage(mis);
-
     this.setImage(im);
     this.setDataExtents(wave.getStartTime(), wave.getEndTime(), 0, wave.getNyquist());
     this.setExtents(viewStartTime, viewEndTime,
@@ -241,12 +252,131 @@ public class SpectrogramRenderer extends ImageDataRenderer {
 
   }
 
+  private boolean useTiles() {
+    return tileCache != null && !autoScale;
+  }
+
+  /**
+   * Draw the spectrogram from cached tiles, unless autoscaling, which depends
+   * on the whole view. Tiles are keyed by channel, so the wave must be that
+   * channel's data. While tiles are in use no spectrogram is kept for the view.
+   *
+   * @param cache tile cache, or null to render the view as one image
+   * @param channel channel name
+   */
+  public void setTileCache(TileCache cache, String channel) {
+    tileCache = cache;
+    tileChannel = channel;
+  }
+
+  /**
+   * Render the spectrogram.
+   *
+   * @param g where to render to
+   */
+  public void render(Graphics2D g) {
+    if (!useTiles()) {
+      super.render(g);
+      return;
+    }
+
+    Shape origClip = g.getClip();
+    if (axis != null) {
+      axis.render(g);
+    }
+
+    g.clip(new Rectangle(graphX + 1, graphY + 1, graphWidth - 1, graphHeight - 1));
+    final SliceWave source = new SliceWave(wave.getWave());
+
+    int settings = nfft;
+    settings = 31 * settings + binSize;
+    settings = 31 * settings + Double.valueOf(overlap).hashCode();
+    settings = 31 * settings + (logPower ? 1 : 0);
+    settings = 31 * settings + Double.valueOf(minPower).hashCode();
+    settings = 31 * settings + Double.valueOf(maxPower).hashCode();
+    settings = 31 * settings + Double.valueOf(getMinY()).hashCode();
+    settings = 31 * settings + Double.valueOf(getMaxY()).hashCode();
+    settings = 31 * settings + System.identityHashCode(spectrum);
+
+    // tiles are padded by a bin and its overlap either side, so the columns
+    // at their edges are computed as they would be for the whole view
+    final double pad = binSize * (1 + overlap) / source.getSamplingRate();
+
+    TileCache.Source tiles = new TileCache.Source() {
+      public void renderTile(Graphics2D tg, double t1, double t2, int width, int height) {
+        double start = Math.max(t1 - pad, source.getStartTime());
+        double end = Math.min(t2 + pad, source.getEndTime());
+        if (start >= end) {
+          return;
+        }
+
+        SpectrogramRenderer tile = new SpectrogramRenderer(new SliceWave(source.getWave()));
+        tile.nfft = nfft;
+        tile.binSize = binSize;
+        tile.overlap = overlap;
+        tile.logPower = logPower;
+        tile.minPower = minPower;
+        tile.maxPower = maxPower;
+        tile.minFreq = minFreq;
+        tile.maxFreq = maxFreq;
+        tile.spectrum = spectrum;
+        tile.axis = null;
+        tile.viewStartTime = start;
+        tile.viewEndTime = end;
+        tile.setFrameDecorator(new FrameDecorator() {
+          public void decorate(FrameRenderer fr) {}
+        });
+        tile.update();
+        // place each column over the middle of its window, rather than
+        // spreading the columns across the slice, so neighbouring tiles agree
+        Spectrogram sg = tile.spectrogram;
+        double rate = source.getSamplingRate();
+        double left = tile.wave.getStartTime() + sg.getOverlap() / 2.0 / rate;
+        double right =
+            left + (double) sg.getNTimeBins() * (sg.getBinSize() - sg.getOverlap()) / rate;
+        tile.setDataExtents(left, right, 0, source.getNyquist());
+        // render() keeps the first column and row of the graph for the frame,
+        // so the graph starts a pixel outside the tile
+        double dx = (t2 - t1) / width;
+        double dy = (getMaxY() - getMinY()) / height;
+        tile.setLocation(-1, -1, width + 1, height + 1);
+        tile.setExtents(t1 - dx, t2, getMinY(), getMaxY() + dy);
+        tile.render(tg);
+      }
+    };
+
+    tileCache.setData(tileChannel, source.getWave(), pad);
+    tileCache.draw(g, tileChannel, settings, tiles, viewStartTime, viewEndTime,
+        source.getStartTime(), source.getEndTime(), graphX, graphY, graphWidth, graphHeight);
+    g.setClip(origClip);
+
+    if (getLegendRenderer() != null) {
+      getLegendRenderer().render(g);
+    }
+
+    if (axis != null) {
+      axis.postRender(g);
+    }
+  }
+
+  private static double logPower(double amplitude) {
+    return Spectrogram.DEFAULT_MULTIPLIER
+        * Math.log10(amplitude / Spectrogram.REFERENCE_AMPLITUDE);
+  }
+
   /**
    * Return powerBuffer.
    * 
    * @return powerBuffer
    */
   public double[][] getPowerBuffer() {
+    if (powerBuffer == null && spectrogram != null) {
+      if (logPower) {
+        powerBuffer = spectrogram.getLogSpectraAmplitude();
+      } else {
+        powerBuffer = spectrogram.getSpectraAmplitude();
+      }
+    }
     return powerBuffer;
   }
 
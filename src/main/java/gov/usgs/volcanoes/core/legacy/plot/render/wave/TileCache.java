@@ -0,0 +1,660 @@
+package gov.usgs.volcanoes.core.legacy.plot.render.wave;
+
+import gov.usgs.volcanoes.core.data.Wave;
+import gov.usgs.volcanoes.core.legacy.plot.ParallelPngEncoder;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>A cache of pre-rendered raster tiles for time series panels, such as
+ * waveforms and spectrograms.</p>
+ *
+ * <p>Time is divided into tiles {@link #TILE_WIDTH} pixels wide. At zoom
+ * level n a pixel covers 2<sup>n</sup> seconds, so a tile covers
+ * TILE_WIDTH * 2<sup>n</sup> seconds and tile i starts at i times that, in
+ * J2K seconds. A tile is identified by channel, level, index, height and a
+ * hash of whatever renderer settings affect its pixels.</p>
+ *
+ * <p>{@link #draw} builds an arbitrary view from tiles at the level whose
+ * pixels are the same size as, or up to twice as wide as, the view's, so a
+ * view may be drawn at as little as half its own resolution. Missing tiles
+ * are rendered by a {@link Source}. Only tiles lying wholly within the span
+ * the caller declares complete are kept, so tiles still receiving data are
+ * rendered each time until their data is in. Renderers pass the wave they
+ * draw to {@link #setData}, which discards tiles where it differs from the
+ * last; other changes to data should be announced with
+ * {@link #invalidate}.</p>
+ *
+ * <p>Tiles are kept in memory, least recently used first out once the byte
+ * limit is reached, and optionally written as PNGs to a directory, which is
+ * consulted on a memory miss. The cache is thread-safe.</p>
+ */
+public class TileCache {
+  public static final int TILE_WIDTH = 256;
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  /** Samples hashed together when comparing waves. */
+  private static final int BLOCK = 1024;
+
+  /**
+   * Renders the content of one tile.
+   */
+  public interface Source {
+    /**
+     * Render the span [t1, t2) across a transparent image.
+     *
+     * @param g graphics context for the tile
+     * @param t1 start time of the tile
+     * @param t2 end time of the tile
+     * @param width tile width in pixels
+     * @param height tile height in pixels
+     */
+    void renderTile(Graphics2D g, double t1, double t2, int width, int height);
+  }
+
+  /**
+   * Identifies a tile.
+   */
+  public static class Key {
+    public final String channel;
+    public final int level;
+    public final long index;
+    public final int height;
+    public final int settings;
+
+    /**
+     * Constructor.
+     *
+     * @param channel channel name
+     * @param level zoom level
+     * @param index tile index at that level
+     * @param height tile height in pixels
+     * @param settings hash of the renderer settings
+     */
+    public Key(String channel, int level, long index, int height, int settings) {
+      this.channel = channel;
+      this.level = level;
+      this.index = index;
+      this.height = height;
+      this.settings = settings;
+    }
+
+    /**
+     * Get the start time of the tile.
+     *
+     * @return start time
+     */
+    public double getStartTime() {
+      return index * getTileSpan(level);
+    }
+
+    /**
+     * Get the end time of the tile.
+     *
+     * @return end time
+     */
+    public double getEndTime() {
+      return (index + 1) * getTileSpan(level);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key k = (Key) o;
+      return level == k.level && index == k.index && height == k.height
+          && settings == k.settings && channel.equals(k.channel);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = channel.hashCode();
+      h = 31 * h + level;
+      h = 31 * h + (int) (index ^ (index >>> 32));
+      h = 31 * h + height;
+      return 31 * h + settings;
+    }
+
+    @Override
+    public String toString() {
+      return fileChannel(channel) + "_" + level + "_" + index + "_" + height + "_"
+          + Integer.toHexString(settings);
+    }
+  }
+
+  private final long maxBytes;
+  private final File directory;
+  private final LinkedHashMap<Key, BufferedImage> tiles;
+  private final Map<String, Data> data = new HashMap<String, Data>();
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * Creates an in-memory cache with the default byte limit.
+   */
+  public TileCache() {
+    this(DEFAULT_MAX_BYTES, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes bytes of tiles kept in memory
+   * @param directory where tiles are written, or null to keep them in memory only
+   */
+  public TileCache(long maxBytes, File directory) {
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("cannot create tile directory " + directory);
+    }
+    tiles = new LinkedHashMap<Key, BufferedImage>(64, 0.75f, true);
+  }
+
+  /**
+   * Get the seconds covered by a pixel at a level.
+   *
+   * @param level zoom level
+   * @return seconds per pixel
+   */
+  public static double getSecondsPerPixel(int level) {
+    return Math.scalb(1.0, level);
+  }
+
+  /**
+   * Get the seconds covered by a tile at a level.
+   *
+   * @param level zoom level
+   * @return seconds per tile
+   */
+  public static double getTileSpan(int level) {
+    return TILE_WIDTH * getSecondsPerPixel(level);
+  }
+
+  /**
+   * Get the level at which pixels are the same size as, or up to twice as
+   * wide as, the given pixels. Tiles are stretched onto a view, never shrunk,
+   * so no tile pixel is dropped, but the view may show as little as half its
+   * own resolution.
+   *
+   * @param secondsPerPixel seconds per pixel of the view
+   * @return zoom level
+   */
+  public static int getLevel(double secondsPerPixel) {
+    int level = Math.getExponent(secondsPerPixel);
+    if (getSecondsPerPixel(level) < secondsPerPixel) {
+      level++;
+    }
+    return level;
+  }
+
+  private static String fileChannel(String channel) {
+    try {
+      return URLEncoder.encode(channel, "UTF-8").replace("_", "%5F").replace("*", "%2A");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get a tile from memory or disk.
+   *
+   * @param key the tile
+   * @return the tile, or null if not cached
+   */
+  public BufferedImage get(Key key) {
+    BufferedImage tile;
+    synchronized (this) {
+      tile = tiles.get(key);
+      if (tile != null) {
+        hits++;
+        return tile;
+      }
+    }
+
+    tile = read(key);
+    synchronized (this) {
+      if (tile != null) {
+        hits++;
+        store(key, tile);
+      } else {
+        misses++;
+      }
+    }
+    return tile;
+  }
+
+  /**
+   * Add a tile, writing it to disk if this cache has a directory.
+   *
+   * @param key the tile
+   * @param tile its image
+   */
+  public void put(Key key, BufferedImage tile) {
+    synchronized (this) {
+      store(key, tile);
+    }
+    write(key, tile);
+  }
+
+  private void store(Key key, BufferedImage tile) {
+    BufferedImage old = tiles.put(key, tile);
+    if (old != null) {
+      bytes -= sizeOf(old);
+    }
+    bytes += sizeOf(tile);
+
+    Iterator<BufferedImage> it = tiles.values().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      bytes -= sizeOf(it.next());
+      it.remove();
+    }
+  }
+
+  private static long sizeOf(BufferedImage tile) {
+    return 4L * tile.getWidth() * tile.getHeight();
+  }
+
+  /**
+   * Note the wave a channel's tiles are rendered from. Tiles are discarded
+   * where both this wave and the one last noted for the channel have samples
+   * and they differ, so data arriving late or replaced is drawn. Tiles where
+   * only one of the two has samples are kept, so a wave that slides along as
+   * data arrives keeps the tiles it leaves behind. Samples are only compared
+   * when the wave, its start or its buffer is not the one last noted, as
+   * after {@link Wave#combine}; samples changed in place must be announced
+   * with {@link #invalidate}.
+   *
+   * @param channel channel name
+   * @param wave the wave
+   * @param margin seconds either side of a sample over which it is drawn
+   */
+  public void setData(String channel, Wave wave, double margin) {
+    Data last;
+    synchronized (data) {
+      last = data.get(channel);
+      if (last != null && last.isOf(wave)) {
+        return;
+      }
+    }
+
+    Data next = new Data(wave);
+    synchronized (data) {
+      data.put(channel, next);
+    }
+    if (last != null) {
+      for (double[] span : last.changes(next, wave)) {
+        invalidate(channel, span[0] - margin, span[1] + margin);
+      }
+    }
+  }
+
+  /**
+   * Discard tiles of a channel overlapping [t1, t2), or within a pixel of it
+   * at their level, in memory and on disk. Call when data arrives for a span
+   * which may already have been rendered.
+   *
+   * @param channel channel name
+   * @param t1 start time
+   * @param t2 end time
+   */
+  public void invalidate(String channel, double t1, double t2) {
+    synchronized (this) {
+      Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Key, BufferedImage> entry = it.next();
+        Key key = entry.getKey();
+        double pixel = getSecondsPerPixel(key.level);
+        if (key.channel.equals(channel) && key.getStartTime() < t2 + pixel
+            && key.getEndTime() > t1 - pixel) {
+          bytes -= sizeOf(entry.getValue());
+          it.remove();
+        }
+      }
+    }
+
+    if (directory == null) {
+      return;
+    }
+    String prefix = fileChannel(channel) + "_";
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.startsWith(prefix) || !name.endsWith(".png")) {
+        continue;
+      }
+      String[] parts = name.substring(prefix.length(), name.length() - 4).split("_");
+      if (parts.length != 4) {
+        continue;
+      }
+      try {
+        int level = Integer.parseInt(parts[0]);
+        long index = Long.parseLong(parts[1]);
+        double span = getTileSpan(level);
+        double pixel = getSecondsPerPixel(level);
+        if (index * span < t2 + pixel && (index + 1) * span > t1 - pixel) {
+          file.delete();
+        }
+      } catch (NumberFormatException e) {
+        continue;
+      }
+    }
+  }
+
+  /**
+   * Discard all tiles held in memory. Tiles on disk are kept.
+   */
+  public synchronized void clear() {
+    tiles.clear();
+    bytes = 0;
+  }
+
+  private File file(Key key) {
+    return new File(directory, key + ".png");
+  }
+
+  private BufferedImage read(Key key) {
+    if (directory == null) {
+      return null;
+    }
+    File file = file(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      BufferedImage image = ImageIO.read(file);
+      if (image == null || image.getWidth() != TILE_WIDTH || image.getHeight() != key.height) {
+        return null;
+      }
+      if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+        BufferedImage argb =
+            new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = argb.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        image = argb;
+      }
+      return image;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void write(Key key, BufferedImage tile) {
+    if (directory == null) {
+      return;
+    }
+    // write beside the tile and rename, so readers never see a partial file
+    File file = file(key);
+    File tmp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+      try {
+        new ParallelPngEncoder().encode(tile, out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch (IOException e) {
+      // the tile stays in memory; disk is only a second chance
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Draw the span [t1, t2) of a channel into a rectangle, from cached tiles
+   * where possible.
+   *
+   * @param g destination graphics context
+   * @param channel channel name
+   * @param settings hash of the renderer settings
+   * @param source renders missing tiles
+   * @param t1 start time of the view
+   * @param t2 end time of the view
+   * @param complete1 start of the span whose data will not change
+   * @param complete2 end of the span whose data will not change
+   * @param x left of the rectangle
+   * @param y top of the rectangle
+   * @param width width of the rectangle
+   * @param height height of the rectangle
+   */
+  public void draw(Graphics2D g, String channel, int settings, Source source, double t1,
+      double t2, double complete1, double complete2, int x, int y, int width, int height) {
+    if (width <= 0 || height <= 0 || !(t2 > t1)) {
+      return;
+    }
+
+    int level = getLevel((t2 - t1) / width);
+    double span = getTileSpan(level);
+    double scale = width / (t2 - t1);
+    long first = (long) Math.floor(t1 / span);
+    long last = (long) Math.ceil(t2 / span) - 1;
+
+    RenderingHints hints = g.getRenderingHints();
+    Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    try {
+      for (long i = first; i <= last; i++) {
+        Key key = new Key(channel, level, i, height, settings);
+        double start = key.getStartTime();
+        double end = key.getEndTime();
+        BufferedImage tile = get(key);
+        if (tile == null) {
+          tile = new BufferedImage(TILE_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+          Graphics2D tg = tile.createGraphics();
+          try {
+            tg.setRenderingHints(hints);
+            source.renderTile(tg, start, end, TILE_WIDTH, height);
+          } finally {
+            tg.dispose();
+          }
+          if (start >= complete1 && end <= complete2) {
+            put(key, tile);
+          }
+        }
+
+        int dx1 = x + (int) Math.round((start - t1) * scale);
+        int dx2 = x + (int) Math.round((end - t1) * scale);
+        g.drawImage(tile, dx1, y, dx2, y + height, 0, 0, TILE_WIDTH, height, null);
+      }
+    } finally {
+      if (interpolation != null) {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+      }
+    }
+  }
+
+  /**
+   * Get the number of tiles held in memory.
+   *
+   * @return tile count
+   */
+  public synchronized int size() {
+    return tiles.size();
+  }
+
+  /**
+   * Get the bytes of tiles held in memory.
+   *
+   * @return byte count
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Get the number of lookups answered from memory or disk.
+   *
+   * @return hit count
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of lookups which found no tile.
+   *
+   * @return miss count
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Hashes of a wave's samples in blocks, numbered by sample from J2K 0, so
+   * waves on the same sample times can be compared a block at a time.
+   */
+  private static final class Data {
+    private final WeakReference<int[]> buffer;
+    private final double startTime;
+    private final double endTime;
+    private final double samplingRate;
+    private final double phase;
+    private final long start;
+    private final int count;
+    private final long first;
+    private final int[] hashes;
+
+    Data(Wave wave) {
+      buffer = new WeakReference<int[]>(wave.buffer);
+      startTime = wave.getStartTime();
+      endTime = wave.getEndTime();
+      samplingRate = wave.getSamplingRate();
+      double sample = startTime * samplingRate;
+      start = Math.round(sample);
+      phase = sample - start;
+
+      count = wave.numSamples();
+      first = count == 0 ? 0 : block(start);
+      hashes = new int[count == 0 ? 0 : (int) (block(start + count - 1) - first + 1)];
+      for (int i = 0; i < hashes.length; i++) {
+        long b = first + i;
+        long from = from(b);
+        hashes[i] = hash(wave.buffer, (int) (from - start), (int) (to(b) - start), seed(b, from));
+      }
+    }
+
+    private static long block(long sample) {
+      return sample >= 0 ? sample / BLOCK : -((-sample - 1) / BLOCK) - 1;
+    }
+
+    /** A block a wave starts partway into hashes differently from a whole one. */
+    private static int seed(long b, long from) {
+      return 1 + (int) (from - b * BLOCK);
+    }
+
+    private static int hash(int[] samples, int from, int to, int seed) {
+      int h = seed;
+      for (int i = from; i < to; i++) {
+        h = 31 * h + samples[i];
+      }
+      return h;
+    }
+
+    boolean isOf(Wave wave) {
+      return buffer.get() == wave.buffer && startTime == wave.getStartTime()
+          && samplingRate == wave.getSamplingRate();
+    }
+
+    /** First sample of block b this wave has. */
+    private long from(long b) {
+      return Math.max(b * BLOCK, start);
+    }
+
+    /** Sample after the last of block b this wave has. */
+    private long to(long b) {
+      return Math.min((b + 1) * BLOCK, start + count);
+    }
+
+    private double time(long b) {
+      return (b * BLOCK + phase) / samplingRate;
+    }
+
+    /**
+     * Get the spans where another wave's samples differ from these. Only
+     * blocks both waves have samples in are compared.
+     *
+     * @param next the other wave's hashes
+     * @param wave the other wave
+     * @return start and end times of each span
+     */
+    List<double[]> changes(Data next, Wave wave) {
+      List<double[]> spans = new ArrayList<double[]>();
+      if (hashes.length == 0 || next.hashes.length == 0) {
+        return spans;
+      }
+      if (samplingRate != next.samplingRate || Math.abs(phase - next.phase) > 1E-3) {
+        double t1 = Math.max(startTime, next.startTime);
+        double t2 = Math.min(endTime, next.endTime);
+        if (t1 < t2) {
+          spans.add(new double[] {t1, t2});
+        }
+        return spans;
+      }
+
+      long lo = Math.max(first, next.first);
+      long hi = Math.min(first + hashes.length, next.first + next.hashes.length);
+      long run = lo;
+      boolean changing = false;
+      for (long b = lo; b <= hi; b++) {
+        boolean changed = b < hi && differs(b, next, wave);
+        if (changed && !changing) {
+          run = b;
+        } else if (!changed && changing) {
+          spans.add(new double[] {time(run), time(b)});
+        }
+        changing = changed;
+      }
+      return spans;
+    }
+
+    /**
+     * Do another wave's samples in a block both waves have samples in differ
+     * from these? Where the other wave has all of this one's samples in the
+     * block and more, as at a wave's end when data is appended, only the
+     * samples this one has are compared.
+     */
+    private boolean differs(long b, Data next, Wave wave) {
+      long from = from(b);
+      long to = to(b);
+      int h = hashes[(int) (b - first)];
+      if (from == next.from(b) && to == next.to(b)) {
+        return h != next.hashes[(int) (b - next.first)];
+      }
+      if (from < next.start || to > next.start + next.count) {
+        // the other wave lacks some of these samples, which can't be compared
+        return true;
+      }
+      return h != hash(wave.buffer, (int) (from - next.start), (int) (to - next.start),
+          seed(b, from));
+    }
+  }
+}
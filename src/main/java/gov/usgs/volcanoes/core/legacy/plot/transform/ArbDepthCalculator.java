@@ -106,6 +106,41 @@ public class ArbDepthCalculator {
     return true;
   }
 
+  /**
+   * project many lat/lons at once: the scaled distance along the line and the
+   * scaled distance from it, as getScaledProjectedDistance() and
+   * getScalePojectedWidth() give, into the caller's arrays.
+   * @param lat latitudes
+   * @param lon longitudes, as many as latitudes
+   * @param dist scaled projected distances, at least as many as latitudes
+   * @param wid scaled distances from the line, at least as many as latitudes
+   */
+  public void project(double[] lat, double[] lon, double[] dist, double[] wid) {
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    for (int i = 0; i < lat.length; i++) {
+      double dlat = lat[i] - y1;
+      double dlon = lon[i] - x1;
+      dist[i] = (dlat * cos + dlon * sin) * scale;
+      wid[i] = Math.abs((dlon * cos - dlat * sin) * scale);
+    }
+  }
+
+  /**
+   * decide for many lat/lons if each is inside my box or not, as
+   * isInsideArea(lat, lon) does.
+   * @param lat latitudes
+   * @param lon longitudes, as many as latitudes
+   * @param inside "lat/lon is inside my box", at least as many as latitudes
+   */
+  public void isInsideArea(double[] lat, double[] lon, boolean[] inside) {
+    double[] dist = new double[lat.length];
+    double[] wid = new double[lat.length];
+    project(lat, lon, dist, wid);
+    for (int i = 0; i < lat.length; i++)
+      inside[i] = !(dist[i] < 0 || dist[i] > maxDistance || (width > 0.0 && wid[i] > width));
+  }
+
   /**
    * we need to know the angle of the line to do our projections.
    */
@@ -69,6 +69,44 @@ public class EllipsoidMercator extends Projection {
     return new Point2D.Double(lambda * RAD2DEG, phi * RAD2DEG);
   }
 
+  @Override
+  protected void forward(double[] lon, double[] lat, double[] x, double[] y, int from, int to) {
+    double r = ellipsoid.equatorialRadius;
+    double lambdaO = origin.getX() * DEG2RAD;
+    double e = Math.sqrt(ellipsoid.eccentricitySquared);
+    for (int i = from; i < to; i++) {
+      double phi = lat[i] * DEG2RAD;
+      double l = lon[i] * DEG2RAD - lambdaO;
+      while (l > Math.PI)
+        l -= Math.PI * 2;
+      while (l < -Math.PI)
+        l += Math.PI * 2;
+      double sphi = Math.sin(phi);
+      double t2 = Math.pow((1 - e * sphi) / (1 + e * sphi), e);
+      x[i] = r * l;
+      y[i] = r * 0.5 * Math.log((1 + sphi) / (1 - sphi) * t2);
+    }
+  }
+
+  @Override
+  protected void inverse(double[] x, double[] y, double[] lon, double[] lat, int from, int to) {
+    double r = ellipsoid.equatorialRadius;
+    double e = Math.sqrt(ellipsoid.eccentricitySquared);
+    double lambdaO = origin.getX() * DEG2RAD;
+    for (int i = from; i < to; i++) {
+      double t = Math.exp(-y[i] / r);
+      double phi = Math.PI / 2 - 2 * Math.atan(t);
+      for (int j = 0; j < 5; j++) {
+        double sphi = Math.sin(phi);
+        double t2 = (1 - e * sphi) / (1 + e * sphi);
+        double t3 = t * Math.pow(t2, e / 2);
+        phi = Math.PI / 2 - 2 * Math.atan(t3);
+      }
+      lon[i] = (lambdaO + x[i] / r) * RAD2DEG;
+      lat[i] = phi * RAD2DEG;
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     EllipsoidMercator merc = new EllipsoidMercator();
     System.out.println(merc.forward(new Point2D.Double(-121.5, 35.5)));
@@ -0,0 +1,213 @@
+package gov.usgs.volcanoes.core.math.proj;
+
+import gov.usgs.volcanoes.core.util.SharedExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Great-circle distances and azimuths from a fixed set of stations to many
+ * points at once.</p>
+ *
+ * <p>The sines and cosines of the station coordinates are worked out once,
+ * when the stations are given, and those of each point once per call, so a
+ * station-point pair costs a few multiplies, a square root and an
+ * arctangent. Results agree with <code>Projection.distanceBetweenRad()</code>
+ * and <code>Projection.azimuthTo()</code> to rounding. Coordinates are in
+ * degrees; NaN coordinates give NaN results.</p>
+ */
+public final class GreatCircle {
+  /** Station-point pairs per task when working on several threads. */
+  private static final int BATCH = 65536;
+
+  private final int size;
+  private final double[] sinLat;
+  private final double[] cosLat;
+  private final double[] sinLon;
+  private final double[] cosLon;
+
+  /**
+   * Constructor.
+   *
+   * @param lon station longitudes
+   * @param lat station latitudes, as many as longitudes
+   */
+  public GreatCircle(double[] lon, double[] lat) {
+    if (lat.length != lon.length)
+      throw new IllegalArgumentException(
+          "array lengths differ: " + lon.length + ", " + lat.length);
+    size = lon.length;
+    sinLat = new double[size];
+    cosLat = new double[size];
+    sinLon = new double[size];
+    cosLon = new double[size];
+    trig(lon, lat, 0, size, sinLat, cosLat, sinLon, cosLon);
+  }
+
+  private static void trig(double[] lon, double[] lat, int from, int to, double[] sinLat,
+      double[] cosLat, double[] sinLon, double[] cosLon) {
+    for (int i = from; i < to; i++) {
+      double phi = Math.toRadians(lat[i]);
+      double lam = Math.toRadians(lon[i]);
+      sinLat[i - from] = Math.sin(phi);
+      cosLat[i - from] = Math.cos(phi);
+      sinLon[i - from] = Math.sin(lam);
+      cosLon[i - from] = Math.cos(lam);
+    }
+  }
+
+  /**
+   * Get the number of stations.
+   *
+   * @return station count
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the distances from one station to many points.
+   *
+   * @param station the station index
+   * @param lon point longitudes
+   * @param lat point latitudes
+   * @param dist distances in radians, at least as many as points
+   */
+  public void distances(int station, double[] lon, double[] lat, double[] dist) {
+    oneToMany(station, lon, lat, dist, false);
+  }
+
+  /**
+   * Get the azimuths from one station to many points.
+   *
+   * @param station the station index
+   * @param lon point longitudes
+   * @param lat point latitudes
+   * @param az azimuths in degrees clockwise from north, in [0, 360), at least
+   *        as many as points
+   */
+  public void azimuths(int station, double[] lon, double[] lat, double[] az) {
+    oneToMany(station, lon, lat, az, true);
+  }
+
+  /**
+   * Get the distance from every station to every point. The distance from
+   * station s to point p is at <code>dist[p * size() + s]</code>, so each
+   * point's distances are together.
+   *
+   * @param lon point longitudes
+   * @param lat point latitudes
+   * @param dist distances in radians, at least points times stations
+   * @param parallel split large batches across threads
+   */
+  public void distances(double[] lon, double[] lat, double[] dist, boolean parallel) {
+    manyToMany(lon, lat, dist, false, parallel);
+  }
+
+  /**
+   * Get the azimuth from every station to every point, laid out as
+   * <code>distances()</code> lays out distances.
+   *
+   * @param lon point longitudes
+   * @param lat point latitudes
+   * @param az azimuths in degrees clockwise from north, in [0, 360), at least
+   *        points times stations
+   * @param parallel split large batches across threads
+   */
+  public void azimuths(double[] lon, double[] lat, double[] az, boolean parallel) {
+    manyToMany(lon, lat, az, true, parallel);
+  }
+
+  private void oneToMany(int s, double[] lon, double[] lat, double[] out, boolean azimuth) {
+    checkLengths(lon, lat, out, lon.length);
+    double sp1 = sinLat[s];
+    double cp1 = cosLat[s];
+    double sl1 = sinLon[s];
+    double cl1 = cosLon[s];
+    for (int p = 0; p < lon.length; p++) {
+      double phi = Math.toRadians(lat[p]);
+      double lam = Math.toRadians(lon[p]);
+      out[p] = pair(sp1, cp1, sl1, cl1, Math.sin(phi), Math.cos(phi), Math.sin(lam),
+          Math.cos(lam), azimuth);
+    }
+  }
+
+  private void manyToMany(final double[] lon, final double[] lat, final double[] out,
+      final boolean azimuth, boolean parallel) {
+    final int n = lon.length;
+    checkLengths(lon, lat, out, n * size);
+    int rows = Math.max(1, BATCH / Math.max(1, size));
+    if (!parallel || n <= rows || SharedExecutor.isWorker()) {
+      rows(lon, lat, out, azimuth, 0, n);
+      return;
+    }
+
+    List<Future<?>> spans = new ArrayList<Future<?>>();
+    for (int from = rows; from < n; from += rows) {
+      final int f = from;
+      final int t = Math.min(n, from + rows);
+      spans.add(SharedExecutor.compute().submit(new Runnable() {
+        public void run() {
+          rows(lon, lat, out, azimuth, f, t);
+        }
+      }));
+    }
+    rows(lon, lat, out, azimuth, 0, rows);
+    try {
+      for (Future<?> f : spans)
+        f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while measuring", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("measuring failed", e.getCause());
+    }
+  }
+
+  private void rows(double[] lon, double[] lat, double[] out, boolean azimuth, int from,
+      int to) {
+    int n = to - from;
+    double[] sp2 = new double[n];
+    double[] cp2 = new double[n];
+    double[] sl2 = new double[n];
+    double[] cl2 = new double[n];
+    trig(lon, lat, from, to, sp2, cp2, sl2, cl2);
+    for (int p = 0; p < n; p++) {
+      int row = (from + p) * size;
+      for (int s = 0; s < size; s++)
+        out[row + s] = pair(sinLat[s], cosLat[s], sinLon[s], cosLon[s], sp2[p], cp2[p], sl2[p],
+            cl2[p], azimuth);
+    }
+  }
+
+  /**
+   * Distance or azimuth from point 1 to point 2, the longitude difference
+   * taken from the sines and cosines of each longitude.
+   */
+  private static double pair(double sp1, double cp1, double sl1, double cl1, double sp2,
+      double cp2, double sl2, double cl2, boolean azimuth) {
+    double sdlam = sl2 * cl1 - cl2 * sl1;
+    double cdlam = cl2 * cl1 + sl2 * sl1;
+    if (azimuth) {
+      // atan2(sin(phi1)cos(dlam) - cos(phi1)tan(phi2), sin(dlam)) as in
+      // Projection.azimuthTo(), both arguments scaled by cos(phi2) >= 0
+      double az = Math.toDegrees(Math.atan2(sp1 * cp2 * cdlam - cp1 * sp2, cp2 * sdlam)) + 90;
+      if (az < 0)
+        az += 360;
+      if (az >= 360)
+        az -= 360;
+      return az;
+    }
+    double a = cp2 * sdlam;
+    double bc = cp1 * sp2 - sp1 * cp2 * cdlam;
+    return Math.atan2(Math.sqrt(a * a + bc * bc), sp1 * sp2 + cp1 * cp2 * cdlam);
+  }
+
+  private static void checkLengths(double[] lon, double[] lat, double[] out, int needed) {
+    if (lat.length != lon.length || out.length < needed)
+      throw new IllegalArgumentException("array lengths differ: " + lon.length + ", "
+          + lat.length + ", " + out.length);
+  }
+}
@@ -91,13 +91,40 @@ public class Mercator extends Projection {
     return new Point2D.Double(lambda * RAD2DEG, phi * RAD2DEG);
   }
 
+  protected void forward(double[] lon, double[] lat, double[] x, double[] y, int from, int to) {
+    double r = ellipsoid.equatorialRadius;
+    double lambdaO = origin.getX() * DEG2RAD;
+    for (int i = from; i < to; i++) {
+      double phi = lat[i] * DEG2RAD;
+      double l = lon[i] * DEG2RAD - lambdaO;
+      while (l > Math.PI)
+        l -= Math.PI * 2;
+      while (l < -Math.PI)
+        l += Math.PI * 2;
+      x[i] = r * l;
+      y[i] = r * Math.log(Math.tan(Math.PI / 4 + phi / 2));
+    }
+  }
+
+  protected void inverse(double[] x, double[] y, double[] lon, double[] lat, int from, int to) {
+    double r = ellipsoid.equatorialRadius;
+    double lambdaO = origin.getX() * DEG2RAD;
+    for (int i = from; i < to; i++) {
+      double phi = Math.PI / 2 - 2 * Math.atan(Math.exp(-y[i] / r));
+      lon[i] = (lambdaO + x[i] / r) * RAD2DEG;
+      lat[i] = phi * RAD2DEG;
+    }
+  }
+
   public FastProjector getFastProjector() {
     return new FastProjector() {
       double r = ellipsoid.equatorialRadius;
       double lambdaO = origin.getX() * DEG2RAD;
 
       public void forward(Point2D.Double pt) {
-        pt = Mercator.this.forward(pt);
+        Point2D.Double xy = Mercator.this.forward(pt);
+        pt.x = xy.x;
+        pt.y = xy.y;
       }
 
       public void inverse(Point2D.Double xy) {
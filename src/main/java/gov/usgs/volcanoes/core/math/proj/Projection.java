@@ -1,6 +1,7 @@
 package gov.usgs.volcanoes.core.math.proj;
 
 import gov.usgs.volcanoes.core.CodeTimer;
+import gov.usgs.volcanoes.core.util.SharedExecutor;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
@@ -9,7 +10,11 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * @author Dan Cervelli
@@ -18,6 +23,15 @@ abstract public class Projection {
   protected String name;
   protected static final double DEG2RAD = Math.PI / 180;
   protected static final double RAD2DEG = 180.0 / Math.PI;
+
+  /** Points per task when projecting arrays on several threads. */
+  private static final int BATCH = 8192;
+
+  /** A span of array indices to project. */
+  private interface Span {
+    void project(int from, int to);
+  }
+
   protected Ellipsoid ellipsoid = Ellipsoid.ELLIPSOIDS[23];
 
   public void setEllipsoid(Ellipsoid e) {
@@ -61,19 +75,153 @@ abstract public class Projection {
   }
 
   public Point2D.Double[] forward(Point2D.Double[] lonLat) {
-    Point2D.Double[] result = new Point2D.Double[lonLat.length];
-    for (int i = 0; i < lonLat.length; i++)
-      result[i] = forward(lonLat[i]);
-    return result;
+    double[] x = new double[lonLat.length];
+    double[] y = new double[lonLat.length];
+    for (int i = 0; i < lonLat.length; i++) {
+      x[i] = lonLat[i].x;
+      y[i] = lonLat[i].y;
+    }
+    forward(x, y, x, y);
+    return toPoints(x, y);
   }
 
   public Point2D.Double[] inverse(Point2D.Double[] xy) {
-    Point2D.Double[] result = new Point2D.Double[xy.length];
-    for (int i = 0; i < xy.length; i++)
-      result[i] = inverse(xy[i]);
+    double[] x = new double[xy.length];
+    double[] y = new double[xy.length];
+    for (int i = 0; i < xy.length; i++) {
+      x[i] = xy[i].x;
+      y[i] = xy[i].y;
+    }
+    inverse(x, y, x, y);
+    return toPoints(x, y);
+  }
+
+  private static Point2D.Double[] toPoints(double[] x, double[] y) {
+    Point2D.Double[] result = new Point2D.Double[x.length];
+    for (int i = 0; i < x.length; i++)
+      result[i] = new Point2D.Double(x[i], y[i]);
     return result;
   }
 
+  /**
+   * Project arrays of points. The outputs may be the inputs, to project in
+   * place. Large arrays are split across threads.
+   *
+   * @param lon longitudes
+   * @param lat latitudes, as many as longitudes
+   * @param x projected x, at least as many as longitudes
+   * @param y projected y, at least as many as longitudes
+   */
+  public void forward(final double[] lon, final double[] lat, final double[] x,
+      final double[] y) {
+    checkLengths(lon, lat, x, y);
+    inParallel(lon.length, new Span() {
+      public void project(int from, int to) {
+        forward(lon, lat, x, y, from, to);
+      }
+    });
+  }
+
+  /**
+   * Unproject arrays of points. The outputs may be the inputs, to unproject in
+   * place. Large arrays are split across threads.
+   *
+   * @param x projected x
+   * @param y projected y, as many as x
+   * @param lon longitudes, at least as many as x
+   * @param lat latitudes, at least as many as x
+   */
+  public void inverse(final double[] x, final double[] y, final double[] lon,
+      final double[] lat) {
+    checkLengths(x, y, lon, lat);
+    inParallel(x.length, new Span() {
+      public void project(int from, int to) {
+        inverse(x, y, lon, lat, from, to);
+      }
+    });
+  }
+
+  /**
+   * Project a span of points on this thread. Subclasses override this with
+   * loops that work out their constants once, not once a point.
+   *
+   * @param lon longitudes
+   * @param lat latitudes
+   * @param x projected x
+   * @param y projected y
+   * @param from first index
+   * @param to index after the last
+   */
+  protected void forward(double[] lon, double[] lat, double[] x, double[] y, int from, int to) {
+    Point2D.Double pt = new Point2D.Double();
+    for (int i = from; i < to; i++) {
+      pt.x = lon[i];
+      pt.y = lat[i];
+      Point2D.Double p = forward(pt);
+      x[i] = p.x;
+      y[i] = p.y;
+    }
+  }
+
+  /**
+   * Unproject a span of points on this thread.
+   *
+   * @param x projected x
+   * @param y projected y
+   * @param lon longitudes
+   * @param lat latitudes
+   * @param from first index
+   * @param to index after the last
+   */
+  protected void inverse(double[] x, double[] y, double[] lon, double[] lat, int from, int to) {
+    Point2D.Double pt = new Point2D.Double();
+    for (int i = from; i < to; i++) {
+      pt.x = x[i];
+      pt.y = y[i];
+      Point2D.Double p = inverse(pt);
+      lon[i] = p.x;
+      lat[i] = p.y;
+    }
+  }
+
+  private static void checkLengths(double[] a, double[] b, double[] c, double[] d) {
+    if (b.length < a.length || c.length < a.length || d.length < a.length)
+      throw new IllegalArgumentException("array lengths differ: " + a.length + ", " + b.length
+          + ", " + c.length + ", " + d.length);
+  }
+
+  /**
+   * Project n points in spans of BATCH, the first on this thread and the rest
+   * on the pool. Pool threads project their arrays alone, since waiting on
+   * the pool from inside it could deadlock.
+   */
+  private static void inParallel(int n, final Span span) {
+    if (n <= BATCH || SharedExecutor.isWorker()) {
+      span.project(0, n);
+      return;
+    }
+    List<Future<?>> spans = new ArrayList<Future<?>>();
+    for (int from = BATCH; from < n; from += BATCH) {
+      final int f = from;
+      final int t = Math.min(n, from + BATCH);
+      spans.add(SharedExecutor.compute().submit(new Runnable() {
+        public void run() {
+          span.project(f, t);
+        }
+      }));
+    }
+    span.project(0, BATCH);
+    try {
+      for (Future<?> f : spans)
+        f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while projecting", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("projection failed", e.getCause());
+    }
+  }
+
   public double[] getProjectedExtents(GeoRange gr) {
     Point2D.Double[] pt = new Point2D.Double[8];
     pt[0] = new Point2D.Double(gr.getWest(), gr.getNorth());
@@ -313,6 +461,14 @@ abstract public class Projection {
       // System.out.println("ll: " + ll);
       // System.out.println("lr: " + lr);
 
+      // Longitudes west of the range are moved east a turn where the range
+      // contains them. Well inside that wrapped span it always does, and far
+      // from it the pixel is skipped either way, so containsLongitude() is only
+      // needed within a couple of source pixels of the edges.
+      double pad = 2 * lonRange / sw;
+      double wrapW = w - 360;
+      double wrapE = wrapW + lonRange;
+
       // for each col
       for (int i = 0; i < dw; i++) {
         if (Math.abs(ur.x - ul.x) > 180) {
@@ -351,8 +507,12 @@ abstract public class Projection {
         // for each row
         for (int j = 0; j < dh; j++) {
           double adjx = x;
-          if (adjx < w && range.containsLongitude(adjx)) {
-            adjx += 360;
+          if (adjx < w) {
+            if (adjx > wrapW + pad && adjx < wrapE - pad)
+              adjx += 360;
+            else if ((adjx > w - pad || Math.abs(adjx - wrapW) <= pad
+                || Math.abs(adjx - wrapE) <= pad) && range.containsLongitude(adjx))
+              adjx += 360;
           }
           sx = (int) ((adjx - w) / lonRange * sw);
           sy = (int) (-(y - n) / latRange * sh);
@@ -378,23 +538,53 @@ abstract public class Projection {
     return getProjectedImage(n, dw, dh, pix, src.getWidth(), src.getHeight(), gr, mw, me, ms, mn);
   }
 
-  public BufferedImage getProjectedImage(int n, int dw, int dh, int[] src, int sw, int sh,
-      GeoRange gr, double mw, double me, double ms, double mn) {
+  /**
+   * Reproject an image onto a grid of (2n)^2 cells, each mapped by
+   * interpolating between its projected corners. Columns of cells write
+   * disjoint pixels and are mapped in parallel, unless this is a worker
+   * thread; the cells within a column are mapped bottom to top, as they
+   * always have been, since a cell may share a row with the one above it.
+   */
+  public BufferedImage getProjectedImage(final int n, int dw, int dh, final int[] src,
+      final int sw, final int sh, final GeoRange gr, final double mw, final double me,
+      final double ms, final double mn) {
     CodeTimer ct = new CodeTimer("getProjectedImage");
-    FastProjector fast = getFastProjector();
-    int[] buf = new int[dw * dh];
+    final int[] buf = new int[dw * dh];
     Arrays.fill(buf, 0xffffffff);
-    int stepX = dw / (n * 2);
-    int stepY = dh / (n * 2);
-    for (int i = -n; i < n; i++)
-      for (int j = -n; j < n; j++) {
-        double x0 = mw + (me - mw) * (double) (i + n) / (double) (n * 2);
-        double y0 = ms + (mn - ms) * (double) (j + n) / (double) (n * 2);
-        double x1 = mw + (me - mw) * (double) (i + n + 1) / (double) (n * 2);
-        double y1 = ms + (mn - ms) * (double) (j + n + 1) / (double) (n * 2);
-        fastMapRect(fast, x0, y0, x1, y1, (n + i) * stepX, (n - j - 1) * stepY, stepX, stepY, src,
-            buf, sw, sh, dw, gr);
-      }
+    final int scan = dw;
+    final int stepX = dw / (n * 2);
+    final int stepY = dh / (n * 2);
+    boolean parallel = !SharedExecutor.isWorker();
+    List<Future<?>> columns = new ArrayList<Future<?>>();
+    for (int c = -n; c < n; c++) {
+      final int i = c;
+      Runnable column = new Runnable() {
+        public void run() {
+          FastProjector fast = getFastProjector();
+          for (int j = -n; j < n; j++) {
+            double x0 = mw + (me - mw) * (double) (i + n) / (double) (n * 2);
+            double y0 = ms + (mn - ms) * (double) (j + n) / (double) (n * 2);
+            double x1 = mw + (me - mw) * (double) (i + n + 1) / (double) (n * 2);
+            double y1 = ms + (mn - ms) * (double) (j + n + 1) / (double) (n * 2);
+            fastMapRect(fast, x0, y0, x1, y1, (n + i) * stepX, (n - j - 1) * stepY, stepX, stepY,
+                src, buf, sw, sh, scan, gr);
+          }
+        }
+      };
+      if (parallel)
+        columns.add(SharedExecutor.compute().submit(column));
+      else
+        column.run();
+    }
+    try {
+      for (Future<?> column : columns)
+        column.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while projecting", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("projection failed", e.getCause());
+    }
 
     DataBuffer dbi = new DataBufferInt(buf, dw * dh);
     int[] bandMasks = {0xff0000, 0xff00, 0xff, 0xff000000};
@@ -248,6 +248,105 @@ public class TransverseMercator extends Projection {
     return result;
   }
 
+  /**
+   * Project a span of points as <code>forward(Point2D.Double)</code> does,
+   * with the series coefficients worked out once for the span.
+   */
+  protected void forward(double[] lon, double[] lat, double[] x, double[] y, int from, int to) {
+    double a = ellipsoid.equatorialRadius;
+    double esq = ellipsoid.eccentricitySquared;
+    double phiO = origin.getY() * DEG2RAD;
+    double lambdaO = origin.getX() * DEG2RAD;
+    double fe = falseEasting;
+    double fn = falseNorthing;
+    double scale = 0.9996;
+
+    double epsq = esq / (1 - esq);
+    double m0 = 1 - esq / 4 - 3 * esq * esq / 64 - 5 * esq * esq * esq / 256;
+    double m2 = 3 * esq / 8 + 3 * esq * esq / 32 + 45 * esq * esq * esq / 1024;
+    double m4 = 15 * esq * esq / 256 + 45 * esq * esq * esq / 1024;
+    double m6 = 35 * esq * esq * esq / 3072;
+    double MO =
+        a * (m0 * phiO - m2 * Math.sin(2 * phiO) + m4 * Math.sin(4 * phiO) - m6 * Math.sin(6 * phiO));
+
+    for (int i = from; i < to; i++) {
+      double phi = lat[i] * DEG2RAD;
+      double sphi = Math.sin(phi);
+      double cphi = Math.cos(phi);
+      double tphi = Math.tan(phi);
+      double N = a / Math.sqrt(1 - esq * sphi * sphi);
+      double T = tphi * tphi;
+      double C = epsq * cphi * cphi;
+      double dl = lon[i] * DEG2RAD - lambdaO;
+      while (dl < -Math.PI / 2)
+        dl += Math.PI;
+      while (dl > Math.PI / 2)
+        dl -= Math.PI;
+      double A = dl * cphi;
+      double A2 = A * A;
+      double M =
+          a * (m0 * phi - m2 * Math.sin(2 * phi) + m4 * Math.sin(4 * phi) - m6 * Math.sin(6 * phi));
+      x[i] = scale * N * (A + (1 - T + C) * A2 * A / 6
+          + (5 - 18 * T + T * T + 72 * C - 58 * epsq) * A2 * A2 * A / 120) + fe;
+      y[i] = scale * (M - MO + N * tphi * (A2 / 2 + (5 - T + 9 * C + 4 * C * C) * A2 * A2 / 24
+          + (61 - 58 * T + T * T + 600 * C - 330 * epsq) * A2 * A2 * A2 / 720)) + fn;
+    }
+  }
+
+  /**
+   * Unproject a span of points as <code>inverse(Point2D.Double)</code> does,
+   * with the series coefficients worked out once for the span.
+   */
+  protected void inverse(double[] x, double[] y, double[] lon, double[] lat, int from, int to) {
+    double a = ellipsoid.equatorialRadius;
+    double esq = ellipsoid.eccentricitySquared;
+    double epsq = esq / (1 - esq);
+    double scale = 0.9996;
+    double phiO = origin.getY() * DEG2RAD;
+    double lambdaO = origin.getX() * DEG2RAD;
+    double fe = falseEasting;
+    double fn = falseNorthing;
+    double e1 = (1 - Math.sqrt(1 - esq)) / (1 + Math.sqrt(1 - esq));
+
+    double m0 = 1 - esq / 4 - 3 * esq * esq / 64 - 5 * esq * esq * esq / 256;
+    double m2 = 3 * esq / 8 + 3 * esq * esq / 32 + 45 * esq * esq * esq / 1024;
+    double m4 = 15 * esq * esq / 256 + 45 * esq * esq * esq / 1024;
+    double m6 = 35 * esq * esq * esq / 3072;
+    double MO =
+        a * (m0 * phiO - m2 * Math.sin(2 * phiO) + m4 * Math.sin(4 * phiO) - m6 * Math.sin(6 * phiO));
+    double p2 = 3 * e1 / 2 - 27 * e1 * e1 * e1 / 32;
+    double p4 = 21 * e1 * e1 / 16 - 55 * e1 * e1 * e1 * e1 / 32;
+    double p6 = 151 * e1 * e1 * e1 / 96;
+
+    for (int i = from; i < to; i++) {
+      double M = MO + (y[i] - fn) / scale;
+      double mu = M / (a * m0);
+      double phi1 = mu + p2 * Math.sin(2 * mu) + p4 * Math.sin(4 * mu) + p6 * Math.sin(6 * mu);
+      double sphi1 = Math.sin(phi1);
+      double cphi1 = Math.cos(phi1);
+      double tphi1 = Math.tan(phi1);
+      double w = 1 - esq * sphi1 * sphi1;
+      double N1 = a / Math.sqrt(w);
+      double T1 = tphi1 * tphi1;
+      double C1 = epsq * cphi1 * cphi1;
+      double R1 = a * (1 - esq) / (w * Math.sqrt(w));
+      double D = (x[i] - fe) / (N1 * scale);
+      double D2 = D * D;
+      double phi = (phi1 - (N1 * tphi1 / R1) * (D2 / 2
+          - (5 + 3 * T1 + 10 * C1 - 4 * C1 * C1 - 9 * epsq) * D2 * D2 / 24
+          + (61 + 90 * T1 + 298 * C1 + 45 * T1 * T1 - 252 * epsq - 3 * C1 * C1) * D2 * D2 * D2
+              / 720))
+          * RAD2DEG;
+      double lambda = (lambdaO + ((D - (1 + 2 * T1 + C1) * D2 * D / 6
+          + (5 - 2 * C1 + 28 * T1 - 3 * C1 * C1 + 8 * epsq + 24 * T1 * T1) * D2 * D2 * D / 120)
+          / cphi1)) * RAD2DEG;
+      if (lambda > 180)
+        lambda -= 360;
+      lon[i] = lambda;
+      lat[i] = phi;
+    }
+  }
+
   public Point2D.Double forward(Point2D.Double lonLat) {
     double a = ellipsoid.equatorialRadius;
     double esq = ellipsoid.eccentricitySquared;
@@ -0,0 +1,91 @@
+package gov.usgs.volcanoes.core.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Thread pools shared across the library.</p>
+ *
+ * <p>CPU-bound work, such as rendering, encoding and projecting, goes on one
+ * pool with a thread per processor, so that several of them running at once
+ * do not each start a thread per processor. Work which waits on the pool
+ * must not be run on it, as every thread could end up waiting; callers check
+ * {@link #isWorker()} and do the work themselves instead.</p>
+ *
+ * <p>Work which mostly waits, such as network fetches, gets a pool of its
+ * own from {@link #newPool(String, int)}.</p>
+ */
+public final class SharedExecutor {
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private static final ExecutorService COMPUTE =
+      Executors.newFixedThreadPool(PARALLELISM, new NamedThreadFactory("Compute-", true));
+
+  /** Marks threads of the shared pool. */
+  private static final class Worker extends Thread {
+    Worker(Runnable r, String name) {
+      super(r, name);
+    }
+  }
+
+  /** Makes daemon threads named with a prefix and a count. */
+  private static final class NamedThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+    private final String name;
+    private final boolean worker;
+
+    NamedThreadFactory(String name, boolean worker) {
+      this.name = name;
+      this.worker = worker;
+    }
+
+    public Thread newThread(Runnable r) {
+      String n = name + count.incrementAndGet();
+      Thread t = worker ? new Worker(r, n) : new Thread(r, n);
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+  private SharedExecutor() {}
+
+  /**
+   * Get the pool for CPU-bound work. It is shared and must not be shut down.
+   *
+   * @return the pool
+   */
+  public static ExecutorService compute() {
+    return COMPUTE;
+  }
+
+  /**
+   * Get the number of threads in the pool for CPU-bound work.
+   *
+   * @return thread count
+   */
+  public static int getParallelism() {
+    return PARALLELISM;
+  }
+
+  /**
+   * Is the calling thread one of the pool for CPU-bound work?
+   *
+   * @return true on a pool thread
+   */
+  public static boolean isWorker() {
+    return Thread.currentThread() instanceof Worker;
+  }
+
+  /**
+   * Make a fixed pool of daemon threads, for work which mostly waits.
+   *
+   * @param name thread name prefix
+   * @param threads pool size
+   * @return the pool
+   */
+  public static ExecutorService newPool(String name, int threads) {
+    return Executors.newFixedThreadPool(threads, new NamedThreadFactory(name, false));
+  }
+}
@@ -0,0 +1,140 @@
+package gov.usgs.volcanoes.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HelicorderDataTest {
+
+  private static HelicorderData heli(int start, int end) {
+    List<double[]> list = new ArrayList<double[]>();
+    for (int t = start; t < end; t++) {
+      if (t % 17 == 0) {
+        list.add(new double[] {t, Wave.NO_DATA, Wave.NO_DATA});
+      } else {
+        list.add(new double[] {t, -t % 13, t % 29});
+      }
+    }
+    return new HelicorderData(list);
+  }
+
+  private static double bruteBias(HelicorderData hd, double t1, double t2) {
+    double sum = 0;
+    int samples = 0;
+    for (int i = 0; i < hd.rows(); i++) {
+      double t = hd.getData().getQuick(i, 0);
+      double min = hd.getData().getQuick(i, 1);
+      double max = hd.getData().getQuick(i, 2);
+      if (t >= t1 && t < t2 && min != Wave.NO_DATA && max != Wave.NO_DATA) {
+        sum += max - (max - min) / 2;
+        samples++;
+      }
+    }
+    return sum / samples;
+  }
+
+  @Test
+  public void biasBetween() {
+    HelicorderData hd = heli(0, 3600);
+    for (int t = 0; t < 3000; t += 300) {
+      assertEquals(bruteBias(hd, t, t + 600), hd.getBiasBetween(t, t + 600), 1e-9);
+    }
+    assertEquals(bruteBias(hd, 0, 3600), hd.getBias(), 1e-9);
+  }
+
+  @Test
+  public void combineExtendsIndex() {
+    HelicorderData hd = heli(0, 1800);
+    hd.getBias();
+    hd = hd.combine(heli(1700, 3600));
+    assertEquals(bruteBias(hd, 0, 3600), hd.getBias(), 1e-9);
+    assertEquals(bruteBias(hd, 1800, 2400), hd.getBiasBetween(1800, 2400), 1e-9);
+  }
+
+  @Test
+  public void byRow() {
+    HelicorderData hd = heli(0, 1200);
+    double[] rows = hd.getBiasByRow(600);
+    assertEquals(2, rows.length);
+    assertEquals(bruteBias(hd, 0, 601), rows[0], 1e-9);
+    assertEquals(bruteBias(hd, 601, 1200), rows[1], 1e-9);
+    assertTrue(hd.getMeanMax() > 0);
+  }
+
+  @Test
+  public void appendPastWindow() {
+    HelicorderData hd = new HelicorderData(1000);
+    HelicorderData reference = heli(0, 5000);
+    for (int i = 0; i < 5000; i++) {
+      hd.append(reference.getData().getQuick(i, 0), reference.getData().getQuick(i, 1),
+          reference.getData().getQuick(i, 2));
+      if (i % 700 == 0) {
+        hd.getBias();
+      }
+    }
+    assertEquals(1000, hd.rows());
+    assertEquals(4000, hd.getStartTime(), 0);
+    assertEquals(4999, hd.getEndTime(), 0);
+    assertEquals(bruteBias(hd, 4000, 5000), hd.getBias(), 1e-9);
+    assertEquals(bruteBias(hd, 4200, 4500), hd.getBiasBetween(4200, 4500), 1e-9);
+
+    hd.append(4999, -100, 100);
+    assertEquals(1000, hd.rows());
+    assertEquals(bruteBias(hd, 4000, 5000), hd.getBias(), 1e-9);
+  }
+
+  @Test
+  public void windowKept() {
+    HelicorderData hd = new HelicorderData(100);
+    hd.setData(heli(0, 500).getData());
+    assertEquals(100, hd.getWindow());
+    hd.append(500, -1, 1);
+    assertEquals(100, hd.rows());
+    assertEquals(500, hd.getEndTime(), 0);
+
+    ByteBuffer bb = heli(0, 300).toBinary();
+    bb.flip();
+    hd.fromBinary(bb);
+    hd.append(300, -1, 1);
+    assertEquals(100, hd.rows());
+
+    hd.setData(heli(0, 50).getData());
+    assertTrue(hd.combine(heli(40, 400)) == hd);
+    for (int t = 400; t < 450; t++) {
+      hd.append(t, -1, 1);
+    }
+    assertEquals(100, hd.rows());
+    assertEquals(350, hd.getStartTime(), 0);
+    assertEquals(449, hd.getEndTime(), 0);
+    assertEquals(bruteBias(hd, 350, 450), hd.getBias(), 1e-9);
+  }
+
+  @Test
+  public void coltViews() {
+    HelicorderData hd = new HelicorderData(0);
+    for (int t = 0; t < 3000; t++) {
+      hd.append(t, -t, t);
+    }
+    assertEquals(3000, hd.getMax().rows());
+    assertEquals(2999, hd.getMax().getQuick(2999, 0), 0);
+    assertEquals(-17, hd.getMin().viewColumn(0).getQuick(17), 0);
+    assertEquals(42, hd.getData().viewDice().getQuick(0, 42), 0);
+    assertEquals(-5, hd.getData().viewSelection(new int[] {5, 9}, null).viewRow(0).getQuick(1), 0);
+    assertEquals(-9, hd.getData().copy().getQuick(9, 1), 0);
+
+    HelicorderData subset = hd.subset(100, 200);
+    assertEquals(100, subset.rows());
+    assertEquals(100, subset.getStartTime(), 0);
+
+    ByteBuffer bb = hd.toBinary();
+    bb.flip();
+    HelicorderData copy = new HelicorderData(bb);
+    assertEquals(3000, copy.rows());
+    assertEquals(-2999, copy.getData().getQuick(2999, 1), 0);
+  }
+}
@@ -0,0 +1,52 @@
+package gov.usgs.volcanoes.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import gov.usgs.volcanoes.core.math.proj.Mercator;
+import gov.usgs.volcanoes.core.math.proj.Projection;
+import gov.usgs.volcanoes.core.math.proj.TransverseMercator;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+public class LineDataTest {
+
+  private static void assertBatchSameAsSingle(Projection proj) {
+    // a box of 12001 points, enough to be split across threads
+    LineData ld = new LineData(-160, 50, 20, 20, 3000);
+    List<Point2D.Double> before = new LineData(ld).getPoints();
+    ld.applyProjection(proj);
+    List<Point2D.Double> after = ld.getPoints();
+
+    assertEquals(before.size(), after.size());
+    for (int i = 0; i < before.size(); i++) {
+      Point2D.Double xy = proj.forward(before.get(i));
+      assertEquals(xy.x, after.get(i).x, 1e-6);
+      assertEquals(xy.y, after.get(i).y, 1e-6);
+    }
+  }
+
+  @Test
+  public void applyProjection() {
+    Mercator merc = new Mercator();
+    merc.setOrigin(new Point2D.Double(-150, 0));
+    assertBatchSameAsSingle(merc);
+    assertBatchSameAsSingle(TransverseMercator.fromUTM("5V"));
+  }
+
+  @Test
+  public void copyHasOwnPoints() {
+    LineData ld = new LineData(0, 0, 1, 1, 2);
+    LineData copy = new LineData(ld);
+    assertEquals(ld.getPoints().size(), copy.getPoints().size());
+    for (int i = 0; i < ld.getPoints().size(); i++) {
+      assertEquals(ld.getPoints().get(i), copy.getPoints().get(i));
+      assertNotSame(ld.getPoints().get(i), copy.getPoints().get(i));
+    }
+    copy.getPoints().get(0).x = 5;
+    assertEquals(0, ld.getPoints().get(0).x, 0);
+  }
+}
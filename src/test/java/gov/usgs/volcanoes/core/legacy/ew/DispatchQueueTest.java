@@ -0,0 +1,183 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.legacy.ew.message.Message;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DispatchQueueTest {
+
+  private static Message message(int seq) {
+    Message msg = new Message();
+    msg.seq = seq;
+    return msg;
+  }
+
+  private static void awaitDispatched(DispatchQueue queue, long n) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (queue.getDispatched() < n && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    assertEquals(n, queue.getDispatched());
+  }
+
+  /** A listener which holds its worker on the first message until released. */
+  private static class Gate implements MessageListener {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void messageReceived(Message msg) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static DispatchQueue stalled(DispatchPolicy.Overflow overflow, Gate gate)
+      throws InterruptedException {
+    DispatchQueue queue =
+        new DispatchQueue("test", DispatchPolicy.ordered(2, overflow), gate);
+    queue.submit(message(0));
+    assertTrue(gate.entered.await(5, TimeUnit.SECONDS));
+    queue.submit(message(1));
+    queue.submit(message(2));
+    assertEquals(2, queue.getDepth());
+    return queue;
+  }
+
+  @Test
+  public void orderedKeepsOrder() throws InterruptedException {
+    final List<Integer> seqs = Collections.synchronizedList(new ArrayList<Integer>());
+    DispatchQueue queue = new DispatchQueue("test",
+        DispatchPolicy.ordered(16, DispatchPolicy.Overflow.BLOCK), new MessageListener() {
+          @Override
+          public void messageReceived(Message msg) {
+            seqs.add(msg.seq);
+          }
+        });
+    try {
+      for (int i = 0; i < 1000; i++) {
+        queue.submit(message(i));
+      }
+      awaitDispatched(queue, 1000);
+      assertEquals(0, queue.getDropped());
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(i, (int) seqs.get(i));
+      }
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void dropWhenFull() throws InterruptedException {
+    Gate gate = new Gate();
+    DispatchQueue queue = stalled(DispatchPolicy.Overflow.DROP, gate);
+    try {
+      queue.submit(message(3));
+      assertEquals(1, queue.getDropped());
+      assertEquals(3, queue.getEnqueued());
+
+      gate.release.countDown();
+      awaitDispatched(queue, 3);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void blockWhenFull() throws InterruptedException {
+    Gate gate = new Gate();
+    final DispatchQueue queue = stalled(DispatchPolicy.Overflow.BLOCK, gate);
+    try {
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            queue.submit(message(3));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      producer.start();
+      producer.join(200);
+      assertTrue(producer.isAlive());
+      assertEquals(0, queue.getDropped());
+
+      gate.release.countDown();
+      producer.join(5000);
+      assertFalse(producer.isAlive());
+      awaitDispatched(queue, 4);
+      assertEquals(0, queue.getDropped());
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void dropAfterShutdown() throws InterruptedException {
+    DispatchQueue queue = new DispatchQueue("test",
+        DispatchPolicy.ordered(4, DispatchPolicy.Overflow.BLOCK), new Gate());
+    queue.shutdown();
+    assertFalse(queue.offer(message(0)));
+    queue.submit(message(1));
+    assertEquals(2, queue.getDropped());
+    assertEquals(0, queue.getDepth());
+  }
+
+  @Test
+  public void workerSurvivesError() throws InterruptedException {
+    final List<Integer> seqs = Collections.synchronizedList(new ArrayList<Integer>());
+    final DispatchQueue queue = new DispatchQueue("test",
+        DispatchPolicy.ordered(1, DispatchPolicy.Overflow.BLOCK), new MessageListener() {
+          @Override
+          public void messageReceived(Message msg) {
+            if (msg.seq == 0) {
+              throw new StackOverflowError("test");
+            }
+            seqs.add(msg.seq);
+          }
+        });
+    Logger quiet = Logger.getAnonymousLogger();
+    quiet.setLevel(Level.OFF);
+    queue.setLogger(quiet);
+    try {
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 10; i++) {
+              queue.submit(message(i));
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      producer.start();
+      producer.join(5000);
+      assertFalse(producer.isAlive());
+      awaitDispatched(queue, 10);
+      assertEquals(9, seqs.size());
+      assertEquals(1, (int) seqs.get(0));
+    } finally {
+      queue.shutdown();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.legacy.ew.message.Message;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageLogo;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageType;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ExportGenericTest {
+
+  private static MessageLogo logo(MessageType type) {
+    MessageLogo logo = new MessageLogo();
+    logo.setInstallationId((byte) 1);
+    logo.setModule((byte) 2);
+    logo.setType(type);
+    return logo;
+  }
+
+  @Test
+  public void encodeDecode() throws Exception {
+    byte[] payload = new byte[] {'a', FrameDecoder.STX, 'b', FrameDecoder.ESC, FrameDecoder.ETX};
+    ByteBuffer frame = ExportGeneric.encode(logo(MessageType.TYPE_ERROR), payload, 0, payload.length);
+
+    final String[] decoded = new String[1];
+    new FrameDecoder(100).decode(frame.array(), 0, frame.limit(), new FrameDecoder.FrameHandler() {
+      @Override
+      public void frameDecoded(byte[] buf, int length, int seq) {
+        decoded[0] = new String(buf, 0, length - 1);
+      }
+    });
+    assertEquals("001002002" + new String(payload), decoded[0]);
+  }
+
+  @Test
+  public void publishToAllClients() throws Exception {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+
+    ExportGeneric export = new ExportGeneric(InetAddress.getLoopbackAddress(), port);
+    export.start();
+
+    final CountDownLatch received = new CountDownLatch(2);
+    MessageListener listener = new MessageListener() {
+      @Override
+      public void messageReceived(Message msg) {
+        if (msg.bytesToString().trim().equals("hello")) {
+          received.countDown();
+        }
+      }
+    };
+
+    ImportGeneric[] clients = new ImportGeneric[2];
+    boolean[] connected = new boolean[clients.length];
+    try {
+      long deadline = System.currentTimeMillis() + 5000;
+      for (int i = 0; i < clients.length; i++) {
+        clients[i] = new ImportGeneric("127.0.0.1", port);
+        clients[i].setDaemon(true);
+        clients[i].addListener(MessageType.TYPE_ERROR, listener);
+        // the export thread may not be listening yet
+        while (!connected[i] && System.currentTimeMillis() < deadline) {
+          connected[i] = clients[i].connect();
+        }
+        assertTrue(connected[i]);
+      }
+
+      while (export.getNumClients() < clients.length && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(clients.length, export.getNumClients());
+      assertEquals(clients.length, export.publish(logo(MessageType.TYPE_ERROR), "hello".getBytes()));
+      assertTrue(received.await(5, TimeUnit.SECONDS));
+    } finally {
+      for (int i = 0; i < clients.length; i++) {
+        if (connected[i]) {
+          clients[i].shutdown();
+          clients[i].close();
+        }
+      }
+      export.shutdown();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FrameDecoderTest {
+
+  private static class Collector implements FrameDecoder.FrameHandler {
+    List<String> frames = new ArrayList<String>();
+    List<Integer> seqs = new ArrayList<Integer>();
+
+    @Override
+    public void frameDecoded(byte[] buf, int length, int seq) {
+      assertEquals(0, buf[length - 1]);
+      frames.add(new String(buf, 0, length - 1));
+      seqs.add(seq);
+    }
+  }
+
+  private static byte[] frame(String s) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(FrameDecoder.STX);
+    for (byte b : s.getBytes()) {
+      if (b == FrameDecoder.STX || b == FrameDecoder.ETX || b == FrameDecoder.ESC) {
+        out.write(FrameDecoder.ESC);
+      }
+      out.write(b);
+    }
+    out.write(FrameDecoder.ETX);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void splitAcrossReads() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write("junk".getBytes());
+    out.write(frame("001002003hello"));
+    out.write(frame("SQ: 42001002019a\u0003b\u001bc"));
+    byte[] stream = out.toByteArray();
+
+    for (int chunk = 1; chunk <= stream.length; chunk++) {
+      FrameDecoder decoder = new FrameDecoder(1024);
+      Collector c = new Collector();
+      for (int i = 0; i < stream.length; i += chunk) {
+        decoder.decode(stream, i, Math.min(chunk, stream.length - i), c);
+      }
+      assertEquals(Arrays.asList("001002003hello", "001002019a\u0003b\u001bc"), c.frames);
+      assertEquals(Arrays.asList(Integer.MIN_VALUE, 42), c.seqs);
+    }
+  }
+
+  @Test
+  public void dropOversized() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(frame("0010020030123456789"));
+    out.write(frame("001002003ok"));
+    byte[] stream = out.toByteArray();
+
+    FrameDecoder decoder = new FrameDecoder(12);
+    Collector c = new Collector();
+    decoder.decode(stream, 0, stream.length, c);
+    assertEquals(Arrays.asList("001002003ok"), c.frames);
+    assertEquals(1, decoder.getOversizedFrames());
+  }
+
+  @Test
+  public void seqPrefix() {
+    assertEquals(7, FrameDecoder.parseSeq("SQ:  7".getBytes()));
+    assertEquals(255, FrameDecoder.parseSeq("SQ:255".getBytes()));
+    assertEquals(12, FrameDecoder.parseSeq("SQ:12 ".getBytes()));
+    assertEquals(Integer.MIN_VALUE, FrameDecoder.parseSeq("SQ:1 2".getBytes()));
+    assertEquals(Integer.MIN_VALUE, FrameDecoder.parseSeq("001002".getBytes()));
+  }
+}
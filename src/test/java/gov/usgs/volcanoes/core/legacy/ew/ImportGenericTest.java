@@ -0,0 +1,196 @@
+package gov.usgs.volcanoes.core.legacy.ew;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.legacy.ew.message.Message;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageLogo;
+import gov.usgs.volcanoes.core.legacy.ew.message.MessageType;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ImportGenericTest {
+
+  private static Message message(MessageType type) {
+    Message msg = new Message();
+    msg.logo = new MessageLogo();
+    msg.logo.setType(type);
+    return msg;
+  }
+
+  /** Records the thread each message was delivered on. */
+  private static class Recorder implements MessageListener {
+    final BlockingQueue<String> threads = new ArrayBlockingQueue<String>(16);
+
+    @Override
+    public void messageReceived(Message msg) {
+      threads.add(Thread.currentThread().getName());
+    }
+
+    String next() throws InterruptedException {
+      String name = threads.poll(5, TimeUnit.SECONDS);
+      assertNotNull(name);
+      return name;
+    }
+  }
+
+  @Test
+  public void routeByType() throws InterruptedException {
+    ImportGeneric ig = new ImportGeneric();
+    Recorder heartbeats = new Recorder();
+    Recorder traces = new Recorder();
+    Recorder picks = new Recorder();
+    ig.addListener(MessageType.TYPE_HEARTBEAT, heartbeats);
+    ig.addListener(MessageType.TYPE_TRACEBUF2, traces);
+    ig.addListener(MessageType.TYPE_PICK2K, picks);
+    ig.setDispatchPolicy(MessageType.TYPE_PICK2K,
+        DispatchPolicy.ordered(4, DispatchPolicy.Overflow.DROP));
+    String self = Thread.currentThread().getName();
+
+    try {
+      ig.queueMessage(message(MessageType.TYPE_HEARTBEAT));
+      assertEquals(self, heartbeats.next());
+
+      ig.queueMessage(message(MessageType.TYPE_TRACEBUF2));
+      assertEquals("ImportGeneric-TYPE_TRACEBUF2-0", traces.next());
+
+      ig.queueMessage(message(MessageType.TYPE_PICK2K));
+      assertEquals("ImportGeneric-TYPE_PICK2K-0", picks.next());
+
+      assertEquals(2, ig.getDispatchQueues().size());
+      assertNull(ig.getDispatchQueues().get(MessageType.TYPE_HEARTBEAT));
+      assertTrue(heartbeats.threads.isEmpty());
+      assertTrue(traces.threads.isEmpty());
+    } finally {
+      ig.shutdown();
+      for (DispatchQueue queue : ig.getDispatchQueues().values()) {
+        queue.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void policyChangeReplacesQueue() throws InterruptedException {
+    ImportGeneric ig = new ImportGeneric();
+    Recorder traces = new Recorder();
+    ig.addListener(MessageType.TYPE_TRACEBUF2, traces);
+
+    ig.queueMessage(message(MessageType.TYPE_TRACEBUF2));
+    assertEquals("ImportGeneric-TYPE_TRACEBUF2-0", traces.next());
+    DispatchQueue old = ig.getDispatchQueues().get(MessageType.TYPE_TRACEBUF2);
+    assertNotNull(old);
+
+    ig.setDispatchPolicy(MessageType.TYPE_TRACEBUF2, DispatchPolicy.inline());
+    assertTrue(ig.getDispatchQueues().isEmpty());
+    ig.queueMessage(message(MessageType.TYPE_TRACEBUF2));
+    assertEquals(Thread.currentThread().getName(), traces.next());
+
+    assertEquals(1, old.getEnqueued());
+    old.offer(message(MessageType.TYPE_TRACEBUF2));
+    assertEquals(1, old.getDropped());
+  }
+
+  @Test
+  public void dropByDefault() throws InterruptedException {
+    ImportGeneric ig = new ImportGeneric();
+    final CountDownLatch release = new CountDownLatch(1);
+    ig.addListener(MessageType.TYPE_TRACEBUF2, new MessageListener() {
+      @Override
+      public void messageReceived(Message msg) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertEquals(DispatchPolicy.Overflow.DROP,
+        ig.getDispatchPolicy(MessageType.TYPE_TRACEBUF2).getOverflow());
+
+    try {
+      // a stalled listener can not hold up the caller
+      for (int i = 0; i < ImportGeneric.DEFAULT_QUEUE_CAPACITY + 10; i++) {
+        ig.queueMessage(message(MessageType.TYPE_TRACEBUF2));
+      }
+      DispatchQueue queue = ig.getDispatchQueues().get(MessageType.TYPE_TRACEBUF2);
+      assertTrue(queue.getDropped() >= 9);
+    } finally {
+      release.countDown();
+      for (DispatchQueue queue : ig.getDispatchQueues().values()) {
+        queue.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void heartbeatsBeforeBlocking() throws InterruptedException {
+    final ImportGeneric ig = new ImportGeneric();
+    final CountDownLatch release = new CountDownLatch(1);
+    Recorder heartbeats = new Recorder();
+    ig.addListener(MessageType.TYPE_HEARTBEAT, heartbeats);
+    ig.addListener(MessageType.TYPE_TRACEBUF2, new MessageListener() {
+      @Override
+      public void messageReceived(Message msg) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    ig.setDispatchPolicy(MessageType.TYPE_TRACEBUF2,
+        DispatchPolicy.ordered(1, DispatchPolicy.Overflow.BLOCK));
+    ig.setExpectedHeartbeatInterval(1000);
+    ig.lastHeartbeat = 0;
+    assertTrue(ig.heartbeatOverdue(System.currentTimeMillis()));
+
+    // one read: three traces, more than the queue and its worker can take,
+    // then a heartbeat
+    final List<Message> read = new ArrayList<Message>();
+    for (int i = 0; i < 3; i++) {
+      read.add(message(MessageType.TYPE_TRACEBUF2));
+    }
+    read.add(message(MessageType.TYPE_HEARTBEAT));
+    Thread reader = new Thread("reader") {
+      @Override
+      public void run() {
+        try {
+          ig.queueMessages(read);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    try {
+      reader.start();
+      assertEquals("reader", heartbeats.next());
+      long end = System.currentTimeMillis() + 5000;
+      while (reader.getState() != Thread.State.WAITING && System.currentTimeMillis() < end) {
+        Thread.sleep(5);
+      }
+      assertTrue(reader.isAlive());
+      assertFalse(ig.heartbeatOverdue(System.currentTimeMillis() + 60000));
+
+      release.countDown();
+      reader.join(5000);
+      assertFalse(reader.isAlive());
+      assertFalse(ig.heartbeatOverdue(System.currentTimeMillis()));
+    } finally {
+      release.countDown();
+      for (DispatchQueue queue : ig.getDispatchQueues().values()) {
+        queue.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ConnectionsSnapshotTest {
+
+  @Test
+  public void totalsAndPercentiles() {
+    List<ConnectionStatistics> stats = new ArrayList<ConnectionStatistics>();
+    for (int i = 1; i <= 10; i++) {
+      ConnectionStatistics cs = new ConnectionStatistics(null);
+      cs.numBytesReceived = 100 * i;
+      cs.numBytesSent = 1000 * (11 - i);
+      cs.numCommands = i;
+      if (i <= 3) {
+        cs.beginCommand("GETWAVE " + i);
+      }
+      stats.add(cs);
+    }
+    Collections.shuffle(stats);
+    LatencyHistogram latency = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      latency.record(i);
+    }
+
+    ConnectionsSnapshot snapshot =
+        new ConnectionsSnapshot(stats, 20, 123456, 654321, 789, latency);
+    assertEquals(10, snapshot.getNumConnections());
+    assertEquals(20, snapshot.getMaxConnections());
+    assertEquals(3, snapshot.getRunningCommands());
+    assertEquals(123456, snapshot.getTotalBytesReceived());
+    assertEquals(654321, snapshot.getTotalBytesSent());
+    assertEquals(789, snapshot.getTotalCommands());
+
+    assertEquals(500, snapshot.getBytesReceivedPercentile(50));
+    assertEquals(900, snapshot.getBytesReceivedPercentile(90));
+    assertEquals(100, snapshot.getBytesReceivedPercentile(0));
+    assertEquals(1000, snapshot.getBytesReceivedPercentile(100));
+    assertEquals(5000, snapshot.getBytesSentPercentile(50));
+    assertEquals(10, snapshot.getCommandsPercentile(99));
+
+    assertEquals(100, snapshot.getLatencyCount());
+    assertEquals(50.5, snapshot.getLatencyMean(), 0.0001);
+    assertEquals(latency.getPercentile(90), snapshot.getLatencyPercentile(90));
+    assertEquals(-1, snapshot.getLatencyPercentile(75));
+
+    // later changes do not show in the snapshot
+    latency.reset();
+    stats.get(0).numBytesReceived = 1000000;
+    assertEquals(1000, snapshot.getBytesReceivedPercentile(100));
+    assertEquals(100, snapshot.getLatencyCount());
+
+    Map<String, Number> metrics = snapshot.toMetrics();
+    assertEquals(123456L, metrics.get("bytes.received.total"));
+    assertEquals(500L, metrics.get("bytes.received.p50"));
+    assertEquals(3, metrics.get("commands.running"));
+  }
+
+  @Test
+  public void empty() {
+    ConnectionsSnapshot snapshot = new ConnectionsSnapshot(
+        new ArrayList<ConnectionStatistics>(), 20, 0, 0, 0, new LatencyHistogram());
+    assertEquals(0, snapshot.getNumConnections());
+    assertEquals(0, snapshot.getBytesSentPercentile(50));
+    assertEquals(0, snapshot.getLatencyPercentile(50));
+  }
+}
@@ -0,0 +1,65 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class ConnectionsTest {
+
+  @Test
+  public void keyAttachment() throws Exception {
+    Connections connections = Connections.getInstance();
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel channel = server.accept();
+    Selector selector = Selector.open();
+    try {
+      channel.configureBlocking(false);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+
+      ConnectionStatistics cs = connections.getConnectionStatistics(key);
+      assertSame(cs, key.attachment());
+      assertSame(cs, connections.getConnectionStatistics(channel));
+      assertEquals("127.0.0.1", cs.address);
+
+      // once attached, the key is not looked up in the registry
+      connections.remove(channel);
+      assertSame(cs, connections.getConnectionStatistics(key));
+
+      long received = connections.getSnapshot().getTotalBytesReceived();
+      long sent = connections.getSnapshot().getTotalBytesSent();
+      long commands = connections.getSnapshot().getTotalCommands();
+      long latencies = connections.getSnapshot().getLatencyCount();
+      connections.read(cs, 100);
+      connections.sent(cs, 40);
+      connections.beginCommand(cs, "MENU");
+      connections.endCommand(cs);
+      connections.endCommand(cs);
+
+      ConnectionsSnapshot snapshot = connections.getSnapshot();
+      assertEquals(received + 100, snapshot.getTotalBytesReceived());
+      assertEquals(sent + 40, snapshot.getTotalBytesSent());
+      assertEquals(commands + 1, snapshot.getTotalCommands());
+      assertEquals(latencies + 1, snapshot.getLatencyCount());
+      assertEquals(100, cs.numBytesReceived);
+      assertEquals(40, cs.numBytesSent);
+      assertEquals(1, cs.numCommands);
+      assertFalse(cs.isRunningCommand());
+    } finally {
+      connections.remove(channel);
+      selector.close();
+      channel.close();
+      client.close();
+      server.close();
+    }
+  }
+}
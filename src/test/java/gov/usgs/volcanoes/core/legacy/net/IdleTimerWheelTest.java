@@ -0,0 +1,55 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class IdleTimerWheelTest {
+
+  private static ConnectionStatistics touched(IdleTimerWheel wheel, long time) {
+    ConnectionStatistics cs = new ConnectionStatistics(null);
+    cs.lastRequestTime = time;
+    wheel.add(cs);
+    return cs;
+  }
+
+  @Test
+  public void touchOrder() {
+    IdleTimerWheel wheel = new IdleTimerWheel(10, 4);
+    ConnectionStatistics a = touched(wheel, 0);
+    ConnectionStatistics b = touched(wheel, 15);
+    touched(wheel, 1000);
+    assertSame(a, wheel.oldest());
+
+    a.lastRequestTime = 2000;
+    wheel.touch(a);
+    assertSame(b, wheel.oldest());
+    assertEquals(3, wheel.size());
+  }
+
+  @Test
+  public void expireIdle() {
+    IdleTimerWheel wheel = new IdleTimerWheel(10, 4);
+    ConnectionStatistics a = touched(wheel, 5);
+    ConnectionStatistics b = touched(wheel, 45);
+    ConnectionStatistics c = touched(wheel, 85);
+
+    List<ConnectionStatistics> expired = wheel.expire(50);
+    assertEquals(2, expired.size());
+    assertEquals(1, wheel.size());
+    assertSame(c, wheel.oldest());
+
+    // removed connections are not put back by a late touch
+    a.lastRequestTime = 100;
+    wheel.touch(a);
+    wheel.remove(b);
+    assertEquals(1, wheel.size());
+
+    wheel.remove(c);
+    assertNull(wheel.oldest());
+  }
+}
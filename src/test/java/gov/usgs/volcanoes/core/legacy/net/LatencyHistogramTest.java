@@ -0,0 +1,39 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketResolution() {
+    for (long v = 0; v < 100000; v += 7) {
+      long bucket = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(v));
+      assertTrue(bucket <= v);
+      assertTrue(v - bucket <= v / 4);
+    }
+    long max = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    assertTrue(max > 0);
+  }
+
+  @Test
+  public void percentilesOrdered() {
+    LatencyHistogram h = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      h.record(i);
+    }
+    assertEquals(100, h.getCount());
+    assertEquals(50.5, h.getMean(), 0.0001);
+    assertEquals(1, h.getPercentile(0));
+    long p50 = h.getPercentile(50);
+    long p99 = h.getPercentile(99);
+    assertTrue(p50 <= 50 && p50 >= 40);
+    assertTrue(p99 <= 99 && p99 >= p50);
+
+    h.reset();
+    assertEquals(0, h.getCount());
+    assertEquals(0, h.getPercentile(50));
+  }
+}
@@ -0,0 +1,38 @@
+package gov.usgs.volcanoes.core.legacy.net;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+  @Test
+  public void add() {
+    StripedCounter c = new StripedCounter(3);
+    c.add(5);
+    c.increment();
+    assertEquals(6, c.sum());
+    c.reset();
+    assertEquals(0, c.sum());
+  }
+
+  @Test
+  public void concurrentAdds() throws Exception {
+    final StripedCounter c = new StripedCounter();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        public void run() {
+          for (int j = 0; j < 100000; j++) {
+            c.increment();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(400000, c.sum());
+  }
+}
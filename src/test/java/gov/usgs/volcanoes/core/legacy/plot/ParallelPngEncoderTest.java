@@ -0,0 +1,89 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ParallelPngEncoderTest {
+
+  private static BufferedImage image(int type, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, type);
+    Random random = new Random(42);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int rgb = (x * 3) << 16 | (y * 5) << 8 | (x ^ y);
+        if (random.nextInt(10) == 0) {
+          rgb = random.nextInt();
+        }
+        image.setRGB(x, y, rgb | 0xff000000);
+      }
+    }
+    return image;
+  }
+
+  private static void assertRoundTrip(BufferedImage image, ParallelPngEncoder encoder)
+      throws IOException {
+    byte[] png = encoder.encode(image);
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+    assertEquals(image.getWidth(), decoded.getWidth());
+    assertEquals(image.getHeight(), decoded.getHeight());
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void manyBands() throws IOException {
+    assertRoundTrip(image(BufferedImage.TYPE_INT_RGB, 1000, 700), new ParallelPngEncoder());
+  }
+
+  @Test
+  public void serialAlpha() throws IOException {
+    ParallelPngEncoder encoder = new ParallelPngEncoder();
+    encoder.setParallel(false);
+    encoder.setEncodeAlpha(true);
+    assertRoundTrip(image(BufferedImage.TYPE_INT_ARGB, 600, 500), encoder);
+  }
+
+  @Test
+  public void otherImageType() throws IOException {
+    ParallelPngEncoder encoder = new ParallelPngEncoder();
+    encoder.setAdaptiveFilter(false);
+    assertRoundTrip(image(BufferedImage.TYPE_3BYTE_BGR, 1, 1), encoder);
+    assertRoundTrip(image(BufferedImage.TYPE_3BYTE_BGR, 300, 400), encoder);
+  }
+
+  @Test
+  public void callerScratch() throws IOException {
+    ParallelPngEncoder encoder = new ParallelPngEncoder();
+    encoder.setParallel(false);
+    // a different level from the encoder's, as a shared scratch may have
+    ParallelPngEncoder.Scratch scratch = new ParallelPngEncoder.Scratch(6);
+    try {
+      for (BufferedImage image : new BufferedImage[] {
+          image(BufferedImage.TYPE_INT_RGB, 800, 600),
+          image(BufferedImage.TYPE_INT_RGB, 300, 200)}) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(image, out, scratch);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        for (int y = 0; y < image.getHeight(); y++) {
+          for (int x = 0; x < image.getWidth(); x++) {
+            assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+          }
+        }
+      }
+    } finally {
+      scratch.end();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.usgs.volcanoes.core.legacy.plot.render.BasicFrameRenderer;
+import gov.usgs.volcanoes.core.legacy.plot.render.Renderer;
+import gov.usgs.volcanoes.core.legacy.plot.render.TextRenderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class ParallelRendererTest {
+
+  private static Plot plot() {
+    Plot plot = new Plot(500, 640);
+    plot.addRenderer(new TextRenderer(10, 15, "Title"));
+    for (int i = 0; i < 4; i++) {
+      BasicFrameRenderer fr = new BasicFrameRenderer();
+      fr.setLocation(70, 30 + i * 150, 380, 90);
+      fr.setExtents(0, 100, -1 - i, 1 + i);
+      fr.createDefaultAxis();
+      final int phase = i;
+      fr.addRenderer(new Renderer() {
+        public void render(Graphics2D g) {
+          Object aa = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+          g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+          g.setColor(Color.BLUE);
+          for (int x = 70; x < 450; x += 3) {
+            g.draw(new Line2D.Double(x, 75 + phase * 150 + 30 * Math.sin(x / 10.0 + phase), x + 3,
+                75 + phase * 150 + 30 * Math.sin((x + 3) / 10.0 + phase)));
+          }
+          g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa);
+        }
+      });
+      plot.addRenderer(fr);
+    }
+    return plot;
+  }
+
+  @Test
+  public void parallelMatchesSerial() throws PlotException {
+    Plot plot = plot();
+    BufferedImage serial = plot.getAsBufferedImage(false);
+    plot.setParallel(true);
+    BufferedImage parallel = plot.getAsBufferedImage(false);
+
+    for (int y = 0; y < serial.getHeight(); y++) {
+      for (int x = 0; x < serial.getWidth(); x++) {
+        assertEquals("pixel " + x + "," + y, serial.getRGB(x, y), parallel.getRGB(x, y));
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package gov.usgs.volcanoes.core.legacy.plot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class RenderSurfacePoolTest {
+
+  @Test
+  public void reuseSameBucket() {
+    RenderSurfacePool pool = new RenderSurfacePool();
+    RenderSurface first = pool.acquire(100, 50, true);
+    first.release();
+    RenderSurface second = pool.acquire(120, 60, true);
+    assertSame(first, second);
+    assertEquals(120, second.getImage().getWidth());
+    assertEquals(60, second.getImage().getHeight());
+    assertEquals(1, pool.getCreated());
+    assertEquals(1, pool.getReused());
+    second.release();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void releaseTwice() {
+    RenderSurface surface = new RenderSurfacePool().acquire(10, 10, false);
+    surface.release();
+    surface.release();
+  }
+
+  @Test
+  public void encodeWindow() throws IOException {
+    RenderSurface surface = new RenderSurfacePool().acquire(90, 70, false);
+    surface.clear(0xff102030);
+    Graphics2D g = surface.createGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(10, 20, 30, 40);
+    g.dispose();
+
+    byte[] png = surface.encodePNG(new ParallelPngEncoder());
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+    assertEquals(90, decoded.getWidth());
+    assertEquals(70, decoded.getHeight());
+    for (int y = 0; y < 70; y++) {
+      for (int x = 0; x < 90; x++) {
+        assertEquals(surface.getImage().getRGB(x, y), decoded.getRGB(x, y));
+      }
+    }
+    surface.release();
+  }
+}
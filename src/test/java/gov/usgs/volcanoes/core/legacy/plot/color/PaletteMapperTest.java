@@ -0,0 +1,78 @@
+package gov.usgs.volcanoes.core.legacy.plot.color;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+public class PaletteMapperTest {
+
+  private static int direct(double power, double minPower, double maxPower) {
+    double slope = 254 / (maxPower - minPower);
+    double index = slope * power - slope * minPower;
+    if (index < 0) {
+      index = 0;
+    } else if (index > 254) {
+      index = 254;
+    }
+    return (int) index;
+  }
+
+  @Test
+  public void linear() {
+    PaletteMapper mapper = PaletteMapper.linear(Jet2.getInstance().palette, -3, 17);
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      double value = random.nextDouble() * 30 - 8;
+      int expected = direct(value, -3, 17);
+      int actual = mapper.index(value);
+      // thresholds are rounded; allow a cell exactly on an edge to fall either way
+      if (expected != actual) {
+        assertEquals(expected, actual, 1);
+      }
+    }
+    assertEquals(0, mapper.index(-3));
+    assertEquals(254, mapper.index(17));
+    assertEquals(0, mapper.index(Double.NaN));
+  }
+
+  @Test
+  public void log() {
+    PaletteMapper mapper = PaletteMapper.log(Jet2.getInstance().palette, 20, 120, 20, 1);
+    Random random = new Random(2);
+    int mismatches = 0;
+    for (int i = 0; i < 100000; i++) {
+      double value = Math.pow(10, random.nextDouble() * 8);
+      int expected = direct(20 * Math.log10(value), 20, 120);
+      int actual = mapper.index(value);
+      if (expected != actual) {
+        assertEquals(expected, actual, 1);
+        mismatches++;
+      }
+    }
+    assertEquals(0, mismatches, 10);
+    assertEquals(0, mapper.index(0));
+  }
+
+  @Test
+  public void firstRowAtBottom() {
+    double[][] values = new double[300][400];
+    for (int r = 0; r < values.length; r++) {
+      for (int c = 0; c < values[r].length; c++) {
+        values[r][c] = (r * 7 + c) % 254;
+      }
+    }
+    PaletteMapper mapper = PaletteMapper.linear(Jet2.getInstance().palette, 0, 254);
+    BufferedImage image = mapper.map(values);
+    assertEquals(400, image.getWidth());
+    assertEquals(300, image.getHeight());
+    for (int r = 0; r < values.length; r++) {
+      for (int c = 0; c < values[r].length; c += 13) {
+        int pixel = image.getRaster().getSample(c, values.length - 1 - r, 0);
+        assertEquals(mapper.index(values[r][c]), pixel);
+      }
+    }
+  }
+}
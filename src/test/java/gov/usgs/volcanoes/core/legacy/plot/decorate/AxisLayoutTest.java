@@ -0,0 +1,68 @@
+package gov.usgs.volcanoes.core.legacy.plot.decorate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class AxisLayoutTest {
+
+  @Test
+  public void sameLayout() {
+    AxisLayout a = AxisLayout.time(0, 3600, 6);
+    assertSame(a, AxisLayout.time(0, 3600, 6));
+    assertNotSame(a, AxisLayout.time(0, 3600, 7));
+    assertNotSame(a, AxisLayout.time(0, 7200, 6));
+  }
+
+  @Test
+  public void autoTimeTick() {
+    Object[] expected = SmartTick.computeTimeTicks(1000, 1000 + 86400 * 3, 8);
+    Object[] actual = SmartTick.autoTimeTick(1000, 1000 + 86400 * 3, 8);
+    double[] expectedTicks = (double[]) expected[0];
+    double[] actualTicks = (double[]) actual[0];
+    assertEquals(expectedTicks.length, actualTicks.length);
+    for (int i = 0; i < expectedTicks.length; i++) {
+      assertEquals(expectedTicks[i], actualTicks[i], 0);
+    }
+    assertArrayEquals((String[]) expected[1], (String[]) actual[1]);
+
+    // callers get their own arrays
+    ((String[]) actual[1])[0] = "changed";
+    assertEquals(((String[]) expected[1])[0],
+        AxisLayout.time(1000, 1000 + 86400 * 3, 8).getLabels()[0]);
+  }
+
+  @Test
+  public void clear() {
+    AxisLayout a = AxisLayout.time(0, 600, 5);
+    AxisLayout.clear();
+    AxisLayout b = AxisLayout.time(0, 600, 5);
+    assertNotSame(a, b);
+    assertArrayEquals(a.getLabels(), b.getLabels());
+  }
+
+  @Test
+  public void monthFormatInKey() {
+    double year = 86400 * 365;
+    try {
+      SmartTick.setMonthTickerLabelFormatString("MMM-yyyy");
+      AxisLayout a = AxisLayout.time(0, year, 6);
+      assertEquals("Feb-2000", a.getLabels()[0]);
+      for (int i = 0; i < 3; i++) {
+        SmartTick.setMonthTickerLabelFormatString("MMM-yyyy");
+        assertSame(a, AxisLayout.time(0, year, 6));
+      }
+
+      SmartTick.setMonthTickerLabelFormatString("yyyy-MM");
+      AxisLayout b = AxisLayout.time(0, year, 6);
+      assertEquals("2000-02", b.getLabels()[0]);
+      SmartTick.setMonthTickerLabelFormatString("MMM-yyyy");
+      assertSame(a, AxisLayout.time(0, year, 6));
+    } finally {
+      SmartTick.setMonthTickerLabelFormatString("MMM-yyyy");
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+
+public class CoverageMaskTest {
+
+  @Test
+  public void unionCovers() {
+    CoverageMask mask = new CoverageMask(200, 100);
+    mask.add(new Rectangle2D.Double(0, 0, 70, 100));
+    assertFalse(mask.covers(new Rectangle2D.Double(50, 10, 100, 20)));
+    mask.add(new Rectangle2D.Double(70, 0, 130, 50));
+    assertTrue(mask.covers(new Rectangle2D.Double(50, 10, 100, 20)));
+    assertTrue(mask.covers(new Rectangle2D.Double(0, 0, 200, 50)));
+    assertFalse(mask.covers(new Rectangle2D.Double(0, 0, 200, 51)));
+  }
+
+  @Test
+  public void partlyCoveredPixel() {
+    CoverageMask mask = new CoverageMask(100, 10);
+    mask.add(new Rectangle2D.Double(0, 0, 10.5, 10));
+    mask.add(new Rectangle2D.Double(10.5, 0, 20, 10));
+    assertTrue(mask.covers(new Rectangle2D.Double(0, 0, 10, 10)));
+    assertFalse(mask.covers(new Rectangle2D.Double(0, 0, 12, 10)));
+    assertFalse(mask.covers(new Rectangle2D.Double(5, 0, 0, 10)));
+  }
+}
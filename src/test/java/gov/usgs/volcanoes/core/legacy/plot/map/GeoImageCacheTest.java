@@ -0,0 +1,67 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GeoImageCacheTest {
+
+  private static GeoImage image(int i) {
+    return new GeoImage("tile" + i + ".jpg, 10, 10, 0, 1, 0, 1");
+  }
+
+  @Test
+  public void evictLeastRecent() {
+    GeoImageCache cache = new GeoImageCache(300);
+    GeoImage a = image(0);
+    GeoImage b = image(1);
+    GeoImage c = image(2);
+    GeoImage d = image(3);
+    cache.touch(a);
+    cache.touch(b);
+    cache.touch(c);
+    assertEquals(300, cache.size());
+
+    cache.touch(a);
+    cache.touch(d);
+    assertEquals(3, cache.count());
+    assertEquals(300, cache.size());
+    assertTrue(cache.contains(a));
+    assertFalse(cache.contains(b));
+    assertTrue(cache.contains(c));
+    assertTrue(cache.contains(d));
+
+    cache.setMaxSize(100);
+    assertEquals(1, cache.count());
+    assertTrue(cache.contains(d));
+  }
+
+  @Test
+  public void keepPinned() {
+    GeoImageCache cache = new GeoImageCache(200);
+    GeoImage a = image(0);
+    GeoImage b = image(1);
+    GeoImage c = image(2);
+    cache.touch(a);
+    cache.touch(b);
+    cache.pin(a);
+    cache.pin(a);
+    cache.touch(c);
+    assertTrue(cache.contains(a));
+    assertFalse(cache.contains(b));
+
+    cache.unpin(a);
+    cache.pin(b);
+    cache.touch(b);
+    assertEquals(200, cache.size());
+    assertTrue(cache.contains(a));
+    assertFalse(cache.contains(c));
+
+    cache.unpin(a);
+    cache.touch(c);
+    assertFalse(cache.contains(a));
+    assertEquals(200, cache.size());
+  }
+}
@@ -0,0 +1,69 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GeoImageIndexTest {
+
+  private static GeoImage image(int i, double w, double e, double s, double n) {
+    return new GeoImage("tile" + i + ".jpg, 100, 100, " + w + ", " + e + ", " + s + ", " + n);
+  }
+
+  private static GeoRange range(Random random) {
+    double w = random.nextDouble() * 360 - 180;
+    double s = random.nextDouble() * 170 - 85;
+    double lon = random.nextDouble() * 40;
+    double lat = random.nextDouble() * 20;
+    return new GeoRange(w, w + lon, s, Math.min(90, s + lat));
+  }
+
+  @Test
+  public void sameAsLinearScan() {
+    Random random = new Random(11);
+    List<GeoImage> images = new ArrayList<GeoImage>();
+    for (int i = 0; i < 5000; i++) {
+      GeoRange r = range(random);
+      images.add(image(i, r.getWest(), r.getEast(), r.getSouth(), r.getNorth()));
+    }
+    GeoImageIndex index = new GeoImageIndex(images);
+    assertEquals(images.size(), index.size());
+
+    for (int q = 0; q < 200; q++) {
+      GeoRange range = range(random);
+      List<GeoImage> expected = new ArrayList<GeoImage>();
+      for (GeoImage gi : images) {
+        if (gi.getRange().overlaps(range)) {
+          expected.add(gi);
+        }
+      }
+      assertEquals(expected, index.query(range));
+    }
+  }
+
+  @Test
+  public void antimeridian() {
+    List<GeoImage> images = new ArrayList<GeoImage>();
+    images.add(image(0, 175, 179, 50, 55));
+    images.add(image(1, -179, -175, 50, 55));
+    images.add(image(2, 170, -170, 60, 65));
+    images.add(image(3, 0, 10, 50, 55));
+    GeoImageIndex index = new GeoImageIndex(images);
+
+    List<GeoImage> found = index.query(new GeoRange(178, -178, 40, 70));
+    assertEquals(3, found.size());
+    assertEquals(images.get(0), found.get(0));
+    assertEquals(images.get(1), found.get(1));
+    assertEquals(images.get(2), found.get(2));
+
+    assertEquals(1, index.query(new GeoRange(-172, -171, 61, 62)).size());
+    assertEquals(0, new GeoImageIndex(new ArrayList<GeoImage>()).query(new GeoRange(0, 1, 0, 1))
+        .size());
+  }
+}
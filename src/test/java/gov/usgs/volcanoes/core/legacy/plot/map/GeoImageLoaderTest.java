@@ -0,0 +1,136 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+public class GeoImageLoaderTest {
+
+  private static File tempDir() throws Exception {
+    File dir = File.createTempFile("levels", "");
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static void delete(File dir) {
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void getLevel() {
+    assertEquals(0, GeoImageLoader.getLevel(1.0));
+    assertEquals(0, GeoImageLoader.getLevel(0.6));
+    assertEquals(1, GeoImageLoader.getLevel(0.5));
+    assertEquals(1, GeoImageLoader.getLevel(0.3));
+    assertEquals(2, GeoImageLoader.getLevel(0.25));
+    assertEquals(GeoImageLoader.MAX_LEVEL, GeoImageLoader.getLevel(0.0001));
+  }
+
+  @Test
+  public void downsample() {
+    BufferedImage src = new BufferedImage(5, 3, BufferedImage.TYPE_INT_RGB);
+    src.setRGB(0, 0, 0x000000);
+    src.setRGB(1, 0, 0x000010);
+    src.setRGB(0, 1, 0x000020);
+    src.setRGB(1, 1, 0x000030);
+    src.setRGB(4, 0, 0x100000);
+    src.setRGB(4, 1, 0x300000);
+    src.setRGB(4, 2, 0x080000);
+
+    BufferedImage dest = GeoImageLoader.downsample(src, 1);
+    assertEquals(3, dest.getWidth());
+    assertEquals(2, dest.getHeight());
+    assertEquals(0x000018, dest.getRGB(0, 0) & 0xffffff);
+    assertEquals(0x200000, dest.getRGB(2, 0) & 0xffffff);
+    assertEquals(0x080000, dest.getRGB(2, 1) & 0xffffff);
+  }
+
+  @Test
+  public void levelCachedOnDisk() throws Exception {
+    File dir = tempDir();
+    File cache = new File(dir, "cache");
+    File png = new File(dir, "tile.png");
+    BufferedImage src = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < 64; x++) {
+      for (int y = 0; y < 32; y++) {
+        src.setRGB(x, y, x < 32 ? 0xff0000 : 0x0000ff);
+      }
+    }
+    ImageIO.write(src, "png", png);
+
+    GeoImage gi = new GeoImage(png.getPath() + ", 64, 32, 0, 2, 0, 1");
+    BufferedImage level = new GeoImageLoader(cache).load(gi, 2).get();
+    assertEquals(16, level.getWidth());
+    assertEquals(8, level.getHeight());
+    assertNull(gi.getLoadedImage(0));
+    assertEquals(1, cache.listFiles().length);
+
+    GeoImage again = new GeoImage(png.getPath() + ", 64, 32, 0, 2, 0, 1");
+    BufferedImage read = new GeoImageLoader(cache).get(again, 2);
+    assertEquals(16, read.getWidth());
+    assertEquals(0xff0000, read.getRGB(0, 0) & 0xffffff);
+    assertEquals(0x0000ff, read.getRGB(15, 7) & 0xffffff);
+    assertTrue(again.getLoadedPixels() == 16 * 8);
+
+    delete(cache);
+    delete(dir);
+  }
+
+  @Test
+  public void prebuiltLevel() throws Exception {
+    File dir = tempDir();
+    File png = new File(dir, "tile.png");
+    ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), "png", png);
+    BufferedImage prebuilt = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < 32; x++) {
+      for (int y = 0; y < 32; y++) {
+        prebuilt.setRGB(x, y, 0x00ff00);
+      }
+    }
+    ImageIO.write(prebuilt, "png", new File(dir, "tile_L1.png"));
+
+    GeoImage gi = new GeoImage(dir.getPath(), "tile.png, 64, 64, 0, 1, 0, 1");
+    gi.addLevel(dir.getPath(), "1, tile_L1.png, 32, 32");
+    assertEquals(new File(dir, "tile_L1.png").getPath(), gi.getLevelFile(1));
+    assertNull(gi.getLevelFile(2));
+
+    GeoImageLoader loader = new GeoImageLoader(null);
+    BufferedImage level1 = loader.get(gi, 1);
+    assertEquals(32, level1.getWidth());
+    assertEquals(0x00ff00, level1.getRGB(5, 5) & 0xffffff);
+    BufferedImage level3 = loader.get(gi, 3);
+    assertEquals(8, level3.getWidth());
+    assertEquals(0x00ff00, level3.getRGB(5, 5) & 0xffffff);
+    assertNull(gi.getLoadedImage(0));
+
+    delete(dir);
+  }
+
+  @Test
+  public void prebuiltLevelWrongSize() throws Exception {
+    File dir = tempDir();
+    File png = new File(dir, "tile.png");
+    ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), "png", png);
+    ImageIO.write(new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB), "png",
+        new File(dir, "tile_L1.png"));
+
+    GeoImage gi = new GeoImage(dir.getPath(), "tile.png, 64, 64, 0, 1, 0, 1");
+    gi.addLevel(dir.getPath(), "1, tile_L1.png, 32, 32");
+    assertEquals(new Dimension(32, 32), gi.getLevelSize(1));
+    assertEquals(32, new GeoImageLoader(null).get(gi, 1).getWidth());
+
+    delete(dir);
+  }
+}
@@ -0,0 +1,112 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GeoLabelIndexTest {
+
+  private static GeoLabel label(String text, double lon, double lat) {
+    return new GeoLabel(text, lon, lat);
+  }
+
+  private static GeoRange range(Random random) {
+    double w = random.nextDouble() * 360 - 180;
+    double s = random.nextDouble() * 170 - 85;
+    double lon = random.nextDouble() * 40;
+    double lat = random.nextDouble() * 20;
+    return new GeoRange(w, w + lon, s, Math.min(90, s + lat));
+  }
+
+  @Test
+  public void sameAsLinearScan() {
+    Random random = new Random(7);
+    List<GeoLabel> labels = new ArrayList<GeoLabel>();
+    for (int i = 0; i < 5000; i++) {
+      labels.add(label("l" + i, random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90));
+    }
+    GeoLabelIndex index = new GeoLabelIndex(labels);
+    assertEquals(labels.size(), index.size());
+
+    for (int q = 0; q < 200; q++) {
+      GeoRange range = range(random);
+      List<GeoLabel> expected = new ArrayList<GeoLabel>();
+      for (GeoLabel gl : labels) {
+        if (range.contains(gl.location)) {
+          expected.add(gl);
+        }
+      }
+      assertEquals(expected, index.query(range));
+    }
+  }
+
+  @Test
+  public void antimeridian() {
+    List<GeoLabel> labels = new ArrayList<GeoLabel>();
+    labels.add(label("a", 179, 52));
+    labels.add(label("b", 5, 52));
+    labels.add(label("c", -179, 52));
+    GeoLabelIndex index = new GeoLabelIndex(labels);
+
+    List<GeoLabel> found = index.query(new GeoRange(178, -178, 50, 55));
+    assertEquals(2, found.size());
+    assertEquals(labels.get(0), found.get(0));
+    assertEquals(labels.get(2), found.get(1));
+  }
+
+  @Test
+  public void subsetByScale() {
+    GeoLabelSet set = new GeoLabelSet();
+    GeoLabel low = label("low", 10, 10);
+    GeoLabel high = label("high", 11, 11);
+    high.priority = 5;
+    GeoLabel close = label("close", 12, 12);
+    close.maxScale = 100;
+    set.add(low);
+    set.add(high);
+    set.add(close);
+
+    GeoRange range = new GeoRange(0, 20, 0, 20);
+    List<GeoLabel> near = set.getSubset(range, 10).getGeoLabels();
+    assertEquals(3, near.size());
+    assertEquals(high, near.get(0));
+    assertEquals(low, near.get(1));
+    assertEquals(close, near.get(2));
+
+    List<GeoLabel> far = set.getSubset(range, 1000).getGeoLabels();
+    assertEquals(2, far.size());
+    assertFalse(far.contains(close));
+
+    set.add(label("late", 15, 15));
+    assertEquals(4, set.getSubset(range).getGeoLabels().size());
+    assertTrue(close.inScale(Double.NaN));
+  }
+
+  @Test
+  public void subsetAfterReplace() {
+    List<GeoLabel> list = new ArrayList<GeoLabel>();
+    list.add(label("a", 10, 10));
+    GeoLabelSet set = new GeoLabelSet(list);
+    list.clear();
+    GeoRange range = new GeoRange(0, 20, 0, 20);
+    assertEquals(1, set.getSubset(range).getGeoLabels().size());
+
+    GeoLabel moved = label("b", 50, 50);
+    set.getGeoLabels().set(0, moved);
+    assertEquals(0, set.getSubset(range).getGeoLabels().size());
+
+    set.getGeoLabels().remove(0);
+    set.getGeoLabels().add(label("c", 15, 15));
+    List<GeoLabel> found = set.getSubset(range).getGeoLabels();
+    assertEquals(1, found.size());
+    assertEquals("c", found.get(0).text);
+  }
+}
@@ -0,0 +1,129 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+public class JGWToIndexTest {
+
+  private static File tempDir() throws Exception {
+    File dir = File.createTempFile("pack", "");
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  /** A 600x300 image of 0.01 degree pixels with its north west corner at -150, 60. */
+  private static void image(File dir) throws Exception {
+    ImageIO.write(new BufferedImage(600, 300, BufferedImage.TYPE_INT_RGB), "jpg",
+        new File(dir, "x.jpg"));
+    FileWriter jgw = new FileWriter(new File(dir, "x.jgw"));
+    jgw.write("0.01\n0\n0\n-0.01\n-150\n60\n");
+    jgw.close();
+  }
+
+  private static String index(File dir, int levels) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JGWToIndex.index(dir, levels, new PrintStream(out, true));
+    return out.toString();
+  }
+
+  @Test
+  public void levels() throws Exception {
+    File dir = tempDir();
+    try {
+      image(dir);
+      String[] lines = index(dir, 3).split("\n");
+      assertEquals(3, lines.length);
+      assertTrue(lines[0], lines[0].startsWith("x.jpg, 600, 300, -150.0"));
+      assertEquals("+1, x_L1.jpg, 300, 150", lines[1]);
+      assertEquals("+2, x_L2.jpg, 150, 75", lines[2]);
+      assertEquals(300, ImageIO.read(new File(dir, "x_L1.jpg")).getWidth());
+      assertEquals(150, ImageIO.read(new File(dir, "x_L2.jpg")).getWidth());
+      assertFalse(new File(dir, "x_L3.jpg").exists());
+
+      assertEquals(1, index(dir, 0).split("\n").length);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooManyLevels() throws Exception {
+    File dir = tempDir();
+    try {
+      index(dir, GeoImageLoader.MAX_LEVEL + 1);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void usage() throws Exception {
+    File dir = tempDir();
+    try {
+      image(dir);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      PrintStream o = new PrintStream(out, true);
+      PrintStream e = new PrintStream(err, true);
+      assertFalse(JGWToIndex.run(new String[] {dir.getPath(), "-levels"}, o, e));
+      assertFalse(JGWToIndex.run(new String[] {"-levels", "x", dir.getPath()}, o, e));
+      assertFalse(JGWToIndex.run(new String[] {"-levels", "-1", dir.getPath()}, o, e));
+      assertEquals(0, out.size());
+      assertTrue(err.toString(), err.toString().startsWith("Usage: JGWToIndex"));
+
+      assertTrue(JGWToIndex.run(new String[] {"-levels", "1", dir.getPath()}, o, e));
+      assertEquals(2, out.toString().split("\n").length);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void readIndex() throws Exception {
+    File root = tempDir();
+    try {
+      File dir = new File(root, "pack");
+      dir.mkdirs();
+      image(dir);
+      FileWriter mp = new FileWriter(new File(dir, "MapPack.txt"));
+      mp.write("+1, orphan.jpg, 1, 1\n# comment\n\n" + index(dir, 2));
+      mp.close();
+
+      List<GeoImage> images = GeoImageSet.loadMapPacks(root.getPath()).item1.getImages();
+      assertEquals(1, images.size());
+      GeoImage gi = images.get(0);
+      assertEquals(new File(dir, "x.jpg").getPath(), gi.getFilename());
+      assertEquals(-144, gi.getRange().getEast(), 1e-6);
+      assertEquals(57, gi.getRange().getSouth(), 1e-6);
+      assertEquals(new File(dir, "x_L1.jpg").getPath(), gi.getLevelFile(1));
+      assertEquals(new File(dir, "x_L2.jpg").getPath(), gi.getLevelFile(2));
+      assertNull(gi.getLevelFile(3));
+    } finally {
+      delete(root);
+    }
+  }
+}
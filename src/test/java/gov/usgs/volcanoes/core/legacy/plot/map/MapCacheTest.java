@@ -0,0 +1,138 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+import gov.usgs.volcanoes.core.math.proj.Mercator;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.ref.WeakReference;
+
+import javax.imageio.ImageIO;
+
+public class MapCacheTest {
+
+  private static Mercator mercator(double lon) {
+    Mercator m = new Mercator();
+    m.setOrigin(new Point2D.Double(lon, 0));
+    return m;
+  }
+
+  @Test
+  public void keyEquality() {
+    GeoRange range = new GeoRange(-160, -150, 55, 60);
+    Object key = MapCache.key(mercator(-155), range, 800, Double.NaN);
+    assertEquals(key, MapCache.key(mercator(-155), new GeoRange(range), 800, Double.NaN));
+    assertEquals(key.hashCode(),
+        MapCache.key(mercator(-155), new GeoRange(range), 800, Double.NaN).hashCode());
+    assertFalse(key.equals(MapCache.key(mercator(-155), range, 801, Double.NaN)));
+    assertFalse(key.equals(MapCache.key(mercator(-150), range, 800, Double.NaN)));
+    assertFalse(key.equals(MapCache.key(mercator(-155), range, 800, 1.0)));
+  }
+
+  @Test
+  public void projectionChangedInPlace() {
+    MapCache cache = new MapCache(1000);
+    Mercator m = mercator(-155);
+    GeoRange range = new GeoRange(-160, -150, 55, 60);
+    cache.put(MapCache.key(m, range, 800), "background", 10);
+    assertEquals("background", cache.get(MapCache.key(m, range, 800)));
+
+    m.setOrigin(new Point2D.Double(-150, 0));
+    assertNull(cache.get(MapCache.key(m, range, 800)));
+    range.setWest(-161);
+    assertNull(cache.get(MapCache.key(mercator(-155), range, 800)));
+  }
+
+  @Test
+  public void evictLeastRecent() {
+    MapCache cache = new MapCache(100);
+    GeoRange range = new GeoRange(0, 1, 0, 1);
+    Mercator m = mercator(0);
+    Object a = MapCache.key(m, range, "a");
+    Object b = MapCache.key(m, range, "b");
+    Object c = MapCache.key(m, range, "c");
+    cache.put(a, "a", 40);
+    cache.put(b, "b", 40);
+    cache.get(a);
+    cache.put(c, "c", 40);
+    assertEquals(2, cache.count());
+    assertEquals(80, cache.size());
+    assertNull(cache.get(b));
+    assertEquals("a", cache.get(a));
+
+    cache.put(MapCache.key(m, range, "big"), "big", 101);
+    assertEquals(2, cache.count());
+    cache.setMaxSize(0);
+    assertEquals(0, cache.count());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void backgroundIsCopy() throws Exception {
+    File jpg = File.createTempFile("background", ".jpg");
+    File index = File.createTempFile("background", ".txt");
+    try {
+      BufferedImage white = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = white.createGraphics();
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, 200, 200);
+      g.dispose();
+      ImageIO.write(white, "jpg", jpg);
+      FileWriter out = new FileWriter(index);
+      out.write(jpg.getPath() + ", 200, 200, -160, -150, 55, 60\n");
+      out.close();
+
+      GeoImageSet images = new GeoImageSet(index.getPath());
+      GeoRange range = new GeoRange(-158, -152, 56, 59);
+      BufferedImage first = (BufferedImage) images.getMapBackground(mercator(-155), range, 200);
+      int rgb = first.getRGB(100, 50);
+      g = first.createGraphics();
+      g.setColor(Color.RED);
+      g.fillRect(0, 0, first.getWidth(), first.getHeight());
+      g.dispose();
+
+      BufferedImage second = (BufferedImage) images.getMapBackground(mercator(-155), range, 200);
+      assertNotSame(first, second);
+      assertEquals(rgb, second.getRGB(100, 50));
+    } finally {
+      jpg.delete();
+      index.delete();
+    }
+  }
+
+  @Test
+  public void backgroundKeyLetsSetGo() throws Exception {
+    File jpg = File.createTempFile("background", ".jpg");
+    File index = File.createTempFile("background", ".txt");
+    try {
+      ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "jpg", jpg);
+      FileWriter out = new FileWriter(index);
+      out.write(jpg.getPath() + ", 100, 100, -160, -150, 55, 60\n");
+      out.close();
+
+      GeoImageSet images = new GeoImageSet(index.getPath());
+      images.getMapBackground(mercator(-155), new GeoRange(-158, -152, 56, 59), 100);
+      WeakReference<GeoImageSet> ref = new WeakReference<GeoImageSet>(images);
+      images = null;
+      for (int i = 0; i < 50 && ref.get() != null; i++) {
+        System.gc();
+        Thread.sleep(20);
+      }
+      assertNull(ref.get());
+    } finally {
+      jpg.delete();
+      index.delete();
+    }
+  }
+}
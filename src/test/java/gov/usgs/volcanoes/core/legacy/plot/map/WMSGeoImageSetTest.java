@@ -0,0 +1,222 @@
+package gov.usgs.volcanoes.core.legacy.plot.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import gov.usgs.volcanoes.core.math.proj.GeoRange;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+public class WMSGeoImageSetTest {
+
+  private static File tempDir() throws Exception {
+    File dir = File.createTempFile("tiles", "");
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  /** The color the stub server fills the tile with the given west and north edges. */
+  private static int color(double west, double north) {
+    return new Color((int) (west + 180) % 256, (int) (north + 90) % 256, 0).getRGB();
+  }
+
+  /** A stub WMS server answering every request with a tile of its own color. */
+  private static HttpServer server(AtomicInteger requests) throws Exception {
+    return server(requests, null);
+  }
+
+  /**
+   * A stub WMS server answering every request with a tile of its own color,
+   * except that requests for the bbox given fail.
+   */
+  private static HttpServer server(final AtomicInteger requests, final String fail)
+      throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/wms", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String query = exchange.getRequestURI().getQuery();
+        String bbox = query.substring(query.indexOf("BBOX=") + 5);
+        if (bbox.equals(fail)) {
+          exchange.sendResponseHeaders(500, -1);
+          exchange.close();
+          return;
+        }
+        String[] edges = bbox.split(",");
+        BufferedImage tile = new BufferedImage(WMSGeoImageSet.TILE_SIZE,
+            WMSGeoImageSet.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.setColor(new Color(color(Double.parseDouble(edges[0]), Double.parseDouble(edges[3]))));
+        g.fillRect(0, 0, tile.getWidth(), tile.getHeight());
+        g.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(tile, "png", png);
+        byte[] body = png.toByteArray();
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  private static WMSGeoImageSet wms(HttpServer server) {
+    WMSGeoImageSet wms = new WMSGeoImageSet();
+    wms.setServer("http://127.0.0.1:" + server.getAddress().getPort() + "/wms");
+    return wms;
+  }
+
+  @Test
+  public void getZoom() {
+    assertEquals(1, WMSGeoImageSet.getZoom(1, 1));
+    assertEquals(3, WMSGeoImageSet.getZoom(5, 2));
+    assertEquals(4, WMSGeoImageSet.getZoom(2, 6));
+  }
+
+  @Test
+  public void storedTilesNotFetched() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = server(requests);
+    File dir = tempDir();
+    try {
+      WMSGeoImageSet wms = wms(server);
+      wms.setTileStore(dir, 3600000);
+      GeoRange range = new GeoRange(-10, 10, -10, 10);
+
+      // zoom 3 tiles are 45 degrees, so one lands in each quarter
+      GeoImage gi = wms.getCompositeImage(range, 5, 5, Double.NaN);
+      assertNotNull(gi);
+      assertEquals(100, gi.getImage().getWidth());
+      assertEquals(100, gi.getImage().getHeight());
+      assertEquals(color(-45, 45), gi.getImage().getRGB(25, 25));
+      assertEquals(color(0, 45), gi.getImage().getRGB(75, 25));
+      assertEquals(color(-45, 0), gi.getImage().getRGB(25, 75));
+      assertEquals(color(0, 0), gi.getImage().getRGB(75, 75));
+      assertEquals(4, requests.get());
+
+      gi = wms(server).getCompositeImage(range, 5, 5, Double.NaN);
+      assertNotNull(gi);
+      assertEquals(8, requests.get());
+
+      WMSGeoImageSet stored = wms(server);
+      stored.setTileStore(dir, 3600000);
+      gi = stored.getCompositeImage(range, 5, 5, Double.NaN);
+      assertEquals(color(-45, 0), gi.getImage().getRGB(10, 90));
+      assertEquals(color(0, 45), gi.getImage().getRGB(90, 10));
+      assertEquals(8, requests.get());
+    } finally {
+      server.stop(0);
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void failedTileLeftOut() throws Exception {
+    HttpServer server = server(new AtomicInteger(), "0.00000,0.00000,45.00000,45.00000");
+    try {
+      GeoImage gi = wms(server).getCompositeImage(new GeoRange(-10, 10, -10, 10), 5, 5,
+          Double.NaN);
+      assertNotNull(gi);
+      assertEquals(color(-45, 45), gi.getImage().getRGB(25, 25));
+      assertEquals(0, gi.getImage().getRGB(75, 25));
+      assertEquals(color(-45, 0), gi.getImage().getRGB(25, 75));
+      assertEquals(color(0, 0), gi.getImage().getRGB(75, 75));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void staleTilesWhenServerDown() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = server(requests);
+    File dir = tempDir();
+    try {
+      GeoRange range = new GeoRange(170, -170, 50, 60);
+      WMSGeoImageSet wms = wms(server);
+      wms.setTileStore(dir, 3600000);
+      assertNotNull(wms.getCompositeImage(range, 5, 5, Double.NaN));
+      server.stop(0);
+
+      // either side of the date line
+      wms.setTileStore(dir, 0);
+      GeoImage gi = wms.getCompositeImage(range, 5, 5, Double.NaN);
+      assertNotNull(gi);
+      assertEquals(color(135, 90), gi.getImage().getRGB(25, 25));
+      assertEquals(color(-180, 90), gi.getImage().getRGB(75, 25));
+
+      wms.setTileStore(null, 0);
+      assertNull(wms.getCompositeImage(range, 5, 5, Double.NaN));
+    } finally {
+      server.stop(0);
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void storeDirectoryPerSource() throws Exception {
+    File dir = tempDir();
+    try {
+      WMSTileStore store = new WMSTileStore(dir, 0, Long.MAX_VALUE);
+      File a = store.file("http://a/wms|layer|style|image/png", 3, 1, 2, "png");
+      assertEquals(new File(dir, WMSTileStore.digest("http://a/wms|layer|style|image/png")),
+          a.getParentFile().getParentFile());
+      assertEquals(64, a.getParentFile().getParentFile().getName().length());
+      assertFalse(a.equals(store.file("http://a/wms|other|style|image/png", 3, 1, 2, "png")));
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void storeSizeLimit() throws Exception {
+    File dir = tempDir();
+    try {
+      WMSTileStore store = new WMSTileStore(dir, 0, 1000);
+      long then = System.currentTimeMillis() - 3600000;
+      File[] files = new File[6];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = store.file(i == 0 ? "old" : "new", 1, i, 0, "png");
+        store.write(files[i], new byte[200]);
+        files[i].setLastModified(then + i * 10000);
+      }
+      for (int i = 0; i < files.length; i++) {
+        assertEquals("tile " + i, i >= 3, files[i].exists());
+      }
+      assertFalse(new File(dir, WMSTileStore.digest("old")).exists());
+    } finally {
+      delete(dir);
+    }
+  }
+}
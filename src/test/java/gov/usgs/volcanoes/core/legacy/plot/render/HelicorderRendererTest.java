@@ -0,0 +1,51 @@
+package gov.usgs.volcanoes.core.legacy.plot.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.data.HelicorderData;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class HelicorderRendererTest {
+
+  private static BufferedImage render(boolean rasterBars) {
+    HelicorderData hd = new HelicorderData(0);
+    for (int t = 0; t < 7200; t++) {
+      double v = 1500 * Math.sin(t / 40.0) + (t % 97 == 0 ? 5000 : 0);
+      hd.append(t, v - 200 - t % 13, v + 200 + t % 7);
+    }
+
+    HelicorderRenderer hr = new HelicorderRenderer(hd, 900);
+    hr.setLocation(40, 20, 600, 400);
+    hr.setHelicorderExtents(0, 7200, -3000, 3000);
+    hr.setShowClip(true);
+    hr.setRasterBars(rasterBars);
+
+    BufferedImage image = new BufferedImage(700, 460, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.fillRect(0, 0, 700, 460);
+    hr.render(g);
+    g.dispose();
+    return image;
+  }
+
+  @Test
+  public void rasterBars() {
+    BufferedImage expected = render(false);
+    BufferedImage actual = render(true);
+    int bars = 0;
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+        if ((actual.getRGB(x, y) & 0xffff00) == 0) {
+          bars++;
+        }
+      }
+    }
+    assertTrue(bars > 10000);
+  }
+}
@@ -0,0 +1,70 @@
+package gov.usgs.volcanoes.core.legacy.plot.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Compares path sizes and render times for a long series drawn with and
+ * without decimation. Not run as a test.
+ */
+public class PathDecimatorBenchmark {
+
+  /**
+   * Run the comparison.
+   *
+   * @param args number of points, default 2000000
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    int width = 1000;
+    int height = 300;
+    double[] x = new double[n];
+    double[] y = new double[n];
+    Random random = new Random(1);
+    for (int i = 0; i < n; i++) {
+      x[i] = (double) i * width / n;
+      y[i] = height / 2 + height / 3 * Math.sin(i * 20 * Math.PI / n) + random.nextGaussian() * 10;
+    }
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setStroke(new BasicStroke(1));
+    for (int pass = 0; pass < 3; pass++) {
+      for (int decimate = 0; decimate < 2; decimate++) {
+        long t0 = System.nanoTime();
+        GeneralPath gp = new GeneralPath(GeneralPath.WIND_NON_ZERO, n + 1);
+        long segments;
+        if (decimate == 1) {
+          PathDecimator pd = new PathDecimator(gp);
+          pd.moveTo(x[0], y[0]);
+          for (int i = 1; i < n; i++) {
+            pd.lineTo(x[i], y[i]);
+          }
+          pd.flush();
+          segments = pd.getSegments();
+        } else {
+          gp.moveTo((float) x[0], (float) y[0]);
+          for (int i = 1; i < n; i++) {
+            gp.lineTo((float) x[i], (float) y[i]);
+          }
+          segments = n - 1;
+        }
+        long t1 = System.nanoTime();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.black);
+        g.draw(gp);
+        long t2 = System.nanoTime();
+        System.out.printf("%s: %d segments, build %.1f ms, draw %.1f ms%n",
+            decimate == 1 ? "decimated" : "full", segments, (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+      }
+    }
+    g.dispose();
+  }
+}
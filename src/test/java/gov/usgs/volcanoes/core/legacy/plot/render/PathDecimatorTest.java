@@ -0,0 +1,138 @@
+package gov.usgs.volcanoes.core.legacy.plot.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PathDecimatorTest {
+
+  private static final int WIDTH = 400;
+  private static final int HEIGHT = 200;
+  private static final int N = 200000;
+
+  private static double[][] series() {
+    double[][] xy = new double[2][N];
+    Random random = new Random(3);
+    for (int i = 0; i < N; i++) {
+      xy[0][i] = (double) i * WIDTH / N;
+      xy[1][i] = HEIGHT / 2 + 60 * Math.sin(i * 12 * Math.PI / N) + random.nextGaussian() * 8;
+    }
+    return xy;
+  }
+
+  private static BufferedImage draw(GeneralPath gp) {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.white);
+    g.fillRect(0, 0, WIDTH, HEIGHT);
+    g.setColor(Color.black);
+    g.draw(gp);
+    g.dispose();
+    return image;
+  }
+
+  /** The lowest and highest y in each half pixel column. */
+  private static double[][] columnRanges(double[] xs, double[] ys) {
+    double[][] ranges = new double[2][2 * WIDTH];
+    Arrays.fill(ranges[0], Double.MAX_VALUE);
+    Arrays.fill(ranges[1], -Double.MAX_VALUE);
+    for (int i = 0; i < xs.length; i++) {
+      int c = (int) Math.floor(2 * xs[i]);
+      ranges[0][c] = Math.min(ranges[0][c], ys[i]);
+      ranges[1][c] = Math.max(ranges[1][c], ys[i]);
+    }
+    return ranges;
+  }
+
+  private static double[][] vertices(GeneralPath gp) {
+    int n = 0;
+    for (PathIterator it = gp.getPathIterator(null); !it.isDone(); it.next()) {
+      n++;
+    }
+    double[][] xy = new double[2][n];
+    float[] coords = new float[6];
+    int i = 0;
+    for (PathIterator it = gp.getPathIterator(null); !it.isDone(); it.next()) {
+      it.currentSegment(coords);
+      xy[0][i] = coords[0];
+      xy[1][i] = coords[1];
+      i++;
+    }
+    return xy;
+  }
+
+  @Test
+  public void extremesKept() {
+    double[][] xy = series();
+    GeneralPath full = new GeneralPath();
+    full.moveTo((float) xy[0][0], (float) xy[1][0]);
+    GeneralPath reduced = new GeneralPath();
+    PathDecimator pd = new PathDecimator(reduced);
+    pd.moveTo(xy[0][0], xy[1][0]);
+    for (int i = 1; i < N; i++) {
+      full.lineTo((float) xy[0][i], (float) xy[1][i]);
+      pd.lineTo(xy[0][i], xy[1][i]);
+    }
+    pd.flush();
+
+    assertEquals(N, pd.getPoints());
+    assertTrue(pd.getSegments() <= 8 * WIDTH);
+
+    double[][] fullXy = vertices(full);
+    double[][] reducedXy = vertices(reduced);
+    double[][] fullRanges = columnRanges(fullXy[0], fullXy[1]);
+    double[][] reducedRanges = columnRanges(reducedXy[0], reducedXy[1]);
+    assertTrue(Arrays.equals(fullRanges[0], reducedRanges[0]));
+    assertTrue(Arrays.equals(fullRanges[1], reducedRanges[1]));
+
+    // lines between fewer points are rasterized a little differently
+    BufferedImage a = draw(full);
+    BufferedImage b = draw(reduced);
+    int diff = 0;
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        if (a.getRGB(x, y) != b.getRGB(x, y)) {
+          diff++;
+        }
+      }
+    }
+    assertTrue("pixels differ: " + diff, diff < WIDTH * HEIGHT / 1000);
+  }
+
+  @Test
+  public void moveBreaksLine() {
+    GeneralPath gp = new GeneralPath();
+    PathDecimator pd = new PathDecimator(gp);
+    pd.moveTo(0.1, 5);
+    pd.lineTo(0.2, 9);
+    pd.lineTo(0.3, 1);
+    pd.lineTo(0.4, 6);
+    pd.lineTo(0.45, 4);
+    pd.moveTo(0.6, 7);
+    pd.lineTo(3.5, 7);
+    pd.flush();
+
+    int moves = 0;
+    int lines = 0;
+    float[] coords = new float[6];
+    for (PathIterator it = gp.getPathIterator(null); !it.isDone(); it.next()) {
+      if (it.currentSegment(coords) == PathIterator.SEG_MOVETO) {
+        moves++;
+      } else {
+        lines++;
+      }
+    }
+    assertEquals(2, moves);
+    // first, max, min, last in the first column; one line to the next column
+    assertEquals(4, lines);
+  }
+}
@@ -0,0 +1,110 @@
+package gov.usgs.volcanoes.core.legacy.plot.render.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import gov.usgs.volcanoes.core.data.SliceWave;
+import gov.usgs.volcanoes.core.data.Wave;
+import gov.usgs.volcanoes.core.legacy.plot.decorate.FrameDecorator;
+import gov.usgs.volcanoes.core.legacy.plot.render.FrameRenderer;
+
+import org.junit.Test;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+public class SliceWaveRendererTest {
+
+  private static final int WIDTH = 2 * TileCache.TILE_WIDTH;
+  private static final int HEIGHT = 100;
+
+  /** A rising tone with an offset, starting 100 seconds before t. */
+  private static Wave wave(double t, double samplingRate) {
+    int[] buf = new int[(int) (samplingRate * 900)];
+    for (int i = 0; i < buf.length; i++) {
+      double s = i / samplingRate;
+      buf[i] = 510 + (int) (1000 * Math.sin(s * (1 + s / 300)));
+    }
+    return new Wave(buf, t - 100, samplingRate);
+  }
+
+  private static BufferedImage render(Wave wave, double t1, double t2, boolean removeBias,
+      TileCache cache) {
+    SliceWave slice = new SliceWave(wave);
+    slice.setSlice(t1, t2);
+    SliceWaveRenderer wr = new SliceWaveRenderer();
+    wr.setFrameDecorator(new FrameDecorator() {
+      public void decorate(FrameRenderer fr) {}
+    });
+    wr.setWave(slice);
+    wr.setViewTimes(t1, t2, "UTC");
+    wr.setYLimits(-2000, 2000);
+    wr.setRemoveBias(removeBias);
+    wr.setTileCache(cache, "A");
+    wr.update();
+    wr.setLocation(0, 0, WIDTH, HEIGHT);
+
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    wr.render(g);
+    g.dispose();
+    return image;
+  }
+
+  /** Compare all but the first column, where a view lacks the line in. */
+  private static void assertSame(BufferedImage expected, BufferedImage actual) {
+    for (int x = 2; x < WIDTH; x++) {
+      for (int y = 1; y < HEIGHT; y++) {
+        assertEquals(x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void tilesMatchDirect() {
+    // one second per pixel, so two whole tiles are drawn unscaled; lines at
+    // 20 Hz, columns of extremes at 100 Hz
+    double t1 = 100 * TileCache.TILE_WIDTH;
+    double t2 = t1 + WIDTH;
+    for (double samplingRate : new double[] {20, 100}) {
+      Wave wave = wave(t1, samplingRate);
+      assertSame(render(wave, t1, t2, false, null),
+          render(wave, t1, t2, false, new TileCache()));
+    }
+  }
+
+  @Test
+  public void panKeepsTiles() {
+    double t1 = 100 * TileCache.TILE_WIDTH;
+    double t2 = t1 + WIDTH;
+    double pan = TileCache.TILE_WIDTH / 2;
+    Wave wave = wave(t1, 20);
+    SliceWave slice = new SliceWave(wave);
+    slice.setSlice(t1, t2);
+    double mean = slice.mean();
+    slice.setSlice(t1 + pan, t2 + pan);
+    assertFalse(mean == slice.mean());
+
+    TileCache cache = new TileCache();
+    render(wave, t1, t2, true, cache);
+    assertEquals(0, cache.getHits());
+    render(wave, t1 + pan, t2 + pan, true, cache);
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void newDataRedrawn() {
+    double t1 = 100 * TileCache.TILE_WIDTH;
+    double t2 = t1 + WIDTH;
+    TileCache cache = new TileCache();
+    Wave wave = wave(t1, 20);
+    render(wave, t1, t2, false, cache);
+
+    Wave late = new Wave(wave);
+    for (int i = 0; i < 20; i++) {
+      late.buffer[20 * 420 + i] = 1900;
+    }
+    assertSame(render(late, t1, t2, false, null), render(late, t1, t2, false, cache));
+    assertEquals(1, cache.getHits());
+  }
+}
@@ -0,0 +1,80 @@
+package gov.usgs.volcanoes.core.legacy.plot.render.wave;
+
+import static org.junit.Assert.assertTrue;
+
+import gov.usgs.volcanoes.core.data.SliceWave;
+import gov.usgs.volcanoes.core.data.Wave;
+import gov.usgs.volcanoes.core.legacy.plot.decorate.FrameDecorator;
+import gov.usgs.volcanoes.core.legacy.plot.render.FrameRenderer;
+
+import org.junit.Test;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+public class SpectrogramRendererTest {
+
+  private static final int WIDTH = 2 * TileCache.TILE_WIDTH;
+  private static final int HEIGHT = 100;
+
+  /** A sweep from 0.5 to 4.5 Hz, at 10 Hz, starting 100 seconds before t. */
+  private static Wave sweep(double t) {
+    int[] buf = new int[10 * 900];
+    for (int i = 0; i < buf.length; i++) {
+      double s = i / 10.0;
+      buf[i] = (int) (1000 * Math.sin(2 * Math.PI * (0.5 * s + s * s / 450)));
+    }
+    return new Wave(buf, t - 100, 10);
+  }
+
+  private static BufferedImage render(Wave wave, double t1, double t2, TileCache cache) {
+    SpectrogramRenderer sr = new SpectrogramRenderer(new SliceWave(wave));
+    sr.setFrameDecorator(new FrameDecorator() {
+      public void decorate(FrameRenderer fr) {}
+    });
+    sr.setViewStartTime(t1);
+    sr.setViewEndTime(t2);
+    sr.setMinPower(0);
+    sr.setMaxPower(60000);
+    sr.setMaxFreq(5);
+    sr.setTileCache(cache, "A");
+    sr.update();
+    sr.setLocation(0, 0, WIDTH, HEIGHT);
+
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    sr.render(g);
+    g.dispose();
+    return image;
+  }
+
+  private static boolean differs(int p, int q) {
+    int d = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      d += Math.abs((p >>> shift & 0xff) - (q >>> shift & 0xff));
+    }
+    return d > 30;
+  }
+
+  @Test
+  public void tilesMatchDirect() {
+    // one second per pixel, so two whole tiles are drawn unscaled
+    double t1 = 100 * TileCache.TILE_WIDTH;
+    double t2 = t1 + WIDTH;
+    Wave wave = sweep(t1);
+    BufferedImage direct = render(wave, t1, t2, null);
+    BufferedImage tiled = render(wave, t1, t2, new TileCache());
+
+    // columns fall a little differently, but no column, least of all those
+    // at tile edges, is much changed
+    for (int x = 1; x < WIDTH; x++) {
+      int changed = 0;
+      for (int y = 1; y < HEIGHT; y++) {
+        if (differs(direct.getRGB(x, y), tiled.getRGB(x, y))) {
+          changed++;
+        }
+      }
+      assertTrue("column " + x + ": " + changed, changed <= HEIGHT / 10);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package gov.usgs.volcanoes.core.legacy.plot.render.wave;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import gov.usgs.volcanoes.core.data.Wave;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+public class TileCacheTest {
+
+  /** Fills each tile with a color made from its index. */
+  private static class CountingSource implements TileCache.Source {
+    int rendered;
+
+    public void renderTile(Graphics2D g, double t1, double t2, int width, int height) {
+      rendered++;
+      long index = Math.round(t1 / (t2 - t1));
+      g.setColor(new Color((int) (index & 0xffffff)));
+      g.fillRect(0, 0, width, height);
+    }
+  }
+
+  @Test
+  public void getLevel() {
+    assertEquals(0, TileCache.getLevel(1.0));
+    assertEquals(1, TileCache.getLevel(1.5));
+    assertEquals(0, TileCache.getLevel(0.75));
+    assertEquals(-1, TileCache.getLevel(0.5));
+    assertEquals(4, TileCache.getLevel(10));
+  }
+
+  @Test
+  public void reuseCompleteTiles() {
+    TileCache cache = new TileCache();
+    CountingSource source = new CountingSource();
+    BufferedImage image = new BufferedImage(512, 10, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+
+    // level 0, four tiles; the last extends past the complete span
+    cache.draw(g, "A", 0, source, 256, 1280, 0, 1200, 0, 0, 1024, 10);
+    assertEquals(4, source.rendered);
+    assertEquals(3, cache.size());
+
+    cache.draw(g, "A", 0, source, 256, 1280, 0, 1200, 0, 0, 1024, 10);
+    assertEquals(5, source.rendered);
+
+    cache.draw(g, "A", 1, source, 256, 1280, 0, 1200, 0, 0, 1024, 10);
+    assertEquals(9, source.rendered);
+    g.dispose();
+  }
+
+  @Test
+  public void tilePlacement() {
+    TileCache cache = new TileCache();
+    CountingSource source = new CountingSource();
+    BufferedImage image = new BufferedImage(512, 10, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+
+    // two seconds per pixel: level 1, tiles of 512 seconds
+    cache.draw(g, "A", 0, source, 1024, 2048, 0, 4096, 0, 0, 512, 10);
+    g.dispose();
+    assertEquals(2, image.getRGB(0, 5) & 0xffffff);
+    assertEquals(2, image.getRGB(255, 5) & 0xffffff);
+    assertEquals(3, image.getRGB(256, 5) & 0xffffff);
+    assertEquals(3, image.getRGB(511, 5) & 0xffffff);
+  }
+
+  @Test
+  public void evictLeastRecent() {
+    long tileBytes = 4L * TileCache.TILE_WIDTH * 10;
+    TileCache cache = new TileCache(2 * tileBytes, null);
+    BufferedImage tile = new BufferedImage(TileCache.TILE_WIDTH, 10, BufferedImage.TYPE_INT_ARGB);
+    TileCache.Key a = new TileCache.Key("A", 0, 1, 10, 0);
+    TileCache.Key b = new TileCache.Key("A", 0, 2, 10, 0);
+    TileCache.Key c = new TileCache.Key("A", 0, 3, 10, 0);
+
+    cache.put(a, tile);
+    cache.put(b, tile);
+    assertNotNull(cache.get(a));
+    cache.put(c, tile);
+
+    assertEquals(2, cache.size());
+    assertEquals(2 * tileBytes, cache.getBytes());
+    assertNotNull(cache.get(a));
+    assertNull(cache.get(b));
+    assertNotNull(cache.get(c));
+  }
+
+  @Test
+  public void invalidate() throws Exception {
+    File dir = File.createTempFile("tiles", "");
+    dir.delete();
+    TileCache cache = new TileCache(TileCache.DEFAULT_MAX_BYTES, dir);
+    BufferedImage tile = new BufferedImage(TileCache.TILE_WIDTH, 10, BufferedImage.TYPE_INT_ARGB);
+    tile.setRGB(3, 4, 0xff123456);
+    TileCache.Key a = new TileCache.Key("A_B", 0, 1, 10, 0);
+    TileCache.Key b = new TileCache.Key("A_B", 0, 2, 10, 0);
+    TileCache.Key other = new TileCache.Key("A", 0, 2, 10, 0);
+    cache.put(a, tile);
+    cache.put(b, tile);
+    cache.put(other, tile);
+
+    cache.clear();
+    BufferedImage read = cache.get(a);
+    assertNotNull(read);
+    assertEquals(0xff123456, read.getRGB(3, 4));
+
+    cache.invalidate("A_B", 600, 700);
+    assertNotNull(cache.get(a));
+    assertNull(cache.get(b));
+    cache.clear();
+    assertNull(cache.get(b));
+    assertNotNull(cache.get(other));
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void setData() {
+    TileCache cache = new TileCache();
+    BufferedImage tile = new BufferedImage(TileCache.TILE_WIDTH, 10, BufferedImage.TYPE_INT_ARGB);
+    TileCache.Key a = new TileCache.Key("A", 0, 1, 10, 0);
+    TileCache.Key b = new TileCache.Key("A", 0, 2, 10, 0);
+    TileCache.Key c = new TileCache.Key("A", 0, 3, 10, 0);
+    Wave wave = new Wave(new int[10000], 0, 10);
+    cache.setData("A", wave, 0.1);
+    cache.put(a, tile);
+    cache.put(b, tile);
+    cache.put(c, tile);
+
+    cache.setData("A", wave, 0.1);
+    cache.setData("A", new Wave(wave), 0.1);
+    assertEquals(3, cache.size());
+
+    // late data for 650 seconds
+    Wave late = new Wave(wave);
+    late.buffer[6500] = 5;
+    cache.setData("A", late, 0.1);
+    assertEquals(2, cache.size());
+    assertNull(cache.get(b));
+
+    // the first 700 seconds dropped and 100 seconds appended
+    Wave moved = new Wave(new int[4000], 700, 10);
+    cache.setData("A", moved, 0.1);
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(a));
+    assertNotNull(cache.get(c));
+
+    // replaced data for 900 seconds
+    Wave replaced = new Wave(moved);
+    replaced.buffer[2000] = 5;
+    cache.setData("A", replaced, 0.1);
+    assertEquals(1, cache.size());
+    assertNotNull(cache.get(a));
+    assertNull(cache.get(c));
+
+    // no data at all
+    cache.setData("A", new Wave(), 0.1);
+    assertEquals(1, cache.size());
+  }
+}
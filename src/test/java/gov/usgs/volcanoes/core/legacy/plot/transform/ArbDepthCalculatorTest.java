@@ -0,0 +1,46 @@
+package gov.usgs.volcanoes.core.legacy.plot.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ArbDepthCalculatorTest {
+
+  private static void assertBatchSameAsSingle(ArbDepthCalculator calc) {
+    Random random = new Random(5);
+    int count = 10000;
+    double[] lat = new double[count];
+    double[] lon = new double[count];
+    for (int i = 0; i < count; i++) {
+      lat[i] = 55 + random.nextDouble() * 5;
+      lon[i] = -155 + random.nextDouble() * 5;
+    }
+    double[] dist = new double[count];
+    double[] wid = new double[count];
+    boolean[] inside = new boolean[count];
+    calc.project(lat, lon, dist, wid);
+    calc.isInsideArea(lat, lon, inside);
+
+    int in = 0;
+    for (int i = 0; i < count; i++) {
+      assertEquals(calc.getScaledProjectedDistance(lat[i], lon[i]), dist[i], 1e-9);
+      assertEquals(calc.getScalePojectedWidth(lat[i], lon[i]), wid[i], 1e-9);
+      assertEquals(calc.isInsideArea(lat[i], lon[i]), inside[i]);
+      if (inside[i])
+        in++;
+    }
+    assertTrue(in > 0);
+    assertFalse(in == count);
+  }
+
+  @Test
+  public void batchSameAsSingle() {
+    assertBatchSameAsSingle(new ArbDepthCalculator(56, -154, 59, -151));
+    assertBatchSameAsSingle(new ArbDepthCalculator(59, -151, 56, -154, 50));
+    assertBatchSameAsSingle(new ArbDepthCalculator(57, -154, 57, -151, 0));
+  }
+}
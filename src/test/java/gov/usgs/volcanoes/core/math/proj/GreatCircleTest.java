@@ -0,0 +1,82 @@
+package gov.usgs.volcanoes.core.math.proj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+public class GreatCircleTest {
+
+  private static double[] random(Random random, int n, double min, double max) {
+    double[] v = new double[n];
+    for (int i = 0; i < n; i++) {
+      v[i] = min + random.nextDouble() * (max - min);
+    }
+    return v;
+  }
+
+  private static void assertAzimuth(double expected, double actual) {
+    double d = Math.abs(expected - actual);
+    assertEquals(0, Math.min(d, 360 - d), 1e-8);
+    assertTrue(actual >= 0 && actual < 360);
+  }
+
+  @Test
+  public void oneToMany() {
+    Random random = new Random(5);
+    double[] slon = random(random, 3, -180, 180);
+    double[] slat = random(random, 3, -80, 80);
+    double[] lon = random(random, 1000, -180, 180);
+    double[] lat = random(random, 1000, -85, 85);
+    GreatCircle gc = new GreatCircle(slon, slat);
+    assertEquals(3, gc.size());
+
+    double[] dist = new double[lon.length];
+    double[] az = new double[lon.length];
+    for (int s = 0; s < gc.size(); s++) {
+      gc.distances(s, lon, lat, dist);
+      gc.azimuths(s, lon, lat, az);
+      Point2D.Double station = new Point2D.Double(slon[s], slat[s]);
+      for (int p = 0; p < lon.length; p++) {
+        Point2D.Double pt = new Point2D.Double(lon[p], lat[p]);
+        assertEquals(Projection.distanceBetweenRad(station, pt), dist[p], 1e-12);
+        assertAzimuth(Projection.azimuthTo(station, pt), az[p]);
+      }
+    }
+  }
+
+  @Test
+  public void manyToManyParallel() {
+    Random random = new Random(9);
+    double[] slon = random(random, 150, -170, -140);
+    double[] slat = random(random, 150, 50, 65);
+    double[] lon = random(random, 2000, -175, -135);
+    double[] lat = random(random, 2000, 45, 70);
+    lat[7] = Double.NaN;
+    GreatCircle gc = new GreatCircle(slon, slat);
+
+    double[] dist = new double[lon.length * gc.size()];
+    double[] az = new double[lon.length * gc.size()];
+    gc.distances(lon, lat, dist, true);
+    gc.azimuths(lon, lat, az, true);
+    double[] serial = new double[dist.length];
+    gc.distances(lon, lat, serial, false);
+
+    double[] one = new double[lon.length];
+    double[] oneAz = new double[lon.length];
+    for (int s = 0; s < gc.size(); s++) {
+      gc.distances(s, lon, lat, one);
+      gc.azimuths(s, lon, lat, oneAz);
+      for (int p = 0; p < lon.length; p++) {
+        int i = p * gc.size() + s;
+        assertEquals(one[p], dist[i], 0);
+        assertEquals(one[p], serial[i], 0);
+        assertEquals(oneAz[p], az[i], 0);
+      }
+    }
+    assertTrue(Double.isNaN(dist[7 * gc.size()]));
+  }
+}
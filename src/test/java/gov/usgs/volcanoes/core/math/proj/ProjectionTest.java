@@ -0,0 +1,202 @@
+package gov.usgs.volcanoes.core.math.proj;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ProjectionTest {
+
+  private static final int SW = 360;
+  private static final int SH = 180;
+
+  private static int[] source() {
+    int[] src = new int[SW * SH];
+    Random random = new Random(7);
+    for (int i = 0; i < src.length; i++) {
+      src[i] = 0xff000000 | random.nextInt(0xffffff);
+    }
+    return src;
+  }
+
+  /** Projection.fastMapRect as it was before it was optimized. */
+  private static void originalMapRect(Projection proj, FastProjector fast, double x1, double y1,
+      double x2, double y2, int dx, int dy, int dw, int dh, int[] src, int[] dest, int sw,
+      int sh, int scan, GeoRange range) {
+    Point2D.Double ul = new Point2D.Double(x1, y1);
+    Point2D.Double ur = new Point2D.Double(x2, y1);
+    Point2D.Double lr = new Point2D.Double(x2, y2);
+    Point2D.Double ll = new Point2D.Double(x1, y2);
+    fast.inverse(ul);
+    fast.inverse(ur);
+    fast.inverse(lr);
+    fast.inverse(ll);
+    if (Double.isNaN(ul.x) && Double.isNaN(ur.x) && Double.isNaN(lr.x) && Double.isNaN(ll.x)) {
+      return;
+    }
+    if (Double.isNaN(ul.x) || Double.isNaN(ur.x) || Double.isNaN(lr.x) || Double.isNaN(ll.x)) {
+      proj.mapRect(fast, x1, y1, x2, y2, dx, dy, dw, dh, src, dest, sw, sh, scan, range);
+      return;
+    }
+
+    double w = range.getWest();
+    double n = range.getNorth();
+    double lonRange = range.getLonRange();
+    double latRange = range.getLatRange();
+    for (int i = 0; i < dw; i++) {
+      if (Math.abs(ur.x - ul.x) > 180) {
+        if (ur.x > ul.x) {
+          ur.x -= 360;
+        } else {
+          ul.x -= 360;
+        }
+      }
+      if (Math.abs(lr.x - ll.x) > 180) {
+        if (lr.x > ll.x) {
+          lr.x -= 360;
+        } else {
+          ll.x -= 360;
+        }
+      }
+      double wx0 = ul.x + i * (ur.x - ul.x) / (double) dw;
+      double wy0 = ul.y + i * (ur.y - ul.y) / (double) dw;
+      double wx1 = ll.x + i * (lr.x - ll.x) / (double) dw;
+      double wy1 = ll.y + i * (lr.y - ll.y) / (double) dw;
+      if (Math.signum(wx0) != Math.signum(wx1) && Math.abs(wx1 - wx0) > 180) {
+        if (wx1 < 0) {
+          wx1 += 360;
+        } else if (wx0 < 0) {
+          wx0 += 360;
+        }
+      }
+      double x = wx0;
+      double y = wy0;
+      double sdx = (wx1 - wx0) / (double) dh;
+      double sdy = (wy1 - wy0) / (double) dh;
+      int di = dx + i + (dy + dh) * scan;
+      for (int j = 0; j < dh; j++) {
+        double adjx = x;
+        if (adjx < w && range.containsLongitude(adjx)) {
+          adjx += 360;
+        }
+        int sx = (int) ((adjx - w) / lonRange * sw);
+        int sy = (int) (-(y - n) / latRange * sh);
+        x += sdx;
+        y += sdy;
+        if (sx >= sw || sy >= sh || sx < 0 || sy < 0) {
+          di -= scan;
+          continue;
+        }
+        if (di < dest.length) {
+          dest[di] = src[sx + sy * sw];
+        }
+        di -= scan;
+      }
+    }
+  }
+
+  /** Cells mapped one at a time, in the original order, by the original code. */
+  private static int[] serial(Projection proj, int n, int dw, int dh, int[] src, GeoRange gr,
+      double[] ext) {
+    FastProjector fast = proj.getFastProjector();
+    int[] buf = new int[dw * dh];
+    Arrays.fill(buf, 0xffffffff);
+    int stepX = dw / (n * 2);
+    int stepY = dh / (n * 2);
+    for (int i = -n; i < n; i++) {
+      for (int j = -n; j < n; j++) {
+        double x0 = ext[0] + (ext[1] - ext[0]) * (double) (i + n) / (double) (n * 2);
+        double y0 = ext[2] + (ext[3] - ext[2]) * (double) (j + n) / (double) (n * 2);
+        double x1 = ext[0] + (ext[1] - ext[0]) * (double) (i + n + 1) / (double) (n * 2);
+        double y1 = ext[2] + (ext[3] - ext[2]) * (double) (j + n + 1) / (double) (n * 2);
+        originalMapRect(proj, fast, x0, y0, x1, y1, (n + i) * stepX, (n - j - 1) * stepY, stepX,
+            stepY, src, buf, SW, SH, dw, gr);
+      }
+    }
+    return buf;
+  }
+
+  private static void assertSameAsSerial(Projection proj, GeoRange gr, GeoRange view) {
+    int[] src = source();
+    double[] ext = proj.getProjectedExtents(view);
+    int n = 5;
+    int dw = 400;
+    int dh = 300;
+    BufferedImage image = proj.getProjectedImage(n, dw, dh, src, SW, SH, gr, ext[0], ext[1],
+        ext[2], ext[3]);
+    int[] actual = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int[] expected = serial(proj, n, dw, dh, src, gr, ext);
+    int drawn = 0;
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("pixel " + i, expected[i], actual[i]);
+      if (expected[i] != 0xffffffff) {
+        drawn++;
+      }
+    }
+    assertEquals(true, drawn > 0);
+  }
+
+  /** Batch results against one point at a time, over enough points to split across threads. */
+  private static void assertBatchSameAsSingle(Projection proj, double w, double e, double s,
+      double n) {
+    Random random = new Random(3);
+    int count = 30000;
+    double[] lon = new double[count];
+    double[] lat = new double[count];
+    for (int i = 0; i < count; i++) {
+      lon[i] = w + random.nextDouble() * (e - w);
+      lat[i] = s + random.nextDouble() * (n - s);
+    }
+    double[] x = new double[count];
+    double[] y = new double[count];
+    proj.forward(lon, lat, x, y);
+    double[] ilon = x.clone();
+    double[] ilat = y.clone();
+    proj.inverse(ilon, ilat, ilon, ilat);
+    FastProjector fast = proj.getFastProjector();
+
+    for (int i = 0; i < count; i++) {
+      Point2D.Double xy = proj.forward(new Point2D.Double(lon[i], lat[i]));
+      assertEquals(xy.x, x[i], 1e-6);
+      assertEquals(xy.y, y[i], 1e-6);
+      Point2D.Double pt = new Point2D.Double(lon[i], lat[i]);
+      fast.forward(pt);
+      assertEquals(xy.x, pt.x, 1e-6);
+      assertEquals(xy.y, pt.y, 1e-6);
+      Point2D.Double ll = proj.inverse(xy);
+      assertEquals(ll.x, ilon[i], 1e-9);
+      assertEquals(ll.y, ilat[i], 1e-9);
+    }
+  }
+
+  @Test
+  public void batchSameAsSingle() {
+    Mercator merc = new Mercator();
+    merc.setOrigin(new Point2D.Double(-150, 0));
+    assertBatchSameAsSingle(merc, -180, 180, -80, 80);
+    assertBatchSameAsSingle(new EllipsoidMercator(), -180, 180, -80, 80);
+    assertBatchSameAsSingle(TransverseMercator.fromUTM("5V"), -160, -140, 50, 70);
+    assertBatchSameAsSingle(TransverseMercator.fromUTM("5G"), -160, -140, -50, -30);
+  }
+
+  @Test
+  public void parallelSameAsSerial() {
+    Mercator proj = new Mercator();
+    proj.setOrigin(new Point2D.Double(-150, 0));
+    assertSameAsSerial(proj, new GeoRange(-170, -130, 40, 70), new GeoRange(-180, -120, 35, 75));
+  }
+
+  @Test
+  public void datelineSameAsSerial() {
+    TransverseMercator proj = new TransverseMercator();
+    proj.setOrigin(new Point2D.Double(178, 52));
+    assertSameAsSerial(proj, new GeoRange(160, -160, 40, 65), new GeoRange(165, -170, 45, 60));
+    // the edges of the image fall within the view
+    assertSameAsSerial(proj, new GeoRange(170, -175, 45, 60), new GeoRange(160, -160, 40, 65));
+  }
+}